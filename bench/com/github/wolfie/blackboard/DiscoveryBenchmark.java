@@ -0,0 +1,72 @@
+package com.github.wolfie.blackboard;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Measures automatic discovery over a large generated package, where half of
+ * the classes are {@link Event Events} with an inner {@link Listener}
+ * interface, and the other half are unrelated.
+ * </p>
+ *
+ * <p>
+ * The classes are loaded once during setup, so this measures scanning the
+ * package and inspecting the classes, not reading them from disk the first
+ * time.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DiscoveryBenchmark {
+
+  @Param({ "100", "1000", "5000" })
+  public int classCount;
+
+  private SyntheticPackage synthetic;
+
+  @Setup
+  public void setUp() throws Exception {
+    synthetic = new SyntheticPackage("bench.discovery", classCount / 2,
+        classCount / 2);
+  }
+
+  @TearDown
+  public void tearDown() {
+    synthetic.delete();
+  }
+
+  @Benchmark
+  public Class<?>[] discoverClasses() {
+    return ClassDiscovery.DiscoverClasses(synthetic.getSeedClass(), null, null);
+  }
+
+  @Benchmark
+  public List<Class<? extends Event>> discoverEventCandidates() {
+    return ClassDiscovery.DiscoverEventCandidates(synthetic.getSeedClass());
+  }
+
+  @Benchmark
+  public Blackboard discoverFrom() {
+    final Blackboard blackboard = new Blackboard();
+    blackboard.discoverFrom(synthetic.getSeedClass());
+    return blackboard;
+  }
+}
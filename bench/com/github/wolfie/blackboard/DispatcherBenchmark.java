@@ -0,0 +1,90 @@
+package com.github.wolfie.blackboard;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.wolfie.blackboard.annotation.ListenerMethod;
+
+/**
+ * Measures how long it takes until every one of many blocking
+ * {@link Listener Listeners} has handled an event, with a
+ * {@link VirtualThreadExecutor} and with a fixed platform thread pool.
+ * <p/>
+ * The virtual thread case only runs virtual threads on Java 21 and newer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DispatcherBenchmark {
+
+  public interface BlockingListener extends Listener {
+    @ListenerMethod
+    void onEvent(BlockingEvent event);
+  }
+
+  public static class BlockingEvent implements Event {
+  }
+
+  /** Simulates a listener waiting for a millisecond on I/O. */
+  public static class BlockingListenerImpl implements BlockingListener {
+    public void onEvent(final BlockingEvent event) {
+      LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+  }
+
+  @Param({ "100", "1000" })
+  public int listenerCount;
+
+  @Param({ "virtual", "pool" })
+  public String dispatcher;
+
+  private Blackboard blackboard;
+  private ExecutorService pool;
+
+  @Setup
+  public void setUp() {
+    blackboard = new Blackboard();
+    blackboard.register(BlockingListener.class, BlockingEvent.class);
+    for (int i = 0; i < listenerCount; i++) {
+      blackboard.addListener(new BlockingListenerImpl());
+    }
+
+    if ("virtual".equals(dispatcher)) {
+      blackboard.setExecutor(new VirtualThreadExecutor());
+    } else {
+      pool = Executors.newFixedThreadPool(Runtime.getRuntime()
+          .availableProcessors() * 4);
+      blackboard.setExecutor(pool);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    if (pool != null) {
+      pool.shutdown();
+    }
+  }
+
+  @Benchmark
+  public void fireAsyncAndWait() throws Exception {
+    blackboard.fireAsync(new BlockingEvent()).get();
+  }
+}
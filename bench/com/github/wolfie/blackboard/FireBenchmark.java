@@ -0,0 +1,93 @@
+package com.github.wolfie.blackboard;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.wolfie.blackboard.annotation.ListenerMethod;
+
+/**
+ * <p>
+ * Measures {@link Blackboard#fire(Event)} as the number of {@link Listener
+ * Listeners} and firing threads grows.
+ * </p>
+ *
+ * <p>
+ * Every benchmark is run both for throughput and for sampled latency, which
+ * gives the percentiles of single <tt>fire()</tt> calls. All threads fire into
+ * the same Blackboard.
+ * </p>
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FireBenchmark {
+
+  public interface FireListener extends Listener {
+    @ListenerMethod
+    void onEvent(FireEvent event);
+  }
+
+  public static class FireEvent implements Event {
+  }
+
+  public static class FireListenerImpl implements FireListener {
+    private final Blackhole blackhole;
+
+    public FireListenerImpl(final Blackhole blackhole) {
+      this.blackhole = blackhole;
+    }
+
+    public void onEvent(final FireEvent event) {
+      blackhole.consume(event);
+    }
+  }
+
+  @Param({ "1", "10", "1000", "100000" })
+  public int listenerCount;
+
+  private Blackboard blackboard;
+  private final FireEvent event = new FireEvent();
+
+  @Setup
+  public void setUp(final Blackhole blackhole) {
+    blackboard = new Blackboard();
+    blackboard.register(FireListener.class, FireEvent.class);
+    for (int i = 0; i < listenerCount; i++) {
+      blackboard.addListener(new FireListenerImpl(blackhole));
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void fireOneThread() {
+    blackboard.fire(event);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void fireFourThreads() {
+    blackboard.fire(event);
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public void fireAllCores() {
+    blackboard.fire(event);
+  }
+}
@@ -0,0 +1,109 @@
+package com.github.wolfie.blackboard;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.wolfie.blackboard.annotation.ListenerMethod;
+
+/**
+ * Compares delivering an event through {@link Blackboard#fire(Event)} with
+ * calling the same listeners through {@link Method#invoke(Object, Object...)}
+ * (the way <tt>fire()</tt> used to do it), through a {@link MethodHandle}
+ * bound the same way as the invoker in <tt>Blackboard.Registration</tt>, and
+ * through plain interface calls.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InvocationBenchmark {
+
+  public interface BenchListener extends Listener {
+    @ListenerMethod
+    void onEvent(BenchEvent event);
+  }
+
+  public static class BenchEvent implements Event {
+  }
+
+  public static class BenchListenerImpl implements BenchListener {
+    private final Blackhole blackhole;
+
+    public BenchListenerImpl(final Blackhole blackhole) {
+      this.blackhole = blackhole;
+    }
+
+    public void onEvent(final BenchEvent event) {
+      blackhole.consume(event);
+    }
+  }
+
+  @Param({ "1", "10" })
+  public int listenerCount;
+
+  private Blackboard blackboard;
+  private BenchListener[] listeners;
+  private Method method;
+  private MethodHandle handle;
+  private final BenchEvent event = new BenchEvent();
+
+  @Setup
+  public void setUp(final Blackhole blackhole) throws Exception {
+    blackboard = new Blackboard();
+    blackboard.register(BenchListener.class, BenchEvent.class);
+
+    listeners = new BenchListener[listenerCount];
+    for (int i = 0; i < listenerCount; i++) {
+      listeners[i] = new BenchListenerImpl(blackhole);
+      blackboard.addListener(listeners[i]);
+    }
+
+    method = BenchListener.class.getMethod("onEvent", BenchEvent.class);
+    handle = MethodHandles.lookup().unreflect(method)
+        .asType(MethodType.methodType(void.class, Listener.class, Event.class));
+  }
+
+  @Benchmark
+  public void fire() {
+    blackboard.fire(event);
+  }
+
+  @Benchmark
+  public void reflective() throws Exception {
+    for (final BenchListener listener : listeners) {
+      method.invoke(listener, event);
+    }
+  }
+
+  @Benchmark
+  public void methodHandle() throws Throwable {
+    for (final Listener listener : listeners) {
+      handle.invokeExact(listener, (Event) event);
+    }
+  }
+
+  @Benchmark
+  public void direct() {
+    for (final BenchListener listener : listeners) {
+      listener.onEvent(event);
+    }
+  }
+}
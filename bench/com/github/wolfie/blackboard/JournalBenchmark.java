@@ -0,0 +1,113 @@
+package com.github.wolfie.blackboard;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.wolfie.blackboard.annotation.ListenerMethod;
+
+/**
+ * <p>
+ * Measures {@link Blackboard#fire(Event)} of events recorded by an
+ * {@link EventJournal}, for each {@link FsyncPolicy}.
+ * </p>
+ *
+ * <p>
+ * Firing only encodes and queues the events, so the throughput is that of the
+ * journal's writer once its queue is full. The segments are written to a
+ * temporary directory, and are small enough to roll during the measurement,
+ * with only a few of them retained.
+ * </p>
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JournalBenchmark {
+
+  public interface JournalListener extends Listener {
+    @ListenerMethod
+    void onEvent(JournalEvent event);
+  }
+
+  public static class JournalEvent implements Event {
+    private final long value;
+
+    public JournalEvent(final long value) {
+      this.value = value;
+    }
+  }
+
+  public static class JournalCodec implements EventCodec {
+    public void write(final Event event, final DataOutputStream out)
+        throws IOException {
+      out.writeLong(((JournalEvent) event).value);
+    }
+
+    public Event read(final Class<? extends Event> type,
+        final DataInputStream in) throws IOException {
+      return new JournalEvent(in.readLong());
+    }
+  }
+
+  @Param({ "NEVER", "PERIODIC", "EVERY_COMMIT" })
+  public FsyncPolicy fsyncPolicy;
+
+  private File directory;
+  private EventJournal journal;
+  private Blackboard blackboard;
+  private final JournalEvent event = new JournalEvent(42);
+
+  @Setup
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("journal-benchmark").toFile();
+    journal = new EventJournal(directory, new JournalCodec(),
+        16 * 1024 * 1024);
+    journal.setFsyncPolicy(fsyncPolicy);
+    journal.setMaxSegments(4);
+
+    blackboard = new Blackboard();
+    blackboard.register(JournalListener.class, JournalEvent.class);
+    journal.record(blackboard, JournalEvent.class);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    journal.close();
+    for (final File segment : EventJournal.listSegments(directory)) {
+      segment.delete();
+    }
+    directory.delete();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void fireOneThread() {
+    blackboard.fire(event);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void fireFourThreads() {
+    blackboard.fire(event);
+  }
+}
@@ -0,0 +1,76 @@
+package com.github.wolfie.blackboard;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures adding and immediately removing a {@link Listener} on a Blackboard
+ * with many registrations, each of which already has listeners. Every call
+ * churns the listener of the next registration in turn.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ListenerChurnBenchmark {
+
+  @Param({ "10", "100", "1000" })
+  public int registrations;
+
+  @Param({ "10", "1000" })
+  public int listenersPerRegistration;
+
+  private SyntheticPackage synthetic;
+  private Blackboard blackboard;
+  private Listener[] churned;
+  private int next;
+
+  @Setup
+  public void setUp() throws Exception {
+    synthetic = new SyntheticPackage("bench.churn", registrations, 0);
+
+    blackboard = new Blackboard();
+    churned = new Listener[registrations];
+    for (int i = 0; i < registrations; i++) {
+      final Class<? extends Listener> listenerClass = synthetic.getListeners()
+          .get(i);
+      blackboard.register(listenerClass, synthetic.getEvents().get(i));
+
+      for (int j = 0; j < listenersPerRegistration; j++) {
+        blackboard.addListener(synthetic.newListener(Collections
+            .<Class<? extends Listener>> singletonList(listenerClass)));
+      }
+      churned[i] = synthetic.newListener(Collections
+          .<Class<? extends Listener>> singletonList(listenerClass));
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    synthetic.delete();
+  }
+
+  @Benchmark
+  public boolean addAndRemove() {
+    final Listener listener = churned[next];
+    next = (next + 1) % churned.length;
+
+    blackboard.addListener(listener);
+    return blackboard.removeListener(listener);
+  }
+}
@@ -0,0 +1,60 @@
+package com.github.wolfie.blackboard;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the first {@link Blackboard#addListener(Listener)} on a fresh
+ * Blackboard without any explicit registrations, where the registrations of
+ * all the listener's interfaces are found and made on the fly.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MagicRegistrationBenchmark {
+
+  @Param({ "1", "10", "100" })
+  public int listenerInterfaces;
+
+  private SyntheticPackage synthetic;
+  private Listener listener;
+  private Blackboard blackboard;
+
+  @Setup
+  public void setUp() throws Exception {
+    synthetic = new SyntheticPackage("bench.magic", listenerInterfaces, 0);
+    listener = synthetic.newListener(synthetic.getListeners());
+  }
+
+  @Setup(Level.Invocation)
+  public void newBlackboard() {
+    blackboard = new Blackboard();
+  }
+
+  @TearDown
+  public void tearDown() {
+    synthetic.delete();
+  }
+
+  @Benchmark
+  public Blackboard addListener() {
+    blackboard.addListener(listener);
+    return blackboard;
+  }
+}
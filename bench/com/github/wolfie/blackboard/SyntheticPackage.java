@@ -0,0 +1,164 @@
+package com.github.wolfie.blackboard;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * <p>
+ * A package of generated classes for the benchmarks that need a lot of
+ * {@link Event Events} and {@link Listener Listeners}.
+ * </p>
+ *
+ * <p>
+ * Every event class <code>EventN</code> declares its listener interface
+ * <code>EventN.ListenerN</code>, which is what discovery and magic
+ * registration look for. The package can also contain plain filler classes,
+ * which discovery has to skip. The sources are compiled with the system Java
+ * compiler into a temporary directory, so the benchmarks need to run on a JDK.
+ * </p>
+ */
+class SyntheticPackage {
+
+  /** Does nothing, but is equal only to itself. */
+  private static final InvocationHandler LISTENER_HANDLER = new InvocationHandler() {
+    public Object invoke(final Object proxy, final Method method,
+        final Object[] args) {
+      if (method.getName().equals("equals")) {
+        return proxy == args[0];
+      } else if (method.getName().equals("hashCode")) {
+        return System.identityHashCode(proxy);
+      } else if (method.getName().equals("toString")) {
+        return "SyntheticListener@"
+            + Integer.toHexString(System.identityHashCode(proxy));
+      }
+      return null;
+    }
+  };
+
+  private final File root;
+  private final ClassLoader classLoader;
+  private final List<Class<? extends Event>> events = new ArrayList<Class<? extends Event>>();
+  private final List<Class<? extends Listener>> listeners = new ArrayList<Class<? extends Listener>>();
+
+  /**
+   * Generate, compile and load a package.
+   *
+   * @param packageName
+   *          the name of the package to generate.
+   * @param pairs
+   *          the number of event and listener pairs.
+   * @param fillers
+   *          the number of classes that are neither events nor listeners.
+   */
+  SyntheticPackage(final String packageName, final int pairs,
+      final int fillers) throws IOException, ClassNotFoundException {
+    root = Files.createTempDirectory("blackboard-bench").toFile();
+    final File packageDir = new File(root, packageName.replace('.', '/'));
+    if (!packageDir.mkdirs()) {
+      throw new IOException("Could not create " + packageDir);
+    }
+
+    final List<String> sources = new ArrayList<String>();
+    for (int i = 0; i < pairs; i++) {
+      sources.add(write(packageDir, "Event" + i, "package " + packageName
+          + ";\n" + "public class Event" + i
+          + " implements com.github.wolfie.blackboard.Event {\n"
+          + "  public interface Listener" + i
+          + " extends com.github.wolfie.blackboard.Listener {\n"
+          + "    @com.github.wolfie.blackboard.annotation.ListenerMethod\n"
+          + "    void on(Event" + i + " event);\n" + "  }\n" + "}\n"));
+    }
+    for (int i = 0; i < fillers; i++) {
+      sources.add(write(packageDir, "Filler" + i, "package " + packageName
+          + ";\n" + "public class Filler" + i + " {\n"
+          + "  public int value() { return " + i + "; }\n" + "}\n"));
+    }
+
+    compile(sources);
+
+    classLoader = new URLClassLoader(new URL[] { root.toURI().toURL() },
+        SyntheticPackage.class.getClassLoader());
+    for (int i = 0; i < pairs; i++) {
+      final String eventName = packageName + ".Event" + i;
+      events.add(classLoader.loadClass(eventName).asSubclass(Event.class));
+      listeners.add(classLoader.loadClass(eventName + "$Listener" + i)
+          .asSubclass(Listener.class));
+    }
+  }
+
+  private static String write(final File packageDir, final String className,
+      final String source) throws IOException {
+    final File file = new File(packageDir, className + ".java");
+    final Writer writer = Files.newBufferedWriter(file.toPath(),
+        StandardCharsets.UTF_8);
+    try {
+      writer.write(source);
+    } finally {
+      writer.close();
+    }
+    return file.getPath();
+  }
+
+  private void compile(final List<String> sources) throws IOException {
+    final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    if (compiler == null) {
+      throw new IllegalStateException("No Java compiler found, "
+          + "the benchmarks need to be run on a JDK");
+    }
+
+    final List<String> arguments = new ArrayList<String>(Arrays.asList(
+        "-nowarn", "-proc:none", "-cp", System.getProperty("java.class.path"),
+        "-d", root.getPath()));
+    arguments.addAll(sources);
+    if (compiler.run(null, null, null, arguments.toArray(new String[0])) != 0) {
+      throw new IOException("Compiling the synthetic package failed");
+    }
+  }
+
+  /** A class in the package, to discover the package from. */
+  Class<?> getSeedClass() {
+    return events.get(0);
+  }
+
+  List<Class<? extends Event>> getEvents() {
+    return events;
+  }
+
+  List<Class<? extends Listener>> getListeners() {
+    return listeners;
+  }
+
+  /** Create a listener object that implements the given listener interfaces. */
+  Listener newListener(final List<Class<? extends Listener>> interfaces) {
+    return (Listener) Proxy.newProxyInstance(classLoader,
+        interfaces.toArray(new Class<?>[interfaces.size()]), LISTENER_HANDLER);
+  }
+
+  void delete() {
+    delete(root);
+  }
+
+  private static void delete(final File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
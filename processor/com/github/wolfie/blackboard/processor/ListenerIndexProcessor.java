@@ -0,0 +1,527 @@
+package com.github.wolfie.blackboard.processor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * <p>
+ * Generates a {@link com.github.wolfie.blackboard.ListenerIndex} for every
+ * package with {@link com.github.wolfie.blackboard.Listener Listeners} or
+ * {@link com.github.wolfie.blackboard.Event Events}, so that Blackboard
+ * doesn't need to scan the classpath or reflect on them at runtime.
+ * </p>
+ *
+ * <p>
+ * The index of a package is a class named
+ * <code>GeneratedListenerIndex_</code> and a hash of its contents, in that
+ * package, so that the parts of a package compiled separately, like its main
+ * and test sources, get indexes of their own. It lists
+ * </p>
+ * <ul>
+ * <li>every
+ * {@link com.github.wolfie.blackboard.annotation.ListenerMethod @ListenerMethod}
+ * , with a {@link com.github.wolfie.blackboard.Dispatcher} that calls it
+ * directly, and</li>
+ * <li>every Event that names its Listener with
+ * {@link com.github.wolfie.blackboard.annotation.ListenerPair @ListenerPair}
+ * or by declaring the listener interface inside itself.</li>
+ * </ul>
+ *
+ * <p>
+ * The indexes are listed in
+ * <code>META-INF/services/com.github.wolfie.blackboard.ListenerIndex</code>.
+ * A listener interface with a listener method that Blackboard would refuse,
+ * one that takes other than exactly one Event, or one of several for the same
+ * event or its subtypes, is left out of the index altogether, and reported
+ * as a warning, so that registering it goes through the same checks as
+ * without an index.
+ * </p>
+ *
+ * <p>
+ * The processor isn't in the Blackboard jar, but in a blackboard-processor jar
+ * of its own, so it only runs where it's asked for: give that jar to javac
+ * with <code>-processorpath</code>. javac only runs it for the compilations
+ * that use {@link com.github.wolfie.blackboard.annotation.ListenerMethod
+ * ListenerMethod} or
+ * {@link com.github.wolfie.blackboard.annotation.ListenerPair ListenerPair};
+ * what isn't indexed is still found through reflection.
+ * </p>
+ *
+ * @author Henrik Paul
+ */
+@SupportedAnnotationTypes({ "com.github.wolfie.blackboard.annotation.ListenerMethod",
+    "com.github.wolfie.blackboard.annotation.ListenerPair" })
+public class ListenerIndexProcessor extends AbstractProcessor {
+
+  static final String INDEX_CLASS_NAME = "GeneratedListenerIndex";
+
+  private static final String PACKAGE = "com.github.wolfie.blackboard";
+  private static final String EVENT = PACKAGE + ".Event";
+  private static final String LISTENER = PACKAGE + ".Listener";
+  private static final String LISTENER_INDEX = PACKAGE + ".ListenerIndex";
+  private static final String DISPATCHER = PACKAGE + ".Dispatcher";
+  private static final String LISTENER_METHOD = PACKAGE
+      + ".annotation.ListenerMethod";
+  private static final String LISTENER_PAIR = PACKAGE
+      + ".annotation.ListenerPair";
+
+  /** What goes into the index of one package */
+  private static class PackageIndex {
+    private final List<ExecutableElement> listenerMethods = new ArrayList<ExecutableElement>();
+    private final Map<TypeElement, TypeElement> pairs = new LinkedHashMap<TypeElement, TypeElement>();
+  }
+
+  /** The generated index classes, for the service file */
+  private final List<String> generatedIndexes = new ArrayList<String>();
+
+  /** The index class names used so far */
+  private final Set<String> generatedNames = new HashSet<String>();
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(final Set<? extends TypeElement> annotations,
+      final RoundEnvironment roundEnv) {
+    final TypeElement event = processingEnv.getElementUtils().getTypeElement(
+        EVENT);
+    final TypeElement listener = processingEnv.getElementUtils()
+        .getTypeElement(LISTENER);
+    if (event == null || listener == null) {
+      // Blackboard isn't on the classpath, nothing to index
+      return false;
+    }
+
+    if (roundEnv.processingOver()) {
+      writeServiceFile();
+      return false;
+    }
+
+    final Map<PackageElement, PackageIndex> indexes = new LinkedHashMap<PackageElement, PackageIndex>();
+    for (final TypeElement type : ElementFilter.typesIn(roundEnv
+        .getRootElements())) {
+      scan(type, event.asType(), listener.asType(), indexes);
+    }
+
+    for (final Map.Entry<PackageElement, PackageIndex> entry : indexes
+        .entrySet()) {
+      try {
+        generateIndex(entry.getKey(), entry.getValue());
+      } catch (final IOException e) {
+        processingEnv.getMessager().printMessage(Kind.WARNING,
+            "Could not write the listener index: " + e);
+      }
+    }
+
+    // never claim the annotations, other processors may want them too
+    return false;
+  }
+
+  private void scan(final TypeElement type, final TypeMirror event,
+      final TypeMirror listener, final Map<PackageElement, PackageIndex> indexes) {
+    final Types types = processingEnv.getTypeUtils();
+
+    if (type.getKind() == ElementKind.INTERFACE
+        && types.isAssignable(types.erasure(type.asType()), listener)) {
+      final List<ExecutableElement> listenerMethods = getListenerMethods(type,
+          event);
+      if (listenerMethods != null && !listenerMethods.isEmpty()) {
+        getIndex(type, indexes).listenerMethods.addAll(listenerMethods);
+      }
+    }
+
+    if (type.getKind() != ElementKind.INTERFACE
+        && types.isAssignable(types.erasure(type.asType()), event)) {
+      final TypeElement pairedListener = getPairedListener(type, listener);
+      if (pairedListener != null) {
+        getIndex(type, indexes).pairs.put(type, pairedListener);
+      }
+    }
+
+    for (final TypeElement member : ElementFilter.typesIn(type
+        .getEnclosedElements())) {
+      scan(member, event, listener, indexes);
+    }
+  }
+
+  private PackageIndex getIndex(final TypeElement type,
+      final Map<PackageElement, PackageIndex> indexes) {
+    final PackageElement packageElement = processingEnv.getElementUtils()
+        .getPackageOf(type);
+    PackageIndex index = indexes.get(packageElement);
+    if (index == null) {
+      index = new PackageIndex();
+      indexes.put(packageElement, index);
+    }
+    return index;
+  }
+
+  /**
+   * Get the {@link com.github.wolfie.blackboard.annotation.ListenerMethod
+   * ListenerMethods} declared in <tt>listener</tt>, checking them, and the
+   * ones it inherits, like Blackboard does when it's registered, and reporting
+   * a warning if any is invalid.
+   *
+   * @return the listener methods, or <code>null</code> if the listener is to
+   *         be left to reflection.
+   */
+  private List<ExecutableElement> getListenerMethods(
+      final TypeElement listener, final TypeMirror event) {
+    final Types types = processingEnv.getTypeUtils();
+
+    final List<ExecutableElement> methods = new ArrayList<ExecutableElement>();
+    for (final ExecutableElement method : ElementFilter
+        .methodsIn(processingEnv.getElementUtils().getAllMembers(listener))) {
+      if (getAnnotation(method, LISTENER_METHOD) == null) {
+        continue;
+      }
+
+      final List<? extends VariableElement> parameters = method
+          .getParameters();
+      if (parameters.size() != 1
+          || !types.isAssignable(types.erasure(parameters.get(0).asType()),
+              event)) {
+        warn("A listener method must take exactly one argument, "
+            + "which implements " + EVENT + "; Blackboard will refuse to "
+            + "register " + listener.getQualifiedName(), method, listener);
+        return null;
+      } else if (parameters.get(0).asType().getKind() != TypeKind.DECLARED) {
+        // e.g. a type variable; leave it to reflection
+        return null;
+      }
+      methods.add(method);
+    }
+
+    // like Blackboard, count the methods for an event's subtypes too
+    for (final ExecutableElement method : methods) {
+      final TypeMirror type = types.erasure(method.getParameters().get(0)
+          .asType());
+      for (final ExecutableElement other : methods) {
+        if (other != method
+            && types.isAssignable(types.erasure(other.getParameters().get(0)
+                .asType()), type)) {
+          warn("More than one listener method for " + type
+              + "; Blackboard will refuse to register "
+              + listener.getQualifiedName() + " for it", method, listener);
+          return null;
+        }
+      }
+    }
+
+    final List<ExecutableElement> declaredMethods = new ArrayList<ExecutableElement>();
+    for (final ExecutableElement method : methods) {
+      if (method.getEnclosingElement().equals(listener)) {
+        declaredMethods.add(method);
+      }
+    }
+    return declaredMethods;
+  }
+
+  /** Warn about <tt>method</tt>, or <tt>listener</tt> if it's inherited */
+  private void warn(final String message, final ExecutableElement method,
+      final TypeElement listener) {
+    if (method.getEnclosingElement().equals(listener)) {
+      processingEnv.getMessager().printMessage(Kind.WARNING, message, method);
+    } else {
+      processingEnv.getMessager().printMessage(Kind.WARNING,
+          message + " (" + method + " of " + method.getEnclosingElement()
+              + ")", listener);
+    }
+  }
+
+  /**
+   * @return the listener named by <tt>event</tt>'s
+   *         {@link com.github.wolfie.blackboard.annotation.ListenerPair}, or
+   *         else the first listener interface declared in <tt>event</tt>, or
+   *         <code>null</code>.
+   */
+  private TypeElement getPairedListener(final TypeElement event,
+      final TypeMirror listener) {
+    final AnnotationMirror listenerPair = getAnnotation(event, LISTENER_PAIR);
+    if (listenerPair != null) {
+      for (final Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : listenerPair
+          .getElementValues().entrySet()) {
+        if (value.getKey().getSimpleName().contentEquals("value")) {
+          final Object type = value.getValue().getValue();
+          if (type instanceof DeclaredType) {
+            return (TypeElement) ((DeclaredType) type).asElement();
+          }
+        }
+      }
+      return null;
+    }
+
+    final Types types = processingEnv.getTypeUtils();
+    for (final TypeElement member : ElementFilter.typesIn(event
+        .getEnclosedElements())) {
+      if (types.isAssignable(types.erasure(member.asType()), listener)) {
+        return member;
+      }
+    }
+    return null;
+  }
+
+  private static AnnotationMirror getAnnotation(final Element element,
+      final String annotation) {
+    for (final AnnotationMirror mirror : element.getAnnotationMirrors()) {
+      final TypeElement type = (TypeElement) mirror.getAnnotationType()
+          .asElement();
+      if (type.getQualifiedName().contentEquals(annotation)) {
+        return mirror;
+      }
+    }
+    return null;
+  }
+
+  private void generateIndex(final PackageElement packageElement,
+      final PackageIndex index) throws IOException {
+    final String packageName = packageElement.isUnnamed() ? ""
+        : packageElement.getQualifiedName().toString();
+
+    final List<Element> originatingElements = new ArrayList<Element>();
+    originatingElements.addAll(index.listenerMethods);
+    originatingElements.addAll(index.pairs.keySet());
+
+    /*
+     * A package may be compiled in parts, like its main and test sources, and
+     * each part needs an index of its own, so the name comes from what's
+     * indexed. A package that shows up again in a later round gets another
+     * index.
+     */
+    final String baseName = INDEX_CLASS_NAME + "_"
+        + getContentHash(originatingElements);
+    String simpleName = baseName;
+    for (int i = 2; generatedNames.contains(qualify(packageName, simpleName)); i++) {
+      simpleName = baseName + "_" + i;
+    }
+    final String className = qualify(packageName, simpleName);
+    generatedNames.add(className);
+
+    final Writer writer = processingEnv.getFiler()
+        .createSourceFile(className,
+            originatingElements.toArray(new Element[0])).openWriter();
+    final PrintWriter out = new PrintWriter(writer);
+    try {
+      if (!packageName.isEmpty()) {
+        out.println("package " + packageName + ";");
+        out.println();
+      }
+      out.println("/** Generated by " + getClass().getName()
+          + ", do not edit. */");
+      out.println("public final class " + simpleName + " implements "
+          + LISTENER_INDEX + " {");
+      out.println();
+      out.println("  @SuppressWarnings({ \"unchecked\", \"rawtypes\" })");
+      out.println("  public void collect(final " + LISTENER_INDEX
+          + ".Collector collector) {");
+
+      for (final ExecutableElement method : index.listenerMethods) {
+        final TypeElement listener = (TypeElement) method
+            .getEnclosingElement();
+        final TypeElement event = (TypeElement) ((DeclaredType) method
+            .getParameters().get(0).asType()).asElement();
+
+        out.println("    collector.listenerMethod("
+            + classLiteral(listener, packageElement, LISTENER) + ", "
+            + classLiteral(event, packageElement, EVENT) + ", \""
+            + method.getSimpleName() + "\",");
+        if (isAccessible(listener, packageElement)
+            && isAccessible(event, packageElement)) {
+          out.println("        new " + DISPATCHER + "() {");
+          out.println("          public void dispatch(final " + LISTENER
+              + " listener, final " + EVENT + " event) throws Throwable {");
+          out.println("            ((" + listener.getQualifiedName()
+              + ") listener)." + method.getSimpleName() + "(("
+              + event.getQualifiedName() + ") event);");
+          out.println("          }");
+          out.println("        });");
+        } else {
+          out.println("        null);");
+        }
+      }
+
+      for (final Map.Entry<TypeElement, TypeElement> pair : index.pairs
+          .entrySet()) {
+        out.println("    collector.pair("
+            + classLiteral(pair.getKey(), packageElement, EVENT) + ", "
+            + classLiteral(pair.getValue(), packageElement, LISTENER) + ");");
+      }
+
+      out.println("  }");
+      out.println();
+      out.println("  private static <T> Class<? extends T> type(final String name, "
+          + "final Class<T> bound) {");
+      out.println("    try {");
+      out.println("      return Class.forName(name, false, " + simpleName
+          + ".class.getClassLoader()).asSubclass(bound);");
+      out.println("    } catch (final ClassNotFoundException e) {");
+      out.println("      throw new NoClassDefFoundError(name);");
+      out.println("    }");
+      out.println("  }");
+      out.println("}");
+    } finally {
+      out.close();
+    }
+
+    generatedIndexes.add(className);
+  }
+
+  /**
+   * @return a hash of the names of the indexed types and methods, the same for
+   *         the same sources, in hexadecimal.
+   */
+  private String getContentHash(final List<Element> originatingElements) {
+    final List<String> names = new ArrayList<String>();
+    for (final Element element : originatingElements) {
+      if (element instanceof TypeElement) {
+        names.add(processingEnv.getElementUtils()
+            .getBinaryName((TypeElement) element).toString());
+      } else {
+        names.add(processingEnv.getElementUtils()
+            .getBinaryName((TypeElement) element.getEnclosingElement())
+            + "." + element.getSimpleName());
+      }
+    }
+    Collections.sort(names);
+
+    int hash = 0;
+    for (final String name : names) {
+      hash = 31 * hash + name.hashCode();
+    }
+    return String.format("%08x", Integer.valueOf(hash));
+  }
+
+  private static String qualify(final String packageName,
+      final String simpleName) {
+    return packageName.isEmpty() ? simpleName : packageName + "."
+        + simpleName;
+  }
+
+  /**
+   * @return a class literal for <tt>type</tt> if it's accessible from the
+   *         index, or else an expression loading it by name.
+   */
+  private String classLiteral(final TypeElement type,
+      final PackageElement indexPackage, final String bound) {
+    if (isAccessible(type, indexPackage)) {
+      return processingEnv.getTypeUtils().erasure(type.asType()) + ".class";
+    } else {
+      return "type(\""
+          + processingEnv.getElementUtils().getBinaryName(type) + "\", "
+          + bound + ".class)";
+    }
+  }
+
+  /**
+   * @return <code>true</code> iff generated code in <tt>indexPackage</tt> may
+   *         refer to <tt>type</tt>.
+   */
+  private boolean isAccessible(final TypeElement type,
+      final PackageElement indexPackage) {
+    final boolean samePackage = processingEnv.getElementUtils()
+        .getPackageOf(type).equals(indexPackage);
+
+    Element element = type;
+    while (element instanceof TypeElement) {
+      final Set<Modifier> modifiers = element.getModifiers();
+      final Element enclosing = element.getEnclosingElement();
+      final boolean isPublic = modifiers.contains(Modifier.PUBLIC)
+          || enclosing.getKind().isInterface();
+      if (modifiers.contains(Modifier.PRIVATE)) {
+        return false;
+      } else if (!isPublic && !samePackage) {
+        return false;
+      }
+      element = enclosing;
+    }
+    return true;
+  }
+
+  private void writeServiceFile() {
+    if (generatedIndexes.isEmpty()) {
+      return;
+    }
+
+    // keep the indexes of other compilations into the same directory
+    final Set<String> indexes = new LinkedHashSet<String>(
+        readServiceFile());
+    indexes.addAll(generatedIndexes);
+
+    try {
+      final FileObject file = processingEnv.getFiler().createResource(
+          StandardLocation.CLASS_OUTPUT, "",
+          "META-INF/services/" + LISTENER_INDEX);
+      final PrintWriter out = new PrintWriter(file.openWriter());
+      try {
+        for (final String index : indexes) {
+          out.println(index);
+        }
+      } finally {
+        out.close();
+      }
+    } catch (final IOException e) {
+      processingEnv.getMessager().printMessage(Kind.WARNING,
+          "Could not write the listener index service file: " + e);
+    }
+  }
+
+  /** @return the indexes already listed in the output directory. */
+  private List<String> readServiceFile() {
+    final List<String> indexes = new ArrayList<String>();
+    try {
+      final FileObject file = processingEnv.getFiler().getResource(
+          StandardLocation.CLASS_OUTPUT, "",
+          "META-INF/services/" + LISTENER_INDEX);
+      final BufferedReader in = new BufferedReader(file.openReader(true));
+      try {
+        String line;
+        while ((line = in.readLine()) != null) {
+          if (!line.trim().isEmpty()) {
+            indexes.add(line.trim());
+          }
+        }
+      } finally {
+        in.close();
+      }
+    } catch (final IOException e) {
+      // there is none yet
+    } catch (final IllegalArgumentException e) {
+      // the location can't be read from
+    }
+    return indexes;
+  }
+}
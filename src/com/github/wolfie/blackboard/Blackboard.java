@@ -1,17 +1,37 @@
 package com.github.wolfie.blackboard;
 
-import java.lang.reflect.InvocationTargetException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.wolfie.blackboard.DiscoveryCache.Fingerprint;
+import com.github.wolfie.blackboard.ListenerIndexes.IndexedMethod;
+import com.github.wolfie.blackboard.ListenerIndexes.IndexedPair;
+import com.github.wolfie.blackboard.ListenerList.WeakListener;
 import com.github.wolfie.blackboard.annotation.ListenerMethod;
 import com.github.wolfie.blackboard.annotation.ListenerPair;
 import com.github.wolfie.blackboard.exception.DuplicateListenerMethodException;
@@ -21,6 +41,7 @@ import com.github.wolfie.blackboard.exception.IncompatibleListenerMethodExceptio
 import com.github.wolfie.blackboard.exception.InvalidListenerMethodConstruction;
 import com.github.wolfie.blackboard.exception.NoMatchingRegistrationFoundException;
 import com.github.wolfie.blackboard.exception.NoSuitableListenerMethodFoundException;
+import com.github.wolfie.blackboard.exception.QueueFullException;
 
 /**
  * <p>
@@ -50,6 +71,13 @@ import com.github.wolfie.blackboard.exception.NoSuitableListenerMethodFoundExcep
  * </p>
  * 
  * <p>
+ * Blackboards can also be {@link #Blackboard(Blackboard) nested}, for example
+ * one for the whole application and one per user under it. A child inherits
+ * the registrations of its parent, and gets the events fired on the parent,
+ * but the events fired on the child stay in the child.
+ * </p>
+ * 
+ * <p>
  * Any method in this class may throw a {@link NullPointerException} upon passed
  * <code>null</code> arguments.
  * </p>
@@ -59,9 +87,25 @@ import com.github.wolfie.blackboard.exception.NoSuitableListenerMethodFoundExcep
 public class Blackboard {
 
   private static class Registration {
+    /** The call site type every invoker is adapted to. */
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(
+        void.class, Listener.class, Event.class);
+
     private final Class<? extends Listener> listener;
     private final Class<? extends Event> event;
-    private final Method method;
+
+    /** The listener method, looked up lazily if the registration is indexed */
+    private volatile Method method;
+
+    /** Calls the listener method, unless there is a <tt>dispatcher</tt> */
+    private final MethodHandle invoker;
+
+    /** The generated dispatcher of an indexed listener method, or null */
+    private final Dispatcher dispatcher;
+    private final String methodName;
+
+    /** Set if events of this type are conflated, <code>null</code> otherwise */
+    private volatile Conflator conflator;
 
     public Registration(final Class<? extends Listener> listener,
         final Class<? extends Event> event)
@@ -70,10 +114,6 @@ public class Blackboard {
       if (!listener.isInterface()) {
         throw new IllegalArgumentException(
             "Unexpected non-interface argument: " + listener);
-      } else if (event.isInterface()
-          || Modifier.isAbstract(event.getModifiers())) {
-        throw new IllegalArgumentException(
-            "Unexpected interface or abstract class argument: " + event);
       }
 
       final Method listenerMethod = getListenerMethod(listener, event);
@@ -84,13 +124,56 @@ public class Blackboard {
             event);
       }
 
-      Log.log(String.format("Registering %s.%s() to %s", listener.getName(),
-          listenerMethod.getName(), event.getName()));
-      Log.logEmptyLine();
-
       method = listenerMethod;
+      methodName = listenerMethod.getName();
+      invoker = createInvoker(listenerMethod);
+      dispatcher = null;
+      this.listener = listener;
+      this.event = event;
+    }
+
+    /**
+     * Create a registration from a listener method found in a
+     * {@link ListenerIndex}. The index was checked at compile time, so this
+     * doesn't look at the listener with reflection, unless there is no
+     * generated dispatcher for the method.
+     */
+    public Registration(final Class<? extends Listener> listener,
+        final Class<? extends Event> event, final IndexedMethod indexedMethod) {
       this.listener = listener;
       this.event = event;
+      methodName = indexedMethod.getMethodName();
+      dispatcher = indexedMethod.getDispatcher();
+      if (dispatcher != null) {
+        invoker = null;
+      } else {
+        invoker = createInvoker(getMethod());
+      }
+    }
+
+    /**
+     * Bind <tt>method</tt> into a {@link MethodHandle} of the type
+     * {@link #INVOKER_TYPE}, so that it can be called without the argument
+     * boxing and access checks of {@link Method#invoke(Object, Object...)}.
+     * 
+     * @param method
+     *          the listener method to bind.
+     * @return an invoker taking the listener and the event as its arguments.
+     */
+    private static MethodHandle createInvoker(final Method method) {
+      try {
+        // listener interfaces are often nested, non-public types
+        method.setAccessible(true);
+      } catch (final RuntimeException e) {
+        // fall back to the regular access checks in unreflect()
+      }
+
+      try {
+        return MethodHandles.lookup().unreflect(method).asType(INVOKER_TYPE);
+      } catch (final IllegalAccessException e) {
+        throw new IllegalArgumentException("Listener method " + method
+            + " is not accessible", e);
+      }
     }
 
     /**
@@ -147,10 +230,6 @@ public class Blackboard {
         }
       }
 
-      if (listenerMethod != null) {
-        Log.log("Found listener method by annotation");
-      }
-
       return listenerMethod;
     }
 
@@ -189,10 +268,6 @@ public class Blackboard {
         }
       }
 
-      if (listenerCandidate != null) {
-        Log.log("Found listener method by being the only suitable method in the class");
-      }
-
       return listenerCandidate;
     }
 
@@ -204,21 +279,375 @@ public class Blackboard {
       return event;
     }
 
+    public String getMethodName() {
+      return methodName;
+    }
+
     public Method getMethod() {
-      return method;
+      Method listenerMethod = method;
+      if (listenerMethod == null) {
+        try {
+          listenerMethod = listener.getMethod(methodName, event);
+        } catch (final NoSuchMethodException e) {
+          throw new IllegalStateException("The listener index or discovery "
+              + "cache is out of date, " + listener.getName()
+              + " has no method " + methodName + "(" + event.getName() + ")",
+              e);
+        }
+        method = listenerMethod;
+      }
+      return listenerMethod;
+    }
+
+    public Conflator getConflator() {
+      return conflator;
+    }
+
+    public void setConflator(final Conflator conflator) {
+      this.conflator = conflator;
+    }
+
+    /**
+     * Call the listener method of <tt>listener</tt> with <tt>event</tt>.
+     * 
+     * @throws Throwable
+     *           anything the listener method throws, as is.
+     */
+    public void invoke(final Listener listener, final Event event)
+        throws Throwable {
+      if (dispatcher != null) {
+        dispatcher.dispatch(listener, event);
+      } else {
+        invoker.invokeExact(listener, event);
+      }
+    }
+  }
+
+  /**
+   * A single delivery of an {@link Event} to a {@link Listener}, as run by
+   * {@link Blackboard#fireAsync(Event)}.
+   */
+  static class Delivery implements Runnable {
+    private final Registration registration;
+    private final Listener listener;
+    private final Event event;
+    private final FireFuture future;
+    private final Semaphore limit;
+    private final Tracer tracer;
+    private final DispatchMetrics metrics;
+
+    /**
+     * @param limit
+     *          the permits for running deliveries of this event type, or
+     *          <code>null</code> if they aren't limited.
+     * @param tracer
+     *          the tracer to report to, or <code>null</code>.
+     * @param metrics
+     *          the metrics to record to, or <code>null</code>.
+     */
+    public Delivery(final Registration registration, final Listener listener,
+        final Event event, final FireFuture future, final Semaphore limit,
+        final Tracer tracer, final DispatchMetrics metrics) {
+      this.registration = registration;
+      this.listener = listener;
+      this.event = event;
+      this.future = future;
+      this.limit = limit;
+      this.tracer = tracer;
+      this.metrics = metrics;
+    }
+
+    public void run() {
+      if (limit != null) {
+        try {
+          limit.acquire();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          future.failed(e);
+          return;
+        }
+      }
+
+      try {
+        final Throwable failure = invoke(registration, listener, event, tracer,
+            metrics);
+        if (failure == null) {
+          future.delivered();
+        } else {
+          future.failed(failure);
+        }
+      } finally {
+        if (limit != null) {
+          limit.release();
+        }
+      }
+    }
+
+    /** Give up on the delivery without calling the listener. */
+    void failed(final Throwable failure) {
+      future.failed(failure);
+    }
+  }
+
+  /**
+   * Holds the {@link Executor} used by all Blackboards that weren't given one.
+   * It's shared, since an instance per user is the recommended setup.
+   */
+  private static class DefaultExecutor {
+    private static final Executor INSTANCE = Executors
+        .newCachedThreadPool(new ThreadFactory() {
+          private final AtomicInteger threadNumber = new AtomicInteger();
+
+          public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "blackboard-"
+                + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+  }
+
+  /** The resolved delivery targets for a type of events in a batch. */
+  private static class EventGroup {
+    private final Class<? extends Event> eventClass;
+    private final Registration[] registrations;
+    private final Listener[][] listeners;
+
+    public EventGroup(final Class<? extends Event> eventClass,
+        final Registration[] registrations, final Listener[][] listeners) {
+      this.eventClass = eventClass;
+      this.registrations = registrations;
+      this.listeners = listeners;
+    }
+  }
+
+  private static final Listener[] NO_LISTENERS = new Listener[0];
+  private static final Blackboard[] NO_BLACKBOARDS = new Blackboard[0];
+
+  /** An {@link EventTap} and the event type it taps */
+  private static class Tap {
+    private final Class<? extends Event> event;
+    private final EventTap tap;
+
+    public Tap(final Class<? extends Event> event, final EventTap tap) {
+      this.event = event;
+      this.tap = tap;
     }
   }
 
-  private final Map<Class<? extends Event>, Registration> registrationsByEvent = new HashMap<Class<? extends Event>, Blackboard.Registration>();
-  private final Map<Class<? extends Listener>, HashSet<Listener>> listeners;
+  private static final Tap[] NO_TAPS = new Tap[0];
+
+  /** Replaced, never modified, when taps are added or removed */
+  private volatile Tap[] taps = NO_TAPS;
+
+  /**
+   * The Blackboard whose registrations and events this one inherits, or
+   * <code>null</code>
+   */
+  private final Blackboard parent;
+
+  /** Guards the children of all Blackboards in the same tree */
+  private final Object treeLock;
+
+  /** guarded by {@link #treeLock} */
+  private final List<WeakReference<Blackboard>> children = new ArrayList<WeakReference<Blackboard>>();
+
+  /**
+   * The children, their children and so on, depth first. Resolved under
+   * {@link #treeLock}, and set to <code>null</code> whenever a child is added
+   * anywhere below.
+   */
+  private volatile List<WeakReference<Blackboard>> descendants = Collections
+      .emptyList();
+
+  /*
+   * All the state is split by event type or by listener interface into
+   * concurrent maps, copy-on-write listener lists and per-registration locks,
+   * so that firing never locks, and a change only locks the part it changes.
+   */
+
+  private final ConcurrentMap<Class<? extends Event>, Registration> registrationsByEvent = new ConcurrentHashMap<Class<? extends Event>, Blackboard.Registration>();
+  private final ConcurrentMap<Class<? extends Listener>, ListenerList> listeners;
+
+  /**
+   * The registrations matching each fired event class, most specific first.
+   * Replaced with an empty map whenever the registrations change, so that a
+   * table resolved from the old registrations can't end up in the new map.
+   */
+  private volatile ConcurrentMap<Class<? extends Event>, Registration[]> dispatchTables = new ConcurrentHashMap<Class<? extends Event>, Registration[]>();
 
   /** Try to register listeners and events automatically as much as possible. */
-  private boolean magicRegistration = true;
+  private volatile boolean magicRegistration = true;
+
+  private final Set<Class<? extends Listener>> checkedListeners = Collections
+      .newSetFromMap(new ConcurrentHashMap<Class<? extends Listener>, Boolean>());
+
+  /** The listener interfaces of all registrations */
+  private final Set<Class<? extends Listener>> registeredListenerClasses = Collections
+      .newSetFromMap(new ConcurrentHashMap<Class<? extends Listener>, Boolean>());
+
+  /**
+   * The registered listener interfaces implemented by each added listener
+   * class. Replaced like {@link #dispatchTables}.
+   */
+  private volatile ConcurrentMap<Class<? extends Listener>, Collection<Class<? extends Listener>>> registeredListenerClassesByClass = new ConcurrentHashMap<Class<? extends Listener>, Collection<Class<? extends Listener>>>();
+
+  /** The executor for {@link #fireAsync(Event)}, <code>null</code> for default */
+  private volatile Executor executor;
+
+  /** Set while {@link #fire(Event)} publishes into a pipeline */
+  private volatile EventPipeline pipeline;
+
+  /** Permits for concurrently running asynchronous deliveries, by event type */
+  private final ConcurrentMap<Class<? extends Event>, Semaphore> deliveryLimits = new ConcurrentHashMap<Class<? extends Event>, Semaphore>();
+
+  /** The bounded queues of asynchronous deliveries, by event type */
+  private final ConcurrentMap<Class<? extends Event>, DeliveryQueue> deliveryQueues = new ConcurrentHashMap<Class<? extends Event>, DeliveryQueue>();
 
-  private final Set<Class<? extends Listener>> checkedListeners = new HashSet<Class<? extends Listener>>();
+  /**
+   * Permits for queued deliveries, shared by all {@link #deliveryQueues},
+   * <code>null</code> if there is no budget
+   */
+  private volatile Semaphore queueBudget;
+  private volatile int maxQueuedDeliveries;
+
+  /** Where to report what happens, <code>null</code> when not tracing */
+  private volatile Tracer tracer;
+
+  /** What is counted, <code>null</code> when metrics are off */
+  private volatile DispatchMetrics metrics;
+
+  /** Listener methods and pairs found at compile time */
+  private volatile ListenerIndexes indexes = ListenerIndexes.getDefault();
+
+  /** Where discovery results are kept between runs, <code>null</code> if not */
+  private volatile DiscoveryCache discoveryCache;
+
+  /** Stands for the <code>null</code> key in the keyed listener maps */
+  private static final Object NULL_KEY = new Object();
+
+  /**
+   * The listeners added with {@link #addKeyedListener(Listener, Object)}, by
+   * listener interface and key.
+   */
+  private final ConcurrentMap<Class<? extends Listener>, ConcurrentMap<Object, ListenerList>> keyedListeners = new ConcurrentHashMap<Class<? extends Listener>, ConcurrentMap<Object, ListenerList>>();
+
+  /**
+   * The keys each keyed listener is added with, for removing it. Changed
+   * only while holding its lock.
+   */
+  private final ConcurrentMap<Listener, Set<Object>> keysByListener = new ConcurrentHashMap<Listener, Set<Object>>();
+
+  /** The declared priority of each listener class, by listener interface */
+  private final ConcurrentMap<Class<? extends Listener>, ConcurrentMap<Class<? extends Listener>, Integer>> declaredPriorities = new ConcurrentHashMap<Class<? extends Listener>, ConcurrentMap<Class<? extends Listener>, Integer>>();
+
+  /** Where the references of collected weak listeners end up */
+  private final ReferenceQueue<Listener> collectedListeners = new ReferenceQueue<Listener>();
 
   public Blackboard() {
-    listeners = new ConcurrentHashMap<Class<? extends Listener>, HashSet<Listener>>();
+    parent = null;
+    treeLock = new Object();
+    listeners = new ConcurrentHashMap<Class<? extends Listener>, ListenerList>();
+  }
+
+  /**
+   * <p>
+   * Create a Blackboard under <tt>parent</tt>.
+   * </p>
+   * 
+   * <p>
+   * The child sees all registrations of its parent, including the ones made
+   * later, without copying them, and may add registrations of its own. All
+   * events fired on the parent are also delivered to the listeners of the
+   * child, and of its children in turn, in the thread that delivers them in
+   * the parent. The child's own conflation, pipeline, executor and delivery
+   * queues don't apply to these. Events fired on the child only reach the
+   * listeners of the child and its children.
+   * </p>
+   * 
+   * <p>
+   * The parent doesn't keep the child from being garbage collected, so a
+   * child that is no longer used needs no closing.
+   * </p>
+   * 
+   * @param parent
+   *          The Blackboard to inherit from.
+   */
+  public Blackboard(final Blackboard parent) {
+    assertNotNull(parent);
+    this.parent = parent;
+    treeLock = parent.treeLock;
+    listeners = new ConcurrentHashMap<Class<? extends Listener>, ListenerList>();
+    parent.addChild(this);
+  }
+
+  /**
+   * @return the Blackboard this one was created under, or <code>null</code>
+   *         if it has none.
+   */
+  public Blackboard getParent() {
+    return parent;
+  }
+
+  private void addChild(final Blackboard child) {
+    synchronized (treeLock) {
+      for (final Iterator<WeakReference<Blackboard>> i = children
+          .iterator(); i.hasNext();) {
+        if (i.next().get() == null) {
+          i.remove();
+        }
+      }
+      children.add(new WeakReference<Blackboard>(child));
+
+      for (Blackboard ancestor = this; ancestor != null; ancestor = ancestor.parent) {
+        ancestor.descendants = null;
+      }
+    }
+  }
+
+  /** Get the descendants of this Blackboard, some of which may be collected */
+  private List<WeakReference<Blackboard>> getDescendants() {
+    List<WeakReference<Blackboard>> descendants = this.descendants;
+    if (descendants == null) {
+      synchronized (treeLock) {
+        descendants = this.descendants;
+        if (descendants == null) {
+          descendants = new ArrayList<WeakReference<Blackboard>>();
+          collectDescendants(descendants);
+          this.descendants = descendants;
+        }
+      }
+    }
+    return descendants;
+  }
+
+  /** guarded by {@link #treeLock} */
+  private void collectDescendants(final List<WeakReference<Blackboard>> list) {
+    for (final WeakReference<Blackboard> reference : children) {
+      final Blackboard child = reference.get();
+      if (child != null) {
+        list.add(reference);
+        child.collectDescendants(list);
+      }
+    }
+  }
+
+  /** Get the descendants of this Blackboard that haven't been collected */
+  private Blackboard[] getLiveDescendants() {
+    final List<WeakReference<Blackboard>> descendants = getDescendants();
+    if (descendants.isEmpty()) {
+      return NO_BLACKBOARDS;
+    }
+
+    final Blackboard[] live = new Blackboard[descendants.size()];
+    int count = 0;
+    for (int i = 0; i < live.length; i++) {
+      final Blackboard descendant = descendants.get(i).get();
+      if (descendant != null) {
+        live[count++] = descendant;
+      }
+    }
+    return count == live.length ? live : Arrays.copyOf(live, count);
   }
 
   /**
@@ -229,6 +658,9 @@ public class Blackboard {
    * <p>
    * Whenever an {@link Event} of type <tt>event</tt> is fired, all
    * {@link Listener Listeners} of type <tt>Listener</tt> are triggered.
+   * <tt>event</tt> may also be an abstract class or an interface extending
+   * {@link Event}, in which case the listeners are triggered by all events
+   * extending or implementing it.
    * </p>
    * 
    * @param listener
@@ -248,8 +680,7 @@ public class Blackboard {
    *           if the method annotated with {@link ListenerMethod} doesn't have
    *           exactly one argument, it being of type <tt>event</tt>.
    * @throws IllegalArgumentException
-   *           if <tt>listener</tt> is a non-interface class, and/or
-   *           <tt>event</tt> is a interface or an abstract class object.
+   *           if <tt>listener</tt> is a non-interface class.
    */
   public void register(final Class<? extends Listener> listener,
       final Class<? extends Event> event) {
@@ -261,20 +692,66 @@ public class Blackboard {
       final Class<? extends Event> event) {
 
     assertNotNull(listener, event);
+    _register(listener, event, indexes.getMethod(listener, event));
+  }
 
-    checkForInvalidConstruction(listener, listener);
+  /**
+   * @param indexedMethod
+   *          the listener method if it's known to be valid, from an index or
+   *          the discovery cache, <code>null</code> otherwise.
+   */
+  private void _register(final Class<? extends Listener> listener,
+      final Class<? extends Event> event, final IndexedMethod indexedMethod) {
+    if (indexedMethod == null) {
+      checkForInvalidConstruction(listener, listener);
+    }
     checkForDuplicateRegistrations(listener, event);
 
-    registrationsByEvent.put(event, new Registration(listener, event));
+    final Registration registration = indexedMethod != null ? new Registration(
+        listener, event, indexedMethod) : new Registration(listener, event);
+    final Registration existing = registrationsByEvent.putIfAbsent(event,
+        registration);
+    if (existing != null) {
+      // another thread got there first
+      throw new DuplicateRegistrationException(listener, event,
+          existing.getListener(), event);
+    }
+    registeredListenerClasses.add(listener);
+    invalidateCaches();
+
+    final Tracer tracer = this.tracer;
+    if (tracer != null) {
+      tracer.registered(listener, event, registration.getMethodName());
+    }
+  }
+
+  /**
+   * Forget everything resolved from the registrations. The maps are replaced
+   * only after the registrations have changed, so a thread that reads the new
+   * map also sees the new registrations.
+   */
+  private void invalidateCaches() {
+    resetCaches();
+
+    // the descendants inherit the registrations
+    for (final WeakReference<Blackboard> reference : getDescendants()) {
+      final Blackboard descendant = reference.get();
+      if (descendant != null) {
+        descendant.resetCaches();
+      }
+    }
+  }
+
+  private void resetCaches() {
+    dispatchTables = new ConcurrentHashMap<Class<? extends Event>, Registration[]>();
+    registeredListenerClassesByClass = new ConcurrentHashMap<Class<? extends Listener>, Collection<Class<? extends Listener>>>();
   }
 
   private void checkForInvalidConstruction(
       final Class<? extends Listener> listener,
       final Class<? extends Listener> originalListener) {
-    for (final Class<? extends Listener> checkedListener : checkedListeners) {
-      if (checkedListener.equals(listener)) {
-        return;
-      }
+    if (checkedListeners.contains(listener)) {
+      return;
     }
 
     for (final Method method : listener.getMethods()) {
@@ -315,13 +792,10 @@ public class Blackboard {
   private void checkForDuplicateRegistrations(
       final Class<? extends Listener> listener,
       final Class<? extends Event> event) {
-    for (final Registration registration : registrationsByEvent.values()) {
-      final Class<? extends Event> existingEvent = registration.getEvent();
-
-      if (existingEvent.equals(event)) {
-        throw new DuplicateRegistrationException(listener, event,
-            registration.getListener(), existingEvent);
-      }
+    final Registration registration = getRegistration(event);
+    if (registration != null) {
+      throw new DuplicateRegistrationException(listener, event,
+          registration.getListener(), registration.getEvent());
     }
   }
 
@@ -338,68 +812,405 @@ public class Blackboard {
    * </p>
    * 
    * <p>
-   * <em>Note:</em> By design, no listener order is preserved. This means, the
-   * order in which the listeners are added is not guaranteed to be the same as
-   * in which the listeners are triggered.
+   * The listeners of a listener interface are called in the order of the
+   * {@link ListenerMethod#priority() priorities} given in the annotations of
+   * their listener methods, highest first. Listeners with the same priority
+   * are called in the order they were added. The priorities don't order the
+   * listeners of different interfaces: when an event goes to the
+   * registrations of its supertypes too, all the listeners of the most
+   * specific registration are called first, whatever their priorities.
    * </p>
    * 
    * @param listener
    *          The Listener to register.
+   * @see #addListener(Listener, int)
+   * @see #addWeakListener(Listener)
    */
   public void addListener(final Listener listener) {
     assertNotNull(listener);
+    addListener(listener, null, false);
+  }
+
+  /**
+   * Register a {@link Listener} with Blackboard, like
+   * {@link #addListener(Listener)}, but with a priority that overrides the
+   * ones given in {@link ListenerMethod} annotations.
+   * 
+   * @param listener
+   *          The Listener to register.
+   * @param priority
+   *          Listeners with a higher priority are called before the others of
+   *          the same listener interface.
+   */
+  public void addListener(final Listener listener, final int priority) {
+    assertNotNull(listener);
+    addListener(listener, priority, false);
+  }
 
-    Log.log("Adding " + listener + " for the following listeners:");
+  /**
+   * <p>
+   * Register a {@link Listener} with Blackboard, without keeping it from being
+   * garbage collected.
+   * </p>
+   * 
+   * <p>
+   * Works like {@link #addListener(Listener)}, but once <tt>listener</tt> is
+   * no longer referenced anywhere else, it's collected and stops receiving
+   * events, even if {@link #removeListener(Listener)} is never called.
+   * Collected listeners are removed in bulk whenever listeners are added or
+   * removed, or by calling {@link #purgeListeners()}. Firing events never
+   * looks for them.
+   * </p>
+   * 
+   * <p>
+   * <em>Note:</em> an anonymous listener that nothing else refers to is
+   * collected right away.
+   * </p>
+   * 
+   * @param listener
+   *          The Listener to register.
+   */
+  public void addWeakListener(final Listener listener) {
+    assertNotNull(listener);
+    addListener(listener, null, true);
+  }
 
-    final Class<? extends Listener> listenerClass = listener.getClass();
-    Collection<Class<? extends Listener>> registeredListenerClasses = getRegisteredListenerClasses(listenerClass);
+  /**
+   * Register a weak {@link Listener}, like {@link #addWeakListener(Listener)},
+   * with a priority like {@link #addListener(Listener, int)}.
+   * 
+   * @param listener
+   *          The Listener to register.
+   * @param priority
+   *          Listeners with a higher priority are called before the others of
+   *          the same listener interface.
+   */
+  public void addWeakListener(final Listener listener, final int priority) {
+    assertNotNull(listener);
+    addListener(listener, priority, true);
+  }
 
-    if (registeredListenerClasses.isEmpty()) {
-      boolean success = false;
+  /**
+   * @param priority
+   *          the priority, or <code>null</code> to use the ones in the
+   *          {@link ListenerMethod} annotations.
+   */
+  private void addListener(final Listener listener, final Integer priority,
+      final boolean weak) {
+    purgeListeners();
 
-      if (magicRegistration) {
-        success = magicRegisterAllListenerInterfacesIn(listener);
-      }
+    final Class<? extends Listener> listenerClass = listener.getClass();
+    final Collection<Class<? extends Listener>> registeredListenerClasses = getOrMagicallyRegisterListenerClasses(listener);
 
-      if (!success) {
-        throw new NoMatchingRegistrationFoundException(listenerClass);
+    for (final Class<? extends Listener> registeredListenerClass : registeredListenerClasses) {
+      final ListenerList listenersForClass = getOrCreate(listeners,
+          registeredListenerClass);
+
+      final int listenerPriority = priority != null ? priority
+          : getDeclaredPriority(listenerClass, registeredListenerClass);
+      if (weak) {
+        listenersForClass.addWeak(listener, listenerPriority,
+            collectedListeners);
       } else {
-        registeredListenerClasses = getRegisteredListenerClasses(listenerClass);
+        listenersForClass.add(listener, listenerPriority);
       }
     }
 
-    for (final Class<? extends Listener> registeredListenerClass : registeredListenerClasses) {
-      HashSet<Listener> listenersForClass = listeners
-          .get(registeredListenerClass);
-      if (listenersForClass == null) {
-        listenersForClass = new HashSet<Listener>();
-        listeners.put(registeredListenerClass, listenersForClass);
-      }
-
-      listenersForClass.add(listener);
-      Log.log("  ...listening to " + registeredListenerClass);
+    final Tracer tracer = this.tracer;
+    if (tracer != null) {
+      tracer.listenerAdded(listener, registeredListenerClasses);
     }
-
-    Log.logEmptyLine();
   }
 
-  private boolean magicRegisterAllListenerInterfacesIn(final Listener listener) {
-    final Class<? extends Listener> listenerObjectClass = listener.getClass();
+  /**
+   * <p>
+   * Register a {@link Listener} with Blackboard for only the
+   * {@link KeyedEvent KeyedEvents} with the given key.
+   * </p>
+   * 
+   * <p>
+   * Works like {@link #addListener(Listener)}, except that of the keyed events,
+   * <tt>listener</tt> is only given the ones whose {@link KeyedEvent#getKey()
+   * key} equals <tt>key</tt>. Firing finds these listeners by the key in a
+   * hash table, so a listener for one key costs nothing when events of other
+   * keys are fired. Listeners added without a key get all the events, as
+   * before. Unkeyed events reach no keyed listeners.
+   * </p>
+   * 
+   * <p>
+   * A listener can be added with many keys. {@link #removeListener(Listener)}
+   * removes it from all of them.
+   * </p>
+   * 
+   * @param listener
+   *          The Listener to register.
+   * @param key
+   *          The key of the events to give <tt>listener</tt>. May be
+   *          <code>null</code>.
+   * @see #removeKeyedListener(Listener, Object)
+   */
+  public void addKeyedListener(final Listener listener, final Object key) {
+    assertNotNull(listener);
+    purgeListeners();
 
-    final Set<Class<? extends Listener>> interfaces = getListenerInterfacesRecursively(listenerObjectClass);
-    if (interfaces.isEmpty()) {
+    final Object maskedKey = key != null ? key : NULL_KEY;
+    final Class<? extends Listener> listenerClass = listener.getClass();
+    final Collection<Class<? extends Listener>> registeredListenerClasses = getOrMagicallyRegisterListenerClasses(listener);
+
+    // a set emptied by removeKeyedListener() is dropped in the same lock, so
+    // the key can't go into a set that is no longer in the map
+    synchronized (keysByListener) {
+      Set<Object> keys = keysByListener.get(listener);
+      if (keys == null) {
+        keys = Collections
+            .newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+        keysByListener.put(listener, keys);
+      }
+      keys.add(maskedKey);
+    }
+
+    for (final Class<? extends Listener> registeredListenerClass : registeredListenerClasses) {
+      final ConcurrentMap<Object, ListenerList> listenersByKey = getOrCreateMap(
+          keyedListeners, registeredListenerClass);
+      final int priority = getDeclaredPriority(listenerClass,
+          registeredListenerClass);
+
+      while (true) {
+        final ListenerList listenersForKey = getOrCreate(listenersByKey,
+            maskedKey);
+        listenersForKey.add(listener, priority);
+        if (listenersByKey.get(maskedKey) == listenersForKey) {
+          break;
+        }
+        // the list was emptied and dropped meanwhile, try again
+        listenersForKey.remove(listener);
+      }
+    }
+
+    final Tracer tracer = this.tracer;
+    if (tracer != null) {
+      tracer.listenerAdded(listener, registeredListenerClasses);
+    }
+  }
+
+  /**
+   * Stop giving <tt>listener</tt> the events with <tt>key</tt>.
+   * 
+   * @param listener
+   *          The Listener to remove.
+   * @param key
+   *          The key <tt>listener</tt> was added with.
+   * @return <code>true</code> iff <tt>listener</tt> was added with
+   *         <tt>key</tt>, and now removed.
+   * @see #addKeyedListener(Listener, Object)
+   */
+  public boolean removeKeyedListener(final Listener listener, final Object key) {
+    assertNotNull(listener);
+
+    final Object maskedKey = key != null ? key : NULL_KEY;
+    synchronized (keysByListener) {
+      final Set<Object> keys = keysByListener.get(listener);
+      if (keys == null || !keys.remove(maskedKey)) {
+        return false;
+      }
+      if (keys.isEmpty()) {
+        keysByListener.remove(listener);
+      }
+    }
+
+    final boolean success = removeKeyed(listener, maskedKey);
+    final Tracer tracer = this.tracer;
+    if (tracer != null) {
+      tracer.listenerRemoved(listener, success);
+    }
+    return success;
+  }
+
+  private boolean removeKeyed(final Listener listener, final Object maskedKey) {
+    boolean success = false;
+    for (final Class<? extends Listener> registeredListenerClass : getRegisteredListenerClasses(listener
+        .getClass())) {
+      final ConcurrentMap<Object, ListenerList> listenersByKey = keyedListeners
+          .get(registeredListenerClass);
+      final ListenerList listenersForKey = listenersByKey != null ? listenersByKey
+          .get(maskedKey) : null;
+      if (listenersForKey != null && listenersForKey.remove(listener)) {
+        success = true;
+        if (listenersForKey.isEmpty()) {
+          listenersByKey.remove(maskedKey, listenersForKey);
+        }
+      }
+    }
+    return success;
+  }
+
+  /**
+   * Get the registered listener interfaces <tt>listener</tt> implements,
+   * registering them by magic first if there are none.
+   * 
+   * @throws NoMatchingRegistrationFoundException
+   *           if there are none, even after trying.
+   */
+  private Collection<Class<? extends Listener>> getOrMagicallyRegisterListenerClasses(
+      final Listener listener) {
+    final Class<? extends Listener> listenerClass = listener.getClass();
+    Collection<Class<? extends Listener>> registeredListenerClasses = getRegisteredListenerClasses(listenerClass);
+
+    if (registeredListenerClasses.isEmpty()) {
+      boolean success = false;
+
+      if (magicRegistration) {
+        success = magicRegisterAllListenerInterfacesIn(listener);
+      }
+
+      if (!success) {
+        throw new NoMatchingRegistrationFoundException(listenerClass);
+      } else {
+        registeredListenerClasses = getRegisteredListenerClasses(listenerClass);
+      }
+    }
+    return registeredListenerClasses;
+  }
+
+  private static <K> ListenerList getOrCreate(
+      final ConcurrentMap<K, ListenerList> lists, final K key) {
+    ListenerList list = lists.get(key);
+    if (list == null) {
+      final ListenerList newList = new ListenerList();
+      list = lists.putIfAbsent(key, newList);
+      if (list == null) {
+        list = newList;
+      }
+    }
+    return list;
+  }
+
+  private static <K> ConcurrentMap<Object, ListenerList> getOrCreateMap(
+      final ConcurrentMap<K, ConcurrentMap<Object, ListenerList>> maps,
+      final K key) {
+    ConcurrentMap<Object, ListenerList> map = maps.get(key);
+    if (map == null) {
+      final ConcurrentMap<Object, ListenerList> newMap = new ConcurrentHashMap<Object, ListenerList>();
+      map = maps.putIfAbsent(key, newMap);
+      if (map == null) {
+        map = newMap;
+      }
+    }
+    return map;
+  }
+
+  /**
+   * Get the highest {@link ListenerMethod#priority() priority} that
+   * <tt>listenerClass</tt> gives the listener methods of
+   * <tt>listenerInterface</tt>, either in its own methods or in the interface.
+   * The result is cached.
+   */
+  private int getDeclaredPriority(final Class<? extends Listener> listenerClass,
+      final Class<? extends Listener> listenerInterface) {
+    ConcurrentMap<Class<? extends Listener>, Integer> prioritiesOfClass = declaredPriorities
+        .get(listenerClass);
+    if (prioritiesOfClass == null) {
+      declaredPriorities.putIfAbsent(listenerClass,
+          new ConcurrentHashMap<Class<? extends Listener>, Integer>());
+      prioritiesOfClass = declaredPriorities.get(listenerClass);
+    }
+
+    Integer priority = prioritiesOfClass.get(listenerInterface);
+    if (priority == null) {
+      priority = resolveDeclaredPriority(listenerClass, listenerInterface);
+      prioritiesOfClass.put(listenerInterface, priority);
+    }
+    return priority;
+  }
+
+  private static int resolveDeclaredPriority(
+      final Class<? extends Listener> listenerClass,
+      final Class<? extends Listener> listenerInterface) {
+    Integer priority = null;
+    for (final Method interfaceMethod : listenerInterface.getMethods()) {
+      ListenerMethod annotation = null;
+      try {
+        annotation = listenerClass.getMethod(interfaceMethod.getName(),
+            interfaceMethod.getParameterTypes()).getAnnotation(
+            ListenerMethod.class);
+      } catch (final NoSuchMethodException e) {
+        // abstract classes needn't implement it
+      }
+      if (annotation == null) {
+        annotation = interfaceMethod.getAnnotation(ListenerMethod.class);
+      }
+
+      if (annotation != null
+          && (priority == null || annotation.priority() > priority)) {
+        priority = annotation.priority();
+      }
+    }
+    return priority != null ? priority : 0;
+  }
+
+  /**
+   * Remove the {@link #addWeakListener(Listener) weak listeners} that have
+   * been garbage collected. This is done anyway whenever listeners are added
+   * or removed, but can also be called e.g. periodically, to release the
+   * memory sooner.
+   * 
+   * @return the number of listener references removed.
+   */
+  public int purgeListeners() {
+    Reference<? extends Listener> reference = collectedListeners.poll();
+    if (reference == null) {
+      return 0;
+    }
+
+    final Map<ListenerList, Set<WeakListener>> collected = new HashMap<ListenerList, Set<WeakListener>>();
+    while (reference != null) {
+      final WeakListener weakListener = (WeakListener) reference;
+      Set<WeakListener> collectedOfList = collected.get(weakListener.getList());
+      if (collectedOfList == null) {
+        collectedOfList = new HashSet<WeakListener>();
+        collected.put(weakListener.getList(), collectedOfList);
+      }
+      collectedOfList.add(weakListener);
+      reference = collectedListeners.poll();
+    }
+
+    int purged = 0;
+    for (final Map.Entry<ListenerList, Set<WeakListener>> entry : collected
+        .entrySet()) {
+      purged += entry.getKey().purge(entry.getValue());
+    }
+
+    final Tracer tracer = this.tracer;
+    if (tracer != null) {
+      tracer.message("Purged " + purged + " collected listeners");
+    }
+    return purged;
+  }
+
+  private boolean magicRegisterAllListenerInterfacesIn(final Listener listener) {
+    final Class<? extends Listener> listenerObjectClass = listener.getClass();
+
+    final Set<Class<? extends Listener>> interfaces = getListenerInterfacesRecursively(listenerObjectClass);
+    if (interfaces.isEmpty()) {
       interfaces.add(listenerObjectClass);
     }
 
     boolean success = false;
+    final Set<Class<? extends Listener>> registeredInline = new HashSet<Class<? extends Listener>>();
     for (final Class<? extends Listener> listenerClass : interfaces) {
       final boolean resultIsSuccessful = findAndRegisterByListenerInlineClasses(listenerClass);
       if (resultIsSuccessful) {
+        registeredInline.add(listenerClass);
         success = true;
       }
     }
 
     for (final Class<? extends Listener> listenerClass : interfaces) {
+      if (registeredInline.contains(listenerClass)) {
+        // already registered to the event it's declared in
+        continue;
+      }
+
       final boolean resultIsSuccessful = findAndRegisterByAnnotationAndParameterType(listenerClass);
       if (resultIsSuccessful) {
         success = true;
@@ -412,12 +1223,20 @@ public class Blackboard {
   private boolean findAndRegisterByAnnotationAndParameterType(
       final Class<? extends Listener> listenerClass) {
 
+    final List<IndexedMethod> indexedMethods = indexes.getMethods(listenerClass);
+    if (!indexedMethods.isEmpty()) {
+      for (final IndexedMethod indexedMethod : indexedMethods) {
+        magicRegister(listenerClass, indexedMethod.getEvent());
+      }
+      return true;
+    }
+
     boolean success = false;
     for (final Method method : listenerClass.getMethods()) {
       final ListenerMethod annotation = method
           .getAnnotation(ListenerMethod.class);
       if (annotation != null) {
-        _register(listenerClass, getEventType(method, listenerClass));
+        magicRegister(listenerClass, getEventType(method, listenerClass));
         success = true;
       }
     }
@@ -425,6 +1244,26 @@ public class Blackboard {
     return success;
   }
 
+  /**
+   * Register <tt>listener</tt> to <tt>event</tt> by magic. Another thread
+   * adding a listener of the same kind may have registered the very same pair
+   * a moment earlier, which is just as good.
+   * 
+   * @throws DuplicateRegistrationException
+   *           if <tt>event</tt> is registered to another listener.
+   */
+  private void magicRegister(final Class<? extends Listener> listener,
+      final Class<? extends Event> event) {
+    try {
+      _register(listener, event);
+    } catch (final DuplicateRegistrationException e) {
+      final Registration existing = getRegistration(event);
+      if (existing == null || !existing.getListener().equals(listener)) {
+        throw e;
+      }
+    }
+  }
+
   /**
    * 
    * @param method
@@ -472,21 +1311,65 @@ public class Blackboard {
     return interfaces;
   }
 
+  /**
+   * Get the registered listener interfaces that <tt>listenerClass</tt>
+   * implements. The result is cached until the registrations change.
+   */
   private Collection<Class<? extends Listener>> getRegisteredListenerClasses(
       final Class<? extends Listener> listenerClass) {
 
-    final Collection<Class<? extends Listener>> listeners = new HashSet<Class<? extends Listener>>();
+    // read the map before the registrations it's resolved from
+    final ConcurrentMap<Class<? extends Listener>, Collection<Class<? extends Listener>>> cache = registeredListenerClassesByClass;
+    Collection<Class<? extends Listener>> listenerClasses = cache
+        .get(listenerClass);
+    if (listenerClasses == null) {
+      listenerClasses = resolveRegisteredListenerClasses(listenerClass);
+      cache.put(listenerClass, listenerClasses);
+    }
+    return listenerClasses;
+  }
+
+  private Collection<Class<? extends Listener>> resolveRegisteredListenerClasses(
+      final Class<? extends Listener> listenerClass) {
 
-    for (final Registration registration : registrationsByEvent.values()) {
-      final Class<? extends Listener> registeredListenerClass = registration
-          .getListener();
+    final Set<Class<? extends Listener>> listenerClasses = new HashSet<Class<? extends Listener>>();
+    final Set<Class<?>> typesSeen = new HashSet<Class<?>>();
+    final LinkedList<Class<?>> types = new LinkedList<Class<?>>();
+    types.add(listenerClass);
 
-      if (registeredListenerClass.isAssignableFrom(listenerClass)) {
-        listeners.add(registeredListenerClass);
+    // only the class' own supertypes are visited, not all registrations
+    while (!types.isEmpty()) {
+      final Class<?> type = types.removeFirst();
+      if (!typesSeen.add(type)) {
+        continue;
       }
+
+      if (isRegisteredListenerClass(type)) {
+        @SuppressWarnings("unchecked")
+        final Class<? extends Listener> registeredListenerClass = (Class<? extends Listener>) type;
+        listenerClasses.add(registeredListenerClass);
+      }
+
+      if (type.getSuperclass() != null) {
+        types.add(type.getSuperclass());
+      }
+      types.addAll(Arrays.asList(type.getInterfaces()));
     }
 
-    return listeners;
+    return Collections.unmodifiableSet(listenerClasses);
+  }
+
+  /**
+   * @return <code>true</code> iff <tt>type</tt> is the listener interface of
+   *         a registration of this Blackboard or its ancestors.
+   */
+  private boolean isRegisteredListenerClass(final Class<?> type) {
+    for (Blackboard blackboard = this; blackboard != null; blackboard = blackboard.parent) {
+      if (blackboard.registeredListenerClasses.contains(type)) {
+        return true;
+      }
+    }
+    return false;
   }
 
   /**
@@ -499,8 +1382,7 @@ public class Blackboard {
   public boolean removeListener(final Listener listener) {
 
     assertNotNull(listener);
-
-    Log.log("Removing " + listener);
+    purgeListeners();
 
     final Class<? extends Listener> listenerClass = listener.getClass();
     final Collection<Class<? extends Listener>> registeredListenerClasses = getRegisteredListenerClasses(listenerClass);
@@ -508,20 +1390,33 @@ public class Blackboard {
     boolean success = false;
 
     for (final Class<? extends Listener> registeredListenerClass : registeredListenerClasses) {
-      final Set<Listener> listenersOfClass = listeners
+      final ListenerList listenersOfClass = listeners
           .get(registeredListenerClass);
       if (listenersOfClass != null) {
         final boolean intermediateSuccess = listenersOfClass.remove(listener);
 
-        Log.log("  ...removing it from " + registeredListenerClass);
-
         if (!success) {
           success = intermediateSuccess;
         }
       }
     }
 
-    Log.logEmptyLine();
+    final Set<Object> keys;
+    synchronized (keysByListener) {
+      keys = keysByListener.remove(listener);
+    }
+    if (keys != null) {
+      for (final Object key : keys) {
+        if (removeKeyed(listener, key)) {
+          success = true;
+        }
+      }
+    }
+
+    final Tracer tracer = this.tracer;
+    if (tracer != null) {
+      tracer.listenerRemoved(listener, success);
+    }
 
     return success;
   }
@@ -533,185 +1428,1340 @@ public class Blackboard {
    * 
    * <p>
    * All {@link Listener Listeners} registered to listen to the given Event will
-   * be notified.
+   * be notified. This includes the listeners registered to any superclass of
+   * the Event, or any interface it implements, and the listeners of the
+   * {@link #Blackboard(Blackboard) children} of this Blackboard, after its
+   * own.
    * </p>
    * 
    * @param event
    *          The Event to fire.
    * @throws EventNotRegisteredException
-   *           if <tt>event</tt>'s type wasn't previously registered with
-   *           Blackboard.
+   *           if neither <tt>event</tt>'s type nor any of its supertypes were
+   *           previously registered with Blackboard.
    * @see #register(Class, Class)
    */
   public void fire(final Event event) {
 
     assertNotNull(event);
 
-    Log.log("Firing " + event);
-
-    final Registration registration = registrationsByEvent
-        .get(event.getClass());
-
-    if (registration == null) {
-      throw new EventNotRegisteredException(event.getClass());
+    final Tracer tracer = this.tracer;
+    if (tracer != null) {
+      tracer.fired(event);
     }
 
-    final Class<? extends Listener> listenerClass = registration.getListener();
-    final Method listenerMethod = registration.getMethod();
+    final DispatchMetrics metrics = this.metrics;
+    if (metrics == null) {
+      dispatch(event);
+    } else {
+      final long start = System.nanoTime();
+      dispatch(event);
+      metrics.fired(event, System.nanoTime() - start);
+    }
+  }
 
-    final HashSet<Listener> listenersForClass = listeners.get(listenerClass);
-    if (listenersForClass == null) {
+  /** Do what {@link #fire(Event)} does, once it's been traced. */
+  private void dispatch(final Event event) {
+    final Registration[] registrations = getRegistrationsFor(event);
+    tap(event);
+    final Conflator conflator = getConflator(registrations);
+    if (conflator != null) {
+      conflator.add((KeyedEvent) event, null);
       return;
     }
 
-    // The Set is cloned to make concurrency better, and avoid concurrent
-    // modification exceptions.
-    @SuppressWarnings("unchecked")
-    final Set<Listener> clonedListenersForClass = (Set<Listener>) listenersForClass
-        .clone();
-
-    for (final Listener listener : clonedListenersForClass) {
-      try {
-        Log.log("  triggering " + listener);
-
-        listenerMethod.invoke(listener, event);
-      } catch (final IllegalArgumentException e) {
-        e.printStackTrace();
-      } catch (final IllegalAccessException e) {
-        e.printStackTrace();
-      } catch (final InvocationTargetException e) {
-        e.printStackTrace();
-      }
+    final EventPipeline pipeline = this.pipeline;
+    if (pipeline != null) {
+      pipeline.publish(event);
+      return;
     }
 
-    Log.logEmptyLine();
+    printFailures(deliver(registrations, event));
   }
 
   /**
-   * Assert that no arguments are <code>null</code>
+   * Deliver <tt>event</tt> in the calling thread, bypassing conflation and the
+   * pipeline.
    * 
-   * @param args
-   *          the arguments to check.
-   * @throws NullPointerException
-   *           if any of <tt>args</tt> is <code>null</code>.
+   * @throws EventNotRegisteredException
+   *           if <tt>event</tt>'s type isn't registered.
    */
-  private void assertNotNull(final Object... args) {
-    for (int i = 0; i < args.length; i++) {
-      if (args[i] == null) {
-        throw new NullPointerException("Argument with index " + i
-            + " was null.");
-      }
-    }
+  void deliverNow(final Event event) {
+    printFailures(deliver(getRegistrationsFor(event), event));
   }
 
-  public void enableLogging() {
-    Log.setLogging(true);
+  /**
+   * Get the conflator of the event type of <tt>registrations</tt>, unless the
+   * registration is inherited. The parent's conflation is only for the
+   * parent's events.
+   */
+  private Conflator getConflator(final Registration[] registrations) {
+    final Conflator conflator = registrations[0].getConflator();
+    if (conflator != null && parent != null
+        && registrationsByEvent.get(registrations[0].getEvent()) != registrations[0]) {
+      return null;
+    }
+    return conflator;
   }
 
-  public void disableLogging() {
-    Log.setLogging(false);
+  /**
+   * Call the current listeners of all <tt>registrations</tt> with
+   * <tt>event</tt>, and then the listeners of the descendants.
+   * 
+   * @return what the listeners threw, or <code>null</code> if none failed.
+   */
+  private List<Throwable> deliver(final Registration[] registrations,
+      final Event event) {
+    return deliverToDescendants(event,
+        deliverLocally(registrations, event, null));
   }
 
-  public void discover() {
-    final Exception exception = new Exception();
-    exception.fillInStackTrace();
-    final StackTraceElement[] stackTrace = exception.getStackTrace();
-
-    if (stackTrace.length < 2) {
-      throw new RuntimeException("Can't autodiscover, seems like "
-          + "this method was never called from anywhere");
+  /**
+   * Call the current listeners of all <tt>registrations</tt> with
+   * <tt>event</tt>, but not the listeners of the descendants.
+   * 
+   * @param previousFailures
+   *          the failures this far, or <code>null</code> if none.
+   * @return <tt>previousFailures</tt> with what the listeners threw added, or
+   *         <code>null</code> if nothing has failed.
+   */
+  private List<Throwable> deliverLocally(final Registration[] registrations,
+      final Event event, final List<Throwable> previousFailures) {
+    final Tracer tracer = this.tracer;
+    final DispatchMetrics metrics = this.metrics;
+    List<Throwable> failures = previousFailures;
+    for (final Registration registration : registrations) {
+      failures = deliver(registration, getListenersFor(registration, event),
+          event, failures, tracer, metrics);
     }
+    return failures;
+  }
 
-    final StackTraceElement caller = stackTrace[1];
-    try {
-      discoverFrom(getClass().getClassLoader().loadClass(caller.getClassName()));
-    } catch (final ClassNotFoundException e) {
-      throw new RuntimeException("Caller class \"" + caller.getClassName()
-          + "\" could not be loaded with the current "
-          + "ClassLoader. Use discoverFrom() for better luck.");
+  /**
+   * Call the listeners of all live descendants with <tt>event</tt>.
+   * 
+   * @param previousFailures
+   *          the failures this far, or <code>null</code> if none.
+   * @return <tt>previousFailures</tt> with what the listeners threw added, or
+   *         <code>null</code> if nothing has failed.
+   */
+  private List<Throwable> deliverToDescendants(final Event event,
+      final List<Throwable> previousFailures) {
+    final List<WeakReference<Blackboard>> descendants = getDescendants();
+    List<Throwable> failures = previousFailures;
+    for (int i = 0; i < descendants.size(); i++) {
+      final Blackboard descendant = descendants.get(i).get();
+      if (descendant != null) {
+        failures = descendant.deliverLocally(
+            descendant.getResolvedRegistrations(event.getClass()), event,
+            failures);
+      }
     }
+    return failures;
   }
 
-  public void discoverFrom(final Class<?> referenceClass) {
-    Log.log("Starting automatic discovery from " + referenceClass.getName());
-
-    final Class<? extends Object>[] classes = ClassDiscovery.DiscoverClasses(
-        referenceClass, null, null);
-
-    for (final Class<? extends Object> clazz : classes) {
-      try {
-        if (findByAnnotation(clazz)) {
-          continue;
-          // } else if (findByListenerInlineClasses(clazz)) {
-          // continue;
-        } else if (findByEventInlineClasses(clazz)) {
-          continue;
+  /**
+   * Call <tt>listeners</tt> with <tt>event</tt>. A failing listener doesn't
+   * keep the event from the others.
+   * 
+   * @param previousFailures
+   *          the failures this far, or <code>null</code> if none.
+   * @param tracer
+   *          the tracer to report to, or <code>null</code>.
+   * @param metrics
+   *          the metrics to record to, or <code>null</code>.
+   * @return <tt>previousFailures</tt> with what the listeners threw added, or
+   *         <code>null</code> if nothing has failed.
+   */
+  private static List<Throwable> deliver(final Registration registration,
+      final Listener[] listeners, final Event event,
+      final List<Throwable> previousFailures, final Tracer tracer,
+      final DispatchMetrics metrics) {
+    List<Throwable> failures = previousFailures;
+
+    for (final Listener listener : listeners) {
+      final Throwable failure = invoke(registration, listener, event, tracer,
+          metrics);
+      if (failure != null) {
+        if (failures == null) {
+          failures = new ArrayList<Throwable>(1);
         }
-      } catch (final DuplicateRegistrationException e) {
-        // Ignore, we're doing magic!
+        failures.add(failure);
       }
     }
-  }
 
-  private boolean findByAnnotation(final Class<? extends Object> eventCandidate) {
+    return failures;
+  }
 
-    if (Event.class.isAssignableFrom(eventCandidate)) {
-      final ListenerPair listenerPair = eventCandidate
-          .getAnnotation(ListenerPair.class);
-      if (listenerPair != null) {
-        @SuppressWarnings("unchecked")
-        final Class<? extends Event> eventClass = (Class<? extends Event>) eventCandidate;
-        _register(listenerPair.value(), eventClass);
-        return true;
+  /**
+   * Call <tt>listener</tt> with <tt>event</tt>, timing the call only if there
+   * is a <tt>tracer</tt> or <tt>metrics</tt> to report it to.
+   * 
+   * @return what the listener threw, or <code>null</code>.
+   */
+  private static Throwable invoke(final Registration registration,
+      final Listener listener, final Event event, final Tracer tracer,
+      final DispatchMetrics metrics) {
+    if (tracer == null && metrics == null) {
+      try {
+        registration.invoke(listener, event);
+        return null;
+      } catch (final Throwable e) {
+        return e;
       }
     }
 
-    return false;
+    final long start = System.nanoTime();
+    Throwable failure = null;
+    try {
+      registration.invoke(listener, event);
+    } catch (final Throwable e) {
+      failure = e;
+    }
+    final long nanos = System.nanoTime() - start;
+    if (tracer != null) {
+      tracer.delivered(event, listener, nanos, failure);
+    }
+    if (metrics != null) {
+      metrics.delivered(event, listener, nanos, failure != null);
+    }
+    return failure;
   }
 
-  private boolean findAndRegisterByListenerInlineClasses(
-      final Class<? extends Object> listenerCandidate) {
-    if (Listener.class.isAssignableFrom(listenerCandidate)) {
-      final Class<?> declaringClass = listenerCandidate.getDeclaringClass();
-      if (declaringClass != null
-          && Event.class.isAssignableFrom(declaringClass)) {
-        @SuppressWarnings("unchecked")
-        final Class<? extends Event> eventClass = (Class<? extends Event>) declaringClass;
-        @SuppressWarnings("unchecked")
-        final Class<? extends Listener> listenerClass = (Class<? extends Listener>) listenerCandidate;
-
-        _register(listenerClass, eventClass);
-        return true;
+  private static void printFailures(final List<Throwable> failures) {
+    if (failures != null) {
+      for (final Throwable failure : failures) {
+        failure.printStackTrace();
       }
     }
+  }
 
-    return false;
+  /**
+   * Fire several {@link Event Events} in one go.
+   * 
+   * @param events
+   *          The Events to fire, in the order they are to be delivered.
+   * @see #fireAll(Collection)
+   */
+  public void fireAll(final Event... events) {
+    assertNotNull((Object) events);
+    fireAll(Arrays.asList(events));
   }
 
-  private boolean findByEventInlineClasses(
-      final Class<? extends Object> eventCandidate) {
-    if (Event.class.isAssignableFrom(eventCandidate)) {
+  /**
+   * <p>
+   * Fire several {@link Event Events} in one go
+   * </p>
+   * 
+   * <p>
+   * Works like calling {@link #fire(Event)} for each event in turn, but
+   * resolves the registration and the {@link Listener Listeners} only once per
+   * event type. This means that listeners added or removed by the listeners
+   * themselves don't take effect until the next call.
+   * </p>
+   * 
+   * @param events
+   *          The Events to fire, in the order they are to be delivered.
+   * @throws EventNotRegisteredException
+   *           if the type of any of <tt>events</tt> wasn't previously
+   *           registered with Blackboard. In that case, none of the events are
+   *           delivered.
+   * @see #fire(Event)
+   */
+  public void fireAll(final Collection<? extends Event> events) {
 
-      for (final Class<? extends Object> innerClass : eventCandidate
-          .getDeclaredClasses()) {
-        if (innerClass != null && Listener.class.isAssignableFrom(innerClass)) {
-          @SuppressWarnings("unchecked")
-          final Class<? extends Event> eventClass = (Class<? extends Event>) eventCandidate;
-          @SuppressWarnings("unchecked")
-          final Class<? extends Listener> listenerClass = (Class<? extends Listener>) innerClass;
+    assertNotNull(events);
 
-          _register(listenerClass, eventClass);
-          return true;
+    final Event[] batch = events.toArray(new Event[events.size()]);
+    final EventGroup[] groupsByIndex = new EventGroup[batch.length];
+    final Map<Class<? extends Event>, EventGroup> groups = new HashMap<Class<? extends Event>, EventGroup>();
+
+    EventGroup group = null;
+    for (int i = 0; i < batch.length; i++) {
+      final Event event = batch[i];
+      if (event == null) {
+        throw new NullPointerException("Event with index " + i + " was null.");
+      }
+
+      // bursts tend to be of a single type, so try the previous one first
+      final Class<? extends Event> eventClass = event.getClass();
+      if (group == null || group.eventClass != eventClass) {
+        group = groups.get(eventClass);
+        if (group == null) {
+          final Registration[] registrations = getRegistrationsFor(event);
+          Listener[][] listenersForEvent = null;
+          if (!(event instanceof KeyedEvent)
+              || !hasKeyedListeners(registrations)) {
+            listenersForEvent = new Listener[registrations.length][];
+            for (int j = 0; j < registrations.length; j++) {
+              listenersForEvent[j] = getListenersFor(registrations[j], event);
+            }
+          }
+          group = new EventGroup(eventClass, registrations, listenersForEvent);
+          groups.put(eventClass, group);
         }
       }
+      groupsByIndex[i] = group;
     }
 
-    return false;
-  }
+    final Tracer tracer = this.tracer;
+    final DispatchMetrics metrics = this.metrics;
+    final EventPipeline pipeline = this.pipeline;
+    for (int i = 0; i < batch.length; i++) {
+      final Event event = batch[i];
+      group = groupsByIndex[i];
+
+      if (tracer != null) {
+        tracer.fired(event);
+      }
+      if (metrics != null) {
+        metrics.fired(event);
+      }
+      tap(event);
+
+      final Conflator conflator = getConflator(group.registrations);
+      if (conflator != null) {
+        conflator.add((KeyedEvent) event, null);
+      } else if (pipeline != null) {
+        pipeline.publish(event);
+      } else {
+        List<Throwable> failures = null;
+        for (int j = 0; j < group.registrations.length; j++) {
+          final Listener[] listenersForEvent = group.listeners != null ? group.listeners[j]
+              : getListenersFor(group.registrations[j], event);
+          failures = deliver(group.registrations[j], listenersForEvent, event,
+              failures, tracer, metrics);
+        }
+        printFailures(deliverToDescendants(event, failures));
+      }
+    }
+  }
+
+  /**
+   * <p>
+   * Fire an {@link Event} without waiting for the {@link Listener Listeners}
+   * </p>
+   * 
+   * <p>
+   * All {@link Listener Listeners} registered to listen to the given Event will
+   * be notified, each one in a task of its own, run by this Blackboard's
+   * {@link #setExecutor(Executor) executor}. The listeners are not called in
+   * any particular order, regardless of their priorities, and may run
+   * concurrently. The listeners of the {@link #Blackboard(Blackboard)
+   * children} are included, and run by this Blackboard's executor.
+   * </p>
+   * 
+   * <p>
+   * If the executor is a {@link KeyedExecutor}, such as a
+   * {@link PartitionedExecutor}, and <tt>event</tt> is a {@link KeyedEvent},
+   * the deliveries are run in the order of the events with the same key.
+   * </p>
+   * 
+   * <p>
+   * If <tt>event</tt>'s type has a {@link #setQueueCapacity(Class, int,
+   * OverflowPolicy) bounded queue}, the deliveries go through it instead, and
+   * when it's full, its {@link OverflowPolicy} decides what happens.
+   * </p>
+   * 
+   * @param event
+   *          The Event to fire.
+   * @return a future that is done when all listeners have handled the event.
+   *         Anything the listeners throw is collected into it.
+   * @throws EventNotRegisteredException
+   *           if <tt>event</tt>'s type wasn't previously registered with
+   *           Blackboard.
+   * @throws QueueFullException
+   *           if a delivery queue with the {@link OverflowPolicy#REJECT}
+   *           policy is full. The deliveries already queued are still run.
+   * @see #fire(Event)
+   */
+  public FireFuture fireAsync(final Event event) {
+
+    assertNotNull(event);
+
+    final Tracer tracer = this.tracer;
+    if (tracer != null) {
+      tracer.fired(event);
+    }
+
+    final Registration[] registrations = getRegistrationsFor(event);
+
+    final DispatchMetrics metrics = this.metrics;
+    if (metrics != null) {
+      metrics.fired(event);
+    }
+    tap(event);
+
+    final Conflator conflator = getConflator(registrations);
+    if (conflator != null) {
+      final FireFuture future = new FireFuture(event, 1);
+      conflator.add((KeyedEvent) event, future);
+      return future;
+    }
+
+    final Listener[][] listenersForEvent = new Listener[registrations.length][];
+    int deliveries = 0;
+    for (int i = 0; i < registrations.length; i++) {
+      listenersForEvent[i] = getListenersFor(registrations[i], event);
+      deliveries += listenersForEvent[i].length;
+    }
+
+    final Blackboard[] descendants = getLiveDescendants();
+    final Registration[][] descendantRegistrations = new Registration[descendants.length][];
+    final Listener[][][] descendantListeners = new Listener[descendants.length][][];
+    for (int d = 0; d < descendants.length; d++) {
+      final Blackboard descendant = descendants[d];
+      descendantRegistrations[d] = descendant.getResolvedRegistrations(event
+          .getClass());
+      descendantListeners[d] = new Listener[descendantRegistrations[d].length][];
+      for (int i = 0; i < descendantRegistrations[d].length; i++) {
+        descendantListeners[d][i] = descendant.getListenersFor(
+            descendantRegistrations[d][i], event);
+        deliveries += descendantListeners[d][i].length;
+      }
+    }
+
+    final FireFuture future = new FireFuture(event, deliveries);
+    submit(registrations, listenersForEvent, event, future, tracer, metrics);
+    for (int d = 0; d < descendants.length; d++) {
+      submit(descendantRegistrations[d], descendantListeners[d], event,
+          future, descendants[d].tracer, descendants[d].metrics);
+    }
+
+    return future;
+  }
+
+  /**
+   * Hand the deliveries of <tt>event</tt> to the executor, or to the delivery
+   * queues, one per listener.
+   */
+  private void submit(final Registration[] registrations,
+      final Listener[][] listenersForEvent, final Event event,
+      final FireFuture future, final Tracer tracer,
+      final DispatchMetrics metrics) {
+    final Executor executor = getExecutor();
+
+    // keyed deliveries stay in the order their events were fired
+    final KeyedExecutor keyedExecutor = executor instanceof KeyedExecutor
+        && event instanceof KeyedEvent ? (KeyedExecutor) executor : null;
+    final Object key = keyedExecutor != null ? ((KeyedEvent) event).getKey()
+        : null;
+
+    for (int i = 0; i < registrations.length; i++) {
+      final Registration registration = registrations[i];
+      final Semaphore limit = deliveryLimits.get(registration.getEvent());
+      final DeliveryQueue queue = deliveryQueues.get(registration.getEvent());
+
+      for (final Listener listener : listenersForEvent[i]) {
+        final Delivery delivery = new Delivery(registration, listener, event,
+            future, limit, tracer, metrics);
+        if (queue != null) {
+          try {
+            queue.offer(delivery, queueBudget);
+          } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.failed(e);
+          }
+          continue;
+        }
+
+        try {
+          if (keyedExecutor != null) {
+            keyedExecutor.execute(key, delivery);
+          } else {
+            executor.execute(delivery);
+          }
+        } catch (final RuntimeException e) {
+          // most likely a RejectedExecutionException
+          future.failed(e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Get the registrations of <tt>event</tt>'s class, its superclasses and the
+   * interfaces it implements, most specific first.
+   * 
+   * @throws EventNotRegisteredException
+   *           if none of <tt>event</tt>'s types were previously registered.
+   */
+  private Registration[] getRegistrationsFor(final Event event) {
+    final Class<? extends Event> eventClass = event.getClass();
+    final Registration[] registrations = getResolvedRegistrations(eventClass);
+    if (registrations.length == 0) {
+      throw new EventNotRegisteredException(eventClass);
+    }
+    return registrations;
+  }
+
+  /**
+   * Like {@link #getRegistrationsFor(Event)}, but returns an empty array if
+   * none of <tt>eventClass</tt>' types are registered.
+   */
+  private Registration[] getResolvedRegistrations(
+      final Class<? extends Event> eventClass) {
+    // read the map before the registrations it's resolved from
+    final ConcurrentMap<Class<? extends Event>, Registration[]> tables = dispatchTables;
+    Registration[] registrations = tables.get(eventClass);
+    if (registrations == null) {
+      registrations = resolveRegistrations(eventClass);
+      tables.put(eventClass, registrations);
+    }
+    return registrations;
+  }
+
+  private Registration[] resolveRegistrations(
+      final Class<? extends Event> eventClass) {
+    final List<Registration> registrations = new ArrayList<Registration>();
+    final Set<Class<?>> interfacesSeen = new HashSet<Class<?>>();
+    final LinkedList<Class<?>> interfaces = new LinkedList<Class<?>>();
+
+    for (Class<?> type = eventClass; type != null; type = type.getSuperclass()) {
+      addRegistration(type, registrations);
+      interfaces.addAll(Arrays.asList(type.getInterfaces()));
+    }
+
+    // breadth first, so that subinterfaces come before their superinterfaces
+    while (!interfaces.isEmpty()) {
+      final Class<?> iface = interfaces.removeFirst();
+      if (interfacesSeen.add(iface)) {
+        addRegistration(iface, registrations);
+        interfaces.addAll(Arrays.asList(iface.getInterfaces()));
+      }
+    }
+
+    return registrations.toArray(new Registration[registrations.size()]);
+  }
+
+  private void addRegistration(final Class<?> type,
+      final List<Registration> registrations) {
+    final Registration registration = getRegistration(type);
+    if (registration != null) {
+      registrations.add(registration);
+    }
+  }
+
+  /**
+   * Get the registration of exactly <tt>type</tt>, made in this Blackboard or
+   * inherited from its ancestors.
+   * 
+   * @return the registration, or <code>null</code> if there is none.
+   */
+  private Registration getRegistration(final Class<?> type) {
+    for (Blackboard blackboard = this; blackboard != null; blackboard = blackboard.parent) {
+      final Registration registration = blackboard.registrationsByEvent
+          .get(type);
+      if (registration != null) {
+        return registration;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Get the listeners of <tt>registration</tt> that <tt>event</tt> goes to:
+   * the ones added without a key, and if <tt>event</tt> is a
+   * {@link KeyedEvent}, the ones added with its key.
+   */
+  private Listener[] getListenersFor(final Registration registration,
+      final Event event) {
+    final ListenerList listenersForClass = listeners.get(registration
+        .getListener());
+
+    if (event instanceof KeyedEvent && !keyedListeners.isEmpty()) {
+      final ConcurrentMap<Object, ListenerList> listenersByKey = keyedListeners
+          .get(registration.getListener());
+      if (listenersByKey != null) {
+        final Object key = ((KeyedEvent) event).getKey();
+        final ListenerList listenersForKey = listenersByKey
+            .get(key != null ? key : NULL_KEY);
+        if (listenersForKey != null) {
+          return ListenerList.merge(listenersForClass, listenersForKey);
+        }
+      }
+    }
+
+    if (listenersForClass == null) {
+      return NO_LISTENERS;
+    }
+
+    // The snapshot is never modified, so listeners added or removed while
+    // it's being used don't disturb it.
+    return listenersForClass.getSnapshot();
+  }
+
+  /**
+   * @return <code>true</code> iff some of <tt>registrations</tt> have
+   *         listeners that were added with a key.
+   */
+  private boolean hasKeyedListeners(final Registration[] registrations) {
+    if (!keyedListeners.isEmpty()) {
+      for (final Registration registration : registrations) {
+        if (keyedListeners.containsKey(registration.getListener())) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * <p>
+   * Start delivering fired events in dedicated threads.
+   * </p>
+   * 
+   * <p>
+   * While the pipeline runs, {@link #fire(Event)} and
+   * {@link #fireAll(Collection)} only put the events into a preallocated,
+   * lock-free ring buffer, and return. Consumer threads take the events from
+   * the buffer and deliver them to the {@link Listener Listeners}. If the
+   * buffer is full, firing waits for room according to the
+   * <tt>waitStrategy</tt>.
+   * </p>
+   * 
+   * <p>
+   * Each event is delivered by one consumer. Events with the same
+   * {@link KeyedEvent#getKey() key} always go to the same consumer, and are
+   * delivered in the order they were fired. Unkeyed events are spread over all
+   * consumers, with no order guaranteed between them.
+   * </p>
+   * 
+   * @param bufferSize
+   *          The number of events the buffer holds. Must be a power of two.
+   * @param consumers
+   *          The number of consumer threads.
+   * @param producerType
+   *          Whether events are fired from one thread only, or from many.
+   * @param waitStrategy
+   *          How consumer threads wait for events, and firing threads for
+   *          room in the buffer.
+   * @throws IllegalStateException
+   *           if a pipeline is already running.
+   * @throws IllegalArgumentException
+   *           if <tt>bufferSize</tt> isn't a power of two, or
+   *           <tt>consumers</tt> is less than one.
+   * @see #stopPipeline()
+   */
+  public synchronized void startPipeline(final int bufferSize,
+      final int consumers, final ProducerType producerType,
+      final WaitStrategy waitStrategy) {
+    assertNotNull(producerType, waitStrategy);
+
+    if (pipeline != null) {
+      throw new IllegalStateException("A pipeline is already running");
+    }
+
+    final Tracer tracer = this.tracer;
+    if (tracer != null) {
+      tracer.message("Starting a pipeline with " + consumers + " consumers");
+    }
+
+    final EventPipeline newPipeline = new EventPipeline(this, bufferSize,
+        consumers, producerType, waitStrategy);
+    newPipeline.start();
+    pipeline = newPipeline;
+  }
+
+  /**
+   * Stop the pipeline started with
+   * {@link #startPipeline(int, int, ProducerType, WaitStrategy)}, after
+   * delivering all events fired into it. Firing must have stopped before this
+   * is called. Does nothing if no pipeline is running.
+   * 
+   * @throws InterruptedException
+   *           if interrupted while waiting for the consumer threads.
+   */
+  public synchronized void stopPipeline() throws InterruptedException {
+    final EventPipeline oldPipeline = pipeline;
+    if (oldPipeline != null) {
+      final Tracer tracer = this.tracer;
+      if (tracer != null) {
+        tracer.message("Stopping the pipeline");
+      }
+      pipeline = null;
+      oldPipeline.stop();
+    }
+  }
+
+  /**
+   * Deliver a conflated event that has been taken out of its {@link Conflator}.
+   * 
+   * @param futures
+   *          the futures waiting for the delivery, or <code>null</code>.
+   */
+  void deliverConflated(final Event event, final List<FireFuture> futures) {
+    List<Throwable> failures = null;
+    try {
+      final Registration[] registrations = getRegistrationsFor(event);
+      final Tracer tracer = this.tracer;
+      if (tracer != null) {
+        tracer.message("Delivering conflated " + event);
+      }
+      failures = deliver(registrations, event);
+    } catch (final EventNotRegisteredException e) {
+      // the registration was cleared while the event was pending
+    }
+
+    if (futures == null) {
+      printFailures(failures);
+    } else {
+      final List<Throwable> futureFailures = failures != null ? failures
+          : Collections.<Throwable> emptyList();
+      for (final FireFuture future : futures) {
+        future.completed(futureFailures);
+      }
+    }
+  }
+
+  /**
+   * <p>
+   * Start conflating events of a registered {@link KeyedEvent} type.
+   * </p>
+   * 
+   * <p>
+   * Conflated events aren't delivered when they are fired. Instead, they are
+   * held until a drain delivers them, and an event replaces any undelivered
+   * event with the {@link KeyedEvent#getKey() same key}. Listeners then only
+   * get the newest event per key. A drain is started on the
+   * {@link #setExecutor(Executor) executor} whenever events are pending, and
+   * {@link #flush()} drains them in the calling thread. The events of one key
+   * are always delivered in the order they were fired.
+   * </p>
+   * 
+   * <p>
+   * Events of subtypes that aren't registered themselves are conflated along
+   * with <tt>event</tt>, and share its keys.
+   * </p>
+   * 
+   * <p>
+   * The future returned by {@link #fireAsync(Event)} for a conflated event is
+   * done when the event, or the newer event that replaced it, is delivered.
+   * </p>
+   * 
+   * @param event
+   *          The registered event type to conflate.
+   * @throws EventNotRegisteredException
+   *           if <tt>event</tt> wasn't previously registered with Blackboard.
+   */
+  public void enableConflation(final Class<? extends KeyedEvent> event) {
+    assertNotNull(event);
+
+    final Registration registration = registrationsByEvent.get(event);
+    if (registration == null) {
+      throw new EventNotRegisteredException(event);
+    }
+
+    synchronized (registration) {
+      if (registration.getConflator() == null) {
+        registration.setConflator(new Conflator(this));
+      }
+    }
+  }
+
+  /**
+   * Stop conflating events of an event type. Any pending events are delivered
+   * in the calling thread.
+   * 
+   * @param event
+   *          The event type to stop conflating.
+   * @see #enableConflation(Class)
+   */
+  public void disableConflation(final Class<? extends KeyedEvent> event) {
+    assertNotNull(event);
+
+    final Registration registration = registrationsByEvent.get(event);
+    if (registration != null) {
+      final Conflator conflator;
+      synchronized (registration) {
+        conflator = registration.getConflator();
+        registration.setConflator(null);
+      }
+
+      if (conflator != null) {
+        conflator.drain();
+      }
+    }
+  }
+
+  /**
+   * Deliver all pending conflated events in the calling thread.
+   * 
+   * @see #enableConflation(Class)
+   */
+  public void flush() {
+    for (final Registration registration : registrationsByEvent.values()) {
+      final Conflator conflator = registration.getConflator();
+      if (conflator != null) {
+        conflator.drain();
+      }
+    }
+  }
+
+  /**
+   * Set the {@link Executor} that runs the deliveries of
+   * {@link #fireAsync(Event)}. A {@link KeyedExecutor} also keeps the
+   * deliveries of {@link KeyedEvent KeyedEvents} with the same key in order.
+   * 
+   * @param executor
+   *          The Executor to use.
+   */
+  public void setExecutor(final Executor executor) {
+    assertNotNull(executor);
+    this.executor = executor;
+  }
+
+  /**
+   * <p>
+   * Limit how many deliveries of an {@link Event} type fired with
+   * {@link #fireAsync(Event)} may run at once.
+   * </p>
+   * 
+   * <p>
+   * Deliveries over the limit wait in their executor thread until a running
+   * one finishes. This is meant for a {@link VirtualThreadExecutor}, where a
+   * waiting thread is cheap; with a fixed size thread pool, the waiting
+   * deliveries hold on to the pool's threads.
+   * </p>
+   * 
+   * @param event
+   *          The registered Event type to limit.
+   * @param maxConcurrentDeliveries
+   *          The maximum number of concurrently running deliveries, or
+   *          <code>0</code> to remove the limit.
+   * @throws IllegalArgumentException
+   *           if <tt>maxConcurrentDeliveries</tt> is negative.
+   */
+  public void setMaxConcurrentDeliveries(final Class<? extends Event> event,
+      final int maxConcurrentDeliveries) {
+    assertNotNull(event);
+
+    if (maxConcurrentDeliveries < 0) {
+      throw new IllegalArgumentException(
+          "Unexpected negative delivery limit: " + maxConcurrentDeliveries);
+    } else if (maxConcurrentDeliveries == 0) {
+      deliveryLimits.remove(event);
+    } else {
+      deliveryLimits.put(event, new Semaphore(maxConcurrentDeliveries));
+    }
+  }
+
+  /**
+   * <p>
+   * Put the deliveries of an {@link Event} type fired with
+   * {@link #fireAsync(Event)} in a bounded queue.
+   * </p>
+   * 
+   * <p>
+   * Without a queue, every delivery is handed to the
+   * {@link #setExecutor(Executor) executor} right away, and a slow listener
+   * lets them pile up without limit. With one, the deliveries wait in the
+   * queue, and a single task on the executor runs them one at a time, in the
+   * order they were fired. When the queue is full, or the
+   * {@link #setQueueBudget(int) budget} shared by all queues runs out,
+   * <tt>policy</tt> decides what to do with a new delivery.
+   * </p>
+   * 
+   * <p>
+   * Events of subtypes that aren't registered themselves share the queue of
+   * <tt>event</tt>. Replacing or removing a queue doesn't affect the
+   * deliveries already in it.
+   * </p>
+   * 
+   * @param event
+   *          The registered Event type to queue.
+   * @param capacity
+   *          The maximum number of queued deliveries, or <code>0</code> to
+   *          remove the queue.
+   * @param policy
+   *          What to do with deliveries that don't fit.
+   * @throws IllegalArgumentException
+   *           if <tt>capacity</tt> is negative.
+   * @see #getQueueSnapshot(Class)
+   */
+  public void setQueueCapacity(final Class<? extends Event> event,
+      final int capacity, final OverflowPolicy policy) {
+    assertNotNull(event, policy);
+
+    if (capacity < 0) {
+      throw new IllegalArgumentException("Unexpected negative queue capacity: "
+          + capacity);
+    } else if (capacity == 0) {
+      deliveryQueues.remove(event);
+    } else {
+      deliveryQueues.put(event, new DeliveryQueue(this, event, capacity,
+          policy));
+    }
+  }
+
+  /**
+   * Get the depth and the overflow counters of an {@link Event} type's
+   * delivery queue.
+   * 
+   * @return the state of the queue, or <code>null</code> if <tt>event</tt>
+   *         has no queue.
+   * @see #setQueueCapacity(Class, int, OverflowPolicy)
+   */
+  public QueueSnapshot getQueueSnapshot(final Class<? extends Event> event) {
+    assertNotNull(event);
+    final DeliveryQueue queue = deliveryQueues.get(event);
+    return queue != null ? queue.getSnapshot() : null;
+  }
+
+  /**
+   * <p>
+   * Limit the number of deliveries queued in all the
+   * {@link #setQueueCapacity(Class, int, OverflowPolicy) delivery queues}
+   * together.
+   * </p>
+   * 
+   * <p>
+   * A delivery that would go over the budget is handled like one that doesn't
+   * fit in its own queue. The budget applies to deliveries queued after it's
+   * set.
+   * </p>
+   * 
+   * @param maxQueuedDeliveries
+   *          The maximum number of queued deliveries, or <code>0</code> for
+   *          no budget.
+   * @throws IllegalArgumentException
+   *           if <tt>maxQueuedDeliveries</tt> is negative.
+   */
+  public void setQueueBudget(final int maxQueuedDeliveries) {
+    if (maxQueuedDeliveries < 0) {
+      throw new IllegalArgumentException("Unexpected negative queue budget: "
+          + maxQueuedDeliveries);
+    }
+    queueBudget = maxQueuedDeliveries > 0 ? new Semaphore(maxQueuedDeliveries)
+        : null;
+    this.maxQueuedDeliveries = maxQueuedDeliveries;
+  }
+
+  /**
+   * @return the budget of all delivery queues, <code>0</code> if there is
+   *         none.
+   * @see #setQueueBudget(int)
+   */
+  public int getQueueBudget() {
+    return maxQueuedDeliveries;
+  }
+
+  /**
+   * @return the number of deliveries waiting in all delivery queues.
+   * @see #setQueueCapacity(Class, int, OverflowPolicy)
+   */
+  public int getQueuedDeliveries() {
+    int depth = 0;
+    for (final DeliveryQueue queue : deliveryQueues.values()) {
+      depth += queue.getDepth();
+    }
+    return depth;
+  }
+
+  /**
+   * Let <tt>tap</tt> see all {@link Event Events} of type <tt>event</tt>, and
+   * its subtypes, that are fired on this Blackboard with any of the
+   * <code>fire</code> methods.
+   * 
+   * @param event
+   *          The Event type to tap.
+   * @param tap
+   *          The EventTap to call.
+   * @see #removeTap(EventTap)
+   */
+  public synchronized void addTap(final Class<? extends Event> event,
+      final EventTap tap) {
+    assertNotNull(event, tap);
+    final Tap[] newTaps = Arrays.copyOf(taps, taps.length + 1);
+    newTaps[taps.length] = new Tap(event, tap);
+    taps = newTaps;
+  }
+
+  /**
+   * Stop calling <tt>tap</tt>, for all the event types it was added for.
+   * 
+   * @return <code>true</code> iff <tt>tap</tt> was found and removed.
+   */
+  public synchronized boolean removeTap(final EventTap tap) {
+    assertNotNull(tap);
+    final List<Tap> remaining = new ArrayList<Tap>();
+    for (final Tap existing : taps) {
+      if (existing.tap != tap) {
+        remaining.add(existing);
+      }
+    }
+    if (remaining.size() == taps.length) {
+      return false;
+    }
+    taps = remaining.isEmpty() ? NO_TAPS : remaining
+        .toArray(new Tap[remaining.size()]);
+    return true;
+  }
+
+  private void tap(final Event event) {
+    final Tap[] taps = this.taps;
+    for (final Tap tap : taps) {
+      if (tap.event.isInstance(event)) {
+        tap.tap.fired(event);
+      }
+    }
+  }
+
+  /**
+   * Get the {@link Executor} that runs the deliveries of
+   * {@link #fireAsync(Event)}. Unless {@link #setExecutor(Executor) set}
+   * otherwise, it's a cached thread pool shared by all Blackboards.
+   */
+  public Executor getExecutor() {
+    final Executor executor = this.executor;
+    return executor != null ? executor : DefaultExecutor.INSTANCE;
+  }
+
+  /**
+   * Assert that no arguments are <code>null</code>
+   * 
+   * @param args
+   *          the arguments to check.
+   * @throws NullPointerException
+   *           if any of <tt>args</tt> is <code>null</code>.
+   */
+  private void assertNotNull(final Object... args) {
+    for (int i = 0; i < args.length; i++) {
+      if (args[i] == null) {
+        throw new NullPointerException("Argument with index " + i
+            + " was null.");
+      }
+    }
+  }
+
+  /**
+   * Log what this Blackboard does into {@link System#out}. Replaces any
+   * {@link #setTracer(Tracer) tracer} set before.
+   * 
+   * @see PrintStreamTracer
+   */
+  public void enableLogging() {
+    setTracer(new PrintStreamTracer(System.out));
+  }
+
+  /**
+   * Stop logging, and any other {@link #setTracer(Tracer) tracing}.
+   */
+  public void disableLogging() {
+    setTracer(null);
+  }
+
+  /**
+   * <p>
+   * Report everything this Blackboard does to <tt>tracer</tt>.
+   * </p>
+   * 
+   * <p>
+   * Tracing is per Blackboard. When there is no tracer, which is the default,
+   * Blackboard doesn't build any trace data, or even time the listeners.
+   * </p>
+   * 
+   * @param tracer
+   *          the tracer to use, or <code>null</code> to stop tracing.
+   */
+  public void setTracer(final Tracer tracer) {
+    this.tracer = tracer;
+  }
+
+  /**
+   * @return the tracer set with {@link #setTracer(Tracer)}, or
+   *         <code>null</code> if this Blackboard isn't traced.
+   */
+  public Tracer getTracer() {
+    return tracer;
+  }
+
+  /**
+   * <p>
+   * Use a {@link ListenerIndex} in addition to the ones listed in
+   * <code>META-INF/services/com.github.wolfie.blackboard.ListenerIndex</code>.
+   * </p>
+   * 
+   * <p>
+   * Only needed when the service files are missing, e.g. in a shaded jar. The
+   * index only affects registrations made after this call.
+   * </p>
+   * 
+   * @param index
+   *          the index, usually one generated by the
+   *          <code>ListenerIndexProcessor</code> of the blackboard-processor
+   *          jar.
+   */
+  public synchronized void addListenerIndex(final ListenerIndex index) {
+    assertNotNull(index);
+    indexes = indexes.with(index);
+  }
+
+  /**
+   * <p>
+   * Keep what {@link #discover()} and {@link #discoverFrom(Class)} find in
+   * <tt>directory</tt>, and use it on the next run instead of scanning again.
+   * </p>
+   * 
+   * <p>
+   * The results of each package are kept together with the modification time,
+   * size and content hash of the jar or directory the package was found in.
+   * If any of them has changed, the package is scanned again. The cache
+   * is off by default.
+   * </p>
+   * 
+   * @param directory
+   *          the directory to keep the results in, created if needed, or
+   *          <code>null</code> to stop using a cache.
+   */
+  public void setDiscoveryCache(final File directory) {
+    discoveryCache = directory != null ? new DiscoveryCache(directory) : null;
+  }
+
+  /**
+   * @return the directory set with {@link #setDiscoveryCache(File)}, or
+   *         <code>null</code> if there is no discovery cache.
+   */
+  public File getDiscoveryCache() {
+    final DiscoveryCache discoveryCache = this.discoveryCache;
+    return discoveryCache != null ? discoveryCache.getDirectory() : null;
+  }
+
+  /**
+   * <p>
+   * Start counting fired events, deliveries and listener latencies.
+   * </p>
+   * 
+   * <p>
+   * Metrics are off by default, and cost nothing then. Calling this again
+   * while metrics are on keeps the existing counters.
+   * </p>
+   * 
+   * @return the metrics of this Blackboard.
+   * @see #disableMetrics()
+   */
+  public synchronized DispatchMetrics enableMetrics() {
+    if (metrics == null) {
+      metrics = new DispatchMetrics();
+    }
+    return metrics;
+  }
+
+  /**
+   * Stop counting, and remove the metrics from JMX if they were registered
+   * there. Does nothing if metrics are off.
+   */
+  public synchronized void disableMetrics() {
+    final DispatchMetrics oldMetrics = metrics;
+    if (oldMetrics != null) {
+      metrics = null;
+      oldMetrics.unregisterMBean();
+    }
+  }
+
+  /**
+   * @return the metrics started with {@link #enableMetrics()}, or
+   *         <code>null</code> if metrics are off.
+   */
+  public DispatchMetrics getMetrics() {
+    return metrics;
+  }
+
+  public void discover() {
+    final Exception exception = new Exception();
+    exception.fillInStackTrace();
+    final StackTraceElement[] stackTrace = exception.getStackTrace();
+
+    if (stackTrace.length < 2) {
+      throw new RuntimeException("Can't autodiscover, seems like "
+          + "this method was never called from anywhere");
+    }
+
+    final StackTraceElement caller = stackTrace[1];
+    try {
+      discoverFrom(getClass().getClassLoader().loadClass(caller.getClassName()));
+    } catch (final ClassNotFoundException e) {
+      throw new RuntimeException("Caller class \"" + caller.getClassName()
+          + "\" could not be loaded with the current "
+          + "ClassLoader. Use discoverFrom() for better luck.");
+    }
+  }
+
+  public void discoverFrom(final Class<?> referenceClass) {
+    final Tracer tracer = this.tracer;
+    if (tracer != null) {
+      tracer.message("Starting automatic discovery from "
+          + referenceClass.getName());
+    }
+
+    // an index may cover only some of the package, e.g. not its tests
+    final Set<Class<? extends Event>> indexedEvents = new HashSet<Class<? extends Event>>();
+    for (final IndexedPair pair : indexes.getPairs(ListenerIndexes
+        .getPackageName(referenceClass))) {
+      indexedEvents.add(pair.getEvent());
+      try {
+        _register(pair.getListener(), pair.getEvent());
+      } catch (final DuplicateRegistrationException e) {
+        // Ignore, we're doing magic!
+      }
+    }
+
+    final DiscoveryCache discoveryCache = this.discoveryCache;
+    final Fingerprint fingerprint = discoveryCache != null ? DiscoveryCache
+        .fingerprint(referenceClass) : null;
+    if (fingerprint != null) {
+      final List<IndexedMethod> cachedMethods = discoveryCache.load(
+          fingerprint, referenceClass.getClassLoader());
+      if (cachedMethods != null && hasCachedMethods(cachedMethods)) {
+        if (tracer != null) {
+          tracer.message("Using " + cachedMethods.size()
+              + " cached discoveries from " + discoveryCache.getDirectory());
+        }
+        for (final IndexedMethod method : cachedMethods) {
+          try {
+            _register(method.getListener(), method.getEvent(), method);
+          } catch (final DuplicateRegistrationException e) {
+            // Ignore, we're doing magic!
+          }
+        }
+        return;
+      } else if (cachedMethods != null) {
+        // a listener outside the fingerprinted package has changed
+        if (tracer != null) {
+          tracer.message("Discarding out of date cached discoveries from "
+              + discoveryCache.getDirectory());
+        }
+        discoveryCache.remove(fingerprint);
+      }
+    }
+
+    // only the events that name their listeners get loaded
+    final List<Class<? extends Event>> classes = ClassDiscovery
+        .DiscoverEventCandidates(referenceClass);
+    if (classes == null) {
+      return;
+    }
+
+    final List<IndexedMethod> foundMethods = new ArrayList<IndexedMethod>();
+    for (final Class<? extends Event> clazz : classes) {
+      if (indexedEvents.contains(clazz)) {
+        continue;
+      }
+
+      Class<? extends Listener> listener = findByAnnotation(clazz);
+      if (listener == null) {
+        listener = findByEventInlineClasses(clazz);
+      }
+      if (listener == null) {
+        continue;
+      }
+
+      Registration registration;
+      try {
+        _register(listener, clazz);
+        registration = registrationsByEvent.get(clazz);
+      } catch (final DuplicateRegistrationException e) {
+        // Ignore, we're doing magic!
+        registration = fingerprint != null ? new Registration(listener, clazz)
+            : null;
+      }
+      if (registration != null) {
+        foundMethods.add(new IndexedMethod(listener, clazz, registration
+            .getMethod().getName(), null));
+      }
+    }
+
+    if (fingerprint != null) {
+      try {
+        discoveryCache.store(fingerprint, foundMethods);
+      } catch (final IOException e) {
+        if (tracer != null) {
+          tracer.message("Could not cache discoveries in "
+              + discoveryCache.getDirectory() + ": " + e);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return <code>true</code> iff all the cached listener methods are still
+   *         there.
+   */
+  private static boolean hasCachedMethods(final List<IndexedMethod> methods) {
+    for (final IndexedMethod method : methods) {
+      try {
+        method.getListener().getMethod(method.getMethodName(),
+            method.getEvent());
+      } catch (final NoSuchMethodException e) {
+        return false;
+      } catch (final SecurityException e) {
+        return false;
+      } catch (final LinkageError e) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the listener paired with <tt>eventCandidate</tt> with
+   *         {@link ListenerPair}, or <code>null</code> if there is none.
+   */
+  private static Class<? extends Listener> findByAnnotation(
+      final Class<? extends Event> eventCandidate) {
+    final ListenerPair listenerPair = eventCandidate
+        .getAnnotation(ListenerPair.class);
+    return listenerPair != null ? listenerPair.value() : null;
+  }
+
+  private boolean findAndRegisterByListenerInlineClasses(
+      final Class<? extends Object> listenerCandidate) {
+    if (Listener.class.isAssignableFrom(listenerCandidate)) {
+      final Class<?> declaringClass = listenerCandidate.getDeclaringClass();
+      if (declaringClass != null
+          && Event.class.isAssignableFrom(declaringClass)) {
+        @SuppressWarnings("unchecked")
+        final Class<? extends Event> eventClass = (Class<? extends Event>) declaringClass;
+        @SuppressWarnings("unchecked")
+        final Class<? extends Listener> listenerClass = (Class<? extends Listener>) listenerCandidate;
+
+        magicRegister(listenerClass, eventClass);
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * @return the first {@link Listener} declared inside
+   *         <tt>eventCandidate</tt>, or <code>null</code> if there is none.
+   */
+  private static Class<? extends Listener> findByEventInlineClasses(
+      final Class<? extends Event> eventCandidate) {
+    for (final Class<? extends Object> innerClass : eventCandidate
+        .getDeclaredClasses()) {
+      if (innerClass != null && Listener.class.isAssignableFrom(innerClass)) {
+        @SuppressWarnings("unchecked")
+        final Class<? extends Listener> listenerClass = (Class<? extends Listener>) innerClass;
+        return listenerClass;
+      }
+    }
+    return null;
+  }
 
   public void clear() {
-    Log.log("Clearing Blackboard");
+    final Tracer tracer = this.tracer;
+    if (tracer != null) {
+      tracer.message("Clearing Blackboard");
+    }
     listeners.clear();
+    keyedListeners.clear();
+    synchronized (keysByListener) {
+      keysByListener.clear();
+    }
     registrationsByEvent.clear();
+    registeredListenerClasses.clear();
+    invalidateCaches();
   }
 }
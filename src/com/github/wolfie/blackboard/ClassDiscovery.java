@@ -5,16 +5,29 @@
 package com.github.wolfie.blackboard;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.regex.Pattern;
 
+import com.github.wolfie.blackboard.annotation.ListenerPair;
+
 class StringComparator implements Comparator<String>, Serializable {
 
   private static final long serialVersionUID = 5603928894805771653L;
@@ -312,6 +325,9 @@ public class ClassDiscovery {
       return null;
     }
 
+    // the package may not be visible to our own ClassLoader
+    final ClassLoader aClassLoader = pSeedClass.getClassLoader();
+
     final ArrayList<Class<?>> aClasses = new ArrayList<Class<?>>();
     for (final String aClassName : aClassNames) {
 
@@ -320,10 +336,10 @@ public class ClassDiscovery {
         continue;
       }
 
-      // Get the class and filter it
+      // Get the class and filter it, without running its static initializers
       Class<?> aClass = null;
       try {
-        aClass = Class.forName(aClassName);
+        aClass = Class.forName(aClassName, false, aClassLoader);
       } catch (final ClassNotFoundException e) {
         continue;
       } catch (final NoClassDefFoundError e) {
@@ -352,6 +368,260 @@ public class ClassDiscovery {
     return aClassesArray;
   }
 
+  /** Scan in parallel only when there are at least this many class files */
+  static private final int PARALLEL_THRESHOLD = 256;
+
+  /** Reads the header of a class by its name */
+  static private abstract class HeaderReader {
+    abstract InputStream open(String pClassName) throws IOException;
+
+    ClassHeader read(final String pClassName) throws IOException {
+      final InputStream aIn = open(pClassName);
+      try {
+        return ClassHeader.read(aIn);
+      } finally {
+        aIn.close();
+      }
+    }
+  }
+
+  /**
+   * Read the headers of <tt>pClassNames</tt>, in parallel if there are many.
+   * Class files that can't be read are left out.
+   */
+  static private ArrayList<ClassHeader> ReadClassHeaders(
+      final HeaderReader pReader, final List<String> pClassNames) {
+
+    final ArrayList<ClassHeader> aHeaders = new ArrayList<ClassHeader>(
+        pClassNames.size());
+    final int aThreads = Math.min(Runtime.getRuntime().availableProcessors(),
+        pClassNames.size() / PARALLEL_THRESHOLD);
+
+    if (aThreads < 2) {
+      ReadClassHeaders(pReader, pClassNames, aHeaders);
+      return aHeaders;
+    }
+
+    final ExecutorService aExecutor = Executors.newFixedThreadPool(aThreads,
+        new ThreadFactory() {
+          public Thread newThread(final Runnable pRunnable) {
+            final Thread aThread = new Thread(pRunnable,
+                "blackboard-discovery");
+            aThread.setDaemon(true);
+            return aThread;
+          }
+        });
+    try {
+      final List<Future<List<ClassHeader>>> aFutures = new ArrayList<Future<List<ClassHeader>>>();
+      final int aChunkSize = (pClassNames.size() + aThreads - 1) / aThreads;
+      for (int i = 0; i < pClassNames.size(); i += aChunkSize) {
+        final List<String> aChunk = pClassNames.subList(i,
+            Math.min(i + aChunkSize, pClassNames.size()));
+        aFutures.add(aExecutor.submit(new Callable<List<ClassHeader>>() {
+          public List<ClassHeader> call() {
+            final List<ClassHeader> aChunkHeaders = new ArrayList<ClassHeader>(
+                aChunk.size());
+            ReadClassHeaders(pReader, aChunk, aChunkHeaders);
+            return aChunkHeaders;
+          }
+        }));
+      }
+
+      for (final Future<List<ClassHeader>> aFuture : aFutures) {
+        aHeaders.addAll(aFuture.get());
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while discovering classes", e);
+    } catch (final ExecutionException e) {
+      throw new RuntimeException("Discovering classes failed", e.getCause());
+    } finally {
+      aExecutor.shutdownNow();
+    }
+
+    return aHeaders;
+  }
+
+  static private void ReadClassHeaders(final HeaderReader pReader,
+      final List<String> pClassNames, final List<ClassHeader> pHeaders) {
+    for (final String aClassName : pClassNames) {
+      try {
+        pHeaders.add(pReader.read(aClassName));
+      } catch (final IOException e) {
+        // not a class we could use anyway
+      }
+    }
+  }
+
+  /**
+   * Tells whether classes are subtypes of a given type, by looking at the
+   * scanned headers, and loading only the supertypes that weren't scanned.
+   */
+  static private class SubtypeResolver {
+    private final Map<String, ClassHeader> mHeaders;
+    private final ClassLoader mClassLoader;
+    private final Class<?> mType;
+    private final Map<String, Boolean> mResults = new HashMap<String, Boolean>();
+
+    SubtypeResolver(final Map<String, ClassHeader> pHeaders,
+        final ClassLoader pClassLoader, final Class<?> pType) {
+      mHeaders = pHeaders;
+      mClassLoader = pClassLoader;
+      mType = pType;
+    }
+
+    boolean isSubtype(final String pClassName) {
+      if (pClassName == null) {
+        return false;
+      } else if (pClassName.equals(mType.getName())) {
+        return true;
+      }
+
+      Boolean aResult = mResults.get(pClassName);
+      if (aResult == null) {
+        // guard against cycles in broken class files
+        mResults.put(pClassName, Boolean.FALSE);
+        aResult = resolve(pClassName);
+        mResults.put(pClassName, aResult);
+      }
+      return aResult;
+    }
+
+    private boolean resolve(final String pClassName) {
+      final ClassHeader aHeader = mHeaders.get(pClassName);
+      if (aHeader != null) {
+        if (isSubtype(aHeader.getSuperName())) {
+          return true;
+        }
+        for (final String aInterface : aHeader.getInterfaces()) {
+          if (isSubtype(aInterface)) {
+            return true;
+          }
+        }
+        return false;
+      }
+
+      if (pClassName.startsWith("java.")) {
+        // the platform doesn't implement our types
+        return false;
+      }
+
+      try {
+        return mType.isAssignableFrom(Class.forName(pClassName, false,
+            mClassLoader));
+      } catch (final ClassNotFoundException e) {
+        return false;
+      } catch (final LinkageError e) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * <p>
+   * Find the {@link Event} classes in the same package as <tt>pSeedClass</tt>,
+   * or below it, that name their {@link Listener}, either with
+   * {@link ListenerPair} or by declaring a listener inside themselves.
+   * </p>
+   *
+   * <p>
+   * Only the class files are read to find them. The classes found are loaded,
+   * but not initialized, and the rest of the package isn't loaded at all.
+   * </p>
+   *
+   * @return the classes, sorted by name, or <code>null</code> if the package
+   *         couldn't be scanned.
+   */
+  static List<Class<? extends Event>> DiscoverEventCandidates(
+      final Class<?> pSeedClass) {
+
+    final PkgInfo aPkgInfo = getPackageInfoOf(pSeedClass);
+    if (aPkgInfo == null) {
+      return null;
+    }
+
+    final ArrayList<String> aClassNames = DiscoverClassNames_inPackage(aPkgInfo);
+    if (aClassNames == null) {
+      return null;
+    }
+
+    final ArrayList<ClassHeader> aHeaders;
+    if (aPkgInfo.PkgPath.isDirectory()) {
+      aHeaders = ReadClassHeaders(new HeaderReader() {
+        @Override
+        InputStream open(final String pClassName) throws IOException {
+          return new FileInputStream(new File(aPkgInfo.PkgPath, pClassName
+              .replace('.', '/') + ".class"));
+        }
+      }, aClassNames);
+    } else {
+      try {
+        final JarFile aJarFile = new JarFile(aPkgInfo.PkgPath);
+        try {
+          aHeaders = ReadClassHeaders(new HeaderReader() {
+            @Override
+            InputStream open(final String pClassName) throws IOException {
+              final JarEntry aEntry = aJarFile.getJarEntry(pClassName.replace(
+                  '.', '/') + ".class");
+              if (aEntry == null) {
+                throw new IOException("No entry for " + pClassName);
+              }
+              return aJarFile.getInputStream(aEntry);
+            }
+          }, aClassNames);
+        } finally {
+          aJarFile.close();
+        }
+      } catch (final IOException e) {
+        return null;
+      }
+    }
+
+    final Map<String, ClassHeader> aHeadersByName = new HashMap<String, ClassHeader>();
+    for (final ClassHeader aHeader : aHeaders) {
+      aHeadersByName.put(aHeader.getName(), aHeader);
+    }
+
+    final ClassLoader aClassLoader = pSeedClass.getClassLoader();
+    final SubtypeResolver aEvents = new SubtypeResolver(aHeadersByName,
+        aClassLoader, Event.class);
+    final SubtypeResolver aListeners = new SubtypeResolver(aHeadersByName,
+        aClassLoader, Listener.class);
+
+    final ArrayList<Class<? extends Event>> aClasses = new ArrayList<Class<? extends Event>>();
+    for (final ClassHeader aHeader : aHeaders) {
+      if (!aEvents.isSubtype(aHeader.getName())) {
+        continue;
+      }
+
+      boolean aIsCandidate = aHeader.getAnnotations().contains(
+          ListenerPair.class.getName());
+      for (final String aMemberClass : aHeader.getMemberClasses()) {
+        if (aIsCandidate) {
+          break;
+        }
+        aIsCandidate = aListeners.isSubtype(aMemberClass);
+      }
+
+      if (aIsCandidate) {
+        try {
+          aClasses.add(Class.forName(aHeader.getName(), false, aClassLoader)
+              .asSubclass(Event.class));
+        } catch (final ClassNotFoundException e) {
+          continue;
+        } catch (final LinkageError e) {
+          continue;
+        } catch (final ClassCastException e) {
+          // an Event of another class loader
+          continue;
+        }
+      }
+    }
+
+    Collections.sort(aClasses, ClassComparator.Default);
+    return aClasses;
+  }
+
   static public void main(final String... pArgs) {
     Class<?> aSeedClass = ClassDiscovery.class;
     try {
@@ -0,0 +1,357 @@
+package com.github.wolfie.blackboard;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UTFDataFormatException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>
+ * What discovery needs to know of a class, read straight from its class file
+ * without loading the class.
+ * </p>
+ *
+ * <p>
+ * The whole constant pool has to be walked to find anything, but only the
+ * entries that are used are decoded. Fields and methods are skipped over to
+ * reach the class attributes.
+ * </p>
+ *
+ * @author Henrik Paul
+ * @see <a href="https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-4.html">
+ *      The class file format</a>
+ */
+class ClassHeader {
+  private static final int MAGIC = 0xCAFEBABE;
+
+  private static final int CONSTANT_UTF8 = 1;
+  private static final int CONSTANT_INTEGER = 3;
+  private static final int CONSTANT_FLOAT = 4;
+  private static final int CONSTANT_LONG = 5;
+  private static final int CONSTANT_DOUBLE = 6;
+  private static final int CONSTANT_CLASS = 7;
+  private static final int CONSTANT_STRING = 8;
+  private static final int CONSTANT_FIELDREF = 9;
+  private static final int CONSTANT_METHODREF = 10;
+  private static final int CONSTANT_INTERFACE_METHODREF = 11;
+  private static final int CONSTANT_NAME_AND_TYPE = 12;
+  private static final int CONSTANT_METHOD_HANDLE = 15;
+  private static final int CONSTANT_METHOD_TYPE = 16;
+  private static final int CONSTANT_DYNAMIC = 17;
+  private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+  private static final int CONSTANT_MODULE = 19;
+  private static final int CONSTANT_PACKAGE = 20;
+
+  private static final int ACC_INTERFACE = 0x0200;
+
+  private final String name;
+  private final String superName;
+  private final List<String> interfaces;
+  private final List<String> annotations;
+  private final List<String> memberClasses;
+  private final boolean isInterface;
+
+  private ClassHeader(final String name, final String superName,
+      final List<String> interfaces, final List<String> annotations,
+      final List<String> memberClasses, final boolean isInterface) {
+    this.name = name;
+    this.superName = superName;
+    this.interfaces = interfaces;
+    this.annotations = annotations;
+    this.memberClasses = memberClasses;
+    this.isInterface = isInterface;
+  }
+
+  /** The binary name of the class, e.g. <code>a.b.Outer$Inner</code> */
+  String getName() {
+    return name;
+  }
+
+  /**
+   * @return the binary name of the superclass, or <code>null</code> if this
+   *         is <code>java.lang.Object</code> itself.
+   */
+  String getSuperName() {
+    return superName;
+  }
+
+  /** The binary names of the directly implemented interfaces */
+  List<String> getInterfaces() {
+    return interfaces;
+  }
+
+  /** The binary names of the runtime visible annotations of the class */
+  List<String> getAnnotations() {
+    return annotations;
+  }
+
+  /** The binary names of the classes declared directly inside this class */
+  List<String> getMemberClasses() {
+    return memberClasses;
+  }
+
+  boolean isInterface() {
+    return isInterface;
+  }
+
+  static ClassHeader read(final InputStream in) throws IOException {
+    byte[] bytes = new byte[Math.max(in.available(), 1024)];
+    int length = 0;
+    int read;
+    while ((read = in.read(bytes, length, bytes.length - length)) != -1) {
+      length += read;
+      if (length == bytes.length) {
+        bytes = Arrays.copyOf(bytes, bytes.length * 2);
+      }
+    }
+    return parse(bytes);
+  }
+
+  /**
+   * @throws IOException
+   *           if <tt>bytes</tt> isn't a valid class file.
+   */
+  static ClassHeader parse(final byte[] bytes) throws IOException {
+    try {
+      return new Parser(bytes).parse();
+    } catch (final ArrayIndexOutOfBoundsException e) {
+      throw new IOException("Truncated class file", e);
+    }
+  }
+
+  private static class Parser {
+    private final byte[] bytes;
+    private int position;
+
+    /** The offset of each constant pool entry, after its tag */
+    private int[] constants;
+
+    private Parser(final byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    private ClassHeader parse() throws IOException {
+      if (readInt() != MAGIC) {
+        throw new IOException("Not a class file");
+      }
+      position += 4; // minor and major version
+
+      readConstantPool();
+
+      final int accessFlags = readShort();
+      final String name = getClassName(readShort());
+      final int superIndex = readShort();
+      final String superName = superIndex != 0 ? getClassName(superIndex)
+          : null;
+
+      final int interfaceCount = readShort();
+      final List<String> interfaces = new ArrayList<String>(interfaceCount);
+      for (int i = 0; i < interfaceCount; i++) {
+        interfaces.add(getClassName(readShort()));
+      }
+
+      skipMembers(); // fields
+      skipMembers(); // methods
+
+      List<String> annotations = Collections.emptyList();
+      List<String> memberClasses = Collections.emptyList();
+      final int attributeCount = readShort();
+      for (int i = 0; i < attributeCount; i++) {
+        final String attributeName = getUtf8(readShort());
+        final int attributeLength = readInt();
+        final int attributeEnd = position + attributeLength;
+
+        if ("RuntimeVisibleAnnotations".equals(attributeName)) {
+          annotations = readAnnotations();
+        } else if ("InnerClasses".equals(attributeName)) {
+          memberClasses = readMemberClasses(name);
+        }
+        position = attributeEnd;
+      }
+
+      return new ClassHeader(name, superName, interfaces, annotations,
+          memberClasses, (accessFlags & ACC_INTERFACE) != 0);
+    }
+
+    private void readConstantPool() throws IOException {
+      final int count = readShort();
+      constants = new int[count];
+      for (int i = 1; i < count; i++) {
+        final int tag = bytes[position++];
+        constants[i] = position;
+        switch (tag) {
+        case CONSTANT_UTF8:
+          position += 2 + readShort(position);
+          break;
+        case CONSTANT_CLASS:
+        case CONSTANT_STRING:
+        case CONSTANT_METHOD_TYPE:
+        case CONSTANT_MODULE:
+        case CONSTANT_PACKAGE:
+          position += 2;
+          break;
+        case CONSTANT_METHOD_HANDLE:
+          position += 3;
+          break;
+        case CONSTANT_INTEGER:
+        case CONSTANT_FLOAT:
+        case CONSTANT_FIELDREF:
+        case CONSTANT_METHODREF:
+        case CONSTANT_INTERFACE_METHODREF:
+        case CONSTANT_NAME_AND_TYPE:
+        case CONSTANT_DYNAMIC:
+        case CONSTANT_INVOKE_DYNAMIC:
+          position += 4;
+          break;
+        case CONSTANT_LONG:
+        case CONSTANT_DOUBLE:
+          position += 8;
+          i++; // takes two entries
+          break;
+        default:
+          throw new IOException("Unknown constant pool tag " + tag);
+        }
+      }
+    }
+
+    private void skipMembers() {
+      final int count = readShort();
+      for (int i = 0; i < count; i++) {
+        position += 6; // access flags, name, descriptor
+        final int attributeCount = readShort();
+        for (int j = 0; j < attributeCount; j++) {
+          position += 2; // name
+          final int length = readInt();
+          position += length;
+        }
+      }
+    }
+
+    private List<String> readAnnotations() throws IOException {
+      final int count = readShort();
+      final List<String> annotations = new ArrayList<String>(count);
+      for (int i = 0; i < count; i++) {
+        annotations.add(toBinaryName(getUtf8(readShort())));
+        skipAnnotationValues();
+      }
+      return annotations;
+    }
+
+    /** Skip the element value pairs of an annotation */
+    private void skipAnnotationValues() throws IOException {
+      final int pairs = readShort();
+      for (int i = 0; i < pairs; i++) {
+        position += 2; // name
+        skipElementValue();
+      }
+    }
+
+    private void skipElementValue() throws IOException {
+      final int tag = bytes[position++];
+      switch (tag) {
+      case 'B':
+      case 'C':
+      case 'D':
+      case 'F':
+      case 'I':
+      case 'J':
+      case 'S':
+      case 'Z':
+      case 's':
+      case 'c':
+        position += 2;
+        break;
+      case 'e':
+        position += 4;
+        break;
+      case '@':
+        position += 2; // type
+        skipAnnotationValues();
+        break;
+      case '[':
+        final int count = readShort();
+        for (int i = 0; i < count; i++) {
+          skipElementValue();
+        }
+        break;
+      default:
+        throw new IOException("Unknown element value tag " + (char) tag);
+      }
+    }
+
+    private List<String> readMemberClasses(final String outerName)
+        throws IOException {
+      final int count = readShort();
+      final List<String> memberClasses = new ArrayList<String>();
+      for (int i = 0; i < count; i++) {
+        final int innerIndex = readShort();
+        final int outerIndex = readShort();
+        position += 4; // simple name, access flags
+
+        if (outerIndex != 0 && outerName.equals(getClassName(outerIndex))) {
+          memberClasses.add(getClassName(innerIndex));
+        }
+      }
+      return memberClasses;
+    }
+
+    /** Turn a descriptor like <code>La/b/C;</code> into <code>a.b.C</code> */
+    private static String toBinaryName(final String descriptor) {
+      if (descriptor.startsWith("L") && descriptor.endsWith(";")) {
+        return descriptor.substring(1, descriptor.length() - 1).replace('/',
+            '.');
+      }
+      return descriptor;
+    }
+
+    private String getClassName(final int classIndex) throws IOException {
+      return getUtf8(readShort(constants[classIndex])).replace('/', '.');
+    }
+
+    /** Decode a modified UTF-8 constant */
+    private String getUtf8(final int index) throws IOException {
+      int offset = constants[index];
+      final int length = readShort(offset);
+      offset += 2;
+      final int end = offset + length;
+
+      final char[] chars = new char[length];
+      int count = 0;
+      while (offset < end) {
+        final int b = bytes[offset++] & 0xFF;
+        if (b < 0x80) {
+          chars[count++] = (char) b;
+        } else if ((b & 0xE0) == 0xC0) {
+          chars[count++] = (char) (((b & 0x1F) << 6) | (bytes[offset++] & 0x3F));
+        } else if ((b & 0xF0) == 0xE0) {
+          chars[count++] = (char) (((b & 0x0F) << 12)
+              | ((bytes[offset++] & 0x3F) << 6) | (bytes[offset++] & 0x3F));
+        } else {
+          throw new UTFDataFormatException("Malformed constant " + index);
+        }
+      }
+      return new String(chars, 0, count);
+    }
+
+    private int readShort() {
+      final int value = readShort(position);
+      position += 2;
+      return value;
+    }
+
+    private int readShort(final int offset) {
+      return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+    }
+
+    private int readInt() {
+      final int value = ((bytes[position] & 0xFF) << 24)
+          | ((bytes[position + 1] & 0xFF) << 16)
+          | ((bytes[position + 2] & 0xFF) << 8) | (bytes[position + 3] & 0xFF);
+      position += 4;
+      return value;
+    }
+  }
+}
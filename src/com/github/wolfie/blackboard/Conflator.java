@@ -0,0 +1,117 @@
+package com.github.wolfie.blackboard;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * Holds the undelivered {@link KeyedEvent KeyedEvents} of one conflated event
+ * type.
+ * </p>
+ *
+ * <p>
+ * Only the newest event per key is kept. A drain is scheduled on the
+ * Blackboard's executor as soon as there is something pending, and it keeps
+ * delivering until nothing is left. Drains never overlap, so the events of a
+ * key are delivered in the order they were fired.
+ * </p>
+ *
+ * @author Henrik Paul
+ * @see Blackboard#enableConflation(Class)
+ */
+class Conflator {
+
+  private static class Pending {
+    private KeyedEvent event;
+
+    /** The futures of the superseded and current event, or <code>null</code> */
+    private List<FireFuture> futures;
+  }
+
+  private final Blackboard blackboard;
+  private final ReentrantLock drainLock = new ReentrantLock();
+  private final Runnable drainTask = new Runnable() {
+    public void run() {
+      drain();
+    }
+  };
+
+  /** guarded by <code>this</code> */
+  private LinkedHashMap<Object, Pending> pending = new LinkedHashMap<Object, Pending>();
+  /** guarded by <code>this</code> */
+  private boolean drainScheduled = false;
+
+  Conflator(final Blackboard blackboard) {
+    this.blackboard = blackboard;
+  }
+
+  /**
+   * Queue <tt>event</tt>, replacing any pending event with the same key.
+   *
+   * @param future
+   *          the future to complete once the event, or an event replacing it,
+   *          is delivered. May be <code>null</code>.
+   */
+  void add(final KeyedEvent event, final FireFuture future) {
+    final boolean scheduleDrain;
+    synchronized (this) {
+      final Object key = event.getKey();
+      Pending pendingForKey = pending.get(key);
+      if (pendingForKey == null) {
+        pendingForKey = new Pending();
+        pending.put(key, pendingForKey);
+      }
+
+      pendingForKey.event = event;
+      if (future != null) {
+        if (pendingForKey.futures == null) {
+          pendingForKey.futures = new ArrayList<FireFuture>(1);
+        }
+        pendingForKey.futures.add(future);
+      }
+
+      scheduleDrain = !drainScheduled;
+      drainScheduled = true;
+    }
+
+    if (scheduleDrain) {
+      try {
+        blackboard.getExecutor().execute(drainTask);
+      } catch (final RuntimeException e) {
+        // the event stays pending; let the next one try again.
+        synchronized (this) {
+          drainScheduled = false;
+        }
+        throw e;
+      }
+    }
+  }
+
+  /** Deliver everything pending in the calling thread. */
+  void drain() {
+    drainLock.lock();
+    try {
+      while (true) {
+        final Collection<Pending> batch;
+        synchronized (this) {
+          if (pending.isEmpty()) {
+            drainScheduled = false;
+            return;
+          }
+          batch = pending.values();
+          pending = new LinkedHashMap<Object, Pending>();
+        }
+
+        for (final Pending pendingForKey : batch) {
+          blackboard.deliverConflated(pendingForKey.event,
+              pendingForKey.futures);
+        }
+      }
+    } finally {
+      drainLock.unlock();
+    }
+  }
+}
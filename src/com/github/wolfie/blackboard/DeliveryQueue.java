@@ -0,0 +1,218 @@
+package com.github.wolfie.blackboard;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.wolfie.blackboard.Blackboard.Delivery;
+import com.github.wolfie.blackboard.exception.QueueFullException;
+
+/**
+ * <p>
+ * Holds the undelivered asynchronous deliveries of one event type, up to a
+ * fixed capacity.
+ * </p>
+ *
+ * <p>
+ * A delivery takes a permit from the queue's own capacity, and from the
+ * budget shared by all queues of the Blackboard, if there is one. Both are
+ * given back when the delivery leaves the queue. When either has no permits
+ * left, the queue's {@link OverflowPolicy} decides what happens.
+ * </p>
+ *
+ * <p>
+ * Like a {@link Conflator}, the queue schedules a drain on the Blackboard's
+ * executor as soon as there is something queued, and drains never overlap, so
+ * the deliveries are run one at a time, in the order they were queued.
+ * </p>
+ *
+ * @author Henrik Paul
+ * @see Blackboard#setQueueCapacity(Class, int, OverflowPolicy)
+ */
+class DeliveryQueue {
+
+  private static class Entry {
+    private final Delivery delivery;
+
+    /** The budget a permit was taken from, or <code>null</code> */
+    private final Semaphore budget;
+
+    private Entry(final Delivery delivery, final Semaphore budget) {
+      this.delivery = delivery;
+      this.budget = budget;
+    }
+  }
+
+  private final Blackboard blackboard;
+  private final Class<? extends Event> event;
+  private final int capacity;
+  private final OverflowPolicy policy;
+  private final Semaphore space;
+
+  private final AtomicLong blocked = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong callerRuns = new AtomicLong();
+
+  private final Runnable drainTask = new Runnable() {
+    public void run() {
+      drain();
+    }
+  };
+
+  /** guarded by <code>this</code> */
+  private final ArrayDeque<Entry> entries = new ArrayDeque<Entry>();
+  /** guarded by <code>this</code> */
+  private boolean drainScheduled = false;
+
+  DeliveryQueue(final Blackboard blackboard,
+      final Class<? extends Event> event, final int capacity,
+      final OverflowPolicy policy) {
+    this.blackboard = blackboard;
+    this.event = event;
+    this.capacity = capacity;
+    this.policy = policy;
+    space = new Semaphore(capacity);
+  }
+
+  /**
+   * Queue <tt>delivery</tt>, or deal with it according to the overflow policy
+   * if there is no room.
+   * 
+   * @param budget
+   *          the permits shared by all queues, or <code>null</code> if there
+   *          is no budget.
+   * @throws QueueFullException
+   *           if there is no room and the policy is
+   *           {@link OverflowPolicy#REJECT}.
+   * @throws InterruptedException
+   *           if the policy is {@link OverflowPolicy#BLOCK} and the thread was
+   *           interrupted while waiting for room.
+   */
+  void offer(final Delivery delivery, final Semaphore budget)
+      throws InterruptedException {
+    if (!tryReserve(budget)) {
+      switch (policy) {
+      case BLOCK:
+        blocked.incrementAndGet();
+        reserve(budget);
+        break;
+
+      case DROP_OLDEST:
+        final Delivery oldest;
+        synchronized (this) {
+          final Entry first = entries.poll();
+          if (first != null) {
+            // the new delivery takes over the permits of the oldest one
+            entries.add(new Entry(delivery, first.budget));
+            oldest = first.delivery;
+          } else {
+            // the budget is taken by other queues, nothing here to drop
+            oldest = delivery;
+          }
+        }
+        drop(oldest);
+        return;
+
+      case DROP_NEWEST:
+        drop(delivery);
+        return;
+
+      case REJECT:
+        rejected.incrementAndGet();
+        throw new QueueFullException(event);
+
+      case CALLER_RUNS:
+        callerRuns.incrementAndGet();
+        delivery.run();
+        return;
+
+      default:
+        throw new IllegalStateException("Unexpected policy: " + policy);
+      }
+    }
+
+    final Entry entry = new Entry(delivery, budget);
+    final boolean scheduleDrain;
+    synchronized (this) {
+      entries.add(entry);
+      scheduleDrain = !drainScheduled;
+      drainScheduled = true;
+    }
+
+    if (scheduleDrain) {
+      try {
+        blackboard.getExecutor().execute(drainTask);
+      } catch (final RuntimeException e) {
+        // nothing else was queued, since no drain was scheduled
+        synchronized (this) {
+          entries.remove(entry);
+          drainScheduled = false;
+        }
+        release(entry);
+        throw e;
+      }
+    }
+  }
+
+  private boolean tryReserve(final Semaphore budget) {
+    if (!space.tryAcquire()) {
+      return false;
+    } else if (budget != null && !budget.tryAcquire()) {
+      space.release();
+      return false;
+    } else {
+      return true;
+    }
+  }
+
+  private void reserve(final Semaphore budget) throws InterruptedException {
+    space.acquire();
+    if (budget != null) {
+      try {
+        budget.acquire();
+      } catch (final InterruptedException e) {
+        space.release();
+        throw e;
+      }
+    }
+  }
+
+  private void release(final Entry entry) {
+    space.release();
+    if (entry.budget != null) {
+      entry.budget.release();
+    }
+  }
+
+  private void drop(final Delivery delivery) {
+    dropped.incrementAndGet();
+    delivery.failed(new QueueFullException(event));
+  }
+
+  /** Run everything queued in the calling thread. */
+  private void drain() {
+    while (true) {
+      final Entry entry;
+      synchronized (this) {
+        entry = entries.poll();
+        if (entry == null) {
+          drainScheduled = false;
+          return;
+        }
+      }
+
+      release(entry);
+      entry.delivery.run();
+    }
+  }
+
+  synchronized int getDepth() {
+    return entries.size();
+  }
+
+  QueueSnapshot getSnapshot() {
+    return new QueueSnapshot(capacity, policy, getDepth(), blocked.get(),
+        dropped.get(), rejected.get(), callerRuns.get());
+  }
+}
@@ -0,0 +1,320 @@
+package com.github.wolfie.blackboard;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.github.wolfie.blackboard.ClassDiscovery.PkgInfo;
+import com.github.wolfie.blackboard.ListenerIndexes.IndexedMethod;
+
+/**
+ * <p>
+ * Remembers what {@link Blackboard#discoverFrom(Class)} found in a package
+ * between runs, so that an unchanged package doesn't need to be scanned again.
+ * </p>
+ *
+ * <p>
+ * There is one file in the cache directory for each package and the jar or
+ * directory it was found in. The file records the
+ * {@link Event}/{@link Listener} pairs and the name of the listener method of
+ * each, together with a fingerprint of the jar or directory: its
+ * modification time, its size, and a hash of its contents. When the time and
+ * size are the same, the cached pairs are used as is. When they differ, the
+ * contents are hashed, and the cached pairs are still used if the hash
+ * matches.
+ * </p>
+ *
+ * @author Henrik Paul
+ */
+class DiscoveryCache {
+
+  /** The first bytes of a cache file */
+  private static final int MAGIC = 0x42424443;
+  private static final int VERSION = 1;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /** What a package looked like on disk at some point */
+  static class Fingerprint {
+    private final PkgInfo pkgInfo;
+    private final String location;
+    private final long modified;
+    private final long size;
+    private String hash;
+
+    private Fingerprint(final PkgInfo pkgInfo, final long modified,
+        final long size) {
+      this.pkgInfo = pkgInfo;
+      location = pkgInfo.PkgPath.getAbsolutePath();
+      this.modified = modified;
+      this.size = size;
+    }
+
+    /** The hash of the contents, computed the first time it's asked for */
+    private String getHash() throws IOException {
+      if (hash == null) {
+        hash = hash(pkgInfo);
+      }
+      return hash;
+    }
+  }
+
+  private final File directory;
+
+  DiscoveryCache(final File directory) {
+    this.directory = directory;
+  }
+
+  File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Take the fingerprint of the package of <tt>seedClass</tt>.
+   *
+   * @return the fingerprint, or <code>null</code> if the package isn't in a
+   *         jar or a directory.
+   */
+  static Fingerprint fingerprint(final Class<?> seedClass) {
+    final PkgInfo pkgInfo = ClassDiscovery.getPackageInfoOf(seedClass);
+    if (pkgInfo == null) {
+      return null;
+    }
+
+    final File path = pkgInfo.PkgPath;
+    if (path.isFile()) {
+      return new Fingerprint(pkgInfo, path.lastModified(), path.length());
+    } else if (path.isDirectory()) {
+      final File packageDirectory = new File(path, pkgInfo.PkgAsPath);
+      if (!packageDirectory.isDirectory()) {
+        return null;
+      }
+      // the directories' times change when class files come and go
+      final long[] modifiedAndSize = new long[] {
+          packageDirectory.lastModified(), 0 };
+      stat(packageDirectory, modifiedAndSize);
+      return new Fingerprint(pkgInfo, modifiedAndSize[0], modifiedAndSize[1]);
+    } else {
+      return null;
+    }
+  }
+
+  private static void stat(final File directory, final long[] modifiedAndSize) {
+    final File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (final File file : files) {
+      modifiedAndSize[0] = Math.max(modifiedAndSize[0], file.lastModified());
+      if (file.isDirectory()) {
+        stat(file, modifiedAndSize);
+      } else {
+        modifiedAndSize[1] += file.length();
+      }
+    }
+  }
+
+  /**
+   * Hash a whole jar, or the class files of the package in a directory.
+   */
+  private static String hash(final PkgInfo pkgInfo) throws IOException {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+
+    final byte[] buffer = new byte[8192];
+    if (pkgInfo.PkgPath.isFile()) {
+      digest(pkgInfo.PkgPath, digest, buffer);
+    } else {
+      final List<String> names = new ArrayList<String>();
+      listClassFiles(new File(pkgInfo.PkgPath, pkgInfo.PkgAsPath),
+          pkgInfo.PkgAsPath, names);
+      Collections.sort(names);
+      for (final String name : names) {
+        digest.update(name.getBytes(UTF8));
+        digest(new File(pkgInfo.PkgPath, name), digest, buffer);
+      }
+    }
+
+    final StringBuilder hex = new StringBuilder();
+    for (final byte b : digest.digest()) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+      hex.append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+
+  private static void listClassFiles(final File directory, final String path,
+      final List<String> names) {
+    final File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (final File file : files) {
+      if (file.isDirectory()) {
+        listClassFiles(file, path + file.getName() + '/', names);
+      } else if (file.getName().endsWith(".class")) {
+        names.add(path + file.getName());
+      }
+    }
+  }
+
+  private static void digest(final File file, final MessageDigest digest,
+      final byte[] buffer) throws IOException {
+    final InputStream in = new FileInputStream(file);
+    try {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Get the cached listener methods of the package, if the package is the
+   * same as when they were cached.
+   *
+   * @return the listener methods, which have no dispatchers, or
+   *         <code>null</code> if the cache has nothing for the package or the
+   *         package has changed since.
+   */
+  List<IndexedMethod> load(final Fingerprint fingerprint,
+      final ClassLoader classLoader) {
+    final File file = getFile(fingerprint);
+    if (!file.isFile()) {
+      return null;
+    }
+
+    final List<IndexedMethod> methods;
+    final boolean touched;
+    try {
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(
+          new FileInputStream(file)));
+      try {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION
+            || !in.readUTF().equals(fingerprint.location)
+            || !in.readUTF().equals(fingerprint.pkgInfo.PkgName)) {
+          return null;
+        }
+
+        final long modified = in.readLong();
+        final long size = in.readLong();
+        final String hash = in.readUTF();
+        touched = modified != fingerprint.modified || size != fingerprint.size;
+        if (touched && !hash.equals(fingerprint.getHash())) {
+          return null;
+        }
+
+        final int count = in.readInt();
+        methods = new ArrayList<IndexedMethod>(count);
+        for (int i = 0; i < count; i++) {
+          final Class<? extends Event> event = Class.forName(in.readUTF(),
+              false, classLoader).asSubclass(Event.class);
+          final Class<? extends Listener> listener = Class.forName(
+              in.readUTF(), false, classLoader).asSubclass(Listener.class);
+          methods.add(new IndexedMethod(listener, event, in.readUTF(), null));
+        }
+      } finally {
+        in.close();
+      }
+    } catch (final IOException e) {
+      return null;
+    } catch (final ClassNotFoundException e) {
+      return null;
+    } catch (final ClassCastException e) {
+      return null;
+    } catch (final LinkageError e) {
+      return null;
+    }
+
+    if (touched) {
+      // the contents are the same, skip hashing them the next time
+      try {
+        store(fingerprint, methods);
+      } catch (final IOException e) {
+        // the cached pairs are still good
+      }
+    }
+    return methods;
+  }
+
+  /**
+   * Cache the listener methods found in a package. The file is replaced
+   * atomically, so concurrent readers see either the old or the new one.
+   */
+  void store(final Fingerprint fingerprint, final List<IndexedMethod> methods)
+      throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Could not create " + directory);
+    }
+
+    final File file = getFile(fingerprint);
+    final File temporary = File.createTempFile(file.getName(), ".tmp",
+        directory);
+    try {
+      final DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(temporary)));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(fingerprint.location);
+        out.writeUTF(fingerprint.pkgInfo.PkgName);
+        out.writeLong(fingerprint.modified);
+        out.writeLong(fingerprint.size);
+        out.writeUTF(fingerprint.getHash());
+        out.writeInt(methods.size());
+        for (final IndexedMethod method : methods) {
+          out.writeUTF(method.getEvent().getName());
+          out.writeUTF(method.getListener().getName());
+          out.writeUTF(method.getMethodName());
+        }
+      } finally {
+        out.close();
+      }
+
+      try {
+        Files.move(temporary.toPath(), file.toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (final AtomicMoveNotSupportedException e) {
+        Files.move(temporary.toPath(), file.toPath(),
+            StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      temporary.delete();
+    }
+  }
+
+  /**
+   * Forget what was cached for the package, e.g. when a cached listener
+   * method is no longer there.
+   */
+  void remove(final Fingerprint fingerprint) {
+    getFile(fingerprint).delete();
+  }
+
+  private File getFile(final Fingerprint fingerprint) {
+    return new File(directory, fingerprint.pkgInfo.PkgName + "-"
+        + Integer.toHexString(fingerprint.location.hashCode()) + ".cache");
+  }
+}
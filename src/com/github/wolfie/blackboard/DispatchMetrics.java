@@ -0,0 +1,205 @@
+package com.github.wolfie.blackboard;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * <p>
+ * Counts what a {@link Blackboard} dispatches: how many {@link Event Events}
+ * of each type are fired, how many {@link Listener Listeners} they reach, how
+ * long {@link Blackboard#fire(Event)} takes, and how long each listener class
+ * takes to handle its events.
+ * </p>
+ *
+ * <p>
+ * Metrics are off by default, and turned on with
+ * {@link Blackboard#enableMetrics()}. Recording takes no locks: counters are
+ * atomic, and latencies go into fixed-size {@link LatencySnapshot histograms}.
+ * Read the numbers with {@link #getEventTypes()} and {@link #getListeners()},
+ * or over JMX after {@link #registerMBean(ObjectName)}.
+ * </p>
+ *
+ * @author Henrik Paul
+ */
+public class DispatchMetrics implements DispatchMetricsMXBean {
+
+  private static class EventTypeMetrics {
+    private final AtomicLong fired = new AtomicLong();
+    private final AtomicLong deliveries = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final LatencyHistogram fireLatency = new LatencyHistogram();
+
+    private EventTypeSnapshot getSnapshot() {
+      return new EventTypeSnapshot(fired.get(), deliveries.get(),
+          failures.get(), fireLatency.getSnapshot());
+    }
+
+    private void reset() {
+      fired.set(0);
+      deliveries.set(0);
+      failures.set(0);
+      fireLatency.reset();
+    }
+  }
+
+  private final ConcurrentMap<Class<? extends Event>, EventTypeMetrics> eventTypes = new ConcurrentHashMap<Class<? extends Event>, EventTypeMetrics>();
+  private final ConcurrentMap<Class<? extends Listener>, LatencyHistogram> listeners = new ConcurrentHashMap<Class<? extends Listener>, LatencyHistogram>();
+
+  /** guarded by <code>this</code> */
+  private ObjectName mBeanName;
+
+  DispatchMetrics() {
+    // created by Blackboard
+  }
+
+  /** An event was fired in some other way than {@link Blackboard#fire(Event)} */
+  void fired(final Event event) {
+    getEventTypeMetrics(event).fired.incrementAndGet();
+  }
+
+  /** {@link Blackboard#fire(Event)} returned after <tt>nanos</tt>. */
+  void fired(final Event event, final long nanos) {
+    final EventTypeMetrics metrics = getEventTypeMetrics(event);
+    metrics.fired.incrementAndGet();
+    metrics.fireLatency.record(nanos);
+  }
+
+  void delivered(final Event event, final Listener listener,
+      final long nanos, final boolean failed) {
+    final EventTypeMetrics metrics = getEventTypeMetrics(event);
+    metrics.deliveries.incrementAndGet();
+    if (failed) {
+      metrics.failures.incrementAndGet();
+    }
+
+    final Class<? extends Listener> listenerClass = listener.getClass();
+    LatencyHistogram histogram = listeners.get(listenerClass);
+    if (histogram == null) {
+      final LatencyHistogram newHistogram = new LatencyHistogram();
+      histogram = listeners.putIfAbsent(listenerClass, newHistogram);
+      if (histogram == null) {
+        histogram = newHistogram;
+      }
+    }
+    histogram.record(nanos);
+  }
+
+  private EventTypeMetrics getEventTypeMetrics(final Event event) {
+    final Class<? extends Event> eventClass = event.getClass();
+    EventTypeMetrics metrics = eventTypes.get(eventClass);
+    if (metrics == null) {
+      final EventTypeMetrics newMetrics = new EventTypeMetrics();
+      metrics = eventTypes.putIfAbsent(eventClass, newMetrics);
+      if (metrics == null) {
+        metrics = newMetrics;
+      }
+    }
+    return metrics;
+  }
+
+  public Map<String, EventTypeSnapshot> getEventTypes() {
+    final SortedMap<String, EventTypeSnapshot> snapshot = new TreeMap<String, EventTypeSnapshot>();
+    for (final Map.Entry<Class<? extends Event>, EventTypeMetrics> entry : eventTypes
+        .entrySet()) {
+      snapshot.put(entry.getKey().getName(), entry.getValue().getSnapshot());
+    }
+    return Collections.unmodifiableMap(snapshot);
+  }
+
+  /**
+   * Get the counters of one {@link Event} type.
+   *
+   * @return the counters, all zero if no such events have been fired.
+   */
+  public EventTypeSnapshot getEventType(final Class<? extends Event> eventClass) {
+    final EventTypeMetrics metrics = eventTypes.get(eventClass);
+    return (metrics != null ? metrics : new EventTypeMetrics()).getSnapshot();
+  }
+
+  public Map<String, LatencySnapshot> getListeners() {
+    final SortedMap<String, LatencySnapshot> snapshot = new TreeMap<String, LatencySnapshot>();
+    for (final Map.Entry<Class<? extends Listener>, LatencyHistogram> entry : listeners
+        .entrySet()) {
+      snapshot.put(entry.getKey().getName(), entry.getValue().getSnapshot());
+    }
+    return Collections.unmodifiableMap(snapshot);
+  }
+
+  /**
+   * Get the invocation latencies of one {@link Listener} class.
+   *
+   * @param listenerClass
+   *          the class of the listener objects, not a listener interface.
+   * @return the latencies, with a count of zero if no such listener has been
+   *         called.
+   */
+  public LatencySnapshot getListener(
+      final Class<? extends Listener> listenerClass) {
+    final LatencyHistogram histogram = listeners.get(listenerClass);
+    return (histogram != null ? histogram : new LatencyHistogram())
+        .getSnapshot();
+  }
+
+  public void reset() {
+    for (final EventTypeMetrics metrics : eventTypes.values()) {
+      metrics.reset();
+    }
+    for (final LatencyHistogram histogram : listeners.values()) {
+      histogram.reset();
+    }
+  }
+
+  /**
+   * Expose these metrics in the platform MBean server.
+   *
+   * @param name
+   *          the name to register with.
+   * @throws JMException
+   *           if the MBean server refuses the registration, e.g. because the
+   *           name is taken.
+   * @throws IllegalStateException
+   *           if these metrics are already registered.
+   */
+  public synchronized void registerMBean(final ObjectName name)
+      throws JMException {
+    if (name == null) {
+      throw new NullPointerException("Argument with index 0 was null.");
+    } else if (mBeanName != null) {
+      throw new IllegalStateException("Already registered as " + mBeanName);
+    }
+
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+    mBeanName = name;
+  }
+
+  /**
+   * Remove these metrics from the platform MBean server. Does nothing if they
+   * aren't registered.
+   */
+  public synchronized void unregisterMBean() {
+    if (mBeanName != null) {
+      final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      try {
+        server.unregisterMBean(mBeanName);
+      } catch (final JMException e) {
+        // someone else already unregistered it
+      }
+      mBeanName = null;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "events: " + getEventTypes() + ", listeners: " + getListeners();
+  }
+}
@@ -0,0 +1,27 @@
+package com.github.wolfie.blackboard;
+
+import java.util.Map;
+
+/**
+ * The JMX view of {@link DispatchMetrics}.
+ *
+ * @author Henrik Paul
+ * @see DispatchMetrics#registerMBean(javax.management.ObjectName)
+ */
+public interface DispatchMetricsMXBean {
+
+  /**
+   * @return the counters of every {@link Event} type fired so far, by class
+   *         name.
+   */
+  Map<String, EventTypeSnapshot> getEventTypes();
+
+  /**
+   * @return the invocation latencies of every {@link Listener} class called so
+   *         far, by class name.
+   */
+  Map<String, LatencySnapshot> getListeners();
+
+  /** Set all counters and histograms back to zero. */
+  void reset();
+}
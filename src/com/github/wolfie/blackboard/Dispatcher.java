@@ -0,0 +1,26 @@
+package com.github.wolfie.blackboard;
+
+/**
+ * <p>
+ * Calls one listener method directly, without reflection.
+ * </p>
+ * 
+ * <p>
+ * Dispatchers are generated at compile time by the
+ * <code>ListenerIndexProcessor</code> of the blackboard-processor jar, and
+ * handed to Blackboard through a {@link ListenerIndex}. There is normally no
+ * need to implement this by hand.
+ * </p>
+ * 
+ * @author Henrik Paul
+ */
+public interface Dispatcher {
+
+  /**
+   * Call the listener method of <tt>listener</tt> with <tt>event</tt>.
+   * 
+   * @throws Throwable
+   *           anything the listener method throws, as is.
+   */
+  void dispatch(Listener listener, Event event) throws Throwable;
+}
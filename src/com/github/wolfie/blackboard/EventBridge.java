@@ -0,0 +1,854 @@
+package com.github.wolfie.blackboard;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Forwards the {@link Event Events} of selected types between
+ * {@link Blackboard Blackboards} in different JVMs.
+ * </p>
+ *
+ * <p>
+ * A bridge {@link Blackboard#addTap(Class, EventTap) taps} the
+ * {@link #forward(Class) forwarded} event types of its Blackboard, and sends
+ * the events fired there to all its peers, over TCP or Unix-domain sockets.
+ * The peers fire the events they receive on their own Blackboards. Events are
+ * only sent to direct peers, and an event a bridge received is never sent
+ * back out, so several bridges can be connected to each other without
+ * events going around in loops. Connect each pair of bridges once, either
+ * way: duplicate connections, and connections of a bridge to itself, are
+ * closed.
+ * </p>
+ *
+ * <p>
+ * Each bridge has a single I/O thread, which does all the socket work with
+ * non-blocking NIO, and also fires the received events, so the listeners of
+ * remote events should return quickly. Firing an event only encodes it and
+ * queues it for each peer. The I/O thread writes as many queued events as fit
+ * in one frame at a time, so under load, events go out in batches. Each frame
+ * is a length, followed by records of a tag byte and variable length
+ * integers: a type is sent by name the first time it's used on a connection,
+ * and by a small index after that, followed by the event's state as written
+ * by the {@link EventCodec}.
+ * </p>
+ *
+ * <p>
+ * A peer that can't keep up isn't allowed to use up the memory: at most
+ * {@link #MAX_PENDING_EVENTS} events are queued per peer, and the events over
+ * that are dropped and {@link #getDroppedEvents() counted}. Lost connections
+ * aren't reconnected.
+ * </p>
+ *
+ * @author Henrik Paul
+ */
+public class EventBridge implements Closeable {
+
+  /** The most events queued for one peer before new ones are dropped */
+  public static final int MAX_PENDING_EVENTS = 65536;
+
+  /** The first bytes sent on a connection */
+  private static final int MAGIC = 0x42424252;
+  private static final int VERSION = 1;
+
+  private static final byte DEFINE_TYPE = 1;
+  private static final byte EVENT = 2;
+
+  /** A frame is closed once it has this many bytes */
+  private static final int FRAME_SIZE = 64 * 1024;
+
+  /** The largest frame accepted, to catch garbage on the wire */
+  private static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+  /** An encoded event, shared by the queues of all peers */
+  private static class Outgoing {
+    private final Class<? extends Event> type;
+    private final byte[] state;
+
+    public Outgoing(final Class<? extends Event> type, final byte[] state) {
+      this.type = type;
+      this.state = state;
+    }
+  }
+
+  /** A connection to a peer. Only touched by the I/O thread, unless noted */
+  private class Connection {
+    private final SocketChannel channel;
+    private final boolean outbound;
+    private SelectionKey key;
+
+    /** The peer's node id, once it has said hello */
+    private long peerId;
+    private boolean helloReceived = false;
+
+    /** Thread safe: added to by the firing threads */
+    private final Queue<Outgoing> outgoing = new ConcurrentLinkedQueue<Outgoing>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private ByteBuffer readBuffer = ByteBuffer.allocate(FRAME_SIZE);
+    private ByteBuffer writeBuffer;
+
+    private final Map<Class<? extends Event>, Integer> sentTypes = new HashMap<Class<? extends Event>, Integer>();
+    private final List<Class<? extends Event>> receivedTypes = new ArrayList<Class<? extends Event>>();
+
+    public Connection(final SocketChannel channel, final boolean outbound) {
+      this.channel = channel;
+      this.outbound = outbound;
+
+      writeBuffer = ByteBuffer.allocate(20);
+      writeBuffer.putInt(16).putInt(MAGIC).putInt(VERSION).putLong(nodeId);
+      writeBuffer.flip();
+    }
+
+    /** Called by the firing threads */
+    private void enqueue(final Outgoing event) {
+      if (pending.incrementAndGet() > MAX_PENDING_EVENTS) {
+        pending.decrementAndGet();
+        droppedEvents.incrementAndGet();
+        return;
+      }
+
+      outgoing.add(event);
+      if (flushRequested.compareAndSet(false, true)) {
+        flushes.add(this);
+        selector.wakeup();
+      }
+    }
+
+    /** The node that opened the connection */
+    private long getInitiator() {
+      return outbound ? nodeId : peerId;
+    }
+  }
+
+  private final Blackboard blackboard;
+  private final EventCodec codec;
+  private final long nodeId = new Random().nextLong();
+  private final Selector selector;
+  private final Thread ioThread;
+
+  private final CopyOnWriteArrayList<Class<? extends Event>> forwardedTypes = new CopyOnWriteArrayList<Class<? extends Event>>();
+  private final ConcurrentMap<String, Class<? extends Event>> typesByName = new ConcurrentHashMap<String, Class<? extends Event>>();
+
+  /** The connections that have said hello, for the firing threads */
+  private final List<Connection> connections = new CopyOnWriteArrayList<Connection>();
+
+  /** Work for the I/O thread */
+  private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+  private final Queue<Connection> flushes = new ConcurrentLinkedQueue<Connection>();
+
+  /** I/O thread only */
+  private final Map<Long, Connection> connectionsByPeer = new HashMap<Long, Connection>();
+  private final List<ServerSocketChannel> servers = new ArrayList<ServerSocketChannel>();
+  private final List<Path> socketFiles = new ArrayList<Path>();
+
+  /** The event the I/O thread is firing, which must not be sent back out */
+  private volatile Event receiving;
+  private volatile boolean closed = false;
+
+  private final AtomicLong sentEvents = new AtomicLong();
+  private final AtomicLong sentFrames = new AtomicLong();
+  private final AtomicLong receivedEvents = new AtomicLong();
+  private final AtomicLong droppedEvents = new AtomicLong();
+
+  private final EventTap tap = new EventTap() {
+    public void fired(final Event event) {
+      send(event);
+    }
+  };
+
+  /**
+   * Create a bridge for <tt>blackboard</tt>. It forwards nothing until
+   * {@link #forward(Class) told to}, and has no peers until it's
+   * {@link #bind(SocketAddress) bound} or {@link #connect(SocketAddress)
+   * connected}.
+   *
+   * @param blackboard
+   *          The Blackboard to forward events from and fire events on.
+   * @param codec
+   *          Encodes and decodes the forwarded events.
+   */
+  public EventBridge(final Blackboard blackboard, final EventCodec codec)
+      throws IOException {
+    if (blackboard == null) {
+      throw new NullPointerException("Argument with index 0 was null.");
+    } else if (codec == null) {
+      throw new NullPointerException("Argument with index 1 was null.");
+    }
+
+    this.blackboard = blackboard;
+    this.codec = codec;
+    selector = Selector.open();
+    ioThread = new Thread(new Runnable() {
+      public void run() {
+        loop();
+      }
+    }, "blackboard-bridge-" + Long.toHexString(nodeId));
+    ioThread.setDaemon(true);
+    ioThread.start();
+  }
+
+  /**
+   * Send the events of type <tt>event</tt>, and its subtypes, fired on the
+   * Blackboard to the peers, and fire the ones received from the peers. The
+   * peers need to forward the same types, and to have them registered.
+   */
+  public void forward(final Class<? extends Event> event) {
+    if (event == null) {
+      throw new NullPointerException("Argument with index 0 was null.");
+    }
+    if (forwardedTypes.addIfAbsent(event)) {
+      typesByName.put(event.getName(), event);
+      blackboard.addTap(event, tap);
+    }
+  }
+
+  /**
+   * Accept connections from peers at <tt>address</tt>.
+   *
+   * @param address
+   *          An {@link InetSocketAddress}, or a Unix-domain address from
+   *          {@link #unixDomainAddress(File)}.
+   * @return the address bound, with the port chosen if <tt>address</tt> had
+   *         port <code>0</code>.
+   */
+  public SocketAddress bind(final SocketAddress address) throws IOException {
+    final ServerSocketChannel server;
+    if (address instanceof InetSocketAddress) {
+      server = ServerSocketChannel.open();
+    } else {
+      server = (ServerSocketChannel) open(ServerSocketChannel.class);
+    }
+
+    try {
+      server.bind(address);
+      server.configureBlocking(false);
+    } catch (final IOException e) {
+      server.close();
+      throw e;
+    }
+
+    final Path socketFile = getSocketFile(address);
+    runInIoThread(new Runnable() {
+      public void run() {
+        try {
+          server.register(selector, SelectionKey.OP_ACCEPT);
+          servers.add(server);
+          if (socketFile != null) {
+            socketFiles.add(socketFile);
+          }
+        } catch (final ClosedChannelException e) {
+          // the bridge was closed meanwhile
+        }
+      }
+    });
+    return server.getLocalAddress();
+  }
+
+  /**
+   * Connect to the peer bridge at <tt>address</tt>. The connection is ready
+   * for events once the peers have exchanged hellos, which is counted in
+   * {@link #getPeerCount()}.
+   *
+   * @param address
+   *          An {@link InetSocketAddress}, or a Unix-domain address from
+   *          {@link #unixDomainAddress(File)}.
+   */
+  public void connect(final SocketAddress address) throws IOException {
+    final SocketChannel channel;
+    if (address instanceof InetSocketAddress) {
+      channel = SocketChannel.open();
+    } else {
+      channel = (SocketChannel) open(SocketChannel.class);
+    }
+
+    try {
+      channel.connect(address);
+      configure(channel);
+    } catch (final IOException e) {
+      channel.close();
+      throw e;
+    }
+
+    runInIoThread(new Runnable() {
+      public void run() {
+        register(new Connection(channel, true));
+      }
+    });
+  }
+
+  /**
+   * <p>
+   * Get the address of a Unix-domain socket at <tt>path</tt>, for
+   * {@link #bind(SocketAddress)} and {@link #connect(SocketAddress)}.
+   * </p>
+   *
+   * <p>
+   * Unix-domain sockets need Java 16 or later.
+   * </p>
+   *
+   * @throws UnsupportedOperationException
+   *           if the JVM has no Unix-domain sockets.
+   */
+  public static SocketAddress unixDomainAddress(final File path) {
+    try {
+      return (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress")
+          .getMethod("of", String.class).invoke(null, path.getPath());
+    } catch (final ClassNotFoundException e) {
+      throw new UnsupportedOperationException(
+          "Unix-domain sockets need Java 16 or later");
+    } catch (final Exception e) {
+      throw new UnsupportedOperationException(e);
+    }
+  }
+
+  /**
+   * Open a Unix-domain channel with <code>open(ProtocolFamily)</code>, which
+   * only exists on Java 16 and later.
+   */
+  private static Object open(final Class<?> channelClass) throws IOException {
+    final ProtocolFamily unix;
+    try {
+      unix = StandardProtocolFamily.valueOf("UNIX");
+    } catch (final IllegalArgumentException e) {
+      throw new UnsupportedOperationException(
+          "Unix-domain sockets need Java 16 or later");
+    }
+
+    try {
+      final Method open = channelClass.getMethod("open", ProtocolFamily.class);
+      return open.invoke(null, unix);
+    } catch (final InvocationTargetException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new UnsupportedOperationException(e.getCause());
+    } catch (final Exception e) {
+      throw new UnsupportedOperationException(e);
+    }
+  }
+
+  /** @return the file of a Unix-domain socket, or <code>null</code>. */
+  private static Path getSocketFile(final SocketAddress address) {
+    if (address instanceof InetSocketAddress) {
+      return null;
+    }
+    try {
+      return (Path) address.getClass().getMethod("getPath").invoke(address);
+    } catch (final Exception e) {
+      return null;
+    }
+  }
+
+  private static void configure(final SocketChannel channel)
+      throws IOException {
+    channel.configureBlocking(false);
+    if (channel.getLocalAddress() instanceof InetSocketAddress) {
+      // the frames are already batched
+      channel.setOption(StandardSocketOptions.TCP_NODELAY, Boolean.TRUE);
+    }
+  }
+
+  /** Encode <tt>event</tt> and queue it for every peer. */
+  private void send(final Event event) {
+    if (event == receiving && Thread.currentThread() == ioThread) {
+      // it came from a peer
+      return;
+    }
+
+    final List<Connection> connections = this.connections;
+    if (connections.isEmpty()) {
+      return;
+    }
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try {
+      final DataOutputStream out = new DataOutputStream(bytes);
+      codec.write(event, out);
+      out.flush();
+    } catch (final IOException e) {
+      new IOException("Could not encode " + event, e).printStackTrace();
+      return;
+    }
+
+    final Outgoing outgoing = new Outgoing(event.getClass(),
+        bytes.toByteArray());
+    for (final Connection connection : connections) {
+      connection.enqueue(outgoing);
+    }
+  }
+
+  private void runInIoThread(final Runnable task) throws IOException {
+    if (closed) {
+      throw new ClosedChannelException();
+    }
+    tasks.add(task);
+    selector.wakeup();
+  }
+
+  private void loop() {
+    try {
+      while (!closed) {
+        selector.select();
+
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+          task.run();
+        }
+
+        Connection connection;
+        while ((connection = flushes.poll()) != null) {
+          connection.flushRequested.set(false);
+          if (connection.key != null && connection.key.isValid()) {
+            write(connection);
+          }
+        }
+
+        for (final SelectionKey key : selector.selectedKeys()) {
+          if (!key.isValid()) {
+            continue;
+          } else if (key.isAcceptable()) {
+            accept((ServerSocketChannel) key.channel());
+          } else {
+            connection = (Connection) key.attachment();
+            if (key.isReadable()) {
+              read(connection);
+            }
+            if (key.isValid() && key.isWritable()) {
+              write(connection);
+            }
+          }
+        }
+        selector.selectedKeys().clear();
+      }
+    } catch (final IOException e) {
+      e.printStackTrace();
+    } finally {
+      // whatever ended the loop, nothing will run the tasks any more
+      closed = true;
+      shutDown();
+    }
+  }
+
+  private void accept(final ServerSocketChannel server) {
+    try {
+      final SocketChannel channel = server.accept();
+      if (channel != null) {
+        configure(channel);
+        register(new Connection(channel, false));
+      }
+    } catch (final IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private void register(final Connection connection) {
+    try {
+      connection.key = connection.channel.register(selector,
+          SelectionKey.OP_READ, connection);
+      write(connection);
+    } catch (final IOException e) {
+      close(connection);
+    }
+  }
+
+  private void write(final Connection connection) {
+    try {
+      while (true) {
+        if (connection.writeBuffer == null
+            || !connection.writeBuffer.hasRemaining()) {
+          connection.writeBuffer = nextFrame(connection);
+          if (connection.writeBuffer == null) {
+            connection.key.interestOps(SelectionKey.OP_READ);
+            return;
+          }
+        }
+
+        connection.channel.write(connection.writeBuffer);
+        if (connection.writeBuffer.hasRemaining()) {
+          // the socket is full, continue when it's writable again
+          connection.key.interestOps(SelectionKey.OP_READ
+              | SelectionKey.OP_WRITE);
+          return;
+        }
+      }
+    } catch (final IOException e) {
+      close(connection);
+    }
+  }
+
+  /**
+   * Put as many queued events as fit into a frame.
+   *
+   * @return the frame, or <code>null</code> if nothing is queued.
+   */
+  private ByteBuffer nextFrame(final Connection connection)
+      throws IOException {
+    if (connection.outgoing.isEmpty()) {
+      return null;
+    }
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+    final DataOutputStream out = new DataOutputStream(bytes);
+    Outgoing event;
+    int count = 0;
+    while (out.size() < FRAME_SIZE
+        && (event = connection.outgoing.poll()) != null) {
+      connection.pending.decrementAndGet();
+
+      Integer index = connection.sentTypes.get(event.type);
+      if (index == null) {
+        index = connection.sentTypes.size();
+        connection.sentTypes.put(event.type, index);
+        out.writeByte(DEFINE_TYPE);
+        writeVarInt(out, index);
+        out.writeUTF(event.type.getName());
+      }
+
+      out.writeByte(EVENT);
+      writeVarInt(out, index);
+      writeVarInt(out, event.state.length);
+      out.write(event.state);
+      count++;
+    }
+
+    sentEvents.addAndGet(count);
+    sentFrames.incrementAndGet();
+
+    final ByteBuffer frame = ByteBuffer.allocate(4 + out.size());
+    frame.putInt(out.size()).put(bytes.toByteArray());
+    frame.flip();
+    return frame;
+  }
+
+  private void read(final Connection connection) {
+    try {
+      if (connection.channel.read(connection.readBuffer) == -1) {
+        close(connection);
+        return;
+      }
+
+      final ByteBuffer buffer = connection.readBuffer;
+      buffer.flip();
+      while (buffer.remaining() >= 4) {
+        final int length = buffer.getInt(buffer.position());
+        if (length < 0 || length > MAX_FRAME_SIZE) {
+          throw new IOException("Unexpected frame length " + length);
+        } else if (buffer.remaining() < 4 + length) {
+          break;
+        }
+
+        final byte[] frame = new byte[length];
+        buffer.getInt();
+        buffer.get(frame);
+        try {
+          if (!readFrame(connection, frame)) {
+            return;
+          }
+        } catch (final RuntimeException e) {
+          // e.g. from the codec; the rest of the stream can't be trusted
+          e.printStackTrace();
+          close(connection);
+          return;
+        } catch (final Error e) {
+          e.printStackTrace();
+          close(connection);
+          return;
+        }
+      }
+      buffer.compact();
+
+      if (buffer.position() >= 4) {
+        // make room for a frame longer than the buffer
+        final int length = buffer.getInt(0);
+        if (length + 4 > buffer.capacity()) {
+          buffer.flip();
+          connection.readBuffer = ByteBuffer.allocate(length + 4).put(buffer);
+        }
+      }
+    } catch (final IOException e) {
+      e.printStackTrace();
+      close(connection);
+    }
+  }
+
+  /** @return <code>false</code> if the connection was closed */
+  private boolean readFrame(final Connection connection, final byte[] frame)
+      throws IOException {
+    final DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+        frame));
+    if (!connection.helloReceived) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("Not a compatible Blackboard bridge");
+      }
+      return hello(connection, in.readLong());
+    }
+
+    while (in.available() > 0) {
+      final byte tag = in.readByte();
+      if (tag == DEFINE_TYPE) {
+        final int index = readVarInt(in);
+        final String name = in.readUTF();
+        if (index != connection.receivedTypes.size()) {
+          throw new IOException("Unexpected type index " + index);
+        }
+        connection.receivedTypes.add(resolve(name));
+      } else if (tag == EVENT) {
+        final int index = readVarInt(in);
+        final int length = readVarInt(in);
+        final int position = frame.length - in.available();
+        if (in.skipBytes(length) != length) {
+          throw new IOException("Truncated event");
+        }
+        if (index >= connection.receivedTypes.size()) {
+          throw new IOException("Undefined type index " + index);
+        }
+
+        final Class<? extends Event> type = connection.receivedTypes
+            .get(index);
+        if (type != null) {
+          fire(type, new DataInputStream(new ByteArrayInputStream(frame,
+              position, length)));
+        }
+      } else {
+        throw new IOException("Unexpected tag " + tag);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The peer has told its node id.
+   *
+   * @return <code>false</code> if the connection was closed
+   */
+  private boolean hello(final Connection connection, final long peerId) {
+    connection.peerId = peerId;
+    connection.helloReceived = true;
+
+    if (peerId == nodeId) {
+      close(connection);
+      return false;
+    }
+
+    final Connection existing = connectionsByPeer.get(peerId);
+    if (existing != null) {
+      // both ends keep the connection opened by the node with the lower id
+      final long keeper = Math.min(nodeId, peerId);
+      if (connection.getInitiator() == keeper
+          && existing.getInitiator() != keeper) {
+        close(existing);
+      } else {
+        close(connection);
+        return false;
+      }
+    }
+
+    connectionsByPeer.put(peerId, connection);
+    connections.add(connection);
+    return true;
+  }
+
+  /**
+   * @return the forwarded type named <tt>name</tt>, or <code>null</code> if
+   *         it isn't forwarded here.
+   */
+  private Class<? extends Event> resolve(final String name) {
+    final Class<? extends Event> type = typesByName.get(name);
+    if (type != null) {
+      return type;
+    }
+
+    // a subtype of a forwarded type
+    for (final Class<? extends Event> forwardedType : forwardedTypes) {
+      try {
+        final Class<?> candidate = Class.forName(name, false,
+            forwardedType.getClassLoader());
+        if (forwardedType.isAssignableFrom(candidate)) {
+          final Class<? extends Event> subtype = candidate
+              .asSubclass(Event.class);
+          typesByName.put(name, subtype);
+          return subtype;
+        }
+      } catch (final ClassNotFoundException e) {
+        // try the next one
+      } catch (final LinkageError e) {
+        // try the next one
+      }
+    }
+    return null;
+  }
+
+  private void fire(final Class<? extends Event> type,
+      final DataInputStream in) {
+    final Event event;
+    try {
+      event = codec.read(type, in);
+    } catch (final IOException e) {
+      new IOException("Could not decode " + type.getName(), e)
+          .printStackTrace();
+      return;
+    }
+
+    receivedEvents.incrementAndGet();
+    receiving = event;
+    try {
+      blackboard.fire(event);
+    } catch (final RuntimeException e) {
+      e.printStackTrace();
+    } finally {
+      receiving = null;
+    }
+  }
+
+  private static void writeVarInt(final DataOutputStream out, final int value)
+      throws IOException {
+    int remaining = value;
+    while ((remaining & ~0x7F) != 0) {
+      out.writeByte((remaining & 0x7F) | 0x80);
+      remaining >>>= 7;
+    }
+    out.writeByte(remaining);
+  }
+
+  private static int readVarInt(final DataInputStream in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      final int b = in.readUnsignedByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed variable length integer");
+  }
+
+  private void close(final Connection connection) {
+    connections.remove(connection);
+    if (connection.helloReceived
+        && connectionsByPeer.get(connection.peerId) == connection) {
+      connectionsByPeer.remove(connection.peerId);
+    }
+    if (connection.key != null) {
+      connection.key.cancel();
+    }
+    try {
+      connection.channel.close();
+    } catch (final IOException e) {
+      // it's gone either way
+    }
+  }
+
+  private void shutDown() {
+    for (final SelectionKey key : selector.keys()) {
+      if (key.attachment() instanceof Connection) {
+        close((Connection) key.attachment());
+      }
+    }
+    for (final Connection connection : connections) {
+      close(connection);
+    }
+    for (final ServerSocketChannel server : servers) {
+      try {
+        server.close();
+      } catch (final IOException e) {
+        // it's gone either way
+      }
+    }
+    for (final Path socketFile : socketFiles) {
+      try {
+        Files.deleteIfExists(socketFile);
+      } catch (final IOException e) {
+        // leave it
+      }
+    }
+    try {
+      selector.close();
+    } catch (final IOException e) {
+      // it's gone either way
+    }
+  }
+
+  /**
+   * Stop forwarding, and close all connections. Events still queued for the
+   * peers are discarded.
+   */
+  public void close() {
+    blackboard.removeTap(tap);
+    closed = true;
+    selector.wakeup();
+    if (Thread.currentThread() != ioThread) {
+      try {
+        ioThread.join();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /** @return the number of peers connected and ready for events. */
+  public int getPeerCount() {
+    return connections.size();
+  }
+
+  /** @return the number of events sent to the peers, counted per peer. */
+  public long getSentEvents() {
+    return sentEvents.get();
+  }
+
+  /**
+   * @return the number of frames sent to the peers. Compared to
+   *         {@link #getSentEvents()}, this tells how well the events are
+   *         batched.
+   */
+  public long getSentFrames() {
+    return sentFrames.get();
+  }
+
+  /** @return the number of events received from the peers. */
+  public long getReceivedEvents() {
+    return receivedEvents.get();
+  }
+
+  /**
+   * @return the number of events not sent because a peer had
+   *         {@link #MAX_PENDING_EVENTS} events queued already.
+   */
+  public long getDroppedEvents() {
+    return droppedEvents.get();
+  }
+}
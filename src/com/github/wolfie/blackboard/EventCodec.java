@@ -0,0 +1,37 @@
+package com.github.wolfie.blackboard;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * <p>
+ * Turns the {@link Event Events} an {@link EventBridge} forwards, or an
+ * {@link EventJournal} records, into bytes and back.
+ * </p>
+ * 
+ * <p>
+ * The bridge and the journal already record the class of each event, once per
+ * type and connection or segment, so a codec only needs to write the state of
+ * the event. The methods may be called from several threads at once.
+ * </p>
+ * 
+ * @author Henrik Paul
+ * @see SerializingCodec
+ */
+public interface EventCodec {
+
+  /** Write the state of <tt>event</tt> into <tt>out</tt>. */
+  void write(Event event, DataOutputStream out) throws IOException;
+
+  /**
+   * Read an event written by {@link #write(Event, DataOutputStream)}.
+   * 
+   * @param type
+   *          the class of the written event.
+   * @param in
+   *          the bytes written for the event, and no more.
+   */
+  Event read(Class<? extends Event> type, DataInputStream in)
+      throws IOException;
+}
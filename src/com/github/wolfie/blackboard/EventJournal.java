@@ -0,0 +1,773 @@
+package com.github.wolfie.blackboard;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * A durable, append-only record of {@link Event Events}, for audit and for
+ * rebuilding state after a restart.
+ * </p>
+ *
+ * <p>
+ * A journal {@link #record(Blackboard, Class) records} selected event types of
+ * one or more {@link Blackboard Blackboards}, or is {@link #append(Event)
+ * appended} to directly. Appending only encodes the event, with the
+ * {@link EventCodec}, and queues it: a single writer thread does all the disk
+ * work, so firing an event never waits for the disk, unless the writer is
+ * {@link #MAX_PENDING_EVENTS} events behind. The writer takes all the events
+ * queued at once, and writes them as one group, so a slow fsync just makes
+ * the next group bigger. Each event is given a sequence number, one more than
+ * the event before it, and the time it was appended.
+ * </p>
+ *
+ * <p>
+ * The events are written to segment files in a directory, named after the
+ * first sequence number in them, which are memory mapped. Once a segment is
+ * full, a new one is started, and the old segments beyond the
+ * {@link #setMaxSegments(int) count} or {@link #setMaxAge(long, TimeUnit)
+ * age} to retain are deleted. Each record has a checksum, and when a journal
+ * is opened, whatever follows the last intact record, such as a record only
+ * half written when the machine went down, is erased. When the records are
+ * forced to the disk is decided by the {@link FsyncPolicy}.
+ * </p>
+ *
+ * <p>
+ * The records are read back in order with a {@link JournalReader}, even while
+ * they're being written.
+ * </p>
+ *
+ * @author Henrik Paul
+ */
+public class EventJournal implements Closeable {
+
+  /** The size of a segment, unless given otherwise */
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  /** The most events queued for the writer before appending blocks */
+  public static final int MAX_PENDING_EVENTS = 65536;
+
+  static final int MAGIC = 0x4242424a;
+  static final int VERSION = 1;
+
+  /** The magic number, the version and the first sequence number */
+  static final int SEGMENT_HEADER_SIZE = 16;
+
+  /** The length and the checksum of the body that follows */
+  static final int RECORD_HEADER_SIZE = 8;
+
+  static final byte DEFINE_TYPE = 1;
+  static final byte EVENT = 2;
+
+  /** The tag, the sequence number, the timestamp and the type index */
+  static final int EVENT_HEADER_SIZE = 21;
+
+  static final String SUFFIX = ".journal";
+  static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /** An encoded event, or a request for the writer */
+  private static class Entry {
+    private final String type;
+    private final byte[] state;
+    private final long timestamp;
+    private final CountDownLatch synced;
+
+    public Entry(final String type, final byte[] state, final long timestamp,
+        final CountDownLatch synced) {
+      this.type = type;
+      this.state = state;
+      this.timestamp = timestamp;
+      this.synced = synced;
+    }
+  }
+
+  private static final Entry CLOSE = new Entry(null, null, 0, null);
+
+  /**
+   * The Blackboard a {@link JournalReplay} is firing an event on in this
+   * thread. The event is already in a journal, so it isn't recorded again from
+   * that Blackboard, but other Blackboards are recorded as usual.
+   */
+  static final ThreadLocal<Blackboard> REPLAYING = new ThreadLocal<Blackboard>();
+
+  private final File directory;
+  private final EventCodec codec;
+  private final int segmentSize;
+  private final Thread writer;
+  private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<Entry>(
+      MAX_PENDING_EVENTS);
+  private final ConcurrentMap<Blackboard, EventTap> taps = new ConcurrentHashMap<Blackboard, EventTap>();
+
+  private volatile FsyncPolicy fsyncPolicy = FsyncPolicy.PERIODIC;
+  private volatile long fsyncInterval = TimeUnit.SECONDS.toMillis(1);
+  private volatile int maxSegments = 0;
+  private volatile long maxAge = 0;
+
+  private volatile boolean closed = false;
+  private volatile IOException failure;
+
+  private final AtomicLong appendedEvents = new AtomicLong();
+  private final AtomicLong writtenEvents = new AtomicLong();
+  private final AtomicLong commits = new AtomicLong();
+  private final AtomicLong fsyncs = new AtomicLong();
+
+  /** Writer thread only, after the constructor */
+  private File segmentFile;
+  private MappedByteBuffer segment;
+  private final Map<String, Integer> segmentTypes = new HashMap<String, Integer>();
+  private long segmentEvents;
+  private long nextSequence = 1;
+  private long lastTimestamp;
+  private boolean dirty = false;
+  private long lastFsync = System.currentTimeMillis();
+  private byte[] body = new byte[256];
+  private final CRC32 crc = new CRC32();
+
+  /** Appends the events fired on one recorded Blackboard */
+  private class RecordingTap implements EventTap {
+    private final Blackboard blackboard;
+
+    public RecordingTap(final Blackboard blackboard) {
+      this.blackboard = blackboard;
+    }
+
+    public void fired(final Event event) {
+      if (REPLAYING.get() == blackboard) {
+        return;
+      }
+      try {
+        append(event);
+      } catch (final IOException e) {
+        new IOException("Could not journal " + event, e).printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * Open the journal in <tt>directory</tt>, with segments of
+   * {@link #DEFAULT_SEGMENT_SIZE}.
+   *
+   * @see #EventJournal(File, EventCodec, int)
+   */
+  public EventJournal(final File directory, final EventCodec codec)
+      throws IOException {
+    this(directory, codec, DEFAULT_SEGMENT_SIZE);
+  }
+
+  /**
+   * Open the journal in <tt>directory</tt>, creating the directory if needed.
+   * If it already has a journal, the new events are appended to it, after
+   * erasing anything that follows its last intact record.
+   *
+   * @param directory
+   *          The directory for the segment files. Only one journal at a time
+   *          may be open in a directory.
+   * @param codec
+   *          Encodes the events.
+   * @param segmentSize
+   *          The size of new segment files, in bytes. An event that doesn't
+   *          fit in one gets a segment of its own.
+   */
+  public EventJournal(final File directory, final EventCodec codec,
+      final int segmentSize) throws IOException {
+    if (directory == null) {
+      throw new NullPointerException("Argument with index 0 was null.");
+    } else if (codec == null) {
+      throw new NullPointerException("Argument with index 1 was null.");
+    } else if (segmentSize < SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE
+        + EVENT_HEADER_SIZE) {
+      throw new IllegalArgumentException("Segments of " + segmentSize
+          + " bytes are too small");
+    }
+
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Could not create " + directory);
+    }
+
+    this.directory = directory;
+    this.codec = codec;
+    this.segmentSize = segmentSize;
+    recover();
+
+    writer = new Thread(new Runnable() {
+      public void run() {
+        write();
+      }
+    }, "blackboard-journal-" + directory.getName());
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Append the events of type <tt>event</tt>, and its subtypes, fired on
+   * <tt>blackboard</tt> to this journal, until it's closed. Events that can't
+   * be appended are printed, since the firing thread can't be told. Events
+   * that a {@link JournalReplay} fires on <tt>blackboard</tt> aren't appended,
+   * unless it's {@link JournalReplay#setRecorded(boolean) set} to have them
+   * recorded.
+   */
+  public void record(final Blackboard blackboard,
+      final Class<? extends Event> event) {
+    if (blackboard == null) {
+      throw new NullPointerException("Argument with index 0 was null.");
+    } else if (event == null) {
+      throw new NullPointerException("Argument with index 1 was null.");
+    }
+    EventTap tap = taps.get(blackboard);
+    if (tap == null) {
+      final EventTap newTap = new RecordingTap(blackboard);
+      tap = taps.putIfAbsent(blackboard, newTap);
+      if (tap == null) {
+        tap = newTap;
+      }
+    }
+    blackboard.addTap(event, tap);
+  }
+
+  /**
+   * Encode <tt>event</tt> and queue it for the writer. Returns once it's
+   * queued, not once it's written.
+   *
+   * @throws IOException
+   *           if the event couldn't be encoded, the journal is closed, or
+   *           writing it has failed.
+   * @see #sync()
+   */
+  public void append(final Event event) throws IOException {
+    if (event == null) {
+      throw new NullPointerException("Argument with index 0 was null.");
+    }
+    assertOpen();
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    codec.write(event, out);
+    out.flush();
+
+    enqueue(new Entry(event.getClass().getName(), bytes.toByteArray(),
+        System.currentTimeMillis(), null));
+    appendedEvents.incrementAndGet();
+  }
+
+  /**
+   * Wait until all the events appended so far are written and forced to the
+   * disk, whatever the {@link FsyncPolicy}.
+   *
+   * @throws IOException
+   *           if the journal is closed, or writing has failed.
+   */
+  public void sync() throws IOException {
+    assertOpen();
+    final CountDownLatch synced = new CountDownLatch(1);
+    enqueue(new Entry(null, null, 0, synced));
+    try {
+      while (!synced.await(100, TimeUnit.MILLISECONDS)) {
+        if (!writer.isAlive()) {
+          // closed by another thread before the writer saw the request
+          throw new IOException("The journal in " + directory + " is closed");
+        }
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    assertNotFailed();
+  }
+
+  private void enqueue(final Entry entry) throws IOException {
+    try {
+      queue.put(entry);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+  }
+
+  private void assertOpen() throws IOException {
+    assertNotFailed();
+    if (closed) {
+      throw new IOException("The journal in " + directory + " is closed");
+    }
+  }
+
+  private void assertNotFailed() throws IOException {
+    if (failure != null) {
+      throw new IOException("Writing the journal in " + directory
+          + " has failed", failure);
+    }
+  }
+
+  /**
+   * Decide when the written events are forced to the disk. The default is
+   * {@link FsyncPolicy#PERIODIC}.
+   */
+  public void setFsyncPolicy(final FsyncPolicy fsyncPolicy) {
+    if (fsyncPolicy == null) {
+      throw new NullPointerException("Argument with index 0 was null.");
+    }
+    this.fsyncPolicy = fsyncPolicy;
+  }
+
+  public FsyncPolicy getFsyncPolicy() {
+    return fsyncPolicy;
+  }
+
+  /**
+   * Set how often the written events are forced to the disk with
+   * {@link FsyncPolicy#PERIODIC}. The default is one second.
+   */
+  public void setFsyncInterval(final long interval, final TimeUnit unit) {
+    if (unit == null) {
+      throw new NullPointerException("Argument with index 1 was null.");
+    } else if (interval <= 0) {
+      throw new IllegalArgumentException("The interval must be positive");
+    }
+    fsyncInterval = Math.max(1, unit.toMillis(interval));
+  }
+
+  /** @return the fsync interval, in milliseconds. */
+  public long getFsyncInterval() {
+    return fsyncInterval;
+  }
+
+  /**
+   * Keep at most <tt>maxSegments</tt> segments, including the one being
+   * written. Older ones are deleted whenever a segment is full, and when the
+   * journal is opened. <tt>0</tt>, the default, keeps any number of segments.
+   */
+  public void setMaxSegments(final int maxSegments) {
+    if (maxSegments < 0) {
+      throw new IllegalArgumentException("maxSegments can't be negative");
+    }
+    this.maxSegments = maxSegments;
+  }
+
+  public int getMaxSegments() {
+    return maxSegments;
+  }
+
+  /**
+   * Delete the segments whose last event is older than <tt>maxAge</tt>,
+   * whenever a segment is full, and when the journal is opened. The segment
+   * being written is never deleted. <tt>0</tt>, the default, keeps segments of
+   * any age.
+   */
+  public void setMaxAge(final long maxAge, final TimeUnit unit) {
+    if (unit == null) {
+      throw new NullPointerException("Argument with index 1 was null.");
+    } else if (maxAge < 0) {
+      throw new IllegalArgumentException("maxAge can't be negative");
+    }
+    this.maxAge = unit.toMillis(maxAge);
+  }
+
+  /** @return the maximum age of segments, in milliseconds. */
+  public long getMaxAge() {
+    return maxAge;
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  /** @return the number of events appended, written or not. */
+  public long getAppendedEvents() {
+    return appendedEvents.get();
+  }
+
+  /** @return the number of events written to the segments. */
+  public long getWrittenEvents() {
+    return writtenEvents.get();
+  }
+
+  /**
+   * @return the number of groups of events written. Compared to
+   *         {@link #getWrittenEvents()}, this tells how well the writes are
+   *         batched.
+   */
+  public long getCommits() {
+    return commits.get();
+  }
+
+  /** @return the number of times the segments were forced to the disk. */
+  public long getFsyncs() {
+    return fsyncs.get();
+  }
+
+  /**
+   * Stop recording, write and force all the events appended so far, and
+   * close the journal.
+   *
+   * @throws IOException
+   *           if writing the journal had failed.
+   */
+  public void close() throws IOException {
+    for (final Map.Entry<Blackboard, EventTap> entry : taps.entrySet()) {
+      entry.getKey().removeTap(entry.getValue());
+    }
+    taps.clear();
+
+    if (!closed) {
+      closed = true;
+      enqueue(CLOSE);
+    }
+    if (Thread.currentThread() != writer) {
+      try {
+        writer.join();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+    }
+    assertNotFailed();
+  }
+
+  /** The writer thread's loop */
+  private void write() {
+    final List<Entry> batch = new ArrayList<Entry>();
+    boolean stop = false;
+    try {
+      // after being closed, the events appended meanwhile are still written
+      while (!stop || !queue.isEmpty()) {
+        final long timeout = dirty && fsyncPolicy == FsyncPolicy.PERIODIC ? Math
+            .max(0, lastFsync + fsyncInterval - System.currentTimeMillis())
+            : fsyncInterval;
+        final Entry first = queue.poll(timeout, TimeUnit.MILLISECONDS);
+        if (first != null) {
+          batch.add(first);
+          queue.drainTo(batch);
+        }
+
+        boolean syncRequested = false;
+        long written = 0;
+        for (final Entry entry : batch) {
+          if (entry == CLOSE) {
+            stop = true;
+          } else if (entry.synced != null) {
+            syncRequested = true;
+          } else {
+            writeEvent(entry);
+            written++;
+          }
+        }
+
+        if (written > 0) {
+          writtenEvents.addAndGet(written);
+          commits.incrementAndGet();
+        }
+        final boolean due = fsyncPolicy == FsyncPolicy.EVERY_COMMIT
+            || (fsyncPolicy == FsyncPolicy.PERIODIC && System
+                .currentTimeMillis() >= lastFsync + fsyncInterval);
+        if (dirty && (stop || syncRequested || due)) {
+          fsync();
+        }
+
+        releaseSyncs(batch);
+        batch.clear();
+      }
+    } catch (final InterruptedException e) {
+      failure = new InterruptedIOException("The journal writer was interrupted");
+    } catch (final IOException e) {
+      failure = e;
+    } catch (final RuntimeException e) {
+      failure = new IOException(e);
+    }
+
+    if (failure != null) {
+      // let nobody wait for the writer anymore
+      releaseSyncs(batch);
+      discardUntilClosed(stop);
+    }
+  }
+
+  private void discardUntilClosed(final boolean stopped) {
+    final List<Entry> batch = new ArrayList<Entry>();
+    boolean stop = stopped;
+    while (!stop || !queue.isEmpty()) {
+      try {
+        batch.add(queue.take());
+      } catch (final InterruptedException e) {
+        return;
+      }
+      queue.drainTo(batch);
+      for (final Entry entry : batch) {
+        stop |= entry == CLOSE;
+      }
+      releaseSyncs(batch);
+      batch.clear();
+    }
+  }
+
+  private static void releaseSyncs(final List<Entry> batch) {
+    for (final Entry entry : batch) {
+      if (entry.synced != null) {
+        entry.synced.countDown();
+      }
+    }
+  }
+
+  private void writeEvent(final Entry entry) throws IOException {
+    final byte[] type = entry.type.getBytes(UTF8);
+    final int eventLength = RECORD_HEADER_SIZE + EVENT_HEADER_SIZE
+        + entry.state.length;
+    final int defineLength = RECORD_HEADER_SIZE + 7 + type.length;
+
+    Integer typeIndex = segment == null ? null : segmentTypes.get(entry.type);
+    final int needed = typeIndex == null ? defineLength + eventLength
+        : eventLength;
+    if (segment == null || segment.remaining() < needed) {
+      roll(defineLength + eventLength);
+      typeIndex = null;
+    }
+
+    if (typeIndex == null) {
+      typeIndex = Integer.valueOf(segmentTypes.size());
+      final ByteBuffer define = body(defineLength - RECORD_HEADER_SIZE);
+      define.put(DEFINE_TYPE).putInt(typeIndex.intValue())
+          .putShort((short) type.length).put(type);
+      writeRecord(define.position());
+      segmentTypes.put(entry.type, typeIndex);
+    }
+
+    final ByteBuffer event = body(eventLength - RECORD_HEADER_SIZE);
+    event.put(EVENT).putLong(nextSequence).putLong(entry.timestamp)
+        .putInt(typeIndex.intValue()).put(entry.state);
+    writeRecord(event.position());
+
+    nextSequence++;
+    segmentEvents++;
+    lastTimestamp = entry.timestamp;
+    dirty = true;
+  }
+
+  /** A buffer over the reused body array, with room for <tt>length</tt> */
+  private ByteBuffer body(final int length) {
+    if (body.length < length) {
+      body = new byte[Math.max(length, body.length * 2)];
+    }
+    return ByteBuffer.wrap(body);
+  }
+
+  /**
+   * Write the first <tt>length</tt> bytes of the body array as a record. The
+   * length goes in last, so a reader never sees half a record.
+   */
+  private void writeRecord(final int length) {
+    crc.reset();
+    crc.update(body, 0, length);
+    final int position = segment.position();
+    segment.position(position + RECORD_HEADER_SIZE);
+    segment.put(body, 0, length);
+    segment.putInt(position + 4, (int) crc.getValue());
+    segment.putInt(position, length);
+  }
+
+  private void fsync() {
+    segment.force();
+    dirty = false;
+    lastFsync = System.currentTimeMillis();
+    fsyncs.incrementAndGet();
+  }
+
+  /** Start a new segment, with room for at least <tt>needed</tt> bytes */
+  private void roll(final int needed) throws IOException {
+    if (segment != null) {
+      if (dirty) {
+        fsync();
+      }
+      if (segmentEvents == 0) {
+        // an empty segment would have the same name as the new one
+        delete(segmentFile);
+      } else {
+        segmentFile.setLastModified(lastTimestamp);
+      }
+    }
+
+    segmentFile = new File(directory, getSegmentName(nextSequence));
+    segment = map(segmentFile, Math.max(segmentSize, SEGMENT_HEADER_SIZE
+        + needed));
+    segment.putInt(MAGIC).putInt(VERSION).putLong(nextSequence);
+    segment.force();
+    segmentTypes.clear();
+    segmentEvents = 0;
+
+    applyRetention();
+  }
+
+  private static MappedByteBuffer map(final File file, final int size)
+      throws IOException {
+    final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      if (raf.length() != size) {
+        raf.setLength(size);
+      }
+      // the mapping stays valid after the file is closed
+      return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    } finally {
+      raf.close();
+    }
+  }
+
+  /** Delete the old segments that aren't to be retained */
+  private void applyRetention() throws IOException {
+    final int maxSegments = this.maxSegments;
+    final long maxAge = this.maxAge;
+    if (maxSegments == 0 && maxAge == 0) {
+      return;
+    }
+
+    final File[] segments = listSegments(directory);
+    final long oldest = System.currentTimeMillis() - maxAge;
+    for (int i = 0; i < segments.length - 1; i++) {
+      final boolean tooMany = maxSegments > 0
+          && segments.length - i > maxSegments;
+      final boolean tooOld = maxAge > 0
+          && segments[i].lastModified() < oldest;
+      if (!tooMany && !tooOld) {
+        break;
+      }
+      delete(segments[i]);
+    }
+  }
+
+  private static void delete(final File file) throws IOException {
+    if (!file.delete() && file.exists()) {
+      throw new IOException("Could not delete " + file);
+    }
+  }
+
+  /**
+   * Find the end of the last segment, and continue from there. Anything after
+   * the last intact record is erased.
+   */
+  private void recover() throws IOException {
+    final File[] segments = listSegments(directory);
+    if (segments.length == 0) {
+      return;
+    }
+
+    final File last = segments[segments.length - 1];
+    final long firstSequence = getFirstSequence(last);
+    if (last.length() < SEGMENT_HEADER_SIZE
+        || last.length() > Integer.MAX_VALUE) {
+      throw new IOException(last + " is not a journal segment");
+    }
+
+    final MappedByteBuffer buffer = map(last, (int) last.length());
+    if (buffer.getInt(0) == 0) {
+      // the header never made it to the disk
+      buffer.putInt(0, MAGIC).putInt(4, VERSION).putLong(8, firstSequence);
+    } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+        || buffer.getLong(8) != firstSequence) {
+      throw new IOException(last + " is not a journal segment");
+    }
+
+    nextSequence = firstSequence;
+    int position = SEGMENT_HEADER_SIZE;
+    final CRC32 crc = new CRC32();
+    byte[] record = new byte[256];
+    while (buffer.limit() - position >= RECORD_HEADER_SIZE) {
+      final int length = buffer.getInt(position);
+      if (length <= 0
+          || length > buffer.limit() - position - RECORD_HEADER_SIZE) {
+        break;
+      }
+      if (record.length < length) {
+        record = new byte[length];
+      }
+      buffer.position(position + RECORD_HEADER_SIZE);
+      buffer.get(record, 0, length);
+      crc.reset();
+      crc.update(record, 0, length);
+      if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+        break;
+      }
+
+      final ByteBuffer in = ByteBuffer.wrap(record, 0, length);
+      final byte tag = in.get();
+      if (tag == DEFINE_TYPE) {
+        final int index = in.getInt();
+        final byte[] name = new byte[in.getShort() & 0xffff];
+        in.get(name);
+        segmentTypes.put(new String(name, UTF8), Integer.valueOf(index));
+      } else if (tag == EVENT) {
+        nextSequence = in.getLong() + 1;
+        lastTimestamp = in.getLong();
+        segmentEvents++;
+      } else {
+        break;
+      }
+      position += RECORD_HEADER_SIZE + length;
+    }
+
+    // erase the torn tail, so that no reader mistakes it for records
+    buffer.position(position);
+    final byte[] zeros = new byte[Math.min(64 * 1024, buffer.remaining())];
+    while (buffer.hasRemaining()) {
+      buffer.put(zeros, 0, Math.min(zeros.length, buffer.remaining()));
+    }
+    buffer.force();
+    buffer.position(position);
+
+    segmentFile = last;
+    segment = buffer;
+    applyRetention();
+  }
+
+  static String getSegmentName(final long firstSequence) {
+    return String.format("%020d", Long.valueOf(firstSequence)) + SUFFIX;
+  }
+
+  static long getFirstSequence(final File segment) throws IOException {
+    final String name = segment.getName();
+    try {
+      return Long.parseLong(name.substring(0,
+          name.length() - SUFFIX.length()));
+    } catch (final NumberFormatException e) {
+      throw new IOException(segment + " is not a journal segment");
+    }
+  }
+
+  /** @return the segments in <tt>directory</tt>, oldest first. */
+  static File[] listSegments(final File directory) {
+    final File[] files = directory.listFiles();
+    if (files == null) {
+      return new File[0];
+    }
+
+    final List<File> segments = new ArrayList<File>();
+    for (final File file : files) {
+      final String name = file.getName();
+      if (name.endsWith(SUFFIX)
+          && name.length() == 20 + SUFFIX.length() && file.isFile()) {
+        segments.add(file);
+      }
+    }
+    final File[] sorted = segments.toArray(new File[segments.size()]);
+    // zero padded, so the names sort like the sequence numbers
+    Arrays.sort(sorted);
+    return sorted;
+  }
+}
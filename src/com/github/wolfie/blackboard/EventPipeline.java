@@ -0,0 +1,101 @@
+package com.github.wolfie.blackboard;
+
+/**
+ * <p>
+ * Delivers fired {@link Event Events} from a {@link RingBuffer} in dedicated
+ * consumer threads.
+ * </p>
+ *
+ * @author Henrik Paul
+ * @see Blackboard#startPipeline(int, int, ProducerType, WaitStrategy)
+ */
+class EventPipeline {
+
+  private class Consumer extends Thread {
+    private final int index;
+
+    public Consumer(final int index) {
+      super("blackboard-pipeline-" + index);
+      this.index = index;
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      final WaitStrategy waitStrategy = ring.getWaitStrategy();
+      long next = ring.getConsumed(index) + 1;
+      int idleRounds = 0;
+
+      while (true) {
+        if (ring.isPublished(next)) {
+          if (ring.getOwner(next) == index) {
+            final Event event = ring.get(next);
+            ring.clear(next);
+            try {
+              blackboard.deliverNow(event);
+            } catch (final RuntimeException e) {
+              // the registration was probably cleared after firing
+              e.printStackTrace();
+            }
+          }
+
+          ring.setConsumed(index, next);
+          next++;
+          idleRounds = 0;
+        } else if (!running) {
+          return;
+        } else {
+          waitStrategy.idle(++idleRounds);
+        }
+      }
+    }
+  }
+
+  private final Blackboard blackboard;
+  private final RingBuffer ring;
+  private final Consumer[] consumers;
+  private volatile boolean running = true;
+
+  EventPipeline(final Blackboard blackboard, final int bufferSize,
+      final int consumerCount, final ProducerType producerType,
+      final WaitStrategy waitStrategy) {
+    this.blackboard = blackboard;
+    ring = new RingBuffer(bufferSize, consumerCount, producerType,
+        waitStrategy);
+
+    consumers = new Consumer[consumerCount];
+    for (int i = 0; i < consumerCount; i++) {
+      consumers[i] = new Consumer(i);
+    }
+  }
+
+  void start() {
+    for (final Consumer consumer : consumers) {
+      consumer.start();
+    }
+  }
+
+  void publish(final Event event) {
+    ring.publish(event);
+  }
+
+  /**
+   * Wait until everything published this far is delivered, and stop the
+   * consumer threads.
+   */
+  void stop() throws InterruptedException {
+    final long last = ring.getLastClaimed();
+    final WaitStrategy waitStrategy = ring.getWaitStrategy();
+    for (int i = 0; i < consumers.length; i++) {
+      int idleRounds = 0;
+      while (ring.getConsumed(i) < last && consumers[i].isAlive()) {
+        waitStrategy.idle(++idleRounds);
+      }
+    }
+
+    running = false;
+    for (final Consumer consumer : consumers) {
+      consumer.join();
+    }
+  }
+}
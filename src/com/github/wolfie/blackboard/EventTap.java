@@ -0,0 +1,24 @@
+package com.github.wolfie.blackboard;
+
+/**
+ * <p>
+ * Sees the {@link Event Events} of a type fired on a {@link Blackboard},
+ * without being a {@link Listener}.
+ * </p>
+ * 
+ * <p>
+ * A tap is meant for infrastructure that handles events of any type, such as
+ * an {@link EventBridge}, and so can't implement the listener interfaces of
+ * the types it handles. It is called in the firing thread, after the event's
+ * registrations have been found, but before the event is delivered. It
+ * doesn't see the events a Blackboard gets from its parent.
+ * </p>
+ * 
+ * @author Henrik Paul
+ * @see Blackboard#addTap(Class, EventTap)
+ */
+public interface EventTap {
+
+  /** An {@link Event} of a tapped type was fired. */
+  void fired(Event event);
+}
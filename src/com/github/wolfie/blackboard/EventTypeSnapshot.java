@@ -0,0 +1,54 @@
+package com.github.wolfie.blackboard;
+
+/**
+ * The dispatch counters of one {@link Event} type at one point in time.
+ *
+ * @author Henrik Paul
+ * @see DispatchMetrics
+ */
+public class EventTypeSnapshot {
+  private final long fired;
+  private final long deliveries;
+  private final long failures;
+  private final LatencySnapshot fireLatency;
+
+  EventTypeSnapshot(final long fired, final long deliveries,
+      final long failures, final LatencySnapshot fireLatency) {
+    this.fired = fired;
+    this.deliveries = deliveries;
+    this.failures = failures;
+    this.fireLatency = fireLatency;
+  }
+
+  /**
+   * The number of events of this type fired with any of the <code>fire</code>
+   * methods.
+   */
+  public long getFired() {
+    return fired;
+  }
+
+  /** The number of times a {@link Listener} was called with this type. */
+  public long getDeliveries() {
+    return deliveries;
+  }
+
+  /** The number of deliveries where the {@link Listener} threw. */
+  public long getFailures() {
+    return failures;
+  }
+
+  /**
+   * How long {@link Blackboard#fire(Event)} took for this type, from the
+   * caller's point of view.
+   */
+  public LatencySnapshot getFireLatency() {
+    return fireLatency;
+  }
+
+  @Override
+  public String toString() {
+    return "fired=" + fired + ", deliveries=" + deliveries + ", failures="
+        + failures + ", fire latency: " + fireLatency;
+  }
+}
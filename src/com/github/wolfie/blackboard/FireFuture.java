@@ -0,0 +1,117 @@
+package com.github.wolfie.blackboard;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.github.wolfie.blackboard.exception.ListenerInvocationException;
+
+/**
+ * <p>
+ * The completion handle of an {@link Event} fired with
+ * {@link Blackboard#fireAsync(Event)}.
+ * </p>
+ * 
+ * <p>
+ * The future is done once every {@link Listener} the event was delivered to
+ * has returned. Anything the listeners throw is collected here, and
+ * {@link #get()} reports it as a {@link ListenerInvocationException} wrapped in
+ * an {@link ExecutionException}. Deliveries can't be cancelled.
+ * </p>
+ * 
+ * @author Henrik Paul
+ */
+public class FireFuture implements Future<Void> {
+  private final Event event;
+  private final CountDownLatch pendingDeliveries;
+  private final Queue<Throwable> failures = new ConcurrentLinkedQueue<Throwable>();
+
+  FireFuture(final Event event, final int deliveries) {
+    this.event = event;
+    pendingDeliveries = new CountDownLatch(deliveries);
+  }
+
+  void delivered() {
+    pendingDeliveries.countDown();
+  }
+
+  void failed(final Throwable failure) {
+    failures.add(failure);
+    pendingDeliveries.countDown();
+  }
+
+  /** Count down one delivery that may have had several failures. */
+  void completed(final List<Throwable> deliveryFailures) {
+    failures.addAll(deliveryFailures);
+    pendingDeliveries.countDown();
+  }
+
+  /** Get the {@link Event} this future is for. */
+  public Event getEvent() {
+    return event;
+  }
+
+  /**
+   * Get everything the listeners have thrown this far.
+   * 
+   * @return a new list of failures, empty if no listener has failed.
+   */
+  public List<Throwable> getFailures() {
+    return new ArrayList<Throwable>(failures);
+  }
+
+  /** Deliveries can't be cancelled, so this always returns <code>false</code>. */
+  public boolean cancel(final boolean mayInterruptIfRunning) {
+    return false;
+  }
+
+  public boolean isCancelled() {
+    return false;
+  }
+
+  public boolean isDone() {
+    return pendingDeliveries.getCount() == 0;
+  }
+
+  /**
+   * Wait until all listeners have handled the event.
+   * 
+   * @throws ExecutionException
+   *           if any listener threw something. The cause is a
+   *           {@link ListenerInvocationException} containing all failures.
+   */
+  public Void get() throws InterruptedException, ExecutionException {
+    pendingDeliveries.await();
+    return getResult();
+  }
+
+  /**
+   * Wait at most the given time until all listeners have handled the event.
+   * 
+   * @throws ExecutionException
+   *           if any listener threw something. The cause is a
+   *           {@link ListenerInvocationException} containing all failures.
+   */
+  public Void get(final long timeout, final TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    if (!pendingDeliveries.await(timeout, unit)) {
+      throw new TimeoutException(pendingDeliveries.getCount()
+          + " deliveries of " + event + " still pending");
+    }
+    return getResult();
+  }
+
+  private Void getResult() throws ExecutionException {
+    if (!failures.isEmpty()) {
+      throw new ExecutionException(new ListenerInvocationException(event,
+          getFailures()));
+    }
+    return null;
+  }
+}
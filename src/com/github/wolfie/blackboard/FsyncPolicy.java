@@ -0,0 +1,29 @@
+package com.github.wolfie.blackboard;
+
+/**
+ * When an {@link EventJournal} forces what it has written to the disk.
+ * 
+ * @author Henrik Paul
+ * @see EventJournal#setFsyncPolicy(FsyncPolicy)
+ */
+public enum FsyncPolicy {
+  /**
+   * Never, except when a segment is full or the journal is closed. The
+   * operating system writes the pages when it sees fit, so the records
+   * survive the JVM crashing, but not the machine.
+   */
+  NEVER,
+
+  /**
+   * After every group of records written together. The safest, and the
+   * slowest, but still only one fsync for all the events appended while the
+   * previous one was in progress.
+   */
+  EVERY_COMMIT,
+
+  /**
+   * At most once per {@link EventJournal#setFsyncInterval(long,
+   * java.util.concurrent.TimeUnit) interval}, if anything was written.
+   */
+  PERIODIC
+}
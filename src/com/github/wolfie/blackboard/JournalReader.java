@@ -0,0 +1,240 @@
+package com.github.wolfie.blackboard;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * Reads the records of an {@link EventJournal} in order, oldest first.
+ * </p>
+ *
+ * <p>
+ * A reader maps the segment files read-only, and needs no journal to be open,
+ * but it may read one that is being written: once it has read all there is,
+ * {@link #next()} returns <code>null</code>, and returns the records written
+ * after that when called again. Segments deleted by the journal's retention
+ * while they're read can still be read to their end, but a reader that falls
+ * behind the retention skips the deleted records.
+ * </p>
+ *
+ * <p>
+ * A reader is not thread safe.
+ * </p>
+ *
+ * @author Henrik Paul
+ */
+public class JournalReader implements Closeable {
+
+  private final File directory;
+  private final EventCodec codec;
+  private final ClassLoader classLoader;
+
+  private File segmentFile;
+  private MappedByteBuffer segment;
+  private final List<String> segmentTypes = new ArrayList<String>();
+  private int position;
+
+  /** Records before this are skipped */
+  private long from = 0;
+
+  private final CRC32 crc = new CRC32();
+  private byte[] record = new byte[256];
+
+  /**
+   * Read the journal in <tt>directory</tt>, from its oldest record.
+   *
+   * @param codec
+   *          Decodes the events, with the class loader of the thread that
+   *          creates the reader.
+   */
+  public JournalReader(final File directory, final EventCodec codec) {
+    if (directory == null) {
+      throw new NullPointerException("Argument with index 0 was null.");
+    } else if (codec == null) {
+      throw new NullPointerException("Argument with index 1 was null.");
+    }
+
+    this.directory = directory;
+    this.codec = codec;
+    final ClassLoader contextClassLoader = Thread.currentThread()
+        .getContextClassLoader();
+    classLoader = contextClassLoader != null ? contextClassLoader
+        : JournalReader.class.getClassLoader();
+  }
+
+  /**
+   * Continue from the record with the sequence number <tt>sequence</tt>, or
+   * the first one after it that is still retained.
+   */
+  public void seek(final long sequence) throws IOException {
+    final File[] segments = EventJournal.listSegments(directory);
+    File start = null;
+    for (final File file : segments) {
+      if (start == null || EventJournal.getFirstSequence(file) <= sequence) {
+        start = file;
+      } else {
+        break;
+      }
+    }
+
+    segmentFile = null;
+    segment = null;
+    from = sequence;
+    if (start != null) {
+      open(start);
+    }
+  }
+
+  /**
+   * Read the next record.
+   *
+   * @return the next record, or <code>null</code> if there are no more
+   *         records yet.
+   * @throws IOException
+   *           if a segment can't be read, or a record other than the last one
+   *           being written is corrupt.
+   */
+  public JournalRecord next() throws IOException {
+    while (true) {
+      if (segment == null) {
+        final File[] segments = EventJournal.listSegments(directory);
+        if (segments.length == 0) {
+          return null;
+        }
+        open(segments[0]);
+      }
+
+      final JournalRecord record = read();
+      if (record == null) {
+        final File following = getFollowingSegment();
+        if (following == null) {
+          return null;
+        }
+
+        // the segment may have been completed before the next one was begun
+        final JournalRecord last = read();
+        if (last != null) {
+          return last;
+        } else if (!atEnd()) {
+          throw new IOException("Corrupt record at " + position + " of "
+              + segmentFile);
+        }
+        open(following);
+      } else if (record.getSequence() >= from) {
+        return record;
+      }
+    }
+  }
+
+  /**
+   * Read the next event record of the current segment.
+   *
+   * @return <code>null</code> if there is no intact record at the position.
+   */
+  private JournalRecord read() throws IOException {
+    while (segment.limit() - position >= EventJournal.RECORD_HEADER_SIZE) {
+      final int length = segment.getInt(position);
+      if (length <= 0
+          || length > segment.limit() - position
+              - EventJournal.RECORD_HEADER_SIZE) {
+        return null;
+      }
+
+      if (record.length < length) {
+        record = new byte[length];
+      }
+      segment.position(position + EventJournal.RECORD_HEADER_SIZE);
+      segment.get(record, 0, length);
+      crc.reset();
+      crc.update(record, 0, length);
+      if ((int) crc.getValue() != segment.getInt(position + 4)) {
+        return null;
+      }
+      position += EventJournal.RECORD_HEADER_SIZE + length;
+
+      final ByteBuffer in = ByteBuffer.wrap(record, 0, length);
+      final byte tag = in.get();
+      if (tag == EventJournal.DEFINE_TYPE) {
+        final int index = in.getInt();
+        final byte[] name = new byte[in.getShort() & 0xffff];
+        in.get(name);
+        if (index != segmentTypes.size()) {
+          throw new IOException("Unexpected type index " + index + " in "
+              + segmentFile);
+        }
+        segmentTypes.add(new String(name, EventJournal.UTF8));
+      } else if (tag == EventJournal.EVENT) {
+        final long sequence = in.getLong();
+        final long timestamp = in.getLong();
+        final int index = in.getInt();
+        if (index < 0 || index >= segmentTypes.size()) {
+          throw new IOException("Undefined type index " + index + " in "
+              + segmentFile);
+        }
+        final byte[] state = new byte[in.remaining()];
+        in.get(state);
+        return new JournalRecord(sequence, timestamp, segmentTypes.get(index),
+            state, codec, classLoader);
+      } else {
+        throw new IOException("Unknown record " + tag + " in " + segmentFile);
+      }
+    }
+    return null;
+  }
+
+  /** @return <code>true</code> iff the rest of the segment is unwritten. */
+  private boolean atEnd() {
+    return segment.limit() - position < EventJournal.RECORD_HEADER_SIZE
+        || segment.getInt(position) == 0;
+  }
+
+  private File getFollowingSegment() throws IOException {
+    final long firstSequence = EventJournal.getFirstSequence(segmentFile);
+    for (final File file : EventJournal.listSegments(directory)) {
+      if (EventJournal.getFirstSequence(file) > firstSequence) {
+        return file;
+      }
+    }
+    return null;
+  }
+
+  private void open(final File file) throws IOException {
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      final long length = raf.length();
+      if (length < EventJournal.SEGMENT_HEADER_SIZE
+          || length > Integer.MAX_VALUE) {
+        throw new IOException(file + " is not a journal segment");
+      }
+      segment = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+    } finally {
+      raf.close();
+    }
+
+    if (segment.getInt(0) != EventJournal.MAGIC
+        || segment.getInt(4) != EventJournal.VERSION
+        || segment.getLong(8) != EventJournal.getFirstSequence(file)) {
+      if (segment.getInt(0) != 0) {
+        throw new IOException(file + " is not a journal segment");
+      }
+      // still being created; there can be no records in it yet
+    }
+    segmentFile = file;
+    segmentTypes.clear();
+    position = EventJournal.SEGMENT_HEADER_SIZE;
+  }
+
+  /** Release the segment being read. */
+  public void close() {
+    segmentFile = null;
+    segment = null;
+  }
+}
@@ -0,0 +1,92 @@
+package com.github.wolfie.blackboard;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * <p>
+ * An {@link Event} read from an {@link EventJournal}.
+ * </p>
+ * 
+ * <p>
+ * The event is only decoded when {@link #getEvent()} is called, so records
+ * can be skipped by their sequence, time or type cheaply.
+ * </p>
+ * 
+ * @author Henrik Paul
+ * @see JournalReader
+ */
+public class JournalRecord {
+  private final long sequence;
+  private final long timestamp;
+  private final String typeName;
+  private final byte[] state;
+  private final EventCodec codec;
+  private final ClassLoader classLoader;
+
+  private Class<? extends Event> type;
+
+  JournalRecord(final long sequence, final long timestamp,
+      final String typeName, final byte[] state, final EventCodec codec,
+      final ClassLoader classLoader) {
+    this.sequence = sequence;
+    this.timestamp = timestamp;
+    this.typeName = typeName;
+    this.state = state;
+    this.codec = codec;
+    this.classLoader = classLoader;
+  }
+
+  /** The number of the record, one more than the record before it. */
+  public long getSequence() {
+    return sequence;
+  }
+
+  /** When the event was appended, in milliseconds since the epoch. */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /** The class name of the event. */
+  public String getTypeName() {
+    return typeName;
+  }
+
+  /**
+   * The class of the event.
+   * 
+   * @throws IOException
+   *           if the class can't be loaded.
+   */
+  public Class<? extends Event> getType() throws IOException {
+    if (type == null) {
+      try {
+        type = Class.forName(typeName, false, classLoader).asSubclass(
+            Event.class);
+      } catch (final ClassNotFoundException e) {
+        throw new IOException(e);
+      } catch (final ClassCastException e) {
+        throw new IOException(e);
+      }
+    }
+    return type;
+  }
+
+  /**
+   * Decode the event.
+   * 
+   * @return a new event each time.
+   * @throws IOException
+   *           if the class can't be loaded or the codec fails.
+   */
+  public Event getEvent() throws IOException {
+    return codec.read(getType(), new DataInputStream(new ByteArrayInputStream(
+        state)));
+  }
+
+  @Override
+  public String toString() {
+    return "#" + sequence + " " + typeName + " at " + timestamp;
+  }
+}
@@ -0,0 +1,357 @@
+package com.github.wolfie.blackboard;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>
+ * Fires the {@link Event Events} recorded in an {@link EventJournal} on a
+ * {@link Blackboard} again, in their original order, to rebuild the state of
+ * the {@link Listener Listeners} after a restart, or to bring a new listener
+ * up to date.
+ * </p>
+ *
+ * <p>
+ * The records to replay can be narrowed down by {@link #includeType(Class)
+ * type}, {@link #setSequenceRange(long, long) sequence number} and
+ * {@link #setTimeRange(long, long) time}. The events are fired as fast as they
+ * can be read, unless the replay is {@link #setSpeed(double) paced} to the
+ * time between the events when they were recorded. With a
+ * {@link #setParallelism(int) parallelism} above one, the events are fired in
+ * the lanes of a {@link PartitionedExecutor}: the {@link KeyedEvent
+ * KeyedEvents} with the same key, and the unkeyed events, are still fired in
+ * their original order, but the ones with different keys aren't.
+ * </p>
+ *
+ * <p>
+ * A replay stops at the end of the journal, as it was when that was reached.
+ * It can be {@link #setMonitor(ReplayMonitor, long, TimeUnit) monitored}
+ * while it runs, and {@link #stop() stopped}. The replayed events, and the
+ * events the listeners fire on the same Blackboard while handling them,
+ * aren't recorded by the {@link EventJournal EventJournals} recording that
+ * Blackboard, so that replaying a journal into the Blackboard it records
+ * doesn't grow it by a copy of itself, unless the replay is
+ * {@link #setRecorded(boolean) set} to have them recorded. Events the
+ * listeners fire on other Blackboards are recorded as usual.
+ * </p>
+ *
+ * @author Henrik Paul
+ */
+public class JournalReplay {
+
+  /** The most events fired in parallel and waiting for a lane */
+  private static final int MAX_IN_FLIGHT = 16384;
+
+  /** How many events are replayed between looks at the clock */
+  private static final int CLOCK_STRIDE = 256;
+
+  private final JournalReader reader;
+  private final Blackboard blackboard;
+
+  private final List<Class<? extends Event>> types = new CopyOnWriteArrayList<Class<? extends Event>>();
+  private long fromSequence = 0;
+  private long toSequence = Long.MAX_VALUE;
+  private long fromTime = Long.MIN_VALUE;
+  private long toTime = Long.MAX_VALUE;
+  private double speed = 0;
+  private int parallelism = 1;
+  private boolean recorded = false;
+  private ReplayMonitor monitor;
+  private long monitorInterval = TimeUnit.SECONDS.toNanos(1);
+
+  private volatile boolean stopped = false;
+  private final AtomicLong replayedEvents = new AtomicLong();
+  private final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+
+  /**
+   * Replay the records of <tt>reader</tt>, from where it is, on
+   * <tt>blackboard</tt>. The replayed event types need to be registered
+   * there.
+   */
+  public JournalReplay(final JournalReader reader, final Blackboard blackboard) {
+    if (reader == null) {
+      throw new NullPointerException("Argument with index 0 was null.");
+    } else if (blackboard == null) {
+      throw new NullPointerException("Argument with index 1 was null.");
+    }
+    this.reader = reader;
+    this.blackboard = blackboard;
+  }
+
+  /**
+   * Replay the events of type <tt>event</tt> and its subtypes. Until a type is
+   * included, events of all types are replayed.
+   */
+  public void includeType(final Class<? extends Event> event) {
+    if (event == null) {
+      throw new NullPointerException("Argument with index 0 was null.");
+    }
+    types.add(event);
+  }
+
+  /**
+   * Only replay the records with sequence numbers from <tt>from</tt> to
+   * <tt>to</tt>, both included. The reader is moved to <tt>from</tt> when the
+   * replay is run.
+   */
+  public void setSequenceRange(final long from, final long to) {
+    if (from > to) {
+      throw new IllegalArgumentException("The range " + from + "-" + to
+          + " is empty");
+    }
+    fromSequence = from;
+    toSequence = to;
+  }
+
+  /**
+   * Only replay the records appended from <tt>from</tt> to <tt>to</tt>, both
+   * included, in milliseconds since the epoch. The records outside the range
+   * are read and skipped, since the events appended from several threads
+   * aren't quite in the order of their timestamps.
+   */
+  public void setTimeRange(final long from, final long to) {
+    if (from > to) {
+      throw new IllegalArgumentException("The range " + from + "-" + to
+          + " is empty");
+    }
+    fromTime = from;
+    toTime = to;
+  }
+
+  /**
+   * Pace the replay to the time between the events when they were appended.
+   * <tt>1</tt> keeps the original timing, <tt>2</tt> replays twice as fast,
+   * and <tt>0</tt>, the default, replays as fast as possible.
+   */
+  public void setSpeed(final double speed) {
+    if (!(speed >= 0) || Double.isInfinite(speed)) {
+      throw new IllegalArgumentException("Unexpected speed: " + speed);
+    }
+    this.speed = speed;
+  }
+
+  /**
+   * Fire the events in <tt>lanes</tt> threads, keeping the order of the
+   * events with the same key. <tt>1</tt>, the default, fires them all in the
+   * thread that runs the replay.
+   */
+  public void setParallelism(final int lanes) {
+    if (lanes < 1) {
+      throw new IllegalArgumentException("Unexpected lane count: " + lanes);
+    }
+    parallelism = lanes;
+  }
+
+  /**
+   * Have the replayed events recorded by the journals recording the
+   * Blackboard, e.g. to copy the events into a journal of their own.
+   * <code>false</code>, the default, leaves them out of the journals.
+   */
+  public void setRecorded(final boolean recorded) {
+    this.recorded = recorded;
+  }
+
+  /**
+   * Tell <tt>monitor</tt> how the replay is progressing, every
+   * <tt>interval</tt>, and when it's finished.
+   *
+   * @param monitor
+   *          <code>null</code> to stop monitoring.
+   */
+  public void setMonitor(final ReplayMonitor monitor, final long interval,
+      final TimeUnit unit) {
+    if (unit == null) {
+      throw new NullPointerException("Argument with index 2 was null.");
+    } else if (interval <= 0) {
+      throw new IllegalArgumentException("The interval must be positive");
+    }
+    this.monitor = monitor;
+    monitorInterval = unit.toNanos(interval);
+  }
+
+  /**
+   * Ask a running replay to stop after the event being fired. Can be called
+   * from any thread, including the listeners.
+   */
+  public void stop() {
+    stopped = true;
+  }
+
+  /** @return the number of events replayed so far in the running replay. */
+  public long getReplayedEvents() {
+    return replayedEvents.get();
+  }
+
+  /**
+   * Replay the records, and return once they all are delivered.
+   *
+   * @return how the replay went.
+   * @throws IOException
+   *           if the journal couldn't be read, or an event decoded.
+   * @throws InterruptedException
+   *           if the thread was interrupted while pacing the replay, or
+   *           waiting for the lanes.
+   * @throws RuntimeException
+   *           if an event couldn't be fired, e.g. because its type isn't
+   *           registered on the Blackboard, after which nothing more is
+   *           replayed. Listeners that fail don't stop the replay; the
+   *           Blackboard prints their failures, as for any fired event.
+   */
+  public ReplayProgress run() throws IOException, InterruptedException {
+    stopped = false;
+    replayedEvents.set(0);
+    failure.set(null);
+
+    final PartitionedExecutor executor = parallelism > 1 ? new PartitionedExecutor(
+        parallelism) : null;
+    final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+    final Map<String, Boolean> included = new HashMap<String, Boolean>();
+
+    if (fromSequence > 0) {
+      reader.seek(fromSequence);
+    }
+
+    final long start = System.nanoTime();
+    long nextReport = start + monitorInterval;
+    long firstTimestamp = 0;
+    long skippedEvents = 0;
+    long lastSequence = 0;
+    long read = 0;
+
+    try {
+      JournalRecord record;
+      while (!stopped && failure.get() == null
+          && (record = reader.next()) != null) {
+        if (record.getSequence() > toSequence) {
+          break;
+        }
+        lastSequence = record.getSequence();
+
+        final long timestamp = record.getTimestamp();
+        if (lastSequence < fromSequence || timestamp < fromTime
+            || timestamp > toTime || !isIncluded(record, included)) {
+          skippedEvents++;
+          continue;
+        }
+
+        final Event event = record.getEvent();
+        if (speed > 0) {
+          if (read == 0) {
+            firstTimestamp = timestamp;
+          }
+          final long due = start
+              + (long) (TimeUnit.MILLISECONDS.toNanos(timestamp
+                  - firstTimestamp) / speed);
+          TimeUnit.NANOSECONDS.sleep(due - System.nanoTime());
+        }
+
+        if (executor == null) {
+          fire(event);
+          replayedEvents.incrementAndGet();
+        } else {
+          inFlight.acquire();
+          final Object key = event instanceof KeyedEvent ? ((KeyedEvent) event)
+              .getKey() : null;
+          executor.execute(key, new Runnable() {
+            public void run() {
+              try {
+                if (failure.get() == null) {
+                  fire(event);
+                  replayedEvents.incrementAndGet();
+                }
+              } catch (final RuntimeException e) {
+                failure.compareAndSet(null, e);
+              } finally {
+                inFlight.release();
+              }
+            }
+          });
+        }
+
+        read++;
+        if (monitor != null && (speed > 0 || read % CLOCK_STRIDE == 0)
+            && System.nanoTime() >= nextReport) {
+          monitor.progress(new ReplayProgress(replayedEvents.get(),
+              skippedEvents, lastSequence, System.nanoTime() - start, false));
+          nextReport = System.nanoTime() + monitorInterval;
+        }
+      }
+
+      if (executor != null) {
+        // wait for the lanes to fire what they have
+        inFlight.acquire(MAX_IN_FLIGHT);
+        inFlight.release(MAX_IN_FLIGHT);
+      }
+    } finally {
+      if (executor != null) {
+        executor.shutdown();
+      }
+    }
+
+    if (failure.get() != null) {
+      throw failure.get();
+    }
+
+    final ReplayProgress progress = new ReplayProgress(replayedEvents.get(),
+        skippedEvents, lastSequence, System.nanoTime() - start, true);
+    if (monitor != null) {
+      monitor.progress(progress);
+    }
+    return progress;
+  }
+
+  private void fire(final Event event) {
+    if (recorded) {
+      blackboard.fire(event);
+      return;
+    }
+
+    final Blackboard replaying = EventJournal.REPLAYING.get();
+    EventJournal.REPLAYING.set(blackboard);
+    try {
+      blackboard.fire(event);
+    } finally {
+      if (replaying != null) {
+        EventJournal.REPLAYING.set(replaying);
+      } else {
+        EventJournal.REPLAYING.remove();
+      }
+    }
+  }
+
+  /**
+   * @return <code>true</code> iff the record's type is one of the included
+   *         ones, or a subtype of one.
+   */
+  private boolean isIncluded(final JournalRecord record,
+      final Map<String, Boolean> included) {
+    if (types.isEmpty()) {
+      return true;
+    }
+
+    Boolean isIncluded = included.get(record.getTypeName());
+    if (isIncluded == null) {
+      isIncluded = Boolean.FALSE;
+      try {
+        final Class<? extends Event> type = record.getType();
+        for (final Class<? extends Event> includedType : types) {
+          if (includedType.isAssignableFrom(type)) {
+            isIncluded = Boolean.TRUE;
+            break;
+          }
+        }
+      } catch (final IOException e) {
+        // a type that isn't there can't be one of the included ones
+      }
+      included.put(record.getTypeName(), isIncluded);
+    }
+    return isIncluded.booleanValue();
+  }
+}
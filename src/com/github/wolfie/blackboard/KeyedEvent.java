@@ -0,0 +1,20 @@
+package com.github.wolfie.blackboard;
+
+/**
+ * <p>
+ * An {@link Event} that is about a certain entity, identified by a key.
+ * </p>
+ * 
+ * <p>
+ * The key is used by the features that treat events about the same entity
+ * together, such as {@link Blackboard#enableConflation(Class) conflation}.
+ * Keys are compared with {@link Object#equals(Object)}, and
+ * <code>null</code> is a valid key.
+ * </p>
+ * 
+ * @author Henrik Paul
+ */
+public interface KeyedEvent extends Event {
+  /** Get the key of the entity this event is about. */
+  Object getKey();
+}
@@ -0,0 +1,31 @@
+package com.github.wolfie.blackboard;
+
+import java.util.concurrent.Executor;
+
+/**
+ * <p>
+ * An {@link Executor} that can keep tasks with the same key in order.
+ * </p>
+ *
+ * <p>
+ * When given to {@link Blackboard#setExecutor(Executor)},
+ * {@link Blackboard#fireAsync(Event)} runs the deliveries of each
+ * {@link KeyedEvent} with {@link #execute(Object, Runnable)}, using the
+ * event's key. Other events are run with {@link #execute(Runnable)}.
+ * </p>
+ *
+ * @author Henrik Paul
+ * @see PartitionedExecutor
+ */
+public interface KeyedExecutor extends Executor {
+  /**
+   * Run <tt>command</tt> after all the tasks previously given with an equal
+   * <tt>key</tt>, and before the ones given after it.
+   *
+   * @param key
+   *          the key to order by. <code>null</code> is a valid key.
+   * @param command
+   *          the task to run.
+   */
+  void execute(Object key, Runnable command);
+}
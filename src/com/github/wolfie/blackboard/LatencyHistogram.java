@@ -0,0 +1,110 @@
+package com.github.wolfie.blackboard;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A lock-free histogram of durations in nanoseconds.
+ * </p>
+ *
+ * <p>
+ * Values below 16 get a bucket each. Above that, every power of two is split
+ * into 16 buckets, so a recorded value is off by at most 1/16 of itself.
+ * Recording is a few bit operations and one atomic increment.
+ * </p>
+ *
+ * @author Henrik Paul
+ */
+class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong totalNanos = new AtomicLong();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  void record(final long nanos) {
+    // the clock may go backwards between threads
+    final long value = nanos < 0 ? 0 : nanos;
+
+    counts.incrementAndGet(getBucket(value));
+    totalNanos.addAndGet(value);
+
+    long max;
+    while ((max = maxNanos.get()) < value) {
+      if (maxNanos.compareAndSet(max, value)) {
+        break;
+      }
+    }
+  }
+
+  void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+    totalNanos.set(0);
+    maxNanos.set(0);
+  }
+
+  LatencySnapshot getSnapshot() {
+    final long[] snapshot = new long[BUCKETS];
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      count += snapshot[i];
+    }
+
+    final long total = totalNanos.get();
+    final long max = maxNanos.get();
+    return new LatencySnapshot(count, count > 0 ? total / count : 0,
+        getPercentile(snapshot, count, 0.5, max), getPercentile(snapshot,
+            count, 0.99, max), getPercentile(snapshot, count, 0.999, max),
+        max);
+  }
+
+  /**
+   * @return the highest value in the bucket where the given share of the
+   *         values is reached, but never more than <tt>max</tt>.
+   */
+  private static long getPercentile(final long[] snapshot, final long count,
+      final double percentile, final long max) {
+    if (count == 0) {
+      return 0;
+    }
+
+    final long rank = Math.max(1, (long) Math.ceil(count * percentile));
+    long seen = 0;
+    for (int i = 0; i < snapshot.length; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(getHighestValue(i), max);
+      }
+    }
+    return max;
+  }
+
+  static int getBucket(final long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+
+    final int exponent = 63 - Long.numberOfLeadingZeros(value);
+    final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS))
+        & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  static long getHighestValue(final int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+
+    final int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    final long subBucket = bucket % SUB_BUCKETS;
+    final int shift = exponent - SUB_BUCKET_BITS;
+    final long lowest = (SUB_BUCKETS + subBucket) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+}
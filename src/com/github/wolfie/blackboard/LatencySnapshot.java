@@ -0,0 +1,73 @@
+package com.github.wolfie.blackboard;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * The state of a latency histogram at one point in time. All durations are in
+ * nanoseconds.
+ * </p>
+ *
+ * <p>
+ * The percentiles are the upper bounds of the histogram buckets they fall in,
+ * so they may be up to 1/16 above the real value.
+ * </p>
+ *
+ * @author Henrik Paul
+ * @see DispatchMetrics
+ */
+public class LatencySnapshot {
+  private final long count;
+  private final long mean;
+  private final long p50;
+  private final long p99;
+  private final long p999;
+  private final long max;
+
+  LatencySnapshot(final long count, final long mean, final long p50,
+      final long p99, final long p999, final long max) {
+    this.count = count;
+    this.mean = mean;
+    this.p50 = p50;
+    this.p99 = p99;
+    this.p999 = p999;
+    this.max = max;
+  }
+
+  /** The number of recorded durations. */
+  public long getCount() {
+    return count;
+  }
+
+  public long getMean() {
+    return mean;
+  }
+
+  /** The median. */
+  public long getP50() {
+    return p50;
+  }
+
+  public long getP99() {
+    return p99;
+  }
+
+  public long getP999() {
+    return p999;
+  }
+
+  public long getMax() {
+    return max;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("count=%d, mean=%dus, p50=%dus, p99=%dus, "
+        + "p999=%dus, max=%dus", count, toMicros(mean), toMicros(p50),
+        toMicros(p99), toMicros(p999), toMicros(max));
+  }
+
+  private static long toMicros(final long nanos) {
+    return TimeUnit.NANOSECONDS.toMicros(nanos);
+  }
+}
@@ -0,0 +1,60 @@
+package com.github.wolfie.blackboard;
+
+import com.github.wolfie.blackboard.annotation.ListenerMethod;
+import com.github.wolfie.blackboard.annotation.ListenerPair;
+
+/**
+ * <p>
+ * A list of {@link Listener} methods and {@link Event}/Listener pairs, made at
+ * compile time, so that Blackboard doesn't need to find them by scanning the
+ * classpath and reflecting at runtime.
+ * </p>
+ * 
+ * <p>
+ * Indexes are generated by the <code>ListenerIndexProcessor</code> of the
+ * blackboard-processor jar, when it's given to javac, which also lists them in
+ * <code>META-INF/services/com.github.wolfie.blackboard.ListenerIndex</code>.
+ * Every Blackboard uses the indexes found there with {@link java.util.ServiceLoader}.
+ * When the service files have been lost, e.g. when shading jars, an index can be
+ * given to {@link Blackboard#addListenerIndex(ListenerIndex)} directly.
+ * </p>
+ * 
+ * <p>
+ * Anything not found in an index is still handled with reflection.
+ * </p>
+ * 
+ * @author Henrik Paul
+ */
+public interface ListenerIndex {
+
+  /** Receives the contents of a {@link ListenerIndex}. */
+  interface Collector {
+
+    /**
+     * A {@link ListenerMethod}.
+     * 
+     * @param listener
+     *          the listener interface declaring the method.
+     * @param event
+     *          the type of the method's only parameter.
+     * @param methodName
+     *          the name of the method.
+     * @param dispatcher
+     *          calls the method, or <code>null</code> if the method can't be
+     *          called directly from generated code, e.g. because the listener
+     *          interface is private.
+     */
+    void listenerMethod(Class<? extends Listener> listener,
+        Class<? extends Event> event, String methodName, Dispatcher dispatcher);
+
+    /**
+     * An {@link Event} that names its {@link Listener}, either with
+     * {@link ListenerPair} or by declaring the listener interface inside
+     * itself. These are what {@link Blackboard#discover()} registers.
+     */
+    void pair(Class<? extends Event> event, Class<? extends Listener> listener);
+  }
+
+  /** Give the contents of this index to <tt>collector</tt>. */
+  void collect(Collector collector);
+}
@@ -0,0 +1,230 @@
+package com.github.wolfie.blackboard;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * <p>
+ * The combined contents of some {@link ListenerIndex ListenerIndexes}.
+ * </p>
+ *
+ * <p>
+ * Instances are immutable. {@link #with(ListenerIndex)} makes a new instance
+ * that has an index more.
+ * </p>
+ *
+ * @author Henrik Paul
+ */
+class ListenerIndexes {
+
+  /** A listener method found in an index */
+  static class IndexedMethod {
+    private final Class<? extends Listener> listener;
+    private final Class<? extends Event> event;
+    private final String methodName;
+    private final Dispatcher dispatcher;
+
+    IndexedMethod(final Class<? extends Listener> listener,
+        final Class<? extends Event> event, final String methodName,
+        final Dispatcher dispatcher) {
+      this.listener = listener;
+      this.event = event;
+      this.methodName = methodName;
+      this.dispatcher = dispatcher;
+    }
+
+    /** The listener interface declaring the method */
+    Class<? extends Listener> getListener() {
+      return listener;
+    }
+
+    Class<? extends Event> getEvent() {
+      return event;
+    }
+
+    String getMethodName() {
+      return methodName;
+    }
+
+    /** @return the dispatcher, or <code>null</code> if there is none. */
+    Dispatcher getDispatcher() {
+      return dispatcher;
+    }
+  }
+
+  /** An event and listener pair found in an index */
+  static class IndexedPair {
+    private final Class<? extends Event> event;
+    private final Class<? extends Listener> listener;
+
+    private IndexedPair(final Class<? extends Event> event,
+        final Class<? extends Listener> listener) {
+      this.event = event;
+      this.listener = listener;
+    }
+
+    Class<? extends Event> getEvent() {
+      return event;
+    }
+
+    Class<? extends Listener> getListener() {
+      return listener;
+    }
+  }
+
+  private static class DefaultHolder {
+    private static final ListenerIndexes DEFAULT = load();
+
+    private static ListenerIndexes load() {
+      ListenerIndexes indexes = new ListenerIndexes();
+      final Iterator<ListenerIndex> iterator = ServiceLoader.load(
+          ListenerIndex.class, ListenerIndexes.class.getClassLoader())
+          .iterator();
+      while (true) {
+        try {
+          if (!iterator.hasNext()) {
+            break;
+          }
+          indexes = indexes.with(iterator.next());
+        } catch (final ServiceConfigurationError e) {
+          // a stale or broken index, reflection will cover for it
+        } catch (final LinkageError e) {
+          // an index referring to classes that aren't there any more
+        }
+      }
+      return indexes;
+    }
+  }
+
+  private final Map<Class<? extends Listener>, List<IndexedMethod>> methods;
+  private final List<IndexedPair> pairs;
+
+  private ListenerIndexes() {
+    methods = Collections.emptyMap();
+    pairs = Collections.emptyList();
+  }
+
+  private ListenerIndexes(
+      final Map<Class<? extends Listener>, List<IndexedMethod>> methods,
+      final List<IndexedPair> pairs) {
+    this.methods = methods;
+    this.pairs = pairs;
+  }
+
+  /** Get the indexes listed in the <code>META-INF/services</code> files. */
+  static ListenerIndexes getDefault() {
+    return DefaultHolder.DEFAULT;
+  }
+
+  /** Get new indexes that have the contents of <tt>index</tt> added. */
+  ListenerIndexes with(final ListenerIndex index) {
+    final Map<Class<? extends Listener>, List<IndexedMethod>> newMethods = new HashMap<Class<? extends Listener>, List<IndexedMethod>>();
+    for (final Map.Entry<Class<? extends Listener>, List<IndexedMethod>> entry : methods
+        .entrySet()) {
+      newMethods.put(entry.getKey(),
+          new ArrayList<IndexedMethod>(entry.getValue()));
+    }
+    final List<IndexedPair> newPairs = new ArrayList<IndexedPair>(pairs);
+
+    index.collect(new ListenerIndex.Collector() {
+      public void listenerMethod(final Class<? extends Listener> listener,
+          final Class<? extends Event> event, final String methodName,
+          final Dispatcher dispatcher) {
+        List<IndexedMethod> methodsOfListener = newMethods.get(listener);
+        if (methodsOfListener == null) {
+          methodsOfListener = new ArrayList<IndexedMethod>(1);
+          newMethods.put(listener, methodsOfListener);
+        }
+        methodsOfListener.add(new IndexedMethod(listener, event, methodName,
+            dispatcher));
+      }
+
+      public void pair(final Class<? extends Event> event,
+          final Class<? extends Listener> listener) {
+        newPairs.add(new IndexedPair(event, listener));
+      }
+    });
+
+    return new ListenerIndexes(newMethods, newPairs);
+  }
+
+  /**
+   * Get the indexed listener methods of <tt>listener</tt>, including the ones
+   * it inherits.
+   *
+   * @return the methods, or an empty list if <tt>listener</tt> isn't indexed.
+   */
+  List<IndexedMethod> getMethods(final Class<? extends Listener> listener) {
+    if (methods.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    final List<IndexedMethod> result = new ArrayList<IndexedMethod>();
+    addMethods(listener, result);
+    return result;
+  }
+
+  private void addMethods(final Class<?> type, final List<IndexedMethod> result) {
+    final List<IndexedMethod> declared = methods.get(type);
+    if (declared != null) {
+      for (final IndexedMethod method : declared) {
+        if (!result.contains(method)) {
+          result.add(method);
+        }
+      }
+    }
+    for (final Class<?> superInterface : type.getInterfaces()) {
+      addMethods(superInterface, result);
+    }
+  }
+
+  /**
+   * Get the indexed listener method of <tt>listener</tt> that takes
+   * <tt>event</tt>.
+   *
+   * @return the method, or <code>null</code> if there is no such method in the
+   *         indexes, or if there are many.
+   */
+  IndexedMethod getMethod(final Class<? extends Listener> listener,
+      final Class<? extends Event> event) {
+    IndexedMethod found = null;
+    for (final IndexedMethod method : getMethods(listener)) {
+      if (method.getEvent().equals(event)) {
+        if (found != null) {
+          // let reflection report the duplicate
+          return null;
+        }
+        found = method;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Get the indexed pairs whose events are in the package
+   * <tt>packageName</tt>, or in any package below it.
+   */
+  List<IndexedPair> getPairs(final String packageName) {
+    final List<IndexedPair> result = new ArrayList<IndexedPair>();
+    for (final IndexedPair pair : pairs) {
+      final String eventPackage = getPackageName(pair.getEvent());
+      if (eventPackage.equals(packageName) || packageName.length() == 0
+          || eventPackage.startsWith(packageName + '.')) {
+        result.add(pair);
+      }
+    }
+    return result;
+  }
+
+  static String getPackageName(final Class<?> type) {
+    final String name = type.getName();
+    final int lastDot = name.lastIndexOf('.');
+    return lastDot >= 0 ? name.substring(0, lastDot) : "";
+  }
+}
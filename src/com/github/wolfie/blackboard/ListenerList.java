@@ -0,0 +1,354 @@
+package com.github.wolfie.blackboard;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * <p>
+ * A copy-on-write set of {@link Listener Listeners} for one registered
+ * listener interface, ordered by priority.
+ * </p>
+ *
+ * <p>
+ * The listeners are kept in an array that is never modified once published.
+ * Adding or removing a listener builds a new array, already in the order the
+ * listeners are to be called, and swaps it in, so a {@link #getSnapshot()
+ * snapshot} can be iterated without copying, sorting or locking, even while
+ * other threads add and remove listeners.
+ * </p>
+ *
+ * <p>
+ * Weakly referenced listeners are kept in the same order. The snapshot of a
+ * list that has any can't be held strongly, since it would keep them from
+ * being collected, so it's held by a {@link WeakReference} of its own. The
+ * garbage collector clears that together with the listeners it could have
+ * kept alive, and only then is the snapshot built again, skipping the
+ * collected listeners; they are removed from the list by {@link #purge(Set)}.
+ * </p>
+ *
+ * <p>
+ * The snapshot of the {@link #merge(ListenerList, ListenerList) merge} of two
+ * lists is cached the same way, until either list changes.
+ * </p>
+ *
+ * @author Henrik Paul
+ */
+class ListenerList {
+
+  /** A weakly referenced listener, which knows the list it's in. */
+  static class WeakListener extends WeakReference<Listener> {
+    private final ListenerList list;
+
+    private WeakListener(final Listener listener, final ListenerList list,
+        final ReferenceQueue<? super Listener> queue) {
+      super(listener, queue);
+      this.list = list;
+    }
+
+    ListenerList getList() {
+      return list;
+    }
+  }
+
+  /**
+   * What the list has at one moment. Never modified once published, except
+   * for caching the snapshot of weak entries.
+   */
+  private static class Members {
+    /** {@link Listener Listeners} and {@link WeakListener WeakListeners} */
+    private final Object[] entries;
+    private final int[] priorities;
+
+    /** All the entries, if none of them are weak, <code>null</code> if not */
+    private final Listener[] snapshot;
+
+    /** The last snapshot of the entries, if some of them are weak */
+    private volatile Reference<Listener[]> weakSnapshot;
+
+    private Members(final Object[] entries, final int[] priorities) {
+      this.entries = entries;
+      this.priorities = priorities;
+
+      Listener[] strongEntries = new Listener[entries.length];
+      for (int i = 0; i < entries.length; i++) {
+        if (entries[i] instanceof WeakListener) {
+          strongEntries = null;
+          break;
+        }
+        strongEntries[i] = (Listener) entries[i];
+      }
+      snapshot = strongEntries;
+    }
+  }
+
+  /** The snapshot of the merge of two lists' members */
+  private static class MergedSnapshot {
+    private final Members first;
+    private final Members second;
+
+    /** The merged listeners, if none of them are weak */
+    private final Listener[] snapshot;
+
+    /** The merged listeners, if some of them are weak */
+    private final Reference<Listener[]> weakSnapshot;
+
+    private MergedSnapshot(final Members first, final Members second,
+        final Listener[] listeners) {
+      this.first = first;
+      this.second = second;
+      if (first.snapshot != null && second.snapshot != null) {
+        snapshot = listeners;
+        weakSnapshot = null;
+      } else {
+        snapshot = null;
+        weakSnapshot = new WeakReference<Listener[]>(listeners);
+      }
+    }
+
+    /**
+     * @return the listeners, or <code>null</code> if the members have changed
+     *         since, or a weak listener has been collected.
+     */
+    private Listener[] get(final Members first, final Members second) {
+      if (first != this.first || second != this.second) {
+        return null;
+      }
+      return snapshot != null ? snapshot : weakSnapshot.get();
+    }
+  }
+
+  private static final Members EMPTY = new Members(new Object[0], new int[0]);
+
+  private volatile Members members = EMPTY;
+
+  /** The last merge of another list with this one */
+  private volatile MergedSnapshot merged;
+
+  /**
+   * Get the listeners at this moment, the ones with the highest priority
+   * first. The returned array must not be modified.
+   */
+  Listener[] getSnapshot() {
+    final Members current = members;
+    if (current.snapshot != null) {
+      return current.snapshot;
+    }
+
+    final Reference<Listener[]> cached = current.weakSnapshot;
+    Listener[] snapshot = cached != null ? cached.get() : null;
+    if (snapshot == null) {
+      // the first snapshot, or some listeners were collected since the last
+      snapshot = dereference(current.entries);
+      current.weakSnapshot = new WeakReference<Listener[]>(snapshot);
+    }
+    return snapshot;
+  }
+
+  /** @return the listeners of <tt>entries</tt> that haven't been collected. */
+  private static Listener[] dereference(final Object[] entries) {
+    final Listener[] all = new Listener[entries.length];
+    int count = 0;
+    for (final Object entry : entries) {
+      final Listener listener = entry instanceof WeakListener ? ((WeakListener) entry)
+          .get() : (Listener) entry;
+      if (listener != null) {
+        all[count++] = listener;
+      }
+    }
+    return count == all.length ? all : Arrays.copyOf(all, count);
+  }
+
+  boolean isEmpty() {
+    return members.entries.length == 0;
+  }
+
+  /**
+   * Add <tt>listener</tt> after all listeners that have the same or a higher
+   * <tt>priority</tt>.
+   *
+   * @return <code>true</code> iff <tt>listener</tt> wasn't already in this
+   *         list.
+   */
+  synchronized boolean add(final Listener listener, final int priority) {
+    if (indexOf(members.entries, listener) != -1) {
+      return false;
+    }
+    insert(listener, priority);
+    return true;
+  }
+
+  /**
+   * Add <tt>listener</tt> like {@link #add(Listener, int)}, but without
+   * keeping it from being garbage collected. Once it's collected, its
+   * reference is enqueued in <tt>queue</tt>.
+   *
+   * @return <code>true</code> iff <tt>listener</tt> wasn't already in this
+   *         list.
+   */
+  synchronized boolean addWeak(final Listener listener, final int priority,
+      final ReferenceQueue<? super Listener> queue) {
+    if (indexOf(members.entries, listener) != -1) {
+      return false;
+    }
+    insert(new WeakListener(listener, this, queue), priority);
+    return true;
+  }
+
+  private void insert(final Object entry, final int priority) {
+    final Members current = members;
+    final int length = current.entries.length;
+
+    int index = length;
+    while (index > 0 && current.priorities[index - 1] < priority) {
+      index--;
+    }
+
+    final Object[] entries = new Object[length + 1];
+    final int[] priorities = new int[length + 1];
+    System.arraycopy(current.entries, 0, entries, 0, index);
+    System.arraycopy(current.priorities, 0, priorities, 0, index);
+    entries[index] = entry;
+    priorities[index] = priority;
+    System.arraycopy(current.entries, index, entries, index + 1, length
+        - index);
+    System.arraycopy(current.priorities, index, priorities, index + 1, length
+        - index);
+    members = new Members(entries, priorities);
+  }
+
+  /**
+   * @return <code>true</code> iff <tt>listener</tt> was found and removed.
+   */
+  synchronized boolean remove(final Listener listener) {
+    final Members current = members;
+    final int index = indexOf(current.entries, listener);
+    if (index == -1) {
+      return false;
+    }
+
+    if (current.entries.length == 1) {
+      members = EMPTY;
+    } else {
+      final int length = current.entries.length - 1;
+      final Object[] entries = new Object[length];
+      final int[] priorities = new int[length];
+      System.arraycopy(current.entries, 0, entries, 0, index);
+      System.arraycopy(current.priorities, 0, priorities, 0, index);
+      System.arraycopy(current.entries, index + 1, entries, index, length
+          - index);
+      System.arraycopy(current.priorities, index + 1, priorities, index,
+          length - index);
+      members = new Members(entries, priorities);
+    }
+    return true;
+  }
+
+  /**
+   * Remove the references of collected listeners, all in one go.
+   *
+   * @return the number of references removed.
+   */
+  synchronized int purge(final Set<WeakListener> collected) {
+    final Members current = members;
+    final Object[] entries = new Object[current.entries.length];
+    final int[] priorities = new int[current.entries.length];
+    int count = 0;
+    for (int i = 0; i < current.entries.length; i++) {
+      if (!collected.contains(current.entries[i])) {
+        entries[count] = current.entries[i];
+        priorities[count] = current.priorities[i];
+        count++;
+      }
+    }
+
+    if (count == current.entries.length) {
+      return 0;
+    }
+    members = count == 0 ? EMPTY : new Members(Arrays.copyOf(entries, count),
+        Arrays.copyOf(priorities, count));
+    return current.entries.length - count;
+  }
+
+  /**
+   * Merge the snapshots of two lists into one, by priority. Of listeners with
+   * the same priority, the ones in <tt>first</tt> come first. A listener in
+   * both lists is called only once, in its place in <tt>first</tt>.
+   * <tt>second</tt> caches the merge until either list changes, so it must
+   * always be merged with the same <tt>first</tt>.
+   *
+   * @param first
+   *          May be <code>null</code>.
+   */
+  static Listener[] merge(final ListenerList first, final ListenerList second) {
+    if (first == null) {
+      return second.getSnapshot();
+    }
+    final Members firstMembers = first.members;
+    final Members secondMembers = second.members;
+    if (firstMembers.entries.length == 0) {
+      return second.getSnapshot();
+    } else if (secondMembers.entries.length == 0) {
+      return first.getSnapshot();
+    }
+
+    final MergedSnapshot cached = second.merged;
+    Listener[] snapshot = cached != null ? cached.get(firstMembers,
+        secondMembers) : null;
+    if (snapshot == null) {
+      snapshot = merge(firstMembers, secondMembers);
+      second.merged = new MergedSnapshot(firstMembers, secondMembers, snapshot);
+    }
+    return snapshot;
+  }
+
+  private static Listener[] merge(final Members firstMembers,
+      final Members secondMembers) {
+    final Object[] a = firstMembers.entries;
+    final Object[] b = secondMembers.entries;
+    final Listener[] merged = new Listener[a.length + b.length];
+    int count = 0;
+    int i = 0;
+    int j = 0;
+    while (i < a.length || j < b.length) {
+      final Object entry;
+      if (j == b.length
+          || (i < a.length && firstMembers.priorities[i] >= secondMembers.priorities[j])) {
+        entry = a[i++];
+      } else {
+        entry = b[j++];
+        final Listener listener = entry instanceof WeakListener ? ((WeakListener) entry)
+            .get() : (Listener) entry;
+        if (indexOf(a, listener) != -1) {
+          continue;
+        }
+      }
+
+      final Listener listener = entry instanceof WeakListener ? ((WeakListener) entry)
+          .get() : (Listener) entry;
+      if (listener != null) {
+        merged[count++] = listener;
+      }
+    }
+    return count == merged.length ? merged : Arrays.copyOf(merged, count);
+  }
+
+  private static int indexOf(final Object[] entries, final Listener listener) {
+    if (listener == null) {
+      return -1;
+    }
+    for (int i = 0; i < entries.length; i++) {
+      final Object entry = entries[i];
+      if (entry instanceof WeakListener) {
+        if (listener.equals(((WeakListener) entry).get())) {
+          return i;
+        }
+      } else if (entry.equals(listener)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
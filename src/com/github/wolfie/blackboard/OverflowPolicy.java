@@ -0,0 +1,37 @@
+package com.github.wolfie.blackboard;
+
+/**
+ * What to do with an asynchronous delivery when its event type's delivery
+ * queue, or the budget shared by all queues, is full.
+ * 
+ * @author Henrik Paul
+ * @see Blackboard#setQueueCapacity(Class, int, OverflowPolicy)
+ */
+public enum OverflowPolicy {
+  /** Make the firing thread wait until there is room. */
+  BLOCK,
+
+  /**
+   * Drop the oldest queued delivery of the event type to make room. Its
+   * {@link FireFuture} fails with a
+   * {@link com.github.wolfie.blackboard.exception.QueueFullException
+   * QueueFullException}.
+   */
+  DROP_OLDEST,
+
+  /**
+   * Drop the new delivery. Its {@link FireFuture} fails with a
+   * {@link com.github.wolfie.blackboard.exception.QueueFullException
+   * QueueFullException}.
+   */
+  DROP_NEWEST,
+
+  /**
+   * Throw a {@link com.github.wolfie.blackboard.exception.QueueFullException
+   * QueueFullException} to the firing thread.
+   */
+  REJECT,
+
+  /** Call the listener in the firing thread, skipping the queue. */
+  CALLER_RUNS
+}
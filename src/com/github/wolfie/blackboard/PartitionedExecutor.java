@@ -0,0 +1,153 @@
+package com.github.wolfie.blackboard;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * A {@link KeyedExecutor} with a fixed number of lanes, each of which runs its
+ * tasks one at a time, in order, in a thread of its own.
+ * </p>
+ *
+ * <p>
+ * A keyed task goes to the lane picked by the hash of its key, so tasks with
+ * the same key run in the order they were given, while tasks with different
+ * keys are spread over all the lanes and run in parallel. Given to
+ * {@link Blackboard#setExecutor(Executor)}, this delivers the
+ * {@link KeyedEvent KeyedEvents} about one entity in the order they were
+ * fired with {@link Blackboard#fireAsync(Event)}. Unkeyed tasks are dealt out
+ * to the lanes in turn.
+ * </p>
+ *
+ * <p>
+ * A slow task holds up the tasks queued behind it in its lane, including ones
+ * with other keys that hash to the same lane.
+ * </p>
+ *
+ * @author Henrik Paul
+ */
+public class PartitionedExecutor implements KeyedExecutor {
+
+  private final ExecutorService[] lanes;
+  private final AtomicInteger nextLane = new AtomicInteger();
+
+  /**
+   * Create an executor with a lane for each available processor.
+   */
+  public PartitionedExecutor() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @param lanes
+   *          the number of lanes, and threads.
+   * @throws IllegalArgumentException
+   *           if <tt>lanes</tt> is less than one.
+   */
+  public PartitionedExecutor(final int lanes) {
+    this(lanes, new ThreadFactory() {
+      private final AtomicInteger threadNumber = new AtomicInteger();
+
+      public Thread newThread(final Runnable runnable) {
+        final Thread thread = new Thread(runnable, "blackboard-lane-"
+            + threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * @param lanes
+   *          the number of lanes, and threads.
+   * @param threadFactory
+   *          creates the thread of each lane.
+   * @throws IllegalArgumentException
+   *           if <tt>lanes</tt> is less than one.
+   */
+  public PartitionedExecutor(final int lanes, final ThreadFactory threadFactory) {
+    if (lanes < 1) {
+      throw new IllegalArgumentException("Unexpected lane count: " + lanes);
+    } else if (threadFactory == null) {
+      throw new NullPointerException("Argument with index 1 was null.");
+    }
+
+    this.lanes = new ExecutorService[lanes];
+    for (int i = 0; i < lanes; i++) {
+      this.lanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+          new LinkedBlockingQueue<Runnable>(), threadFactory);
+    }
+  }
+
+  public int getLaneCount() {
+    return lanes.length;
+  }
+
+  /**
+   * @return the lane that the tasks with <tt>key</tt> run in, from
+   *         <code>0</code> to {@link #getLaneCount()} - 1.
+   */
+  public int getLane(final Object key) {
+    if (key == null) {
+      return 0;
+    }
+    final int hash = key.hashCode();
+    return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % lanes.length;
+  }
+
+  public void execute(final Object key, final Runnable command) {
+    lanes[getLane(key)].execute(command);
+  }
+
+  public void execute(final Runnable command) {
+    final int lane = (nextLane.getAndIncrement() & Integer.MAX_VALUE)
+        % lanes.length;
+    lanes[lane].execute(command);
+  }
+
+  /**
+   * Stop taking new tasks. The tasks already given are still run.
+   */
+  public void shutdown() {
+    for (final ExecutorService lane : lanes) {
+      lane.shutdown();
+    }
+  }
+
+  /**
+   * Stop taking new tasks, and try to interrupt the running ones.
+   *
+   * @return the tasks that were never run.
+   */
+  public List<Runnable> shutdownNow() {
+    final List<Runnable> neverRun = new ArrayList<Runnable>();
+    for (final ExecutorService lane : lanes) {
+      neverRun.addAll(lane.shutdownNow());
+    }
+    return neverRun;
+  }
+
+  /**
+   * Wait for all lanes to finish their tasks after {@link #shutdown()}.
+   *
+   * @return <code>true</code> iff all lanes finished before the timeout.
+   */
+  public boolean awaitTermination(final long timeout, final TimeUnit unit)
+      throws InterruptedException {
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+    for (final ExecutorService lane : lanes) {
+      if (!lane.awaitTermination(deadline - System.nanoTime(),
+          TimeUnit.NANOSECONDS)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,62 @@
+package com.github.wolfie.blackboard;
+
+import java.io.PrintStream;
+import java.util.Collection;
+
+/**
+ * A {@link Tracer} that writes a human readable log into a
+ * {@link PrintStream}. This is what {@link Blackboard#enableLogging()} uses.
+ * 
+ * @author Henrik Paul
+ */
+public class PrintStreamTracer implements Tracer {
+  private final PrintStream logTo;
+
+  public PrintStreamTracer(final PrintStream logTo) {
+    if (logTo == null) {
+      throw new NullPointerException("Argument with index 0 was null.");
+    }
+    this.logTo = logTo;
+  }
+
+  public void registered(final Class<? extends Listener> listener,
+      final Class<? extends Event> event, final String listenerMethod) {
+    log(String.format("Registering %s.%s() to %s", listener.getName(),
+        listenerMethod, event.getName()));
+  }
+
+  public void listenerAdded(final Listener listener,
+      final Collection<Class<? extends Listener>> listenerClasses) {
+    log("Adding " + listener + " for the following listeners:");
+    for (final Class<? extends Listener> listenerClass : listenerClasses) {
+      log("  ...listening to " + listenerClass);
+    }
+  }
+
+  public void listenerRemoved(final Listener listener, final boolean removed) {
+    log((removed ? "Removed " : "Tried to remove unknown listener ")
+        + listener);
+  }
+
+  public void fired(final Event event) {
+    log("Firing " + event);
+  }
+
+  public void delivered(final Event event, final Listener listener,
+      final long nanos, final Throwable failure) {
+    if (failure == null) {
+      log("  triggered " + listener + " in " + nanos + " ns");
+    } else {
+      log("  triggered " + listener + " in " + nanos + " ns, and it threw "
+          + failure);
+    }
+  }
+
+  public void message(final String message) {
+    log(message);
+  }
+
+  private void log(final String string) {
+    logTo.println("[BB] " + string);
+  }
+}
@@ -0,0 +1,18 @@
+package com.github.wolfie.blackboard;
+
+/**
+ * How many threads may fire events into an event pipeline.
+ * 
+ * @author Henrik Paul
+ * @see Blackboard#startPipeline(int, int, ProducerType, WaitStrategy)
+ */
+public enum ProducerType {
+  /**
+   * Only one thread ever fires events. Publishing needs no atomic operations,
+   * but firing from several threads corrupts the pipeline.
+   */
+  SINGLE,
+
+  /** Any number of threads may fire events concurrently. */
+  MULTI
+}
@@ -0,0 +1,71 @@
+package com.github.wolfie.blackboard;
+
+/**
+ * The state of one {@link Event} type's delivery queue at one point in time.
+ * 
+ * @author Henrik Paul
+ * @see Blackboard#getQueueSnapshot(Class)
+ */
+public class QueueSnapshot {
+  private final int capacity;
+  private final OverflowPolicy policy;
+  private final int depth;
+  private final long blocked;
+  private final long dropped;
+  private final long rejected;
+  private final long callerRuns;
+
+  QueueSnapshot(final int capacity, final OverflowPolicy policy,
+      final int depth, final long blocked, final long dropped,
+      final long rejected, final long callerRuns) {
+    this.capacity = capacity;
+    this.policy = policy;
+    this.depth = depth;
+    this.blocked = blocked;
+    this.dropped = dropped;
+    this.rejected = rejected;
+    this.callerRuns = callerRuns;
+  }
+
+  /** The most deliveries the queue holds. */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /** What is done with deliveries that don't fit. */
+  public OverflowPolicy getPolicy() {
+    return policy;
+  }
+
+  /** The number of deliveries waiting in the queue. */
+  public int getDepth() {
+    return depth;
+  }
+
+  /** The number of times a firing thread had to wait for room. */
+  public long getBlocked() {
+    return blocked;
+  }
+
+  /** The number of deliveries dropped for lack of room. */
+  public long getDropped() {
+    return dropped;
+  }
+
+  /** The number of deliveries rejected with an exception. */
+  public long getRejected() {
+    return rejected;
+  }
+
+  /** The number of deliveries run in the firing thread for lack of room. */
+  public long getCallerRuns() {
+    return callerRuns;
+  }
+
+  @Override
+  public String toString() {
+    return "depth=" + depth + "/" + capacity + " (" + policy + "), blocked="
+        + blocked + ", dropped=" + dropped + ", rejected=" + rejected
+        + ", caller runs=" + callerRuns;
+  }
+}
@@ -0,0 +1,18 @@
+package com.github.wolfie.blackboard;
+
+/**
+ * Is told how a {@link JournalReplay} is progressing.
+ * 
+ * @author Henrik Paul
+ * @see JournalReplay#setMonitor(ReplayMonitor, long,
+ *      java.util.concurrent.TimeUnit)
+ */
+public interface ReplayMonitor {
+
+  /**
+   * Called in the replaying thread, once per interval while events are
+   * replayed, and once more when the replay has {@link ReplayProgress#isFinished()
+   * finished}.
+   */
+  void progress(ReplayProgress progress);
+}
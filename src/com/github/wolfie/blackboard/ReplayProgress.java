@@ -0,0 +1,66 @@
+package com.github.wolfie.blackboard;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How far a {@link JournalReplay} had come at one moment.
+ * 
+ * @author Henrik Paul
+ */
+public class ReplayProgress {
+  private final long replayedEvents;
+  private final long skippedEvents;
+  private final long lastSequence;
+  private final long elapsedNanos;
+  private final boolean finished;
+
+  ReplayProgress(final long replayedEvents, final long skippedEvents,
+      final long lastSequence, final long elapsedNanos, final boolean finished) {
+    this.replayedEvents = replayedEvents;
+    this.skippedEvents = skippedEvents;
+    this.lastSequence = lastSequence;
+    this.elapsedNanos = elapsedNanos;
+    this.finished = finished;
+  }
+
+  /** @return the number of events fired on the Blackboard and delivered. */
+  public long getReplayedEvents() {
+    return replayedEvents;
+  }
+
+  /** @return the number of records read but left out by the filters. */
+  public long getSkippedEvents() {
+    return skippedEvents;
+  }
+
+  /**
+   * @return the sequence number of the last record read, or <code>0</code> if
+   *         none was.
+   */
+  public long getLastSequence() {
+    return lastSequence;
+  }
+
+  public long getElapsed(final TimeUnit unit) {
+    return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /** @return the replayed events per second, on average so far. */
+  public double getEventsPerSecond() {
+    return elapsedNanos == 0 ? 0 : replayedEvents * 1e9 / elapsedNanos;
+  }
+
+  /** @return <code>true</code> iff the replay is over. */
+  public boolean isFinished() {
+    return finished;
+  }
+
+  @Override
+  public String toString() {
+    return replayedEvents + " events replayed, " + skippedEvents
+        + " skipped, up to #" + lastSequence + " in "
+        + getElapsed(TimeUnit.MILLISECONDS) + " ms ("
+        + Math.round(getEventsPerSecond()) + " events/s)"
+        + (finished ? "" : "...");
+  }
+}
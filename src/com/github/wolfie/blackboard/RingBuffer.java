@@ -0,0 +1,215 @@
+package com.github.wolfie.blackboard;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * A preallocated, lock-free ring of {@link Event Events}, published by one or
+ * many producers and read by a fixed set of consumers.
+ * </p>
+ *
+ * <p>
+ * Every slot has a sequence number that grows forever. A producer claims the
+ * next sequence, waits until all consumers are done with the slot's previous
+ * round, writes the event and publishes the sequence. Each consumer reads every
+ * sequence in order and tracks how far it has come, which is what the
+ * producers wait on.
+ * </p>
+ *
+ * <p>
+ * Every event is handled by only one of the consumers, its owner. Events of
+ * the same {@link KeyedEvent#getKey() key} always have the same owner, so they
+ * are handled in the order they were published. Other events are spread
+ * evenly over the consumers.
+ * </p>
+ *
+ * @author Henrik Paul
+ */
+class RingBuffer {
+  private final Event[] entries;
+  private final int[] owners;
+  private final int mask;
+  private final int indexShift;
+  private final ProducerType producerType;
+  private final WaitStrategy waitStrategy;
+
+  /** The highest claimed sequence, used by {@link ProducerType#MULTI} */
+  private final AtomicLong claimed = new AtomicLong(-1);
+
+  /** The highest claimed sequence, used by {@link ProducerType#SINGLE} */
+  private long singleProducerClaimed = -1;
+
+  /** The highest published sequence, used by {@link ProducerType#SINGLE} */
+  private final AtomicLong singleProducerPublished = new AtomicLong(-1);
+
+  /**
+   * The round each slot was last published in, used by
+   * {@link ProducerType#MULTI}
+   */
+  private final AtomicIntegerArray publishedRounds;
+
+  /** The last sequence each consumer is done with */
+  private final AtomicLong[] consumed;
+
+  /**
+   * Smallest consumed sequence seen by a producer. Only a hint, since several
+   * producers may update it.
+   */
+  private volatile long cachedMinConsumed = -1;
+
+  /**
+   * @param size
+   *          the number of slots. Must be a power of two.
+   * @param consumers
+   *          the number of consumers reading the ring.
+   */
+  RingBuffer(final int size, final int consumers,
+      final ProducerType producerType, final WaitStrategy waitStrategy) {
+    if (size < 1 || Integer.bitCount(size) != 1) {
+      throw new IllegalArgumentException("Ring buffer size must be "
+          + "a positive power of two, was " + size);
+    } else if (consumers < 1) {
+      throw new IllegalArgumentException("There must be at least one "
+          + "consumer, was " + consumers);
+    }
+
+    entries = new Event[size];
+    owners = new int[size];
+    mask = size - 1;
+    indexShift = Integer.numberOfTrailingZeros(size);
+    this.producerType = producerType;
+    this.waitStrategy = waitStrategy;
+
+    if (producerType == ProducerType.MULTI) {
+      publishedRounds = new AtomicIntegerArray(size);
+      for (int i = 0; i < size; i++) {
+        publishedRounds.set(i, -1);
+      }
+    } else {
+      publishedRounds = null;
+    }
+
+    consumed = new AtomicLong[consumers];
+    for (int i = 0; i < consumers; i++) {
+      consumed[i] = new AtomicLong(-1);
+    }
+  }
+
+  /**
+   * Add <tt>event</tt> to the ring, waiting for a free slot if it's full.
+   */
+  void publish(final Event event) {
+    final long sequence;
+    if (producerType == ProducerType.SINGLE) {
+      sequence = ++singleProducerClaimed;
+    } else {
+      sequence = claimed.incrementAndGet();
+    }
+
+    awaitCapacity(sequence);
+
+    final int index = (int) sequence & mask;
+    entries[index] = event;
+    owners[index] = getOwner(event, sequence);
+
+    if (producerType == ProducerType.SINGLE) {
+      singleProducerPublished.lazySet(sequence);
+    } else {
+      publishedRounds.lazySet(index, (int) (sequence >>> indexShift));
+    }
+  }
+
+  private void awaitCapacity(final long sequence) {
+    final long wrapPoint = sequence - entries.length;
+    if (wrapPoint <= cachedMinConsumed) {
+      return;
+    }
+
+    int idleRounds = 0;
+    long minConsumed;
+    while (wrapPoint > (minConsumed = getMinConsumed())) {
+      waitStrategy.idle(++idleRounds);
+    }
+    cachedMinConsumed = minConsumed;
+  }
+
+  private int getOwner(final Event event, final long sequence) {
+    if (event instanceof KeyedEvent) {
+      final Object key = ((KeyedEvent) event).getKey();
+      if (key == null) {
+        return 0;
+      }
+      final int hash = key.hashCode();
+      return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % consumed.length;
+    } else {
+      return (int) (sequence % consumed.length);
+    }
+  }
+
+  private long getMinConsumed() {
+    long min = Long.MAX_VALUE;
+    for (final AtomicLong sequence : consumed) {
+      min = Math.min(min, sequence.get());
+    }
+    return min;
+  }
+
+  /** @return <code>true</code> iff <tt>sequence</tt> is published. */
+  boolean isPublished(final long sequence) {
+    if (producerType == ProducerType.SINGLE) {
+      return sequence <= singleProducerPublished.get();
+    } else {
+      final int index = (int) sequence & mask;
+      return publishedRounds.get(index) == (int) (sequence >>> indexShift);
+    }
+  }
+
+  /** Get the index of the consumer that handles a published sequence. */
+  int getOwner(final long sequence) {
+    return owners[(int) sequence & mask];
+  }
+
+  /**
+   * Get the event at a published sequence. May only be called by the owner of
+   * the sequence.
+   */
+  Event get(final long sequence) {
+    return entries[(int) sequence & mask];
+  }
+
+  /**
+   * Clear the slot of <tt>sequence</tt>, so that the ring doesn't keep
+   * delivered events from being collected. May only be called by the consumer
+   * handling the event, before it marks the sequence consumed.
+   */
+  void clear(final long sequence) {
+    entries[(int) sequence & mask] = null;
+  }
+
+  /** Mark all sequences up to <tt>sequence</tt> done for a consumer. */
+  void setConsumed(final int consumer, final long sequence) {
+    consumed[consumer].lazySet(sequence);
+  }
+
+  /** Get the last sequence the consumer is done with. */
+  long getConsumed(final int consumer) {
+    return consumed[consumer].get();
+  }
+
+  /**
+   * Get the highest sequence that is published, or is claimed and about to
+   * be.
+   */
+  long getLastClaimed() {
+    if (producerType == ProducerType.SINGLE) {
+      return singleProducerPublished.get();
+    } else {
+      return claimed.get();
+    }
+  }
+
+  WaitStrategy getWaitStrategy() {
+    return waitStrategy;
+  }
+}
@@ -0,0 +1,59 @@
+package com.github.wolfie.blackboard;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+
+/**
+ * <p>
+ * An {@link EventCodec} for {@link Serializable} events, using Java
+ * serialization.
+ * </p>
+ * 
+ * <p>
+ * It works for any serializable event, but writes the class descriptors
+ * along with every event. A codec that writes the fields of known event types
+ * by hand is several times more compact.
+ * </p>
+ * 
+ * @author Henrik Paul
+ */
+public class SerializingCodec implements EventCodec {
+
+  public void write(final Event event, final DataOutputStream out)
+      throws IOException {
+    if (!(event instanceof Serializable)) {
+      throw new NotSerializableException(event.getClass().getName());
+    }
+    final ObjectOutputStream objectOut = new ObjectOutputStream(out);
+    objectOut.writeObject(event);
+    objectOut.flush();
+  }
+
+  public Event read(final Class<? extends Event> type, final DataInputStream in)
+      throws IOException {
+    final ObjectInputStream objectIn = new ObjectInputStream(in) {
+      @Override
+      protected Class<?> resolveClass(final ObjectStreamClass desc)
+          throws IOException, ClassNotFoundException {
+        try {
+          return Class.forName(desc.getName(), false, type.getClassLoader());
+        } catch (final ClassNotFoundException e) {
+          return super.resolveClass(desc);
+        }
+      }
+    };
+    try {
+      return type.cast(objectIn.readObject());
+    } catch (final ClassNotFoundException e) {
+      throw new IOException(e);
+    } catch (final ClassCastException e) {
+      throw new IOException(e);
+    }
+  }
+}
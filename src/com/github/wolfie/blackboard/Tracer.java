@@ -0,0 +1,65 @@
+package com.github.wolfie.blackboard;
+
+import java.util.Collection;
+
+/**
+ * <p>
+ * Receives a structured account of what a {@link Blackboard} does.
+ * </p>
+ * 
+ * <p>
+ * A Tracer is set per Blackboard with {@link Blackboard#setTracer(Tracer)}.
+ * Without one, Blackboard builds no trace data at all. The methods are called
+ * in the thread doing the work, so they should return quickly.
+ * </p>
+ * 
+ * @author Henrik Paul
+ * @see PrintStreamTracer
+ */
+public interface Tracer {
+
+  /**
+   * A {@link Listener} interface was registered to an {@link Event} type.
+   * 
+   * @param listenerMethod
+   *          the name of the method called with the events. Only the name is
+   *          given, since registrations from a listener index or the discovery
+   *          cache don't look the method up until it's needed.
+   */
+  void registered(Class<? extends Listener> listener,
+      Class<? extends Event> event, String listenerMethod);
+
+  /**
+   * A {@link Listener} was added.
+   * 
+   * @param listenerClasses
+   *          the registered listener interfaces it was added for.
+   */
+  void listenerAdded(Listener listener,
+      Collection<Class<? extends Listener>> listenerClasses);
+
+  /**
+   * A {@link Listener} was asked to be removed.
+   * 
+   * @param removed
+   *          <code>true</code> iff the listener was found and removed.
+   */
+  void listenerRemoved(Listener listener, boolean removed);
+
+  /** An {@link Event} was fired, before it is delivered to anyone. */
+  void fired(Event event);
+
+  /**
+   * A {@link Listener} has handled an {@link Event}.
+   * 
+   * @param nanos
+   *          how long the listener took, in nanoseconds.
+   * @param failure
+   *          what the listener threw, or <code>null</code> if it returned
+   *          normally.
+   */
+  void delivered(Event event, Listener listener, long nanos, Throwable failure);
+
+  /** Something else worth mentioning happened. */
+  void message(String message);
+}
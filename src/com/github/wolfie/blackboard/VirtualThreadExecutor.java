@@ -0,0 +1,82 @@
+package com.github.wolfie.blackboard;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * An {@link Executor} that runs each task in a new virtual thread.
+ * </p>
+ *
+ * <p>
+ * Meant to be given to {@link Blackboard#setExecutor(Executor)} when the
+ * {@link Listener Listeners} do blocking I/O: every delivery of
+ * {@link Blackboard#fireAsync(Event)} then gets a thread of its own, and
+ * blocking in one costs next to nothing. Use
+ * {@link Blackboard#setMaxConcurrentDeliveries(Class, int)} to cap how many
+ * deliveries of an event type may run at once.
+ * </p>
+ *
+ * <p>
+ * Virtual threads need Java 21. On older JVMs this falls back to a new daemon
+ * platform thread per task, which works, but is a lot more expensive. See
+ * {@link #isVirtual()}.
+ * </p>
+ *
+ * @author Henrik Paul
+ */
+public class VirtualThreadExecutor implements Executor {
+
+  private static final ThreadFactory VIRTUAL_THREAD_FACTORY = createVirtualThreadFactory();
+
+  private final ThreadFactory threadFactory;
+
+  public VirtualThreadExecutor() {
+    if (VIRTUAL_THREAD_FACTORY != null) {
+      threadFactory = VIRTUAL_THREAD_FACTORY;
+    } else {
+      threadFactory = new ThreadFactory() {
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        public Thread newThread(final Runnable runnable) {
+          final Thread thread = new Thread(runnable, "blackboard-delivery-"
+              + threadNumber.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      };
+    }
+  }
+
+  /**
+   * Look up <code>Thread.ofVirtual().factory()</code> reflectively, so that
+   * Blackboard still runs on JVMs without virtual threads.
+   *
+   * @return the factory, or <code>null</code> if virtual threads aren't
+   *         available.
+   */
+  private static ThreadFactory createVirtualThreadFactory() {
+    try {
+      final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      final Method factory = Class.forName("java.lang.Thread$Builder")
+          .getMethod("factory");
+      return (ThreadFactory) factory.invoke(builder);
+    } catch (final Exception e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return <code>true</code> iff tasks are run in virtual threads, and not in
+   *         platform threads.
+   */
+  public boolean isVirtual() {
+    return threadFactory == VIRTUAL_THREAD_FACTORY;
+  }
+
+  public void execute(final Runnable command) {
+    threadFactory.newThread(command).start();
+  }
+}
@@ -0,0 +1,57 @@
+package com.github.wolfie.blackboard;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How the threads of an event pipeline wait, when a consumer has nothing to
+ * deliver or a producer finds the ring buffer full.
+ * 
+ * @author Henrik Paul
+ * @see Blackboard#startPipeline(int, int, ProducerType, WaitStrategy)
+ */
+public enum WaitStrategy {
+  /** Spin on the CPU. Lowest latency, but keeps a core busy per thread. */
+  BUSY_SPIN {
+    @Override
+    void idle(final int idleRounds) {
+      // just try again
+    }
+  },
+
+  /** Spin for a while, then yield the CPU to other threads between tries. */
+  YIELD {
+    @Override
+    void idle(final int idleRounds) {
+      if (idleRounds > SPIN_ROUNDS) {
+        Thread.yield();
+      }
+    }
+  },
+
+  /**
+   * Spin for a while, then yield, then park the thread for short periods.
+   * Uses the least CPU when idle, at the cost of latency.
+   */
+  PARK {
+    @Override
+    void idle(final int idleRounds) {
+      if (idleRounds > SPIN_ROUNDS + YIELD_ROUNDS) {
+        LockSupport.parkNanos(PARK_NANOS);
+      } else if (idleRounds > SPIN_ROUNDS) {
+        Thread.yield();
+      }
+    }
+  };
+
+  private static final int SPIN_ROUNDS = 100;
+  private static final int YIELD_ROUNDS = 100;
+  private static final long PARK_NANOS = 50000;
+
+  /**
+   * Wait a little.
+   * 
+   * @param idleRounds
+   *          how many times in a row the thread has found nothing to do.
+   */
+  abstract void idle(int idleRounds);
+}
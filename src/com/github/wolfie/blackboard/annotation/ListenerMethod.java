@@ -19,9 +19,24 @@ import com.github.wolfie.blackboard.Listener;
  * Non-public methods are ignored.
  * </p>
  * 
+ * <p>
+ * The {@link #priority()} decides the order in which the listeners of a
+ * listener interface are called. It can be given on the method of the listener
+ * interface, or on the method that implements it, which then takes
+ * precedence.
+ * </p>
+ * 
  * @author Henrik Paul
  */
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
 public @interface ListenerMethod {
+  /**
+   * Listeners with a higher priority are called before the ones of the same
+   * listener interface with a lower priority. Listeners with the same
+   * priority are called in the order they were added. The listeners of an
+   * event's more specific registrations are called before those of its
+   * supertypes' registrations, whatever their priorities.
+   */
+  int priority() default 0;
 }
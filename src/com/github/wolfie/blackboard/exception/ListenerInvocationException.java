@@ -0,0 +1,29 @@
+package com.github.wolfie.blackboard.exception;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.github.wolfie.blackboard.Event;
+
+public class ListenerInvocationException extends RuntimeException {
+  private static final long serialVersionUID = -4286139011318146713L;
+
+  private final List<Throwable> failures;
+
+  public ListenerInvocationException(final Event event,
+      final List<Throwable> failures) {
+    super(failures.size() + " listener(s) failed while handling " + event,
+        failures.get(0));
+    for (int i = 1; i < failures.size(); i++) {
+      addSuppressed(failures.get(i));
+    }
+    this.failures = Collections.unmodifiableList(new ArrayList<Throwable>(
+        failures));
+  }
+
+  /** Get everything the failed listeners threw, in no particular order. */
+  public List<Throwable> getFailures() {
+    return failures;
+  }
+}
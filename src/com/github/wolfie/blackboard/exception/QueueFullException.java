@@ -0,0 +1,12 @@
+package com.github.wolfie.blackboard.exception;
+
+import com.github.wolfie.blackboard.Event;
+
+public class QueueFullException extends RuntimeException {
+  private static final long serialVersionUID = -4185630271592094727L;
+
+  public QueueFullException(final Class<? extends Event> event) {
+    super("The delivery queue of " + event.getName() + " is full.");
+  }
+
+}
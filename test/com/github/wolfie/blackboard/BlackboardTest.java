@@ -1,7 +1,20 @@
 package com.github.wolfie.blackboard;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -9,7 +22,9 @@ import org.junit.Test;
 import com.github.wolfie.blackboard.annotation.ListenerMethod;
 import com.github.wolfie.blackboard.exception.DuplicateListenerMethodException;
 import com.github.wolfie.blackboard.exception.DuplicateRegistrationException;
+import com.github.wolfie.blackboard.exception.EventNotRegisteredException;
 import com.github.wolfie.blackboard.exception.InvalidListenerMethodConstruction;
+import com.github.wolfie.blackboard.exception.ListenerInvocationException;
 import com.github.wolfie.blackboard.exception.NoSuitableListenerMethodFoundException;
 
 public class BlackboardTest {
@@ -22,6 +37,55 @@ public class BlackboardTest {
     void method(AbstractTestEvent event);
   }
 
+  private class ConcreteTestEvent extends AbstractTestEvent {
+  }
+
+  private class OtherConcreteTestEvent extends AbstractTestEvent {
+  }
+
+  private interface ConcreteEventListener extends Listener {
+    @ListenerMethod
+    void concreteMethod(ConcreteTestEvent event);
+  }
+
+  private static class AbstractEventListenerImpl implements
+      ListenerForAbstractEvent {
+    private int triggered = 0;
+
+    public void method(final AbstractTestEvent event) {
+      triggered++;
+    }
+  }
+
+  private static class ConcreteEventListenerImpl implements
+      ConcreteEventListener {
+    private int triggered = 0;
+
+    public void concreteMethod(final ConcreteTestEvent event) {
+      triggered++;
+    }
+  }
+
+  private interface EventInterface extends Event {
+  }
+
+  private static class EventInterfaceImpl implements EventInterface {
+  }
+
+  private interface EventInterfaceListener extends Listener {
+    @ListenerMethod
+    void method(EventInterface event);
+  }
+
+  private static class EventInterfaceListenerImpl implements
+      EventInterfaceListener {
+    private int triggered = 0;
+
+    public void method(final EventInterface event) {
+      triggered++;
+    }
+  }
+
   private interface IncompatibleEventListener extends Listener {
     @ListenerMethod
     void method(final Event event);
@@ -66,6 +130,32 @@ public class BlackboardTest {
     }
   }
 
+  private static class OrderRecordingListener implements TestListener {
+    private final String name;
+    private final List<String> log;
+
+    public OrderRecordingListener(final String name, final List<String> log) {
+      this.name = name;
+      this.log = log;
+    }
+
+    public void listenerMethod(final TestEvent event) {
+      log.add(name);
+    }
+  }
+
+  private static class UrgentListener extends OrderRecordingListener {
+    public UrgentListener(final String name, final List<String> log) {
+      super(name, log);
+    }
+
+    @Override
+    @ListenerMethod(priority = 5)
+    public void listenerMethod(final TestEvent event) {
+      super.listenerMethod(event);
+    }
+  }
+
   private class SecondTestListener implements Listener {
     @ListenerMethod
     @SuppressWarnings("unused")
@@ -167,6 +257,156 @@ public class BlackboardTest {
   public static class EventTwo implements Event {
   }
 
+  private class SelfRemovingListener implements TestListener {
+    private int triggered = 0;
+
+    public void listenerMethod(final TestEvent event) {
+      triggered++;
+      blackboard.removeListener(this);
+    }
+  }
+
+  private static class FailingListener implements TestListener {
+    private final RuntimeException failure = new RuntimeException("failing");
+
+    public void listenerMethod(final TestEvent event) {
+      throw failure;
+    }
+  }
+
+  private static class ConcurrencyTrackingListener implements TestListener {
+    private final AtomicInteger running;
+    private final AtomicInteger maxRunning;
+
+    public ConcurrencyTrackingListener(final AtomicInteger running,
+        final AtomicInteger maxRunning) {
+      this.running = running;
+      this.maxRunning = maxRunning;
+    }
+
+    public void listenerMethod(final TestEvent event) {
+      final int nowRunning = running.incrementAndGet();
+      int max;
+      while ((max = maxRunning.get()) < nowRunning) {
+        maxRunning.compareAndSet(max, nowRunning);
+      }
+      try {
+        Thread.sleep(5);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      running.decrementAndGet();
+    }
+  }
+
+  private static class RecordingMultiEventListener implements
+      MultiEventPerListener {
+    private final List<Event> events = new ArrayList<Event>();
+
+    public void eventOne(final EventOne event) {
+      events.add(event);
+    }
+
+    public void eventTwo(final EventTwo event) {
+      events.add(event);
+    }
+  }
+
+  public static class PriceEvent implements KeyedEvent {
+    private final String symbol;
+    private final int price;
+
+    public PriceEvent(final String symbol, final int price) {
+      this.symbol = symbol;
+      this.price = price;
+    }
+
+    public Object getKey() {
+      return symbol;
+    }
+
+    @Override
+    public String toString() {
+      return symbol + "=" + price;
+    }
+  }
+
+  public interface PriceListener extends Listener {
+    @ListenerMethod
+    void priceChanged(PriceEvent event);
+  }
+
+  private static class RecordingPriceListener implements PriceListener {
+    private final List<String> prices = new ArrayList<String>();
+
+    public void priceChanged(final PriceEvent event) {
+      prices.add(event.toString());
+    }
+  }
+
+  private static class QueueingExecutor implements Executor {
+    private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+    public void execute(final Runnable command) {
+      tasks.add(command);
+    }
+
+    void runAll() {
+      while (!tasks.isEmpty()) {
+        tasks.remove(0).run();
+      }
+    }
+  }
+
+  public static class InlineEvent implements Event {
+    public interface InlineListener extends Listener {
+      @ListenerMethod
+      void onEvent(InlineEvent event);
+    }
+  }
+
+  private static class InlineListenerImpl implements InlineEvent.InlineListener {
+    private int events = 0;
+
+    public void onEvent(final InlineEvent event) {
+      events++;
+    }
+  }
+
+  /** Records the fired events and the deliveries, as "event listener" */
+  private static class RecordingTracer implements Tracer {
+    private final List<Event> fired = new ArrayList<Event>();
+    private final List<String> deliveries = new ArrayList<String>();
+    private final List<Throwable> failures = new ArrayList<Throwable>();
+
+    public void registered(final Class<? extends Listener> listener,
+        final Class<? extends Event> event, final String listenerMethod) {
+    }
+
+    public void listenerAdded(final Listener listener,
+        final Collection<Class<? extends Listener>> listenerClasses) {
+    }
+
+    public void listenerRemoved(final Listener listener, final boolean removed) {
+    }
+
+    public void fired(final Event event) {
+      fired.add(event);
+    }
+
+    public void delivered(final Event event, final Listener listener,
+        final long nanos, final Throwable failure) {
+      assertTrue(nanos >= 0);
+      deliveries.add(event + " " + listener);
+      if (failure != null) {
+        failures.add(failure);
+      }
+    }
+
+    public void message(final String message) {
+    }
+  }
+
   private Blackboard blackboard;
 
   @Before
@@ -333,10 +573,49 @@ public class BlackboardTest {
     blackboard.fire(null);
   }
 
-  @Test(expected = IllegalArgumentException.class)
+  @Test
   public void testRegisteringAbstractEvent() {
     blackboard
         .register(ListenerForAbstractEvent.class, AbstractTestEvent.class);
+
+    final AbstractEventListenerImpl listener = new AbstractEventListenerImpl();
+    blackboard.addListener(listener);
+    blackboard.fire(new ConcreteTestEvent());
+
+    assertEquals(1, listener.triggered);
+  }
+
+  @Test
+  public void testRegisteringEventInterface() {
+    blackboard.register(EventInterfaceListener.class, EventInterface.class);
+
+    final EventInterfaceListenerImpl listener = new EventInterfaceListenerImpl();
+    blackboard.addListener(listener);
+    blackboard.fire(new EventInterfaceImpl());
+
+    assertEquals(1, listener.triggered);
+  }
+
+  @Test
+  public void testSubclassEventReachesBothRegistrations() {
+    blackboard
+        .register(ListenerForAbstractEvent.class, AbstractTestEvent.class);
+    blackboard.register(ConcreteEventListener.class, ConcreteTestEvent.class);
+
+    final AbstractEventListenerImpl abstractListener = new AbstractEventListenerImpl();
+    final ConcreteEventListenerImpl concreteListener = new ConcreteEventListenerImpl();
+    blackboard.addListener(abstractListener);
+    blackboard.addListener(concreteListener);
+
+    blackboard.fire(new ConcreteTestEvent());
+    assertEquals(1, abstractListener.triggered);
+    assertEquals(1, concreteListener.triggered);
+  }
+
+  @Test(expected = EventNotRegisteredException.class)
+  public void testSiblingEventDoesntReachOtherRegistration() {
+    blackboard.register(ConcreteEventListener.class, ConcreteTestEvent.class);
+    blackboard.fire(new OtherConcreteTestEvent());
   }
 
   @Test
@@ -362,4 +641,406 @@ public class BlackboardTest {
     blackboard.fire(new EventTwo());
     assertTrue("Event two wasn't called", obj.eventTwoCalled());
   }
+
+  @Test
+  public void testAddingListenerTwiceTriggersOnce() {
+    blackboard.register(TestListener.class, TestEvent.class);
+
+    final SelfRemovingListener listener = new SelfRemovingListener();
+    blackboard.addListener(listener);
+    blackboard.addListener(listener);
+    blackboard.fire(new TestEvent());
+
+    assertEquals(1, listener.triggered);
+  }
+
+  @Test
+  public void testRemovingListenersDuringFire() {
+    blackboard.register(TestListener.class, TestEvent.class);
+
+    final SelfRemovingListener first = new SelfRemovingListener();
+    final SelfRemovingListener second = new SelfRemovingListener();
+    blackboard.addListener(first);
+    blackboard.addListener(second);
+
+    blackboard.fire(new TestEvent());
+    blackboard.fire(new TestEvent());
+
+    assertEquals(1, first.triggered);
+    assertEquals(1, second.triggered);
+  }
+
+  @Test
+  public void testFireAsyncRunsListenersOnExecutor() throws Exception {
+    final List<Runnable> tasks = new ArrayList<Runnable>();
+    blackboard.setExecutor(new Executor() {
+      public void execute(final Runnable command) {
+        tasks.add(command);
+      }
+    });
+    blackboard.register(TestListener.class, TestEvent.class);
+
+    final TestListenerImpl listener = new TestListenerImpl();
+    blackboard.addListener(listener);
+
+    final FireFuture future = blackboard.fireAsync(new TestEvent());
+    assertFalse(listener.isTriggered());
+    assertFalse(future.isDone());
+    assertEquals(1, tasks.size());
+
+    tasks.get(0).run();
+    assertTrue(listener.isTriggered());
+    assertTrue(future.isDone());
+    assertNull(future.get());
+  }
+
+  @Test
+  public void testFireAsyncCollectsListenerFailures() throws Exception {
+    blackboard.register(TestListener.class, TestEvent.class);
+
+    final FailingListener failingListener = new FailingListener();
+    final TestListenerImpl listener = new TestListenerImpl();
+    blackboard.addListener(failingListener);
+    blackboard.addListener(listener);
+
+    final FireFuture future = blackboard.fireAsync(new TestEvent());
+    try {
+      future.get(10, TimeUnit.SECONDS);
+      fail("Listener failure wasn't reported");
+    } catch (final ExecutionException e) {
+      final ListenerInvocationException cause = (ListenerInvocationException) e
+          .getCause();
+      assertEquals(Arrays.asList(failingListener.failure), cause.getFailures());
+    }
+    assertTrue(listener.isTriggered());
+  }
+
+  @Test
+  public void testMaxConcurrentDeliveries() throws Exception {
+    blackboard.setExecutor(new VirtualThreadExecutor());
+    blackboard.register(TestListener.class, TestEvent.class);
+    blackboard.setMaxConcurrentDeliveries(TestEvent.class, 2);
+
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    for (int i = 0; i < 20; i++) {
+      blackboard.addListener(new ConcurrencyTrackingListener(running,
+          maxRunning));
+    }
+
+    blackboard.fireAsync(new TestEvent()).get(10, TimeUnit.SECONDS);
+    assertTrue("Deliveries exceeded the limit: " + maxRunning,
+        maxRunning.get() <= 2);
+  }
+
+  @Test
+  public void testFireAllDeliversInOrder() {
+    blackboard.register(MultiEventPerListener.class, EventOne.class);
+    blackboard.register(MultiEventPerListener.class, EventTwo.class);
+
+    final RecordingMultiEventListener listener = new RecordingMultiEventListener();
+    blackboard.addListener(listener);
+
+    final List<Event> events = Arrays.<Event> asList(new EventOne(),
+        new EventTwo(), new EventOne(), new EventOne(), new EventTwo());
+    blackboard.fireAll(events);
+
+    assertEquals(events, listener.events);
+  }
+
+  @Test
+  public void testFireAllWithUnregisteredEventDeliversNothing() {
+    blackboard.register(TestListener.class, TestEvent.class);
+
+    final TestListenerImpl listener = new TestListenerImpl();
+    blackboard.addListener(listener);
+
+    try {
+      blackboard.fireAll(new TestEvent(), new SecondTestEvent());
+      fail("Unregistered event was accepted");
+    } catch (final EventNotRegisteredException e) {
+      assertFalse(listener.isTriggered());
+    }
+  }
+
+  @Test
+  public void testConflationDeliversNewestPerKeyOnFlush() {
+    final QueueingExecutor executor = new QueueingExecutor();
+    blackboard.setExecutor(executor);
+    blackboard.register(PriceListener.class, PriceEvent.class);
+    blackboard.enableConflation(PriceEvent.class);
+
+    final RecordingPriceListener listener = new RecordingPriceListener();
+    blackboard.addListener(listener);
+
+    blackboard.fire(new PriceEvent("A", 1));
+    blackboard.fire(new PriceEvent("B", 1));
+    blackboard.fire(new PriceEvent("A", 2));
+    assertTrue(listener.prices.isEmpty());
+    assertEquals("Only one drain should be scheduled", 1, executor.tasks.size());
+
+    blackboard.flush();
+    assertEquals(Arrays.asList("A=2", "B=1"), listener.prices);
+
+    // the scheduled drain has nothing left to do
+    executor.runAll();
+    assertEquals(2, listener.prices.size());
+  }
+
+  @Test
+  public void testConflatedFireAsyncCompletesOnDrain() throws Exception {
+    final QueueingExecutor executor = new QueueingExecutor();
+    blackboard.setExecutor(executor);
+    blackboard.register(PriceListener.class, PriceEvent.class);
+    blackboard.enableConflation(PriceEvent.class);
+
+    final RecordingPriceListener listener = new RecordingPriceListener();
+    blackboard.addListener(listener);
+
+    final FireFuture superseded = blackboard.fireAsync(new PriceEvent("A", 1));
+    final FireFuture newest = blackboard.fireAsync(new PriceEvent("A", 2));
+    assertFalse(superseded.isDone());
+
+    executor.runAll();
+    assertTrue(superseded.isDone());
+    assertTrue(newest.isDone());
+    assertEquals(Arrays.asList("A=2"), listener.prices);
+  }
+
+  @Test(expected = EventNotRegisteredException.class)
+  public void testConflatingUnregisteredEvent() {
+    blackboard.enableConflation(PriceEvent.class);
+  }
+
+  @Test
+  public void testLaterRegistrationReachesListenerClass() {
+    blackboard.register(MultiListenerOneListener.class,
+        MultiListenerOneEvent.class);
+
+    final MultiListener first = new MultiListener();
+    blackboard.addListener(first);
+
+    blackboard.register(MultiListenerTwoListener.class,
+        MultiListenerTwoEvent.class);
+
+    final MultiListener second = new MultiListener();
+    blackboard.addListener(second);
+    blackboard.fire(new MultiListenerTwoEvent());
+
+    assertFalse("Listener added before registration was triggered",
+        first.is2Triggered());
+    assertTrue("Listener added after registration wasn't triggered",
+        second.is2Triggered());
+  }
+
+  @Test
+  public void testTracerSeesFiringAndDelivery() {
+    final RecordingTracer tracer = new RecordingTracer();
+    blackboard.setTracer(tracer);
+    blackboard.register(TestListener.class, TestEvent.class);
+
+    final TestListenerImpl listener = new TestListenerImpl();
+    final FailingListener failingListener = new FailingListener();
+    blackboard.addListener(listener);
+    blackboard.addListener(failingListener);
+
+    final TestEvent event = new TestEvent();
+    blackboard.fire(event);
+
+    assertEquals(Arrays.asList(event), tracer.fired);
+    assertEquals(2, tracer.deliveries.size());
+    assertTrue(tracer.deliveries.contains(event + " " + listener));
+    assertEquals(Arrays.asList(failingListener.failure), tracer.failures);
+  }
+
+  @Test
+  public void testTracerIsPerBlackboard() {
+    final RecordingTracer tracer = new RecordingTracer();
+    blackboard.setTracer(tracer);
+
+    final Blackboard otherBlackboard = new Blackboard();
+    otherBlackboard.register(TestListener.class, TestEvent.class);
+    otherBlackboard.addListener(new TestListenerImpl());
+    otherBlackboard.fire(new TestEvent());
+
+    assertTrue(tracer.fired.isEmpty());
+    assertNull(otherBlackboard.getTracer());
+  }
+
+  @Test
+  public void testDisableLoggingRemovesTracer() {
+    blackboard.enableLogging();
+    assertTrue(blackboard.getTracer() instanceof PrintStreamTracer);
+    blackboard.disableLogging();
+    assertNull(blackboard.getTracer());
+  }
+
+  @Test
+  public void testMagicRegistrationOfInlineListener() {
+    final InlineListenerImpl listener = new InlineListenerImpl();
+    blackboard.addListener(listener);
+    blackboard.fire(new InlineEvent());
+    assertEquals(1, listener.events);
+  }
+
+  @Test
+  public void testWeakListenerIsDeliveredTo() {
+    blackboard.register(TestListener.class, TestEvent.class);
+
+    final TestListenerImpl listener = new TestListenerImpl();
+    blackboard.addWeakListener(listener);
+    blackboard.fire(new TestEvent());
+
+    assertTrue(listener.isTriggered());
+    assertTrue(blackboard.removeListener(listener));
+  }
+
+  @Test
+  public void testCollectedWeakListenerIsPurged() throws Exception {
+    blackboard.register(TestListener.class, TestEvent.class);
+
+    TestListenerImpl listener = new TestListenerImpl();
+    final WeakReference<TestListenerImpl> probe = new WeakReference<TestListenerImpl>(
+        listener);
+    blackboard.addWeakListener(listener);
+    final TestListenerImpl strongListener = new TestListenerImpl();
+    blackboard.addListener(strongListener);
+
+    // the snapshot cached by firing mustn't keep the listener alive
+    blackboard.fire(new TestEvent());
+    assertTrue(listener.isTriggered());
+
+    listener = null;
+    for (int i = 0; i < 100 && probe.get() != null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertNull("The weak listener wasn't collected", probe.get());
+
+    blackboard.fire(new TestEvent());
+    assertTrue(strongListener.isTriggered());
+
+    int purged = 0;
+    for (int i = 0; i < 100 && purged == 0; i++) {
+      // the reference may be enqueued a moment after it's cleared
+      purged = blackboard.purgeListeners();
+      Thread.sleep(10);
+    }
+    assertEquals(1, purged);
+    assertEquals(0, blackboard.purgeListeners());
+  }
+
+  @Test
+  public void testListenersAreCalledByPriority() {
+    blackboard.register(TestListener.class, TestEvent.class);
+
+    final List<String> log = new ArrayList<String>();
+    blackboard.addListener(new OrderRecordingListener("default", log));
+    blackboard.addListener(new OrderRecordingListener("low", log), -1);
+    blackboard.addListener(new OrderRecordingListener("high", log), 10);
+    blackboard.addListener(new UrgentListener("annotated", log));
+    final UrgentListener overridden = new UrgentListener("overridden", log);
+    blackboard.addWeakListener(overridden, 20);
+    blackboard.addListener(new OrderRecordingListener("default2", log));
+    blackboard.fire(new TestEvent());
+
+    assertEquals(Arrays.asList("overridden", "high", "annotated", "default",
+        "default2", "low"), log);
+    assertTrue(blackboard.removeListener(overridden));
+  }
+
+  @Test
+  public void testKeyedListenersGetOnlyTheirKey() {
+    blackboard.register(PriceListener.class, PriceEvent.class);
+
+    final RecordingPriceListener all = new RecordingPriceListener();
+    final RecordingPriceListener acme = new RecordingPriceListener();
+    final RecordingPriceListener both = new RecordingPriceListener();
+    blackboard.addListener(all);
+    blackboard.addKeyedListener(acme, "ACME");
+    blackboard.addKeyedListener(both, "ACME");
+    blackboard.addKeyedListener(both, "INIT");
+
+    blackboard.fire(new PriceEvent("ACME", 1));
+    blackboard.fire(new PriceEvent("INIT", 2));
+    blackboard.fireAll(Arrays.<Event> asList(new PriceEvent("ACME", 3),
+        new PriceEvent("OTHER", 4)));
+
+    assertEquals(Arrays.asList("ACME=1", "INIT=2", "ACME=3", "OTHER=4"),
+        all.prices);
+    assertEquals(Arrays.asList("ACME=1", "ACME=3"), acme.prices);
+    assertEquals(Arrays.asList("ACME=1", "INIT=2", "ACME=3"), both.prices);
+  }
+
+  @Test
+  public void testRemovingKeyedListeners() {
+    blackboard.register(PriceListener.class, PriceEvent.class);
+
+    final RecordingPriceListener listener = new RecordingPriceListener();
+    blackboard.addKeyedListener(listener, "ACME");
+    blackboard.addKeyedListener(listener, "INIT");
+    blackboard.addKeyedListener(listener, null);
+
+    assertTrue(blackboard.removeKeyedListener(listener, "INIT"));
+    assertFalse(blackboard.removeKeyedListener(listener, "INIT"));
+    blackboard.fire(new PriceEvent("INIT", 1));
+    blackboard.fire(new PriceEvent(null, 2));
+    blackboard.fire(new PriceEvent("ACME", 3));
+
+    assertTrue(blackboard.removeListener(listener));
+    blackboard.fire(new PriceEvent("ACME", 4));
+    blackboard.fire(new PriceEvent(null, 5));
+
+    assertEquals(Arrays.asList("null=2", "ACME=3"), listener.prices);
+    assertFalse(blackboard.removeListener(listener));
+  }
+
+  @Test
+  public void testKeyedAndWildcardListenersAreCalledByPriority() {
+    blackboard.register(PriceListener.class, PriceEvent.class);
+
+    final List<String> log = new ArrayList<String>();
+    blackboard.addListener(new PriceListener() {
+      public void priceChanged(final PriceEvent event) {
+        log.add("low");
+      }
+    }, -1);
+    blackboard.addListener(new PriceListener() {
+      public void priceChanged(final PriceEvent event) {
+        log.add("default");
+      }
+    });
+    blackboard.addKeyedListener(new PriceListener() {
+      @ListenerMethod(priority = 5)
+      public void priceChanged(final PriceEvent event) {
+        log.add("urgent");
+      }
+    }, "ACME");
+    blackboard.fire(new PriceEvent("ACME", 1));
+
+    assertEquals(Arrays.asList("urgent", "default", "low"), log);
+  }
+
+  @Test
+  public void testKeyedFireSeesListenersChangedSince() {
+    blackboard.register(PriceListener.class, PriceEvent.class);
+
+    final RecordingPriceListener all = new RecordingPriceListener();
+    final RecordingPriceListener acme = new RecordingPriceListener();
+    final RecordingPriceListener both = new RecordingPriceListener();
+    blackboard.addKeyedListener(acme, "ACME");
+    blackboard.addKeyedListener(both, "ACME");
+    blackboard.fire(new PriceEvent("ACME", 1));
+
+    // the merged listeners cached by the first fire are out of date now
+    blackboard.addListener(all);
+    blackboard.addListener(both);
+    blackboard.fire(new PriceEvent("ACME", 2));
+    assertTrue(blackboard.removeKeyedListener(acme, "ACME"));
+    blackboard.fire(new PriceEvent("ACME", 3));
+
+    assertEquals(Arrays.asList("ACME=2", "ACME=3"), all.prices);
+    assertEquals(Arrays.asList("ACME=1", "ACME=2"), acme.prices);
+    assertEquals(Arrays.asList("ACME=1", "ACME=2", "ACME=3"), both.prices);
+  }
 }
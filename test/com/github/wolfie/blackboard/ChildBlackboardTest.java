@@ -0,0 +1,165 @@
+package com.github.wolfie.blackboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.wolfie.blackboard.annotation.ListenerMethod;
+import com.github.wolfie.blackboard.exception.DuplicateRegistrationException;
+import com.github.wolfie.blackboard.exception.EventNotRegisteredException;
+
+public class ChildBlackboardTest {
+
+  private static class NewsEvent implements Event {
+  }
+
+  private interface NewsListener extends Listener {
+    @ListenerMethod
+    void onNews(NewsEvent event);
+  }
+
+  private static class SessionEvent implements Event {
+  }
+
+  private interface SessionListener extends Listener {
+    @ListenerMethod
+    void onSession(SessionEvent event);
+  }
+
+  private static class RecordingListener implements NewsListener,
+      SessionListener {
+    private final String name;
+    private final List<String> log;
+
+    public RecordingListener(final String name, final List<String> log) {
+      this.name = name;
+      this.log = log;
+    }
+
+    public void onNews(final NewsEvent event) {
+      log.add(name + ":news");
+    }
+
+    public void onSession(final SessionEvent event) {
+      log.add(name + ":session");
+    }
+  }
+
+  private final List<String> log = new ArrayList<String>();
+  private Blackboard application;
+
+  @Before
+  public void setUp() {
+    application = new Blackboard();
+    application.register(NewsListener.class, NewsEvent.class);
+  }
+
+  @Test
+  public void testParentEventsReachAllDescendants() {
+    final Blackboard session = new Blackboard(application);
+    final Blackboard view = new Blackboard(session);
+    assertSame(application, session.getParent());
+    assertNull(application.getParent());
+
+    application.addListener(new RecordingListener("application", log));
+    session.addListener(new RecordingListener("session", log));
+    view.addListener(new RecordingListener("view", log));
+
+    application.fire(new NewsEvent());
+    assertEquals(Arrays.asList("application:news", "session:news",
+        "view:news"), log);
+
+    log.clear();
+    session.fireAll(new NewsEvent());
+    assertEquals(Arrays.asList("session:news", "view:news"), log);
+    assertSame(session, view.getParent());
+  }
+
+  @Test
+  public void testChildEventsStayLocal() {
+    final Blackboard session = new Blackboard(application);
+    final Blackboard other = new Blackboard(application);
+    session.register(SessionListener.class, SessionEvent.class);
+
+    application.addListener(new RecordingListener("application", log));
+    session.addListener(new RecordingListener("session", log));
+    other.addListener(new RecordingListener("other", log));
+
+    session.fire(new SessionEvent());
+    session.fire(new NewsEvent());
+    assertEquals(Arrays.asList("session:session", "session:news"), log);
+    assertSame(application, other.getParent());
+  }
+
+  @Test(expected = EventNotRegisteredException.class)
+  public void testParentDoesNotSeeChildRegistrations() {
+    new Blackboard(application).register(SessionListener.class,
+        SessionEvent.class);
+    application.fire(new SessionEvent());
+  }
+
+  @Test(expected = DuplicateRegistrationException.class)
+  public void testInheritedRegistrationCantBeRepeated() {
+    new Blackboard(application).register(NewsListener.class, NewsEvent.class);
+  }
+
+  @Test
+  public void testLaterParentRegistrationsAreInherited() {
+    final Blackboard session = new Blackboard(application);
+    session.addListener(new RecordingListener("session", log));
+    application.fire(new NewsEvent());
+
+    application.register(SessionListener.class, SessionEvent.class);
+    session.addListener(new RecordingListener("late", log));
+    application.fire(new SessionEvent());
+    assertEquals(Arrays.asList("session:news", "late:session"), log);
+  }
+
+  @Test
+  public void testFireAsyncReachesChildren() throws Exception {
+    final Blackboard session = new Blackboard(application);
+    final List<String> syncLog = Collections.synchronizedList(log);
+    session.addListener(new RecordingListener("session", syncLog));
+    application.addListener(new RecordingListener("application", syncLog));
+
+    application.fireAsync(new NewsEvent()).get(10, TimeUnit.SECONDS);
+    assertEquals(2, syncLog.size());
+  }
+
+  @Test(timeout = 10000)
+  public void testParentDoesNotKeepChildren() throws Exception {
+    final WeakReference<Blackboard> session = new WeakReference<Blackboard>(
+        newSession());
+    application.fire(new NewsEvent());
+    assertEquals(Arrays.asList("session:news"), log);
+
+    while (session.get() != null) {
+      System.gc();
+      Thread.sleep(10);
+    }
+
+    // a new child is still reached after the old one is gone
+    log.clear();
+    final Blackboard newSession = new Blackboard(application);
+    newSession.addListener(new RecordingListener("new", log));
+    application.fire(new NewsEvent());
+    assertEquals(Arrays.asList("new:news"), log);
+    assertSame(application, newSession.getParent());
+  }
+
+  private Blackboard newSession() {
+    final Blackboard session = new Blackboard(application);
+    session.addListener(new RecordingListener("session", log));
+    return session;
+  }
+}
@@ -0,0 +1,104 @@
+package com.github.wolfie.blackboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.wolfie.blackboard.annotation.ListenerMethod;
+import com.github.wolfie.blackboard.annotation.ListenerPair;
+
+public class ClassDiscoveryTest {
+
+  private static boolean tripwireInitialized = false;
+  private static boolean pairedEventInitialized = false;
+
+  public interface PairedListener extends Listener {
+    @ListenerMethod
+    void onEvent(PairedEvent event);
+  }
+
+  @ListenerPair(PairedListener.class)
+  public static class PairedEvent implements Event {
+    static {
+      pairedEventInitialized = true;
+    }
+  }
+
+  /** An event of an event, with a listener declared inside it */
+  public static class NestingEvent extends PairedEvent {
+    public interface NestedListener extends Listener {
+      @ListenerMethod
+      void onEvent(NestingEvent event);
+    }
+  }
+
+  /** Must never be loaded or initialized by discovery */
+  public static class Tripwire {
+    static {
+      tripwireInitialized = true;
+    }
+  }
+
+  @Test
+  public void testReadingHeader() throws IOException {
+    final ClassHeader header = readHeader(NestingEvent.class);
+    assertEquals(NestingEvent.class.getName(), header.getName());
+    assertEquals(PairedEvent.class.getName(), header.getSuperName());
+    assertFalse(header.isInterface());
+    assertEquals(Arrays.asList(NestingEvent.NestedListener.class.getName()),
+        header.getMemberClasses());
+  }
+
+  @Test
+  public void testReadingAnnotationsAndInterfaces() throws IOException {
+    final ClassHeader header = readHeader(PairedEvent.class);
+    assertEquals(Object.class.getName(), header.getSuperName());
+    assertEquals(Arrays.asList(Event.class.getName()), header.getInterfaces());
+    assertEquals(Arrays.asList(ListenerPair.class.getName()),
+        header.getAnnotations());
+
+    final ClassHeader listenerHeader = readHeader(PairedListener.class);
+    assertTrue(listenerHeader.isInterface());
+    assertEquals(Arrays.asList(Listener.class.getName()),
+        listenerHeader.getInterfaces());
+  }
+
+  @Test
+  public void testDiscoveringCandidatesDoesntInitialize() {
+    final List<Class<? extends Event>> candidates = ClassDiscovery
+        .DiscoverEventCandidates(ClassDiscoveryTest.class);
+
+    assertTrue(candidates.contains(PairedEvent.class));
+    assertTrue(candidates.contains(NestingEvent.class));
+    assertTrue(candidates.contains(BlackboardTest.InlineEvent.class));
+    assertFalse(candidates.contains(Tripwire.class));
+    assertFalse(candidates.contains(ClassDiscoveryTest.class));
+
+    assertFalse("Discovery initialized a candidate", pairedEventInitialized);
+    assertFalse("Discovery initialized an unrelated class",
+        tripwireInitialized);
+  }
+
+  @Test(expected = IOException.class)
+  public void testReadingGarbage() throws IOException {
+    ClassHeader.parse(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+  }
+
+  private static ClassHeader readHeader(final Class<?> type)
+      throws IOException {
+    final InputStream in = type.getResourceAsStream("/"
+        + type.getName().replace('.', '/') + ".class");
+    try {
+      return ClassHeader.read(in);
+    } finally {
+      in.close();
+    }
+  }
+}
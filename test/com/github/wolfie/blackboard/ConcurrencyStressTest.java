@@ -0,0 +1,341 @@
+package com.github.wolfie.blackboard;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.wolfie.blackboard.annotation.ListenerMethod;
+import com.github.wolfie.blackboard.exception.DuplicateRegistrationException;
+
+/**
+ * Fires events from several threads while other threads register events and
+ * add and remove listeners, and checks that every event reaches every
+ * listener that was there all along exactly once.
+ */
+public class ConcurrencyStressTest {
+
+  private static final int FIRING_THREADS = 4;
+  private static final int EVENTS_PER_THREAD = 20000;
+  private static final int CHURNING_THREADS = 4;
+
+  private static class StressEvent implements Event {
+    private final int id;
+
+    public StressEvent(final int id) {
+      this.id = id;
+    }
+  }
+
+  private interface StressListener extends Listener {
+    @ListenerMethod
+    void onStress(StressEvent event);
+  }
+
+  private static class SubEvent0 extends StressEvent {
+    public SubEvent0(final int id) {
+      super(id);
+    }
+  }
+
+  private static class SubEvent1 extends StressEvent {
+    public SubEvent1(final int id) {
+      super(id);
+    }
+  }
+
+  private static class SubEvent2 extends StressEvent {
+    public SubEvent2(final int id) {
+      super(id);
+    }
+  }
+
+  private interface SubListener0 extends Listener {
+    @ListenerMethod
+    void onSub(SubEvent0 event);
+  }
+
+  private interface SubListener1 extends Listener {
+    @ListenerMethod
+    void onSub(SubEvent1 event);
+  }
+
+  private interface SubListener2 extends Listener {
+    @ListenerMethod
+    void onSub(SubEvent2 event);
+  }
+
+  private static class CountingListener implements StressListener {
+    private final AtomicIntegerArray counts = new AtomicIntegerArray(
+        FIRING_THREADS * EVENTS_PER_THREAD);
+
+    public void onStress(final StressEvent event) {
+      counts.incrementAndGet(event.id);
+    }
+  }
+
+  private static class SubCountingListener implements SubListener0,
+      SubListener1, SubListener2 {
+    private int count = 0;
+
+    public void onSub(final SubEvent0 event) {
+      count++;
+    }
+
+    public void onSub(final SubEvent1 event) {
+      count++;
+    }
+
+    public void onSub(final SubEvent2 event) {
+      count++;
+    }
+  }
+
+  private static class TransientListener implements StressListener,
+      SubListener0, SubListener1, SubListener2 {
+    public void onStress(final StressEvent event) {
+    }
+
+    public void onSub(final SubEvent0 event) {
+    }
+
+    public void onSub(final SubEvent1 event) {
+    }
+
+    public void onSub(final SubEvent2 event) {
+    }
+  }
+
+  private static class KeyedStressEvent implements KeyedEvent {
+    private final Object key;
+
+    public KeyedStressEvent(final Object key) {
+      this.key = key;
+    }
+
+    public Object getKey() {
+      return key;
+    }
+  }
+
+  private interface KeyedStressListener extends Listener {
+    @ListenerMethod
+    void onKeyed(KeyedStressEvent event);
+  }
+
+  private static class KeyedCountingListener implements KeyedStressListener {
+    private final AtomicInteger count = new AtomicInteger();
+
+    public void onKeyed(final KeyedStressEvent event) {
+      count.incrementAndGet();
+    }
+  }
+
+  private static class MagicListener implements StressListener {
+    private int count = 0;
+
+    public void onStress(final StressEvent event) {
+      count++;
+    }
+  }
+
+  private Blackboard blackboard;
+  private ExecutorService threads;
+
+  @Before
+  public void setUp() {
+    blackboard = new Blackboard();
+    blackboard.register(StressListener.class, StressEvent.class);
+    threads = Executors.newFixedThreadPool(FIRING_THREADS + CHURNING_THREADS);
+  }
+
+  @After
+  public void tearDown() {
+    threads.shutdownNow();
+  }
+
+  @Test(timeout = 60000)
+  public void testNoEventIsLostOrDuplicated() throws Exception {
+    final CountingListener first = new CountingListener();
+    final CountingListener second = new CountingListener();
+    blackboard.addListener(first);
+    blackboard.addListener(second);
+
+    final CountDownLatch start = new CountDownLatch(1);
+    final AtomicInteger firingThreadsLeft = new AtomicInteger(FIRING_THREADS);
+    final AtomicInteger successfulRegistrations = new AtomicInteger();
+    final List<Future<?>> futures = new ArrayList<Future<?>>();
+
+    for (int i = 0; i < FIRING_THREADS; i++) {
+      final int firstId = i * EVENTS_PER_THREAD;
+      futures.add(threads.submit(new Callable<Void>() {
+        public Void call() throws Exception {
+          start.await();
+          try {
+            for (int id = firstId; id < firstId + EVENTS_PER_THREAD; id++) {
+              blackboard.fire(newEvent(id));
+            }
+          } finally {
+            firingThreadsLeft.decrementAndGet();
+          }
+          return null;
+        }
+      }));
+    }
+
+    for (int i = 0; i < CHURNING_THREADS; i++) {
+      futures.add(threads.submit(new Callable<Void>() {
+        public Void call() throws Exception {
+          start.await();
+          successfulRegistrations.addAndGet(registerSubEvents());
+          while (firingThreadsLeft.get() > 0) {
+            final TransientListener listener = new TransientListener();
+            blackboard.addListener(listener);
+            blackboard.addWeakListener(new TransientListener());
+            blackboard.removeListener(listener);
+          }
+          return null;
+        }
+      }));
+    }
+
+    start.countDown();
+    for (final Future<?> future : futures) {
+      future.get();
+    }
+
+    assertEquals("Each event type should be registered exactly once", 3,
+        successfulRegistrations.get());
+    assertDeliveredOnce(first);
+    assertDeliveredOnce(second);
+
+    // no dispatch table resolved during the registrations may linger
+    final SubCountingListener late = new SubCountingListener();
+    blackboard.addListener(late);
+    blackboard.fire(new SubEvent0(0));
+    blackboard.fire(new SubEvent1(1));
+    blackboard.fire(new SubEvent2(2));
+    assertEquals(3, late.count);
+  }
+
+  @Test(timeout = 60000)
+  public void testConcurrentMagicRegistrationSucceeds() throws Exception {
+    for (int round = 0; round < 500; round++) {
+      // nothing registered, so adding a listener registers it by magic
+      final Blackboard magicBlackboard = new Blackboard();
+      final CountDownLatch start = new CountDownLatch(1);
+      final List<MagicListener> listeners = new ArrayList<MagicListener>();
+      final List<Future<?>> futures = new ArrayList<Future<?>>();
+
+      for (int i = 0; i < CHURNING_THREADS; i++) {
+        final MagicListener listener = new MagicListener();
+        listeners.add(listener);
+        futures.add(threads.submit(new Callable<Void>() {
+          public Void call() throws Exception {
+            start.await();
+            magicBlackboard.addListener(listener);
+            return null;
+          }
+        }));
+      }
+
+      start.countDown();
+      for (final Future<?> future : futures) {
+        future.get();
+      }
+
+      magicBlackboard.fire(new StressEvent(0));
+      for (final MagicListener listener : listeners) {
+        assertEquals(1, listener.count);
+      }
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testKeyedListenerCanAlwaysBeRemoved() throws Exception {
+    blackboard.register(KeyedStressListener.class, KeyedStressEvent.class);
+
+    for (int round = 0; round < 200; round++) {
+      final KeyedCountingListener listener = new KeyedCountingListener();
+      final CountDownLatch start = new CountDownLatch(1);
+      final List<Future<?>> futures = new ArrayList<Future<?>>();
+
+      for (int i = 0; i < CHURNING_THREADS; i++) {
+        final String key = "key-" + i;
+        futures.add(threads.submit(new Callable<Void>() {
+          public Void call() throws Exception {
+            start.await();
+            for (int j = 0; j < 2000; j++) {
+              blackboard.addKeyedListener(listener, key);
+              blackboard.removeKeyedListener(listener, key);
+            }
+            blackboard.addKeyedListener(listener, key);
+            return null;
+          }
+        }));
+      }
+
+      start.countDown();
+      for (final Future<?> future : futures) {
+        future.get();
+      }
+
+      // every key the listener was left with is removed with it
+      blackboard.removeListener(listener);
+      for (int i = 0; i < CHURNING_THREADS; i++) {
+        blackboard.fire(new KeyedStressEvent("key-" + i));
+      }
+      assertEquals(0, listener.count.get());
+    }
+  }
+
+  private static StressEvent newEvent(final int id) {
+    switch (id % 4) {
+    case 0:
+      return new SubEvent0(id);
+    case 1:
+      return new SubEvent1(id);
+    case 2:
+      return new SubEvent2(id);
+    default:
+      return new StressEvent(id);
+    }
+  }
+
+  /** @return the number of registrations that this thread won */
+  private int registerSubEvents() {
+    int successes = 0;
+    successes += tryRegister(SubListener0.class, SubEvent0.class);
+    successes += tryRegister(SubListener1.class, SubEvent1.class);
+    successes += tryRegister(SubListener2.class, SubEvent2.class);
+    return successes;
+  }
+
+  private int tryRegister(final Class<? extends Listener> listener,
+      final Class<? extends Event> event) {
+    try {
+      blackboard.register(listener, event);
+      return 1;
+    } catch (final DuplicateRegistrationException e) {
+      return 0;
+    }
+  }
+
+  private static void assertDeliveredOnce(final CountingListener listener) {
+    for (int id = 0; id < listener.counts.length(); id++) {
+      assertEquals("Event " + id + " was delivered "
+          + listener.counts.get(id) + " times", 1, listener.counts.get(id));
+    }
+  }
+}
@@ -0,0 +1,242 @@
+package com.github.wolfie.blackboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.wolfie.blackboard.annotation.ListenerMethod;
+import com.github.wolfie.blackboard.exception.ListenerInvocationException;
+import com.github.wolfie.blackboard.exception.QueueFullException;
+
+public class DeliveryQueueTest {
+
+  private static class NumberEvent implements Event {
+    private final int number;
+
+    public NumberEvent(final int number) {
+      this.number = number;
+    }
+  }
+
+  private static class OtherEvent implements Event {
+  }
+
+  private interface NumberListener extends Listener {
+    @ListenerMethod
+    void onNumber(NumberEvent event);
+  }
+
+  private interface OtherListener extends Listener {
+    @ListenerMethod
+    void onOther(OtherEvent event);
+  }
+
+  private static class RecordingListener implements NumberListener,
+      OtherListener {
+    private final List<Integer> numbers = Collections
+        .synchronizedList(new ArrayList<Integer>());
+
+    public void onNumber(final NumberEvent event) {
+      numbers.add(event.number);
+    }
+
+    public void onOther(final OtherEvent event) {
+    }
+  }
+
+  /** Runs tasks only when told to */
+  private static class ManualExecutor implements Executor {
+    private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+    public synchronized void execute(final Runnable command) {
+      tasks.add(command);
+    }
+
+    void runAll() {
+      while (true) {
+        final Runnable task;
+        synchronized (this) {
+          if (tasks.isEmpty()) {
+            return;
+          }
+          task = tasks.remove(0);
+        }
+        task.run();
+      }
+    }
+  }
+
+  private Blackboard blackboard;
+  private ManualExecutor executor;
+  private RecordingListener listener;
+
+  @Before
+  public void setUp() {
+    blackboard = new Blackboard();
+    blackboard.register(NumberListener.class, NumberEvent.class);
+    blackboard.register(OtherListener.class, OtherEvent.class);
+    executor = new ManualExecutor();
+    blackboard.setExecutor(executor);
+    listener = new RecordingListener();
+    blackboard.addListener(listener);
+  }
+
+  @Test
+  public void testDropNewest() throws Exception {
+    blackboard.setQueueCapacity(NumberEvent.class, 2,
+        OverflowPolicy.DROP_NEWEST);
+    final List<FireFuture> futures = fireNumbers(4);
+
+    final QueueSnapshot snapshot = blackboard
+        .getQueueSnapshot(NumberEvent.class);
+    assertEquals(2, snapshot.getDepth());
+    assertEquals(2, snapshot.getDropped());
+    assertDropped(futures.get(3));
+
+    executor.runAll();
+    assertEquals(Arrays.asList(0, 1), listener.numbers);
+    futures.get(1).get(0, TimeUnit.SECONDS);
+    assertEquals(0, blackboard.getQueueSnapshot(NumberEvent.class)
+        .getDepth());
+  }
+
+  @Test
+  public void testDropOldest() throws Exception {
+    blackboard.setQueueCapacity(NumberEvent.class, 2,
+        OverflowPolicy.DROP_OLDEST);
+    final List<FireFuture> futures = fireNumbers(4);
+    assertDropped(futures.get(0));
+
+    executor.runAll();
+    assertEquals(Arrays.asList(2, 3), listener.numbers);
+    assertEquals(2, blackboard.getQueueSnapshot(NumberEvent.class)
+        .getDropped());
+  }
+
+  @Test
+  public void testReject() {
+    blackboard.setQueueCapacity(NumberEvent.class, 1, OverflowPolicy.REJECT);
+    blackboard.fireAsync(new NumberEvent(0));
+    try {
+      blackboard.fireAsync(new NumberEvent(1));
+      fail("The second event shouldn't fit");
+    } catch (final QueueFullException e) {
+      // expected
+    }
+
+    executor.runAll();
+    assertEquals(Arrays.asList(0), listener.numbers);
+    assertEquals(1, blackboard.getQueueSnapshot(NumberEvent.class)
+        .getRejected());
+  }
+
+  @Test
+  public void testCallerRuns() {
+    blackboard.setQueueCapacity(NumberEvent.class, 1,
+        OverflowPolicy.CALLER_RUNS);
+    final List<FireFuture> futures = fireNumbers(2);
+    assertEquals(Arrays.asList(1), listener.numbers);
+    assertTrue(futures.get(1).isDone());
+
+    executor.runAll();
+    assertEquals(Arrays.asList(1, 0), listener.numbers);
+    assertEquals(1, blackboard.getQueueSnapshot(NumberEvent.class)
+        .getCallerRuns());
+  }
+
+  @Test(timeout = 10000)
+  public void testBlockWaitsForRoom() throws Exception {
+    blackboard.setQueueCapacity(NumberEvent.class, 1, OverflowPolicy.BLOCK);
+    blackboard.fireAsync(new NumberEvent(0));
+
+    final Thread producer = new Thread() {
+      @Override
+      public void run() {
+        blackboard.fireAsync(new NumberEvent(1));
+      }
+    };
+    producer.start();
+    while (blackboard.getQueueSnapshot(NumberEvent.class).getBlocked() == 0) {
+      Thread.sleep(1);
+    }
+    assertTrue(producer.isAlive());
+
+    while (producer.isAlive()) {
+      executor.runAll();
+      Thread.sleep(1);
+    }
+    executor.runAll();
+    assertEquals(Arrays.asList(0, 1), listener.numbers);
+  }
+
+  @Test
+  public void testBudgetIsSharedByAllQueues() {
+    blackboard.setQueueBudget(3);
+    blackboard.setQueueCapacity(NumberEvent.class, 10,
+        OverflowPolicy.DROP_NEWEST);
+    blackboard.setQueueCapacity(OtherEvent.class, 10,
+        OverflowPolicy.DROP_NEWEST);
+
+    blackboard.fireAsync(new OtherEvent());
+    blackboard.fireAsync(new OtherEvent());
+    fireNumbers(5);
+    assertEquals(3, blackboard.getQueuedDeliveries());
+    assertEquals(4, blackboard.getQueueSnapshot(NumberEvent.class)
+        .getDropped());
+
+    executor.runAll();
+    assertEquals(0, blackboard.getQueuedDeliveries());
+    fireNumbers(3);
+    assertEquals(3, blackboard.getQueuedDeliveries());
+  }
+
+  @Test
+  public void testRemovingQueue() {
+    assertNull(blackboard.getQueueSnapshot(NumberEvent.class));
+    blackboard.setQueueCapacity(NumberEvent.class, 1,
+        OverflowPolicy.DROP_NEWEST);
+    blackboard.setQueueCapacity(NumberEvent.class, 0,
+        OverflowPolicy.DROP_NEWEST);
+    assertNull(blackboard.getQueueSnapshot(NumberEvent.class));
+
+    fireNumbers(2);
+    executor.runAll();
+    assertEquals(2, listener.numbers.size());
+  }
+
+  private List<FireFuture> fireNumbers(final int count) {
+    final List<FireFuture> futures = new ArrayList<FireFuture>();
+    for (int i = 0; i < count; i++) {
+      futures.add(blackboard.fireAsync(new NumberEvent(i)));
+    }
+    return futures;
+  }
+
+  private static void assertDropped(final FireFuture future)
+      throws InterruptedException {
+    assertTrue(future.isDone());
+    try {
+      future.get();
+      fail("A dropped delivery should fail its future");
+    } catch (final ExecutionException e) {
+      final List<Throwable> failures = ((ListenerInvocationException) e
+          .getCause()).getFailures();
+      assertEquals(1, failures.size());
+      assertTrue(failures.get(0) instanceof QueueFullException);
+    }
+    assertFalse(future.getFailures().isEmpty());
+  }
+}
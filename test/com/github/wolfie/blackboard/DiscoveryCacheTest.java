@@ -0,0 +1,221 @@
+package com.github.wolfie.blackboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.wolfie.blackboard.ListenerIndexes.IndexedMethod;
+import com.github.wolfie.blackboard.exception.DuplicateRegistrationException;
+
+public class DiscoveryCacheTest {
+
+  private static final String CACHED_EVENT = "package cached;\n"
+      + "import com.github.wolfie.blackboard.*;\n"
+      + "public class CachedEvent implements Event {\n"
+      + "  public interface CachedListener extends Listener {\n"
+      + "    void onCached(CachedEvent event);\n" + "  }\n"
+      + "  public static int count;\n"
+      + "  public static Listener newListener() {\n"
+      + "    return new CachedListener() {\n"
+      + "      public void onCached(CachedEvent event) { count++; }\n"
+      + "    };\n" + "  }\n" + "}\n";
+
+  private static final String OTHER_EVENT = "package cached;\n"
+      + "import com.github.wolfie.blackboard.*;\n"
+      + "public class OtherEvent implements Event {\n"
+      + "  public interface OtherListener extends Listener {\n"
+      + "    void onOther(OtherEvent event);\n" + "  }\n" + "}\n";
+
+  private File root;
+  private File sourceDir;
+  private File classDir;
+  private File cacheDir;
+
+  @Before
+  public void setUp() throws IOException {
+    root = Files.createTempDirectory("blackboard-cache").toFile();
+    sourceDir = new File(root, "src");
+    classDir = new File(root, "classes");
+    cacheDir = new File(root, "cache");
+    assertTrue(new File(sourceDir, "cached").mkdirs());
+    assertTrue(classDir.mkdirs());
+  }
+
+  @After
+  public void tearDown() {
+    delete(root);
+  }
+
+  @Test
+  public void testWarmStartUsesCache() throws Exception {
+    final ClassLoader classLoader = compile(CACHED_EVENT);
+    final Class<?> event = classLoader.loadClass("cached.CachedEvent");
+
+    final Blackboard cold = newBlackboard();
+    assertFalse(discover(cold, event).contains("cached discoveries"));
+    assertEquals(1, cacheDir.listFiles().length);
+
+    final Blackboard warm = newBlackboard();
+    assertTrue(discover(warm, event).contains("Using 1 cached discoveries"));
+
+    warm.addListener((Listener) event.getMethod("newListener").invoke(null));
+    warm.fire((Event) event.getDeclaredConstructor().newInstance());
+    assertEquals(1, event.getField("count").getInt(null));
+  }
+
+  @Test(expected = DuplicateRegistrationException.class)
+  public void testChangedPackageIsScannedAgain() throws Exception {
+    discover(newBlackboard(), compile(CACHED_EVENT).loadClass(
+        "cached.CachedEvent"));
+
+    final ClassLoader classLoader = compile(OTHER_EVENT);
+    final Blackboard blackboard = newBlackboard();
+    assertFalse(discover(blackboard,
+        classLoader.loadClass("cached.CachedEvent")).contains(
+        "cached discoveries"));
+
+    // the new event was found, so it can't be registered again
+    blackboard.register(
+        classLoader.loadClass("cached.OtherEvent$OtherListener").asSubclass(
+            Listener.class), classLoader.loadClass("cached.OtherEvent")
+            .asSubclass(Event.class));
+  }
+
+  @Test
+  public void testTouchedPackageWithSameContentsUsesCache() throws Exception {
+    final Class<?> event = compile(CACHED_EVENT).loadClass(
+        "cached.CachedEvent");
+    discover(newBlackboard(), event);
+
+    final File classFile = new File(classDir, "cached/CachedEvent.class");
+    assertTrue(classFile.setLastModified(classFile.lastModified() + 60000));
+
+    assertTrue(discover(newBlackboard(), event).contains(
+        "Using 1 cached discoveries"));
+  }
+
+  @Test
+  public void testBrokenCacheIsIgnored() throws Exception {
+    final Class<?> event = compile(CACHED_EVENT).loadClass(
+        "cached.CachedEvent");
+    discover(newBlackboard(), event);
+
+    final File cacheFile = cacheDir.listFiles()[0];
+    Files.write(cacheFile.toPath(), new byte[] { 1, 2, 3 });
+
+    final Blackboard blackboard = newBlackboard();
+    assertFalse(discover(blackboard, event).contains("cached discoveries"));
+    blackboard.addListener((Listener) event.getMethod("newListener").invoke(
+        null));
+    blackboard.fire((Event) event.getDeclaredConstructor().newInstance());
+    assertEquals(1, event.getField("count").getInt(null));
+  }
+
+  @Test
+  public void testOutOfDateCachedMethodIsScannedAgain() throws Exception {
+    final Class<?> event = compile(CACHED_EVENT).loadClass(
+        "cached.CachedEvent");
+    discover(newBlackboard(), event);
+
+    // as if the listener, in a package of its own, had been changed since
+    final Class<? extends Listener> listener = event.getClassLoader()
+        .loadClass("cached.CachedEvent$CachedListener")
+        .asSubclass(Listener.class);
+    new DiscoveryCache(cacheDir).store(DiscoveryCache.fingerprint(event),
+        Collections.singletonList(new IndexedMethod(listener, event
+            .asSubclass(Event.class), "onRenamed", null)));
+
+    final Blackboard blackboard = newBlackboard();
+    assertTrue(discover(blackboard, event).contains(
+        "Discarding out of date cached discoveries"));
+    blackboard.addListener((Listener) event.getMethod("newListener").invoke(
+        null));
+    blackboard.fire((Event) event.getDeclaredConstructor().newInstance());
+    assertEquals(1, event.getField("count").getInt(null));
+
+    // the scan was cached in its place
+    assertTrue(discover(newBlackboard(), event).contains(
+        "Using 1 cached discoveries"));
+  }
+
+  @Test
+  public void testCacheIsOffByDefault() {
+    final Blackboard blackboard = new Blackboard();
+    assertNull(blackboard.getDiscoveryCache());
+    blackboard.setDiscoveryCache(cacheDir);
+    assertEquals(cacheDir, blackboard.getDiscoveryCache());
+    blackboard.setDiscoveryCache(null);
+    assertNull(blackboard.getDiscoveryCache());
+  }
+
+  private Blackboard newBlackboard() {
+    final Blackboard blackboard = new Blackboard();
+    blackboard.setDiscoveryCache(cacheDir);
+    return blackboard;
+  }
+
+  /** Discover from <tt>seed</tt>, returning what was traced */
+  private static String discover(final Blackboard blackboard,
+      final Class<?> seed) {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    blackboard.setTracer(new PrintStreamTracer(new PrintStream(out, true)));
+    blackboard.discoverFrom(seed);
+    blackboard.setTracer(null);
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  /** Add a source to the package, and compile it all into a new loader */
+  private ClassLoader compile(final String source) throws IOException {
+    final String className = source.substring(source.indexOf("class ") + 6,
+        source.indexOf(" implements"));
+    Files.write(new File(sourceDir, "cached/" + className + ".java").toPath(),
+        source.getBytes(StandardCharsets.UTF_8));
+
+    final List<String> arguments = new ArrayList<String>();
+    arguments.add("-proc:none");
+    arguments.add("-cp");
+    arguments.add(System.getProperty("java.class.path"));
+    arguments.add("-d");
+    arguments.add(classDir.getPath());
+    for (final File file : new File(sourceDir, "cached").listFiles()) {
+      arguments.add(file.getPath());
+    }
+
+    final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    assertEquals(0,
+        compiler.run(null, null, null, arguments.toArray(new String[0])));
+
+    return new URLClassLoader(new URL[] { classDir.toURI().toURL() },
+        getClass().getClassLoader());
+  }
+
+  private static void delete(final File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
@@ -0,0 +1,163 @@
+package com.github.wolfie.blackboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.wolfie.blackboard.annotation.ListenerMethod;
+
+public class DispatchMetricsTest {
+
+  public static class CountedEvent implements Event {
+  }
+
+  public interface CountedListener extends Listener {
+    @ListenerMethod
+    void onEvent(CountedEvent event);
+  }
+
+  public static class QuietListener implements CountedListener {
+    public void onEvent(final CountedEvent event) {
+    }
+  }
+
+  public static class FailingListener implements CountedListener {
+    public void onEvent(final CountedEvent event) {
+      throw new RuntimeException("failing on purpose");
+    }
+  }
+
+  private Blackboard blackboard;
+
+  @Before
+  public void setUp() {
+    blackboard = new Blackboard();
+    blackboard.register(CountedListener.class, CountedEvent.class);
+    blackboard.addListener(new QuietListener());
+    blackboard.addListener(new QuietListener());
+  }
+
+  @Test
+  public void testMetricsAreOffByDefault() {
+    assertNull(blackboard.getMetrics());
+  }
+
+  @Test
+  public void testCounting() throws Exception {
+    final DispatchMetrics metrics = blackboard.enableMetrics();
+    assertSame(metrics, blackboard.enableMetrics());
+    blackboard.addListener(new FailingListener());
+
+    blackboard.fire(new CountedEvent());
+    blackboard.fire(new CountedEvent());
+    try {
+      blackboard.fireAsync(new CountedEvent()).get(5, TimeUnit.SECONDS);
+    } catch (final ExecutionException e) {
+      // expected, FailingListener threw
+    }
+
+    final EventTypeSnapshot snapshot = metrics
+        .getEventType(CountedEvent.class);
+    assertEquals(3, snapshot.getFired());
+    assertEquals(9, snapshot.getDeliveries());
+    assertEquals(3, snapshot.getFailures());
+    assertEquals("Only fire() is timed", 2, snapshot.getFireLatency()
+        .getCount());
+
+    assertEquals(6, metrics.getListener(QuietListener.class).getCount());
+    assertEquals(3, metrics.getListeners().get(FailingListener.class.getName())
+        .getCount());
+  }
+
+  @Test
+  public void testReset() {
+    final DispatchMetrics metrics = blackboard.enableMetrics();
+    blackboard.fire(new CountedEvent());
+    metrics.reset();
+
+    assertEquals(0, metrics.getEventType(CountedEvent.class).getFired());
+    assertEquals(0, metrics.getListener(QuietListener.class).getCount());
+  }
+
+  @Test
+  public void testDisabling() {
+    final DispatchMetrics metrics = blackboard.enableMetrics();
+    blackboard.disableMetrics();
+    blackboard.fire(new CountedEvent());
+
+    assertNull(blackboard.getMetrics());
+    assertEquals(0, metrics.getEventType(CountedEvent.class).getFired());
+  }
+
+  @Test
+  public void testPercentiles() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i * 1000L);
+    }
+
+    final LatencySnapshot snapshot = histogram.getSnapshot();
+    assertEquals(1000, snapshot.getCount());
+    assertEquals(1000000, snapshot.getMax());
+    assertEquals(500500, snapshot.getMean());
+    assertWithinBucket(500000, snapshot.getP50());
+    assertWithinBucket(990000, snapshot.getP99());
+    assertWithinBucket(999000, snapshot.getP999());
+  }
+
+  @Test
+  public void testBucketsCoverAllValues() {
+    for (final long value : new long[] { 0, 1, 15, 16, 17, 31, 32, 33, 1000,
+        1L << 40, Long.MAX_VALUE }) {
+      final int bucket = LatencyHistogram.getBucket(value);
+      assertTrue(value + " is above its bucket",
+          value <= LatencyHistogram.getHighestValue(bucket));
+      if (bucket > 0) {
+        assertTrue(value + " belongs to a lower bucket",
+            value > LatencyHistogram.getHighestValue(bucket - 1));
+      }
+    }
+  }
+
+  @Test
+  public void testJmx() throws Exception {
+    final DispatchMetrics metrics = blackboard.enableMetrics();
+    blackboard.fire(new CountedEvent());
+
+    final ObjectName name = new ObjectName(
+        "com.github.wolfie.blackboard:type=DispatchMetrics,name=test");
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    metrics.registerMBean(name);
+    try {
+      final TabularData eventTypes = (TabularData) server.getAttribute(name,
+          "EventTypes");
+      final CompositeData row = eventTypes
+          .get(new Object[] { CountedEvent.class.getName() });
+      final CompositeData counters = (CompositeData) row.get("value");
+      assertEquals(Long.valueOf(1), counters.get("fired"));
+      assertEquals(Long.valueOf(2), counters.get("deliveries"));
+    } finally {
+      blackboard.disableMetrics();
+    }
+    assertFalse(server.isRegistered(name));
+  }
+
+  private static void assertWithinBucket(final long expected, final long actual) {
+    assertTrue("Expected about " + expected + ", was " + actual,
+        actual >= expected && actual <= expected + expected / 16);
+  }
+}
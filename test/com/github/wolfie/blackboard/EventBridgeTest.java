@@ -0,0 +1,270 @@
+package com.github.wolfie.blackboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.wolfie.blackboard.annotation.ListenerMethod;
+
+public class EventBridgeTest {
+
+  private static class PingEvent implements Event {
+    private final int number;
+
+    public PingEvent(final int number) {
+      this.number = number;
+    }
+  }
+
+  private interface PingListener extends Listener {
+    @ListenerMethod
+    void onPing(PingEvent event);
+  }
+
+  public static class NoteEvent implements Event, Serializable {
+    private static final long serialVersionUID = 1L;
+    private final String text;
+
+    public NoteEvent(final String text) {
+      this.text = text;
+    }
+  }
+
+  public interface NoteListener extends Listener {
+    @ListenerMethod
+    void onNote(NoteEvent event);
+  }
+
+  private static class PingCodec implements EventCodec {
+    public void write(final Event event, final DataOutputStream out)
+        throws IOException {
+      out.writeInt(((PingEvent) event).number);
+    }
+
+    public Event read(final Class<? extends Event> type,
+        final DataInputStream in) throws IOException {
+      final int number = in.readInt();
+      if (number < 0) {
+        throw new IllegalArgumentException("Negative ping " + number);
+      }
+      return new PingEvent(number);
+    }
+  }
+
+  private static class Node implements PingListener {
+    private final Blackboard blackboard = new Blackboard();
+    private final EventBridge bridge;
+    private final AtomicInteger pings = new AtomicInteger();
+    private final AtomicInteger sum = new AtomicInteger();
+    private SocketAddress address;
+
+    public Node() throws IOException {
+      blackboard.register(PingListener.class, PingEvent.class);
+      blackboard.addListener(this);
+      bridge = new EventBridge(blackboard, new PingCodec());
+      bridge.forward(PingEvent.class);
+    }
+
+    public void onPing(final PingEvent event) {
+      pings.incrementAndGet();
+      sum.addAndGet(event.number);
+    }
+  }
+
+  private final List<Node> nodes = new ArrayList<Node>();
+
+  @Before
+  public void setUp() throws IOException {
+    for (int i = 0; i < 3; i++) {
+      final Node node = new Node();
+      node.address = node.bridge.bind(new InetSocketAddress(InetAddress
+          .getLoopbackAddress(), 0));
+      nodes.add(node);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    for (final Node node : nodes) {
+      node.bridge.close();
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testEventsReachEveryNodeOnce() throws Exception {
+    connectAll();
+
+    nodes.get(0).blackboard.fire(new PingEvent(1));
+    nodes.get(1).blackboard.fire(new PingEvent(10));
+    awaitPings(2);
+
+    // anything sent back would have arrived before these
+    nodes.get(2).blackboard.fire(new PingEvent(100));
+    awaitPings(3);
+    Thread.sleep(100);
+    for (final Node node : nodes) {
+      assertEquals(3, node.pings.get());
+      assertEquals(111, node.sum.get());
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testBurstsAreBatched() throws Exception {
+    connect(nodes.get(0), nodes.get(1));
+
+    final int count = 50000;
+    for (int i = 0; i < count; i++) {
+      nodes.get(0).blackboard.fire(new PingEvent(1));
+    }
+    while (nodes.get(1).pings.get() < count) {
+      Thread.sleep(10);
+    }
+
+    final EventBridge bridge = nodes.get(0).bridge;
+    assertEquals(count, bridge.getSentEvents());
+    assertEquals(count, nodes.get(1).bridge.getReceivedEvents());
+    assertTrue(bridge.getSentFrames() + " frames for " + count + " events",
+        bridge.getSentFrames() < count);
+  }
+
+  @Test(timeout = 20000)
+  public void testDuplicateAndSelfConnectionsAreClosed() throws Exception {
+    final Node first = nodes.get(0);
+    final Node second = nodes.get(1);
+    connect(first, second);
+    second.bridge.connect(first.address);
+    first.bridge.connect(first.address);
+    Thread.sleep(200);
+    assertEquals(1, first.bridge.getPeerCount());
+    assertEquals(1, second.bridge.getPeerCount());
+
+    first.blackboard.fire(new PingEvent(1));
+    while (second.pings.get() < 1) {
+      Thread.sleep(10);
+    }
+    Thread.sleep(100);
+    assertEquals(1, first.pings.get());
+    assertEquals(1, second.pings.get());
+  }
+
+  @Test(timeout = 20000)
+  public void testUndecodableEventClosesOnlyItsConnection() throws Exception {
+    final Node first = nodes.get(0);
+    final Node second = nodes.get(1);
+    final Node third = nodes.get(2);
+    connect(first, second);
+    connect(third, second);
+
+    first.blackboard.fire(new PingEvent(-1));
+    while (first.bridge.getPeerCount() > 0
+        || second.bridge.getPeerCount() > 1) {
+      Thread.sleep(10);
+    }
+
+    // the I/O thread of the second node is still running
+    third.blackboard.fire(new PingEvent(1));
+    while (second.pings.get() < 1) {
+      Thread.sleep(10);
+    }
+    connect(first, second);
+    first.blackboard.fire(new PingEvent(10));
+    while (second.pings.get() < 2) {
+      Thread.sleep(10);
+    }
+    assertEquals(11, second.sum.get());
+  }
+
+  @Test(timeout = 20000)
+  public void testUnixDomainSocketsAndSerialization() throws Exception {
+    final SocketAddress address;
+    final File directory = Files.createTempDirectory("blackboard-bridge")
+        .toFile();
+    try {
+      address = EventBridge.unixDomainAddress(new File(directory, "socket"));
+    } catch (final UnsupportedOperationException e) {
+      Assume.assumeNoException(e);
+      return;
+    }
+
+    final List<String> notes = new ArrayList<String>();
+    final Blackboard local = new Blackboard();
+    final Blackboard remote = new Blackboard();
+    local.register(NoteListener.class, NoteEvent.class);
+    remote.register(NoteListener.class, NoteEvent.class);
+    remote.addListener(new NoteListener() {
+      public void onNote(final NoteEvent event) {
+        synchronized (notes) {
+          notes.add(event.text);
+        }
+      }
+    });
+
+    final EventBridge server = new EventBridge(remote, new SerializingCodec());
+    final EventBridge client = new EventBridge(local, new SerializingCodec());
+    try {
+      server.forward(NoteEvent.class);
+      client.forward(NoteEvent.class);
+      server.bind(address);
+      client.connect(address);
+      while (client.getPeerCount() == 0 || server.getPeerCount() == 0) {
+        Thread.sleep(10);
+      }
+
+      local.fire(new NoteEvent("hello"));
+      while (server.getReceivedEvents() == 0) {
+        Thread.sleep(10);
+      }
+      synchronized (notes) {
+        assertEquals("hello", notes.get(0));
+      }
+    } finally {
+      client.close();
+      server.close();
+    }
+    assertTrue(directory.delete());
+  }
+
+  private void connectAll() throws Exception {
+    for (int i = 0; i < nodes.size(); i++) {
+      for (int j = i + 1; j < nodes.size(); j++) {
+        connect(nodes.get(i), nodes.get(j));
+      }
+    }
+  }
+
+  private static void connect(final Node from, final Node to)
+      throws Exception {
+    final int fromPeers = from.bridge.getPeerCount();
+    final int toPeers = to.bridge.getPeerCount();
+    from.bridge.connect(to.address);
+    while (from.bridge.getPeerCount() == fromPeers
+        || to.bridge.getPeerCount() == toPeers) {
+      Thread.sleep(10);
+    }
+  }
+
+  private void awaitPings(final int count) throws InterruptedException {
+    for (final Node node : nodes) {
+      while (node.pings.get() < count) {
+        Thread.sleep(10);
+      }
+    }
+  }
+}
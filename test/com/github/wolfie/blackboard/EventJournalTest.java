@@ -0,0 +1,210 @@
+package com.github.wolfie.blackboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.wolfie.blackboard.annotation.ListenerMethod;
+
+public class EventJournalTest {
+
+  public static class AuditEvent implements Event {
+    private final int number;
+
+    public AuditEvent(final int number) {
+      this.number = number;
+    }
+  }
+
+  public interface AuditListener extends Listener {
+    @ListenerMethod
+    void onAudit(AuditEvent event);
+  }
+
+  private static class AuditCodec implements EventCodec {
+    public void write(final Event event, final DataOutputStream out)
+        throws IOException {
+      out.writeInt(((AuditEvent) event).number);
+    }
+
+    public Event read(final Class<? extends Event> type,
+        final DataInputStream in) throws IOException {
+      return new AuditEvent(in.readInt());
+    }
+  }
+
+  private File directory;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("blackboard-journal").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    delete(directory);
+  }
+
+  @Test
+  public void testFiredEventsAreReadBackInOrder() throws Exception {
+    final Blackboard blackboard = new Blackboard();
+    blackboard.register(AuditListener.class, AuditEvent.class);
+
+    final EventJournal journal = new EventJournal(directory, new AuditCodec());
+    journal.record(blackboard, AuditEvent.class);
+    final long before = System.currentTimeMillis();
+    for (int i = 0; i < 10000; i++) {
+      blackboard.fire(new AuditEvent(i));
+    }
+    journal.sync();
+    assertEquals(10000, journal.getWrittenEvents());
+    assertTrue(journal.getCommits() <= journal.getWrittenEvents());
+
+    final JournalReader reader = new JournalReader(directory,
+        new AuditCodec());
+    for (int i = 0; i < 10000; i++) {
+      final JournalRecord record = reader.next();
+      assertEquals(i + 1, record.getSequence());
+      assertEquals(AuditEvent.class.getName(), record.getTypeName());
+      assertTrue(record.getTimestamp() >= before);
+      assertEquals(i, ((AuditEvent) record.getEvent()).number);
+    }
+    assertNull(reader.next());
+
+    // the reader follows the journal as it's written
+    blackboard.fire(new AuditEvent(10000));
+    journal.close();
+    assertEquals(10001, reader.next().getSequence());
+    assertNull(reader.next());
+    reader.close();
+
+    // closed journals record no more
+    blackboard.fire(new AuditEvent(10001));
+    assertEquals(10001, journal.getAppendedEvents());
+  }
+
+  @Test
+  public void testSegmentsRollAndAreRetained() throws Exception {
+    final EventJournal journal = new EventJournal(directory, new AuditCodec(),
+        4096);
+    journal.setFsyncPolicy(FsyncPolicy.EVERY_COMMIT);
+    journal.setMaxSegments(3);
+    for (int i = 0; i < 2000; i++) {
+      journal.append(new AuditEvent(i));
+    }
+    journal.close();
+    assertTrue(journal.getFsyncs() > 0);
+
+    final File[] segments = EventJournal.listSegments(directory);
+    assertEquals(3, segments.length);
+
+    // the oldest records are gone, the rest are all there
+    final JournalReader reader = new JournalReader(directory,
+        new AuditCodec());
+    JournalRecord record = reader.next();
+    final long first = record.getSequence();
+    assertEquals(EventJournal.getFirstSequence(segments[0]), first);
+    assertTrue(first > 1);
+    for (long sequence = first; sequence <= 2000; sequence++) {
+      assertEquals(sequence, record.getSequence());
+      assertEquals(sequence - 1, ((AuditEvent) record.getEvent()).number);
+      record = reader.next();
+    }
+    assertNull(record);
+    reader.close();
+  }
+
+  @Test
+  public void testReopenedJournalContinuesAndSeeks() throws Exception {
+    EventJournal journal = new EventJournal(directory, new AuditCodec(), 4096);
+    for (int i = 0; i < 500; i++) {
+      journal.append(new AuditEvent(i));
+    }
+    journal.close();
+
+    journal = new EventJournal(directory, new AuditCodec(), 4096);
+    for (int i = 500; i < 1000; i++) {
+      journal.append(new AuditEvent(i));
+    }
+    journal.close();
+
+    final JournalReader reader = new JournalReader(directory,
+        new AuditCodec());
+    reader.seek(700);
+    for (int sequence = 700; sequence <= 1000; sequence++) {
+      final JournalRecord record = reader.next();
+      assertEquals(sequence, record.getSequence());
+      assertEquals(sequence - 1, ((AuditEvent) record.getEvent()).number);
+    }
+    assertNull(reader.next());
+    reader.close();
+  }
+
+  @Test
+  public void testTornTailIsErased() throws Exception {
+    EventJournal journal = new EventJournal(directory, new AuditCodec());
+    for (int i = 0; i < 10; i++) {
+      journal.append(new AuditEvent(i));
+    }
+    journal.close();
+
+    // break the checksum of the last record, as if it was half written
+    final File segment = EventJournal.listSegments(directory)[0];
+    final RandomAccessFile file = new RandomAccessFile(segment, "rw");
+    final long end = findEnd(file);
+    file.seek(end - 1);
+    final int lastByte = file.read();
+    file.seek(end - 1);
+    file.write(lastByte ^ 0xff);
+    file.close();
+
+    journal = new EventJournal(directory, new AuditCodec());
+    journal.append(new AuditEvent(42));
+    journal.close();
+
+    final JournalReader reader = new JournalReader(directory,
+        new AuditCodec());
+    for (int sequence = 1; sequence <= 9; sequence++) {
+      assertEquals(sequence, reader.next().getSequence());
+    }
+    final JournalRecord record = reader.next();
+    assertEquals(10, record.getSequence());
+    assertEquals(42, ((AuditEvent) record.getEvent()).number);
+    assertNull(reader.next());
+    reader.close();
+  }
+
+  /** @return the position after the last record */
+  private static long findEnd(final RandomAccessFile file) throws IOException {
+    long position = EventJournal.SEGMENT_HEADER_SIZE;
+    while (true) {
+      file.seek(position);
+      final int length = file.readInt();
+      if (length == 0) {
+        return position;
+      }
+      position += EventJournal.RECORD_HEADER_SIZE + length;
+    }
+  }
+
+  private static void delete(final File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
@@ -0,0 +1,331 @@
+package com.github.wolfie.blackboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.wolfie.blackboard.annotation.ListenerMethod;
+import com.github.wolfie.blackboard.exception.EventNotRegisteredException;
+
+public class JournalReplayTest {
+
+  public static class DepositEvent implements KeyedEvent {
+    private final String account;
+    private final int amount;
+
+    public DepositEvent(final String account, final int amount) {
+      this.account = account;
+      this.amount = amount;
+    }
+
+    public Object getKey() {
+      return account;
+    }
+  }
+
+  public static class ResetEvent implements Event {
+  }
+
+  public interface DepositListener extends Listener {
+    @ListenerMethod
+    void onDeposit(DepositEvent event);
+  }
+
+  public interface ResetListener extends Listener {
+    @ListenerMethod
+    void onReset(ResetEvent event);
+  }
+
+  private static class BankCodec implements EventCodec {
+    public void write(final Event event, final DataOutputStream out)
+        throws IOException {
+      if (event instanceof DepositEvent) {
+        out.writeUTF(((DepositEvent) event).account);
+        out.writeInt(((DepositEvent) event).amount);
+      }
+    }
+
+    public Event read(final Class<? extends Event> type,
+        final DataInputStream in) throws IOException {
+      if (type == DepositEvent.class) {
+        return new DepositEvent(in.readUTF(), in.readInt());
+      }
+      return new ResetEvent();
+    }
+  }
+
+  private static class Ledger implements DepositListener, ResetListener {
+    private final ConcurrentMap<Object, List<Integer>> deposits = new ConcurrentHashMap<Object, List<Integer>>();
+    private final List<String> log = Collections
+        .synchronizedList(new ArrayList<String>());
+
+    public void onDeposit(final DepositEvent event) {
+      List<Integer> amounts = deposits.get(event.account);
+      if (amounts == null) {
+        deposits.putIfAbsent(event.account,
+            Collections.synchronizedList(new ArrayList<Integer>()));
+        amounts = deposits.get(event.account);
+      }
+      amounts.add(event.amount);
+      log.add(event.account + event.amount);
+    }
+
+    public void onReset(final ResetEvent event) {
+      log.add("reset");
+    }
+  }
+
+  private File directory;
+  private Blackboard blackboard;
+  private Ledger ledger;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("blackboard-replay").toFile();
+    blackboard = new Blackboard();
+    blackboard.register(DepositListener.class, DepositEvent.class);
+    blackboard.register(ResetListener.class, ResetEvent.class);
+    ledger = new Ledger();
+    blackboard.addListener(ledger);
+  }
+
+  @After
+  public void tearDown() {
+    for (final File segment : directory.listFiles()) {
+      segment.delete();
+    }
+    directory.delete();
+  }
+
+  @Test
+  public void testReplayInOrder() throws Exception {
+    final EventJournal journal = new EventJournal(directory, new BankCodec());
+    journal.append(new DepositEvent("a", 1));
+    journal.append(new ResetEvent());
+    journal.append(new DepositEvent("b", 2));
+    journal.close();
+
+    final List<ReplayProgress> reports = new ArrayList<ReplayProgress>();
+    final JournalReplay replay = new JournalReplay(newReader(), blackboard);
+    replay.setMonitor(new ReplayMonitor() {
+      public void progress(final ReplayProgress progress) {
+        reports.add(progress);
+      }
+    }, 1, TimeUnit.HOURS);
+    final ReplayProgress progress = replay.run();
+
+    assertEquals(Arrays.asList("a1", "reset", "b2"), ledger.log);
+    assertEquals(3, progress.getReplayedEvents());
+    assertEquals(0, progress.getSkippedEvents());
+    assertEquals(3, progress.getLastSequence());
+    assertTrue(progress.isFinished());
+    assertEquals(Collections.singletonList(progress), reports);
+  }
+
+  @Test
+  public void testFilters() throws Exception {
+    final EventJournal journal = new EventJournal(directory, new BankCodec());
+    for (int i = 1; i <= 100; i++) {
+      journal.append(i % 10 == 0 ? new ResetEvent() : new DepositEvent("a",
+          i));
+    }
+    journal.close();
+
+    JournalReplay replay = new JournalReplay(newReader(), blackboard);
+    replay.includeType(DepositEvent.class);
+    replay.setSequenceRange(15, 25);
+    final ReplayProgress progress = replay.run();
+    assertEquals(Arrays.asList("a15", "a16", "a17", "a18", "a19", "a21",
+        "a22", "a23", "a24", "a25"), ledger.log);
+    assertEquals(10, progress.getReplayedEvents());
+    assertEquals(1, progress.getSkippedEvents());
+
+    ledger.log.clear();
+    replay = new JournalReplay(newReader(), blackboard);
+    replay.setTimeRange(System.currentTimeMillis() + 60000, Long.MAX_VALUE);
+    assertEquals(100, replay.run().getSkippedEvents());
+    assertTrue(ledger.log.isEmpty());
+  }
+
+  @Test
+  public void testParallelReplayKeepsOrderPerKey() throws Exception {
+    final EventJournal journal = new EventJournal(directory, new BankCodec());
+    for (int amount = 0; amount < 2000; amount++) {
+      for (int account = 0; account < 10; account++) {
+        journal.append(new DepositEvent("account-" + account, amount));
+      }
+    }
+    journal.close();
+
+    final JournalReplay replay = new JournalReplay(newReader(), blackboard);
+    replay.setParallelism(4);
+    assertEquals(20000, replay.run().getReplayedEvents());
+
+    assertEquals(10, ledger.deposits.size());
+    for (final List<Integer> amounts : ledger.deposits.values()) {
+      assertEquals(2000, amounts.size());
+      for (int i = 0; i < amounts.size(); i++) {
+        assertEquals(i, amounts.get(i).intValue());
+      }
+    }
+  }
+
+  @Test
+  public void testPacedReplayKeepsTiming() throws Exception {
+    final EventJournal journal = new EventJournal(directory, new BankCodec());
+    journal.append(new DepositEvent("a", 1));
+    Thread.sleep(200);
+    journal.append(new DepositEvent("a", 2));
+    journal.close();
+
+    JournalReplay replay = new JournalReplay(newReader(), blackboard);
+    replay.setSpeed(2);
+    assertTrue(replay.run().getElapsed(TimeUnit.MILLISECONDS) >= 90);
+
+    replay = new JournalReplay(newReader(), blackboard);
+    assertTrue(replay.run().getElapsed(TimeUnit.MILLISECONDS) < 90);
+    assertEquals(Arrays.asList("a1", "a2", "a1", "a2"), ledger.log);
+  }
+
+  @Test
+  public void testStop() throws Exception {
+    final EventJournal journal = new EventJournal(directory, new BankCodec());
+    for (int i = 0; i < 100; i++) {
+      journal.append(new DepositEvent("a", i));
+    }
+    journal.close();
+
+    final JournalReplay replay = new JournalReplay(newReader(), blackboard);
+    blackboard.addListener(new DepositListener() {
+      public void onDeposit(final DepositEvent event) {
+        if (event.amount == 9) {
+          replay.stop();
+        }
+      }
+    });
+    final ReplayProgress progress = replay.run();
+    assertEquals(10, progress.getReplayedEvents());
+    assertFalse(ledger.log.contains("a10"));
+  }
+
+  @Test
+  public void testReplayIntoRecordedBlackboardIsNotRecordedAgain()
+      throws Exception {
+    EventJournal journal = new EventJournal(directory, new BankCodec());
+    journal.record(blackboard, DepositEvent.class);
+    blackboard.fire(new DepositEvent("a", 1));
+    blackboard.fire(new DepositEvent("b", 2));
+    journal.close();
+
+    // as on the next boot
+    journal = new EventJournal(directory, new BankCodec());
+    journal.record(blackboard, DepositEvent.class);
+    JournalReplay replay = new JournalReplay(newReader(), blackboard);
+    replay.setParallelism(2);
+    assertEquals(2, replay.run().getReplayedEvents());
+    blackboard.fire(new DepositEvent("c", 3));
+    journal.sync();
+    assertEquals(1, journal.getAppendedEvents());
+
+    // unless asked to
+    replay = new JournalReplay(newReader(), blackboard);
+    replay.setRecorded(true);
+    replay.setSequenceRange(1, 1);
+    replay.run();
+    journal.close();
+    assertEquals(2, journal.getAppendedEvents());
+
+    final JournalReader reader = newReader();
+    final List<String> accounts = new ArrayList<String>();
+    JournalRecord record;
+    while ((record = reader.next()) != null) {
+      accounts.add(((DepositEvent) record.getEvent()).account);
+    }
+    reader.close();
+    assertEquals(Arrays.asList("a", "b", "c", "a"), accounts);
+  }
+
+  @Test
+  public void testOnlyUnfireableEventsStopTheReplay() throws Exception {
+    final EventJournal journal = new EventJournal(directory, new BankCodec());
+    journal.append(new DepositEvent("a", 1));
+    journal.append(new DepositEvent("b", 2));
+    journal.append(new ResetEvent());
+    journal.append(new DepositEvent("c", 3));
+    journal.close();
+
+    blackboard.addListener(new DepositListener() {
+      public void onDeposit(final DepositEvent event) {
+        throw new IllegalStateException("Failing on purpose");
+      }
+    });
+    final JournalReplay replay = new JournalReplay(newReader(), blackboard);
+    assertEquals(4, replay.run().getReplayedEvents());
+    assertEquals(Arrays.asList("a1", "b2", "reset", "c3"), ledger.log);
+
+    final Blackboard unregistered = new Blackboard();
+    unregistered.register(DepositListener.class, DepositEvent.class);
+    try {
+      new JournalReplay(newReader(), unregistered).run();
+      fail("The unregistered event was replayed");
+    } catch (final EventNotRegisteredException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testReplayDoesntStopOtherBlackboardsBeingRecorded()
+      throws Exception {
+    final EventJournal journal = new EventJournal(directory, new BankCodec());
+    journal.append(new DepositEvent("a", 1));
+    journal.append(new DepositEvent("b", 2));
+    journal.close();
+
+    // the listeners audit what they're replayed into another blackboard
+    final Blackboard audit = new Blackboard();
+    audit.register(ResetListener.class, ResetEvent.class);
+    blackboard.addListener(new DepositListener() {
+      public void onDeposit(final DepositEvent event) {
+        audit.fire(new ResetEvent());
+      }
+    });
+
+    final File auditDirectory = new File(directory, "audit");
+    final EventJournal auditJournal = new EventJournal(auditDirectory,
+        new BankCodec());
+    try {
+      auditJournal.record(audit, ResetEvent.class);
+      new JournalReplay(newReader(), blackboard).run();
+      auditJournal.sync();
+      assertEquals(2, auditJournal.getAppendedEvents());
+    } finally {
+      auditJournal.close();
+      for (final File segment : auditDirectory.listFiles()) {
+        segment.delete();
+      }
+      auditDirectory.delete();
+    }
+  }
+
+  private JournalReader newReader() {
+    return new JournalReader(directory, new BankCodec());
+  }
+}
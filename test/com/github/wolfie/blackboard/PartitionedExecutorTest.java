@@ -0,0 +1,147 @@
+package com.github.wolfie.blackboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.wolfie.blackboard.annotation.ListenerMethod;
+
+public class PartitionedExecutorTest {
+
+  private static class OrderEvent implements KeyedEvent {
+    private final String orderId;
+    private final int sequence;
+
+    public OrderEvent(final String orderId, final int sequence) {
+      this.orderId = orderId;
+      this.sequence = sequence;
+    }
+
+    public Object getKey() {
+      return orderId;
+    }
+  }
+
+  private interface OrderListener extends Listener {
+    @ListenerMethod
+    void onOrder(OrderEvent event);
+  }
+
+  private static class RecordingListener implements OrderListener {
+    private final ConcurrentMap<Object, List<Integer>> sequences = new ConcurrentHashMap<Object, List<Integer>>();
+
+    public void onOrder(final OrderEvent event) {
+      List<Integer> sequencesOfKey = sequences.get(event.getKey());
+      if (sequencesOfKey == null) {
+        sequences.putIfAbsent(event.getKey(),
+            Collections.synchronizedList(new ArrayList<Integer>()));
+        sequencesOfKey = sequences.get(event.getKey());
+      }
+      sequencesOfKey.add(event.sequence);
+    }
+  }
+
+  private Blackboard blackboard;
+  private PartitionedExecutor executor;
+
+  @Before
+  public void setUp() {
+    blackboard = new Blackboard();
+    blackboard.register(OrderListener.class, OrderEvent.class);
+    executor = new PartitionedExecutor(4);
+    blackboard.setExecutor(executor);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testEventsWithSameKeyAreDeliveredInOrder() throws Exception {
+    final RecordingListener first = new RecordingListener();
+    final RecordingListener second = new RecordingListener();
+    blackboard.addListener(first);
+    blackboard.addListener(second);
+
+    final List<FireFuture> futures = new ArrayList<FireFuture>();
+    for (int sequence = 0; sequence < 1000; sequence++) {
+      for (int order = 0; order < 10; order++) {
+        futures.add(blackboard.fireAsync(new OrderEvent("order-" + order,
+            sequence)));
+      }
+    }
+    for (final FireFuture future : futures) {
+      future.get(10, TimeUnit.SECONDS);
+    }
+
+    for (final RecordingListener listener : new RecordingListener[] { first,
+        second }) {
+      assertEquals(10, listener.sequences.size());
+      for (final List<Integer> sequences : listener.sequences.values()) {
+        assertEquals(1000, sequences.size());
+        for (int i = 0; i < sequences.size(); i++) {
+          assertEquals(i, sequences.get(i).intValue());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testDifferentLanesRunInParallel() throws Exception {
+    final String blockedKey = "a";
+    String otherKey = "b";
+    for (int i = 0; executor.getLane(otherKey) == executor
+        .getLane(blockedKey); i++) {
+      otherKey = "b" + i;
+    }
+
+    final CountDownLatch otherDelivered = new CountDownLatch(1);
+    blackboard.addListener(new OrderListener() {
+      public void onOrder(final OrderEvent event) {
+        if (event.getKey().equals(blockedKey)) {
+          try {
+            // only returns if the other key isn't stuck behind this one
+            assertTrue(otherDelivered.await(10, TimeUnit.SECONDS));
+          } catch (final InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        } else {
+          otherDelivered.countDown();
+        }
+      }
+    });
+
+    final FireFuture blocked = blackboard.fireAsync(new OrderEvent(blockedKey,
+        0));
+    final FireFuture other = blackboard.fireAsync(new OrderEvent(otherKey, 0));
+    other.get(10, TimeUnit.SECONDS);
+    // fails if the blocked delivery timed out waiting
+    blocked.get(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testLanes() {
+    assertEquals(4, executor.getLaneCount());
+    assertEquals(0, executor.getLane(null));
+    assertEquals(executor.getLane("key"), executor.getLane(new String("key")));
+    final int lane = executor.getLane(Integer.MIN_VALUE);
+    assertTrue(lane >= 0 && lane < 4);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNoLanes() {
+    new PartitionedExecutor(0);
+  }
+}
@@ -0,0 +1,140 @@
+package com.github.wolfie.blackboard;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.wolfie.blackboard.annotation.ListenerMethod;
+
+public class PipelineTest {
+
+  public static class SequenceEvent implements KeyedEvent {
+    private final int key;
+    private final int sequence;
+
+    public SequenceEvent(final int key, final int sequence) {
+      this.key = key;
+      this.sequence = sequence;
+    }
+
+    public Object getKey() {
+      return key;
+    }
+  }
+
+  public interface SequenceListener extends Listener {
+    @ListenerMethod
+    void onEvent(SequenceEvent event);
+  }
+
+  /** Records every event, and checks that each key's events come in order. */
+  private static class RecordingListener implements SequenceListener {
+    private final Set<SequenceEvent> received = Collections
+        .newSetFromMap(new ConcurrentHashMap<SequenceEvent, Boolean>());
+    private final Map<Integer, Integer> lastSequences = new ConcurrentHashMap<Integer, Integer>();
+    private final AtomicInteger deliveries = new AtomicInteger();
+    private final AtomicInteger outOfOrder = new AtomicInteger();
+
+    public void onEvent(final SequenceEvent event) {
+      deliveries.incrementAndGet();
+      received.add(event);
+
+      final Integer last = lastSequences.put(event.key, event.sequence);
+      if (last != null && last.intValue() >= event.sequence) {
+        outOfOrder.incrementAndGet();
+      }
+    }
+  }
+
+  private Blackboard blackboard;
+  private RecordingListener listener;
+
+  @Before
+  public void setUp() {
+    blackboard = new Blackboard();
+    blackboard.register(SequenceListener.class, SequenceEvent.class);
+    listener = new RecordingListener();
+    blackboard.addListener(listener);
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    blackboard.stopPipeline();
+  }
+
+  @Test
+  public void testSingleProducer() throws Exception {
+    blackboard.startPipeline(64, 2, ProducerType.SINGLE, WaitStrategy.PARK);
+
+    for (int i = 0; i < 10000; i++) {
+      blackboard.fire(new SequenceEvent(i % 7, i));
+    }
+    blackboard.stopPipeline();
+
+    assertEquals(10000, listener.deliveries.get());
+    assertEquals(10000, listener.received.size());
+    assertEquals(0, listener.outOfOrder.get());
+  }
+
+  @Test
+  public void testMultipleProducers() throws Exception {
+    blackboard.startPipeline(128, 3, ProducerType.MULTI, WaitStrategy.YIELD);
+
+    final int producers = 4;
+    final int eventsPerProducer = 20000;
+    final Thread[] threads = new Thread[producers];
+    for (int i = 0; i < producers; i++) {
+      final int key = i;
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < eventsPerProducer; j++) {
+            blackboard.fire(new SequenceEvent(key, j));
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+    blackboard.stopPipeline();
+
+    assertEquals("Events were lost or duplicated", producers
+        * eventsPerProducer, listener.deliveries.get());
+    assertEquals(producers * eventsPerProducer, listener.received.size());
+    assertEquals(0, listener.outOfOrder.get());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testStartingTwice() {
+    blackboard.startPipeline(16, 1, ProducerType.SINGLE,
+        WaitStrategy.BUSY_SPIN);
+    blackboard.startPipeline(16, 1, ProducerType.SINGLE,
+        WaitStrategy.BUSY_SPIN);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBufferSizeMustBePowerOfTwo() {
+    blackboard.startPipeline(100, 1, ProducerType.SINGLE,
+        WaitStrategy.BUSY_SPIN);
+  }
+
+  @Test
+  public void testFiringWithoutPipelineAfterStop() throws Exception {
+    blackboard.startPipeline(16, 1, ProducerType.SINGLE, WaitStrategy.YIELD);
+    blackboard.stopPipeline();
+
+    blackboard.fire(new SequenceEvent(0, 0));
+    assertEquals("Event wasn't delivered synchronously", 1,
+        listener.deliveries.get());
+  }
+}
@@ -0,0 +1,403 @@
+package com.github.wolfie.blackboard.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.wolfie.blackboard.Blackboard;
+import com.github.wolfie.blackboard.Dispatcher;
+import com.github.wolfie.blackboard.Event;
+import com.github.wolfie.blackboard.Listener;
+import com.github.wolfie.blackboard.ListenerIndex;
+import com.github.wolfie.blackboard.exception.DuplicateListenerMethodException;
+import com.github.wolfie.blackboard.exception.DuplicateRegistrationException;
+import com.github.wolfie.blackboard.exception.InvalidListenerMethodConstruction;
+
+public class ListenerIndexProcessorTest {
+
+  private static final String PING_EVENT = "package indexed;\n"
+      + "import com.github.wolfie.blackboard.*;\n"
+      + "import com.github.wolfie.blackboard.annotation.*;\n"
+      + "public class PingEvent implements Event {\n"
+      + "  public interface PingListener extends Listener {\n"
+      + "    @ListenerMethod void onPing(PingEvent event);\n" + "  }\n"
+      + "}\n";
+
+  private static final String PONG_EVENT = "package indexed;\n"
+      + "import com.github.wolfie.blackboard.*;\n"
+      + "import com.github.wolfie.blackboard.annotation.*;\n"
+      + "@ListenerPair(PongListener.class)\n"
+      + "public class PongEvent implements Event {\n" + "}\n";
+
+  private static final String PONG_LISTENER = "package indexed;\n"
+      + "import com.github.wolfie.blackboard.*;\n"
+      + "import com.github.wolfie.blackboard.annotation.*;\n"
+      + "interface PongListener extends Listener {\n"
+      + "  @ListenerMethod void onPong(PongEvent event);\n" + "}\n";
+
+  private static final String RECORDER = "package indexed;\n"
+      + "public class Recorder implements PingEvent.PingListener, PongListener {\n"
+      + "  public int pings;\n" + "  public int pongs;\n"
+      + "  public void onPing(PingEvent event) { pings++; }\n"
+      + "  public void onPong(PongEvent event) { pongs++; }\n" + "}\n";
+
+  private static final String HIDDEN = "package indexed;\n"
+      + "import com.github.wolfie.blackboard.*;\n"
+      + "import com.github.wolfie.blackboard.annotation.*;\n"
+      + "public class Hidden {\n"
+      + "  private interface HiddenListener extends Listener {\n"
+      + "    @ListenerMethod void onHidden(HiddenEvent event);\n" + "  }\n"
+      + "  public static class HiddenEvent implements Event {\n" + "  }\n"
+      + "  public static int count;\n"
+      + "  public static Listener newListener() {\n"
+      + "    return new HiddenListener() {\n"
+      + "      public void onHidden(HiddenEvent event) { count++; }\n"
+      + "    };\n" + "  }\n" + "}\n";
+
+  private static final String EXTRA_EVENT = "package indexed;\n"
+      + "import com.github.wolfie.blackboard.*;\n"
+      + "public class ExtraEvent implements Event {\n"
+      + "  public interface ExtraListener extends Listener {\n"
+      + "    void onExtra(ExtraEvent event);\n" + "  }\n" + "}\n";
+
+  private static class RecordingCollector implements ListenerIndex.Collector {
+    private final Map<String, Dispatcher> methods = new HashMap<String, Dispatcher>();
+    private final Map<String, String> pairs = new HashMap<String, String>();
+
+    public void listenerMethod(final Class<? extends Listener> listener,
+        final Class<? extends Event> event, final String methodName,
+        final Dispatcher dispatcher) {
+      methods.put(listener.getName() + "." + methodName + "("
+          + event.getName() + ")", dispatcher);
+    }
+
+    public void pair(final Class<? extends Event> event,
+        final Class<? extends Listener> listener) {
+      pairs.put(event.getName(), listener.getName());
+    }
+  }
+
+  private File root;
+  private File sourceDir;
+  private File classDir;
+
+  @Before
+  public void setUp() throws IOException {
+    root = Files.createTempDirectory("blackboard-processor").toFile();
+    sourceDir = new File(root, "src");
+    classDir = new File(root, "classes");
+    assertTrue(new File(sourceDir, "indexed").mkdirs());
+    assertTrue(classDir.mkdirs());
+  }
+
+  @After
+  public void tearDown() {
+    delete(root);
+  }
+
+  @Test
+  public void testIndexIsGenerated() throws Exception {
+    final ClassLoader classLoader = compileIndexedPackage();
+
+    final List<String> services = readServices(classDir);
+    assertEquals(1, services.size());
+    assertTrue(services.get(0).startsWith(
+        "indexed." + ListenerIndexProcessor.INDEX_CLASS_NAME + "_"));
+
+    final RecordingCollector collector = new RecordingCollector();
+    loadIndex(classLoader).collect(collector);
+
+    assertEquals(3, collector.methods.size());
+    assertNotNull(collector.methods
+        .get("indexed.PingEvent$PingListener.onPing(indexed.PingEvent)"));
+    assertNotNull(collector.methods
+        .get("indexed.PongListener.onPong(indexed.PongEvent)"));
+    assertTrue(collector.methods
+        .containsKey("indexed.Hidden$HiddenListener.onHidden(indexed.Hidden$HiddenEvent)"));
+    assertNull("A private listener can't have a dispatcher",
+        collector.methods.get("indexed.Hidden$HiddenListener.onHidden("
+            + "indexed.Hidden$HiddenEvent)"));
+
+    assertEquals(2, collector.pairs.size());
+    assertEquals("indexed.PingEvent$PingListener",
+        collector.pairs.get("indexed.PingEvent"));
+    assertEquals("indexed.PongListener", collector.pairs.get("indexed.PongEvent"));
+  }
+
+  @Test
+  public void testDiscoveryUsesIndex() throws Exception {
+    final ClassLoader classLoader = compileIndexedPackage();
+    final Blackboard blackboard = new Blackboard();
+    blackboard.addListenerIndex(loadIndex(classLoader));
+
+    final Class<?> pingEvent = classLoader.loadClass("indexed.PingEvent");
+    final Class<?> pongEvent = classLoader.loadClass("indexed.PongEvent");
+    final Object recorder = classLoader.loadClass("indexed.Recorder")
+        .getDeclaredConstructor().newInstance();
+
+    // with the class files gone, only the index can find the pairs
+    delete(classDir);
+    blackboard.discoverFrom(pingEvent);
+
+    blackboard.addListener((Listener) recorder);
+    blackboard.fire((Event) pingEvent.getDeclaredConstructor().newInstance());
+    blackboard.fire((Event) pongEvent.getDeclaredConstructor().newInstance());
+
+    assertEquals(1, recorder.getClass().getField("pings").getInt(recorder));
+    assertEquals(1, recorder.getClass().getField("pongs").getInt(recorder));
+  }
+
+  @Test
+  public void testDiscoveryScansWhatIndexDoesNotCover() throws Exception {
+    final ClassLoader indexed = compileIndexedPackage();
+    // like test sources compiled into the same package without the processor
+    for (final File source : new File(sourceDir, "indexed").listFiles()) {
+      source.delete();
+    }
+    write("ExtraEvent", EXTRA_EVENT);
+    assertTrue(compile(classDir, new DiagnosticCollector<JavaFileObject>(),
+        false));
+
+    final Blackboard blackboard = new Blackboard();
+    blackboard.addListenerIndex(loadIndex(indexed));
+    blackboard.discoverFrom(indexed.loadClass("indexed.PingEvent"));
+
+    // registered by the scan, so it can't be registered again
+    final Class<?> extraEvent = indexed.loadClass("indexed.ExtraEvent");
+    try {
+      blackboard.register(
+          indexed.loadClass("indexed.ExtraEvent$ExtraListener").asSubclass(
+              Listener.class), extraEvent.asSubclass(Event.class));
+      fail("The unindexed event wasn't discovered");
+    } catch (final DuplicateRegistrationException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testSeparateCompilationsGetSeparateIndexes() throws Exception {
+    final File mainDir = new File(root, "main");
+    final File testDir = new File(root, "test");
+    assertTrue(mainDir.mkdirs());
+    assertTrue(testDir.mkdirs());
+
+    write("PingEvent", PING_EVENT);
+    assertTrue(compile(mainDir, new DiagnosticCollector<JavaFileObject>(),
+        true));
+    new File(sourceDir, "indexed/PingEvent.java").delete();
+    write("PongEvent", PONG_EVENT);
+    write("PongListener", PONG_LISTENER);
+    assertTrue(compile(testDir, new DiagnosticCollector<JavaFileObject>(),
+        true, mainDir));
+
+    final List<String> mainIndexes = readServices(mainDir);
+    final List<String> testIndexes = readServices(testDir);
+    assertEquals(1, mainIndexes.size());
+    assertEquals(1, testIndexes.size());
+    assertFalse(mainIndexes.equals(testIndexes));
+
+    // both are found, and neither hides the other
+    final ClassLoader classLoader = new URLClassLoader(new URL[] {
+        mainDir.toURI().toURL(), testDir.toURI().toURL() }, getClass()
+        .getClassLoader());
+    final Blackboard blackboard = new Blackboard();
+    for (final String index : mainIndexes) {
+      blackboard.addListenerIndex((ListenerIndex) classLoader.loadClass(index)
+          .getDeclaredConstructor().newInstance());
+    }
+    for (final String index : testIndexes) {
+      blackboard.addListenerIndex((ListenerIndex) classLoader.loadClass(index)
+          .getDeclaredConstructor().newInstance());
+    }
+    blackboard.discoverFrom(classLoader.loadClass("indexed.PingEvent"));
+    blackboard.fire((Event) classLoader.loadClass("indexed.PingEvent")
+        .getDeclaredConstructor().newInstance());
+    blackboard.fire((Event) classLoader.loadClass("indexed.PongEvent")
+        .getDeclaredConstructor().newInstance());
+  }
+
+  @Test
+  public void testIndexedListenerWithoutDispatcher() throws Exception {
+    final ClassLoader classLoader = compileIndexedPackage();
+    final Blackboard blackboard = new Blackboard();
+    blackboard.addListenerIndex(loadIndex(classLoader));
+
+    final Class<?> hidden = classLoader.loadClass("indexed.Hidden");
+    blackboard.addListener((Listener) hidden.getMethod("newListener").invoke(
+        null));
+    blackboard.fire((Event) classLoader.loadClass("indexed.Hidden$HiddenEvent")
+        .getDeclaredConstructor().newInstance());
+
+    assertEquals(1, hidden.getField("count").getInt(null));
+  }
+
+  @Test
+  public void testInvalidListenerIsLeftToReflection() throws Exception {
+    write("PingEvent", PING_EVENT);
+    write("SubPingEvent", "package indexed;\n"
+        + "public class SubPingEvent extends PingEvent {\n" + "}\n");
+    write("Broken", "package indexed;\n"
+        + "import com.github.wolfie.blackboard.*;\n"
+        + "import com.github.wolfie.blackboard.annotation.*;\n"
+        + "public interface Broken extends Listener {\n"
+        + "  @ListenerMethod void onPing(PingEvent event);\n"
+        + "  @ListenerMethod void onString(String notAnEvent);\n" + "}\n");
+    write("Doubled", "package indexed;\n"
+        + "import com.github.wolfie.blackboard.*;\n"
+        + "import com.github.wolfie.blackboard.annotation.*;\n"
+        + "public interface Doubled extends Listener {\n"
+        + "  @ListenerMethod void onPing(PingEvent event);\n"
+        + "  @ListenerMethod void onSubPing(SubPingEvent event);\n" + "}\n");
+
+    final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+    assertTrue(diagnostics.getDiagnostics().toString(), compile(diagnostics));
+
+    final List<String> warnings = new ArrayList<String>();
+    for (final Diagnostic<? extends JavaFileObject> diagnostic : diagnostics
+        .getDiagnostics()) {
+      if (diagnostic.getKind() == Diagnostic.Kind.WARNING) {
+        warnings.add(diagnostic.getMessage(null));
+      }
+    }
+    assertEquals(warnings.toString(), 2, warnings.size());
+    assertTrue(warnings.toString(), warnings.toString().contains(
+        "exactly one argument"));
+    assertTrue(warnings.toString(), warnings.toString().contains(
+        "More than one listener method"));
+
+    final ClassLoader classLoader = new URLClassLoader(new URL[] { classDir
+        .toURI().toURL() }, getClass().getClassLoader());
+    final RecordingCollector collector = new RecordingCollector();
+    final ListenerIndex index = loadIndex(classLoader);
+    index.collect(collector);
+    assertEquals(Collections.singleton("indexed.PingEvent$PingListener"
+        + ".onPing(indexed.PingEvent)"), collector.methods.keySet());
+
+    // so registering them fails just like without an index
+    final Blackboard blackboard = new Blackboard();
+    blackboard.addListenerIndex(index);
+    final Class<? extends Event> ping = classLoader.loadClass(
+        "indexed.PingEvent").asSubclass(Event.class);
+    try {
+      blackboard.register(classLoader.loadClass("indexed.Broken")
+          .asSubclass(Listener.class), ping);
+      fail("Broken was registered");
+    } catch (final InvalidListenerMethodConstruction e) {
+      // expected
+    }
+    try {
+      blackboard.register(classLoader.loadClass("indexed.Doubled")
+          .asSubclass(Listener.class), ping);
+      fail("Doubled was registered");
+    } catch (final DuplicateListenerMethodException e) {
+      // expected
+    }
+  }
+
+  private ClassLoader compileIndexedPackage() throws IOException {
+    write("PingEvent", PING_EVENT);
+    write("PongEvent", PONG_EVENT);
+    write("PongListener", PONG_LISTENER);
+    write("Recorder", RECORDER);
+    write("Hidden", HIDDEN);
+
+    final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+    assertTrue(diagnostics.getDiagnostics().toString(), compile(diagnostics));
+
+    return new URLClassLoader(new URL[] { classDir.toURI().toURL() },
+        getClass().getClassLoader());
+  }
+
+  private ListenerIndex loadIndex(final ClassLoader classLoader)
+      throws Exception {
+    return (ListenerIndex) classLoader.loadClass(
+        readServices(classDir).get(0)).getDeclaredConstructor().newInstance();
+  }
+
+  private static List<String> readServices(final File directory)
+      throws IOException {
+    return Files.readAllLines(new File(directory, "META-INF/services/"
+        + ListenerIndex.class.getName()).toPath(), StandardCharsets.UTF_8);
+  }
+
+  private void write(final String className, final String source)
+      throws IOException {
+    Files.write(new File(sourceDir, "indexed/" + className + ".java").toPath(),
+        source.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private boolean compile(final DiagnosticCollector<JavaFileObject> diagnostics)
+      throws IOException {
+    return compile(classDir, diagnostics, true);
+  }
+
+  /**
+   * Compile the sources into <tt>outputDir</tt>, with the processor if
+   * <tt>indexed</tt>, against the test classpath and <tt>classpath</tt>.
+   */
+  private boolean compile(final File outputDir,
+      final DiagnosticCollector<JavaFileObject> diagnostics,
+      final boolean indexed, final File... classpath) throws IOException {
+    String path = System.getProperty("java.class.path");
+    for (final File entry : classpath) {
+      path = entry.getPath() + File.pathSeparator + path;
+    }
+
+    final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    final StandardJavaFileManager fileManager = compiler
+        .getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8);
+    try {
+      final List<File> sources = new ArrayList<File>(Arrays.asList(new File(
+          sourceDir, "indexed").listFiles()));
+      final JavaCompiler.CompilationTask task = compiler.getTask(null,
+          fileManager, diagnostics, indexed ? Arrays.asList("-d",
+              outputDir.getPath(), "-cp", path) : Arrays.asList("-proc:none",
+              "-d", outputDir.getPath(), "-cp", path), null,
+          fileManager.getJavaFileObjectsFromFiles(sources));
+      if (indexed) {
+        task.setProcessors(Collections
+            .singletonList(new ListenerIndexProcessor()));
+      }
+      return task.call();
+    } finally {
+      fileManager.close();
+    }
+  }
+
+  private static void delete(final File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}